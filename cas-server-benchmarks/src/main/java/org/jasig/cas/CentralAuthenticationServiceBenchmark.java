@@ -0,0 +1,157 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.jasig.cas.authentication.AuthenticationManagerImpl;
+import org.jasig.cas.authentication.handler.AuthenticationHandler;
+import org.jasig.cas.authentication.handler.support.SimpleTestUsernamePasswordAuthenticationHandler;
+import org.jasig.cas.authentication.principal.CredentialsToPrincipalResolver;
+import org.jasig.cas.authentication.principal.Service;
+import org.jasig.cas.authentication.principal.SimpleWebApplicationServiceImpl;
+import org.jasig.cas.authentication.principal.UsernamePasswordCredentials;
+import org.jasig.cas.authentication.principal.UsernamePasswordCredentialsToPrincipalResolver;
+import org.jasig.cas.services.DefaultServicesManagerImpl;
+import org.jasig.cas.services.InMemoryServiceRegistryDaoImpl;
+import org.jasig.cas.services.RegisteredService;
+import org.jasig.cas.services.RegisteredServiceImpl;
+import org.jasig.cas.ticket.Ticket;
+import org.jasig.cas.ticket.TicketException;
+import org.jasig.cas.ticket.registry.DefaultTicketRegistry;
+import org.jasig.cas.ticket.support.MultiTimeUseOrTimeoutExpirationPolicy;
+import org.jasig.cas.ticket.support.TimeoutExpirationPolicy;
+import org.jasig.cas.util.DefaultUniqueTicketIdGenerator;
+import org.jasig.cas.util.UniqueTicketIdGenerator;
+import org.jasig.cas.validation.Assertion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the ticket operations of {@link CentralAuthenticationServiceImpl} against a
+ * {@link DefaultTicketRegistry}. The service is wired without Spring, so the audit and profiling
+ * aspects of a deployed server are not included.
+ * <p>
+ * Each thread works on its own ticket granting ticket, as separate users do, and the registry is
+ * emptied after every iteration so that it does not grow without bound.
+ *
+ * @author agent
+ * @since 4.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CentralAuthenticationServiceBenchmark {
+
+    private CentralAuthenticationServiceImpl centralAuthenticationService;
+
+    private DefaultTicketRegistry ticketRegistry;
+
+    private UsernamePasswordCredentials credentials;
+
+    private Service service;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.ticketRegistry = new DefaultTicketRegistry();
+
+        final AuthenticationManagerImpl authenticationManager = new AuthenticationManagerImpl();
+        authenticationManager.setAuthenticationHandlers(
+                Arrays.<AuthenticationHandler>asList(new SimpleTestUsernamePasswordAuthenticationHandler()));
+        authenticationManager.setCredentialsToPrincipalResolvers(
+                Arrays.<CredentialsToPrincipalResolver>asList(new UsernamePasswordCredentialsToPrincipalResolver()));
+
+        final RegisteredServiceImpl registeredService = new RegisteredServiceImpl();
+        registeredService.setId(1);
+        registeredService.setName("All HTTPS services");
+        registeredService.setServiceId("https://**");
+        final InMemoryServiceRegistryDaoImpl serviceRegistryDao = new InMemoryServiceRegistryDaoImpl();
+        serviceRegistryDao.setRegisteredServices(Arrays.<RegisteredService>asList(registeredService));
+
+        final UniqueTicketIdGenerator ticketIdGenerator = new DefaultUniqueTicketIdGenerator();
+        this.centralAuthenticationService = new CentralAuthenticationServiceImpl();
+        this.centralAuthenticationService.setTicketRegistry(this.ticketRegistry);
+        this.centralAuthenticationService.setAuthenticationManager(authenticationManager);
+        this.centralAuthenticationService.setServicesManager(new DefaultServicesManagerImpl(serviceRegistryDao));
+        this.centralAuthenticationService.setTicketGrantingTicketUniqueTicketIdGenerator(ticketIdGenerator);
+        this.centralAuthenticationService.setUniqueTicketIdGeneratorsForService(
+                Collections.singletonMap(SimpleWebApplicationServiceImpl.class.getName(), ticketIdGenerator));
+        this.centralAuthenticationService.setTicketGrantingTicketExpirationPolicy(
+                new TimeoutExpirationPolicy(TimeUnit.HOURS.toMillis(2)));
+        this.centralAuthenticationService.setServiceTicketExpirationPolicy(
+                new MultiTimeUseOrTimeoutExpirationPolicy(1, TimeUnit.SECONDS.toMillis(10)));
+
+        this.credentials = new UsernamePasswordCredentials();
+        this.credentials.setUsername("benchmark");
+        this.credentials.setPassword("benchmark");
+        this.service = new SimpleWebApplicationServiceImpl("https://app.example.org/login?param=value");
+    }
+
+    @TearDown(Level.Iteration)
+    public void clearTicketRegistry() {
+        for (final Ticket ticket : new ArrayList<Ticket>(this.ticketRegistry.getTickets())) {
+            this.ticketRegistry.deleteTicket(ticket.getId());
+        }
+    }
+
+    @Benchmark
+    public String createTicketGrantingTicket() throws TicketException {
+        return this.centralAuthenticationService.createTicketGrantingTicket(this.credentials);
+    }
+
+    @Benchmark
+    public String grantServiceTicket(final UserSession session) throws TicketException {
+        return this.centralAuthenticationService.grantServiceTicket(session.ticketGrantingTicketId, this.service);
+    }
+
+    @Benchmark
+    public Assertion grantAndValidateServiceTicket(final UserSession session) throws TicketException {
+        final String serviceTicketId =
+                this.centralAuthenticationService.grantServiceTicket(session.ticketGrantingTicketId, this.service);
+        return this.centralAuthenticationService.validateServiceTicket(serviceTicketId, this.service);
+    }
+
+    /** Ticket granting ticket of the user a benchmark thread acts for. */
+    @State(Scope.Thread)
+    public static class UserSession {
+
+        private String ticketGrantingTicketId;
+
+        @Setup(Level.Iteration)
+        public void logIn(final CentralAuthenticationServiceBenchmark benchmark) throws TicketException {
+            this.ticketGrantingTicketId = benchmark.createTicketGrantingTicket();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.adaptors.ldap;
+
+import java.util.concurrent.TimeUnit;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.InMemoryListenerConfig;
+import org.jasig.cas.util.LdapUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ldap.core.support.LdapContextSource;
+
+/**
+ * Benchmark of LDAP simple binds against an in-process directory server, either over a new connection per bind
+ * or through an {@link AuthenticationContextPool}.
+ *
+ * @author agent
+ * @since 4.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AuthenticationContextPoolBenchmark {
+
+    private static final String BASE = "dc=example,dc=org";
+
+    private static final String PEOPLE = "ou=people," + BASE;
+
+    private static final int USERS = 16;
+
+    @Param({"false", "true"})
+    private boolean pooled;
+
+    private InMemoryDirectoryServer server;
+
+    private LdapContextSource contextSource;
+
+    private AuthenticationContextPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        final InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(BASE);
+        config.addAdditionalBindCredentials("cn=admin," + BASE, "secret");
+        config.setListenerConfigs(InMemoryListenerConfig.createLDAPConfig("default", 0));
+        this.server = new InMemoryDirectoryServer(config);
+        this.server.add("dn: " + BASE, "objectClass: domain", "dc: example");
+        this.server.add("dn: " + PEOPLE, "objectClass: organizationalUnit", "ou: people");
+        for (int i = 0; i < USERS; i++) {
+            this.server.add("dn: " + userDn(i), "objectClass: inetOrgPerson", "uid: user" + i, "cn: User " + i,
+                    "sn: " + i, "userPassword: password" + i);
+        }
+        this.server.startListening();
+
+        this.contextSource = new LdapContextSource();
+        this.contextSource.setUrl("ldap://localhost:" + this.server.getListenPort());
+        this.contextSource.setUserDn("cn=admin," + BASE);
+        this.contextSource.setPassword("secret");
+        this.contextSource.setPooled(false);
+        this.contextSource.afterPropertiesSet();
+
+        this.pool = new AuthenticationContextPool(this.contextSource);
+        this.pool.setMaxActive(Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        this.pool.destroy();
+        this.server.shutDown(true);
+    }
+
+    @Benchmark
+    public void bind(final User user) {
+        final int n = user.next();
+        if (this.pooled) {
+            this.pool.bind(userDn(n), "password" + n);
+        } else {
+            LdapUtils.closeContext(this.contextSource.getContext(userDn(n), "password" + n));
+        }
+    }
+
+    private static String userDn(final int n) {
+        return "uid=user" + n + "," + PEOPLE;
+    }
+
+    /** Position of a benchmark thread in the sequence of users. */
+    @State(Scope.Thread)
+    public static class User {
+
+        private int position;
+
+        public int next() {
+            this.position = (this.position + 1) % USERS;
+            return this.position;
+        }
+    }
+}
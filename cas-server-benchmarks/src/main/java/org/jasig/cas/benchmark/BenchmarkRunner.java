@@ -0,0 +1,59 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the CAS benchmarks once with a single thread and once with a thread per available processor,
+ * reporting allocation rates with the JMH GC profiler. Results of each run are written as JSON to
+ * <code>jmh-result-<i>N</i>t.json</code> in the working directory.
+ * <p>
+ * The optional argument is a regular expression selecting the benchmarks to run. For any other
+ * combination of options run <code>org.openjdk.jmh.Main</code> from the same jar.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+        // main only
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        final String include = args.length > 0 ? args[0] : "org\\.jasig\\.cas\\..*Benchmark.*";
+        final int processors = Runtime.getRuntime().availableProcessors();
+        for (final int threads : processors > 1 ? new int[] {1, processors} : new int[] {1}) {
+            final Options options = new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("jmh-result-" + threads + "t.json")
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
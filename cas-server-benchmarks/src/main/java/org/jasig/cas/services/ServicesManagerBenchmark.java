@@ -0,0 +1,115 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jasig.cas.authentication.principal.Service;
+import org.jasig.cas.authentication.principal.SimpleWebApplicationServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of {@link DefaultServicesManagerImpl#findServiceBy(Service)} over registries of
+ * Ant pattern and regular expression services, with and without the lookup cache.
+ * <p>
+ * Lookups cycle through a fixed set of service URLs, one in eight of which matches no
+ * registered service.
+ *
+ * @author agent
+ * @since 4.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ServicesManagerBenchmark {
+
+    private static final int LOOKUPS = 1024;
+
+    @Param({"10", "1000", "10000"})
+    private int registeredServices;
+
+    @Param({"0", "10000"})
+    private int lookupCacheSize;
+
+    private DefaultServicesManagerImpl servicesManager;
+
+    private Service[] services;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final List<RegisteredService> registered = new ArrayList<RegisteredService>(this.registeredServices);
+        for (int i = 0; i < this.registeredServices; i++) {
+            final AbstractRegisteredService service;
+            if (i % 2 == 0) {
+                service = new RegisteredServiceImpl();
+                service.setServiceId("https://app" + i + ".example.org/**");
+            } else {
+                service = new RegexRegisteredService();
+                service.setServiceId("^https://app" + i + "\\.example\\.org/.*");
+            }
+            service.setId(i);
+            service.setName("Service " + i);
+            service.setEvaluationOrder(i);
+            registered.add(service);
+        }
+        final InMemoryServiceRegistryDaoImpl serviceRegistryDao = new InMemoryServiceRegistryDaoImpl();
+        serviceRegistryDao.setRegisteredServices(registered);
+        this.servicesManager = new DefaultServicesManagerImpl(serviceRegistryDao);
+        this.servicesManager.setLookupCacheSize(this.lookupCacheSize);
+
+        this.services = new Service[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            final String host = i % 8 == 7 ? "unknown" + i : "app" + (i * 7919 % this.registeredServices);
+            this.services[i] = new SimpleWebApplicationServiceImpl("https://" + host + ".example.org/login?id=" + i);
+        }
+    }
+
+    @Benchmark
+    public RegisteredService findServiceBy(final Lookup lookup) {
+        return this.servicesManager.findServiceBy(this.services[lookup.next()]);
+    }
+
+    /** Position of a benchmark thread in the lookup sequence. */
+    @State(Scope.Thread)
+    public static class Lookup {
+
+        private int position;
+
+        public int next() {
+            this.position = (this.position + 1) & (LOOKUPS - 1);
+            return this.position;
+        }
+    }
+}
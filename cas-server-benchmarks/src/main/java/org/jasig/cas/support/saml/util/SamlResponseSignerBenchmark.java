@@ -0,0 +1,97 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.support.saml.util;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark comparing {@link SamlResponseSigner} with
+ * {@link SamlUtils#signSamlResponse(String, PrivateKey, PublicKey)} on a
+ * Google Accounts SAML response signed with a DSA key, as configured for Google Accounts.
+ *
+ * @author agent
+ * @since 4.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SamlResponseSignerBenchmark {
+
+    private static final String RESPONSE = "<samlp:Response ID=\"nkmdehpbolkcfcjnbmjchjcbmkjcfpimhgejihfe\""
+        + " IssueInstant=\"2013-01-01T00:00:00Z\" Version=\"2.0\""
+        + " xmlns=\"urn:oasis:names:tc:SAML:2.0:assertion\""
+        + " xmlns:samlp=\"urn:oasis:names:tc:SAML:2.0:protocol\""
+        + " xmlns:xenc=\"http://www.w3.org/2001/04/xmlenc#\">"
+        + "<samlp:Status><samlp:StatusCode Value=\"urn:oasis:names:tc:SAML:2.0:status:Success\" /></samlp:Status>"
+        + "<Assertion ID=\"bfhjgjgfpcnfjeidejkhcmonfomagokbmbfcjkle\" IssueInstant=\"2003-04-17T00:46:02Z\""
+        + " Version=\"2.0\" xmlns=\"urn:oasis:names:tc:SAML:2.0:assertion\">"
+        + "<Issuer>https://www.opensaml.org/IDP</Issuer>"
+        + "<Subject><NameID Format=\"urn:oasis:names:tc:SAML:2.0:nameid-format:emailAddress\">jdoe</NameID>"
+        + "<SubjectConfirmation Method=\"urn:oasis:names:tc:SAML:2.0:cm:bearer\">"
+        + "<SubjectConfirmationData Recipient=\"https://www.google.com/a/example.org/acs\""
+        + " NotOnOrAfter=\"2014-01-01T00:00:00Z\" InResponseTo=\"abcdefghijklmnopqrst\" />"
+        + "</SubjectConfirmation></Subject>"
+        + "<Conditions NotBefore=\"2003-04-17T00:46:02Z\" NotOnOrAfter=\"2014-01-01T00:00:00Z\">"
+        + "<AudienceRestriction><Audience>https://www.google.com/a/example.org/acs</Audience>"
+        + "</AudienceRestriction></Conditions>"
+        + "<AuthnStatement AuthnInstant=\"2013-01-01T00:00:00Z\"><AuthnContext><AuthnContextClassRef>"
+        + "urn:oasis:names:tc:SAML:2.0:ac:classes:Password</AuthnContextClassRef></AuthnContext></AuthnStatement>"
+        + "</Assertion></samlp:Response>";
+
+    private PrivateKey privateKey;
+
+    private PublicKey publicKey;
+
+    @Setup
+    public void setUp() throws Exception {
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("DSA");
+        generator.initialize(1024);
+        final KeyPair keys = generator.generateKeyPair();
+        this.publicKey = keys.getPublic();
+        this.privateKey = keys.getPrivate();
+    }
+
+    @Benchmark
+    public String signWithJdom() {
+        return SamlUtils.signSamlResponse(RESPONSE, this.privateKey, this.publicKey);
+    }
+
+    @Benchmark
+    public String signWithSigner() {
+        return SamlResponseSigner.getInstance(this.privateKey, this.publicKey).sign(RESPONSE);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.ticket.registry.support.kryo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import net.spy.memcached.CachedData;
+import org.jasig.cas.authentication.ImmutableAuthentication;
+import org.jasig.cas.authentication.principal.SimplePrincipal;
+import org.jasig.cas.authentication.principal.SimpleWebApplicationServiceImpl;
+import org.jasig.cas.ticket.ServiceTicket;
+import org.jasig.cas.ticket.TicketGrantingTicketImpl;
+import org.jasig.cas.ticket.support.MultiTimeUseOrTimeoutExpirationPolicy;
+import org.jasig.cas.ticket.support.TimeoutExpirationPolicy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark of {@link KryoTranscoder} encoding and decoding a ticket granting ticket as stored
+ * after a login to a few services: a principal with typical directory attributes, and a service
+ * ticket for each service.
+ *
+ * @author agent
+ * @since 4.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KryoTranscoderBenchmark {
+
+    private KryoTranscoder transcoder;
+
+    private TicketGrantingTicketImpl ticketGrantingTicket;
+
+    private ServiceTicket serviceTicket;
+
+    private CachedData encodedTicketGrantingTicket;
+
+    private CachedData encodedServiceTicket;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.transcoder = new KryoTranscoder(1024);
+        this.transcoder.initialize();
+
+        final List<String> groups = new ArrayList<String>();
+        for (int i = 0; i < 10; i++) {
+            groups.add("cn=group" + i + ",ou=groups,dc=example,dc=org");
+        }
+        final Map<String, Object> attributes = new HashMap<String, Object>();
+        attributes.put("uid", "jdoe");
+        attributes.put("mail", "jdoe@example.org");
+        attributes.put("cn", "Jane Doe");
+        attributes.put("eduPersonAffiliation", "staff");
+        attributes.put("memberOf", groups);
+
+        this.ticketGrantingTicket = new TicketGrantingTicketImpl(
+                "TGT-1-qlQ5GJ4nfmUFvGfNEzvk0pxJdLCjbVTfgTJcdgzMjlnTaSocLL-cas01.example.org",
+                new ImmutableAuthentication(new SimplePrincipal("jdoe", attributes)),
+                new TimeoutExpirationPolicy(TimeUnit.HOURS.toMillis(2)));
+        for (int i = 0; i < 3; i++) {
+            this.serviceTicket = this.ticketGrantingTicket.grantServiceTicket(
+                    "ST-" + (i + 1) + "-jQc5iV2tZyTpbLaqEJvmHeY4-cas01.example.org",
+                    new SimpleWebApplicationServiceImpl("https://app" + i + ".example.org/login?target=%2Fhome"),
+                    new MultiTimeUseOrTimeoutExpirationPolicy(1, TimeUnit.SECONDS.toMillis(10)),
+                    i == 0);
+        }
+
+        this.encodedTicketGrantingTicket = this.transcoder.encode(this.ticketGrantingTicket);
+        this.encodedServiceTicket = this.transcoder.encode(this.serviceTicket);
+    }
+
+    @Benchmark
+    public CachedData encodeTicketGrantingTicket() {
+        return this.transcoder.encode(this.ticketGrantingTicket);
+    }
+
+    @Benchmark
+    public Object decodeTicketGrantingTicket() {
+        return this.transcoder.decode(this.encodedTicketGrantingTicket);
+    }
+
+    @Benchmark
+    public CachedData encodeServiceTicket() {
+        return this.transcoder.encode(this.serviceTicket);
+    }
+
+    @Benchmark
+    public Object decodeServiceTicket() {
+        return this.transcoder.decode(this.encodedServiceTicket);
+    }
+}
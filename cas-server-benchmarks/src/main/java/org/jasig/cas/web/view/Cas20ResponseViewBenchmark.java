@@ -0,0 +1,181 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.web.view;
+
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jasig.cas.authentication.Authentication;
+import org.jasig.cas.authentication.ImmutableAuthentication;
+import org.jasig.cas.authentication.principal.SimplePrincipal;
+import org.jasig.cas.authentication.principal.SimpleWebApplicationServiceImpl;
+import org.jasig.cas.validation.ImmutableAssertionImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * JMH benchmark of the CAS 2.0 validation success response written by {@link Cas20ResponseView},
+ * for a direct and a proxied validation.
+ * <p>
+ * The JSP cannot be rendered outside a servlet container, so <code>jspEquivalent</code> stands in
+ * for it. It does the work of the compiled <code>casServiceValidationSuccess.jsp</code>: it exposes
+ * the model as request attributes as <code>JstlView</code> does, resolves the property paths of its
+ * expressions by reflection, escapes as the JSTL 1.1 <code>fn:escapeXml</code> function does and writes
+ * through a buffer like a <code>JspWriter</code>. The servlet forward and EL parsing of a real
+ * container come on top of it.
+ *
+ * @author agent
+ * @since 4.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class Cas20ResponseViewBenchmark {
+
+    private static final char[][] JSTL_ENTITIES = new char['>' + 1][];
+
+    static {
+        JSTL_ENTITIES['&'] = "&amp;".toCharArray();
+        JSTL_ENTITIES['<'] = "&lt;".toCharArray();
+        JSTL_ENTITIES['>'] = "&gt;".toCharArray();
+        JSTL_ENTITIES['"'] = "&#034;".toCharArray();
+        JSTL_ENTITIES['\''] = "&#039;".toCharArray();
+    }
+
+    @Param({"1", "3"})
+    private int chainLength;
+
+    private final Cas20ResponseView view = new Cas20ResponseView();
+
+    private Map<String, Object> model;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final List<Authentication> authentications = new ArrayList<Authentication>();
+        for (int i = this.chainLength - 1; i > 0; i--) {
+            authentications.add(new ImmutableAuthentication(
+                new SimplePrincipal("https://proxy" + i + ".example.org/pgtCallback")));
+        }
+        authentications.add(new ImmutableAuthentication(new SimplePrincipal("jdoe")));
+
+        this.model = new HashMap<String, Object>();
+        this.model.put("assertion", new ImmutableAssertionImpl(authentications,
+            new SimpleWebApplicationServiceImpl("https://app.example.org/"), true));
+        this.model.put("pgtIou", "PGTIOU-1-qlQ5GJ4nfmUFvGfNEzvk0pxJdLCjbVTfgTJcdgzMjlnTaSocLL-cas01.example.org");
+        this.view.setSuccessResponse(true);
+    }
+
+    @Benchmark
+    public MockHttpServletResponse view() throws Exception {
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        this.view.render(this.model, new MockHttpServletRequest(), response);
+        return response;
+    }
+
+    @Benchmark
+    public MockHttpServletResponse jspEquivalent() throws Exception {
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        for (final Map.Entry<String, Object> entry : this.model.entrySet()) {
+            request.setAttribute(entry.getKey(), entry.getValue());
+        }
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        final StringWriter buffer = new StringWriter(8192);
+
+        final BeanWrapperImpl assertion = new BeanWrapperImpl(request.getAttribute("assertion"));
+        final int length = ((Collection<?>) assertion.getPropertyValue("chainedAuthentications")).size();
+        buffer.write("<cas:serviceResponse xmlns:cas='http://www.yale.edu/tp/cas'>\n");
+        buffer.write("\t<cas:authenticationSuccess>\n\t\t<cas:user>");
+        buffer.write(jstlEscapeXml(String.valueOf(
+            assertion.getPropertyValue("chainedAuthentications[" + (length - 1) + "].principal.id"))));
+        buffer.write("</cas:user>\n");
+        final Object pgtIou = request.getAttribute("pgtIou");
+        if (pgtIou != null && pgtIou.toString().length() > 0) {
+            buffer.write("\t\t<cas:proxyGrantingTicket>");
+            buffer.write(pgtIou.toString());
+            buffer.write("</cas:proxyGrantingTicket>\n");
+        }
+        if (length > 1) {
+            buffer.write("\t\t<cas:proxies>\n");
+            for (int i = 0; i <= length - 2; i++) {
+                buffer.write("\t\t\t<cas:proxy>");
+                buffer.write(jstlEscapeXml(String.valueOf(
+                    assertion.getPropertyValue("chainedAuthentications[" + i + "].principal.id"))));
+                buffer.write("</cas:proxy>\n");
+            }
+            buffer.write("\t\t</cas:proxies>\n");
+        }
+        buffer.write("\t</cas:authenticationSuccess>\n</cas:serviceResponse>");
+
+        final Writer out = response.getWriter();
+        out.write(buffer.toString());
+        out.flush();
+        return response;
+    }
+
+    /**
+     * Escaping algorithm of the JSTL 1.1 implementation, whose classes need the JSP API at run time.
+     */
+    private static String jstlEscapeXml(final String text) {
+        final char[] chars = text.toCharArray();
+        StringBuffer escaped = null;
+        int start = 0;
+        for (int i = 0; i < chars.length; i++) {
+            final char c = chars[i];
+            if (c <= '>' && JSTL_ENTITIES[c] != null) {
+                if (start == 0) {
+                    escaped = new StringBuffer(chars.length + 5);
+                }
+                if (start < i) {
+                    escaped.append(chars, start, i - start);
+                }
+                start = i + 1;
+                escaped.append(JSTL_ENTITIES[c]);
+            }
+        }
+        if (start == 0) {
+            return text;
+        }
+        if (start < chars.length) {
+            escaped.append(chars, start, chars.length - start);
+        }
+        return escaped.toString();
+    }
+}
@@ -21,6 +21,7 @@ package org.jasig.cas;
 import com.github.inspektr.audit.annotation.Audit;
 
 import org.apache.commons.lang.StringUtils;
+import org.jasig.cas.audit.spi.AuditTicketHolder;
 import org.jasig.cas.authentication.Authentication;
 import org.jasig.cas.authentication.AuthenticationManager;
 import org.jasig.cas.authentication.MutableAuthentication;
@@ -156,6 +157,7 @@ public final class CentralAuthenticationServiceImpl implements CentralAuthentica
             log.debug("Removing ticket [" + ticketGrantingTicketId + "] from registry.");
         }
         final TicketGrantingTicket ticket = (TicketGrantingTicket) this.ticketRegistry.getTicket(ticketGrantingTicketId, TicketGrantingTicket.class);
+        AuditTicketHolder.setTicket(ticket);
 
         if (ticket == null) {
             return;
@@ -182,6 +184,7 @@ public final class CentralAuthenticationServiceImpl implements CentralAuthentica
         Assert.notNull(service, "service cannot be null");
 
         final TicketGrantingTicket ticketGrantingTicket = (TicketGrantingTicket) this.ticketRegistry.getTicket(ticketGrantingTicketId, TicketGrantingTicket.class);
+        AuditTicketHolder.setTicket(ticketGrantingTicket);
 
         if (ticketGrantingTicket == null) {
             throw new InvalidTicketException();
@@ -295,6 +298,7 @@ public final class CentralAuthenticationServiceImpl implements CentralAuthentica
 
             final ServiceTicket serviceTicket;
             serviceTicket = (ServiceTicket) this.serviceTicketRegistry.getTicket(serviceTicketId, ServiceTicket.class);
+            AuditTicketHolder.setTicket(serviceTicket);
 
             if (serviceTicket == null || serviceTicket.isExpired()) {
                 throw new InvalidTicketException();
@@ -338,6 +342,7 @@ public final class CentralAuthenticationServiceImpl implements CentralAuthentica
         Assert.notNull(service, "service cannot be null");
 
         final ServiceTicket serviceTicket = (ServiceTicket) this.serviceTicketRegistry.getTicket(serviceTicketId, ServiceTicket.class);
+        AuditTicketHolder.setTicket(serviceTicket);
 
         final RegisteredService registeredService = this.servicesManager.findServiceBy(service);
 
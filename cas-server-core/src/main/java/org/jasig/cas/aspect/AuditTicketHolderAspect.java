@@ -0,0 +1,45 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.aspect;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.jasig.cas.audit.spi.AuditTicketHolder;
+
+/**
+ * Releases the ticket an audited CAS operation has published through {@link AuditTicketHolder} when the operation
+ * completes, so that pooled threads do not keep tickets between requests. The audit aspect resolves the principal
+ * after the operation returns, so the ticket id and principal id are kept for it.
+ *
+ * @author agent
+ * @since 4.0
+ */
+@Aspect
+public class AuditTicketHolderAspect {
+
+    @Around("execution(@com.github.inspektr.audit.annotation.Audit * org.jasig.cas..*.*(..))")
+    public Object releaseTicket(final ProceedingJoinPoint proceedingJoinPoint) throws Throwable {
+        try {
+            return proceedingJoinPoint.proceed();
+        } finally {
+            AuditTicketHolder.release();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.audit.spi;
+
+import org.jasig.cas.authentication.Authentication;
+import org.jasig.cas.ticket.ServiceTicket;
+import org.jasig.cas.ticket.Ticket;
+import org.jasig.cas.ticket.TicketGrantingTicket;
+
+/**
+ * Hands the ticket loaded by an audited CAS operation to the audit principal resolver on the same thread, so that
+ * the resolver does not fetch the ticket from the registry a second time. The audit aspect resolves the principal
+ * after the operation returns, so {@link org.jasig.cas.aspect.AuditTicketHolderAspect} releases the ticket when the
+ * operation completes, which keeps only the ticket id and principal id. These are held until the resolver takes
+ * them, or until the next audited operation on the thread replaces them.
+ *
+ * @author agent
+ * @since 4.0
+ * @see TicketOrCredentialPrincipalResolver
+ */
+public final class AuditTicketHolder {
+
+    private static final ThreadLocal<Held> HELD = new ThreadLocal<Held>();
+
+    private AuditTicketHolder() {
+        // static methods only
+    }
+
+    /**
+     * Holds the ticket an audited operation has loaded.
+     *
+     * @param ticket the ticket, or null to release a ticket held by an earlier operation.
+     */
+    public static void setTicket(final Ticket ticket) {
+        if (ticket == null) {
+            HELD.remove();
+        } else {
+            HELD.set(new Held(ticket));
+        }
+    }
+
+    /**
+     * Drops the reference to the held ticket, keeping its id and principal id for the audit principal resolver.
+     * Called when an audited operation completes.
+     */
+    public static void release() {
+        final Held held = HELD.get();
+        if (held != null && held.ticket != null) {
+            held.principalId = getPrincipalId(held.ticket);
+            held.ticket = null;
+        }
+    }
+
+    /**
+     * Releases the held ticket.
+     *
+     * @param ticketId the id of the ticket the caller is looking for.
+     * @return the principal id of the held ticket if it has the given id, otherwise null.
+     */
+    public static String takePrincipalId(final String ticketId) {
+        final Held held = HELD.get();
+        if (held == null) {
+            return null;
+        }
+        HELD.remove();
+        if (!held.ticketId.equals(ticketId)) {
+            return null;
+        }
+        return held.ticket != null ? getPrincipalId(held.ticket) : held.principalId;
+    }
+
+    /**
+     * @param ticket a ticket, or null.
+     * @return the id of the principal the ticket was granted to, or null unless the ticket is a service ticket or a
+     * ticket granting ticket.
+     */
+    static String getPrincipalId(final Ticket ticket) {
+        final TicketGrantingTicket grantingTicket;
+        if (ticket instanceof ServiceTicket) {
+            grantingTicket = ((ServiceTicket) ticket).getGrantingTicket();
+        } else if (ticket instanceof TicketGrantingTicket) {
+            grantingTicket = (TicketGrantingTicket) ticket;
+        } else {
+            return null;
+        }
+        final Authentication authentication = grantingTicket == null ? null : grantingTicket.getAuthentication();
+        if (authentication == null || authentication.getPrincipal() == null) {
+            return null;
+        }
+        return authentication.getPrincipal().getId();
+    }
+
+    /** Ticket held for the resolver, or its principal id once released. */
+    private static final class Held {
+        private final String ticketId;
+
+        private Ticket ticket;
+
+        private String principalId;
+
+        Held(final Ticket ticket) {
+            this.ticketId = ticket.getId();
+            this.ticket = ticket;
+        }
+    }
+}
@@ -21,9 +21,6 @@ package org.jasig.cas.audit.spi;
 import org.aspectj.lang.JoinPoint;
 import com.github.inspektr.common.spi.PrincipalResolver;
 import org.jasig.cas.authentication.principal.Credentials;
-import org.jasig.cas.ticket.ServiceTicket;
-import org.jasig.cas.ticket.Ticket;
-import org.jasig.cas.ticket.TicketGrantingTicket;
 import org.jasig.cas.ticket.registry.TicketRegistry;
 import org.jasig.cas.util.AopUtils;
 import org.springframework.security.core.Authentication;
@@ -35,6 +32,10 @@ import javax.validation.constraints.NotNull;
 
 /**
  * PrincipalResolver that can retrieve the username from either the Ticket or from the Credentials.
+ * <p>
+ * The principal of a ticket that the audited operation has already loaded and published through
+ * {@link AuditTicketHolder} is used as is; the ticket registry is only consulted when no such ticket is held. This
+ * also resolves the principal of a ticket-granting ticket that the audited operation has destroyed.
  * 
  * @author Scott Battaglia
  * @version $Revision: 1.1 $ $Date: 2005/08/19 18:27:17 $
@@ -67,13 +68,12 @@ public final class TicketOrCredentialPrincipalResolver implements PrincipalResol
         if (arg1 instanceof Credentials) {
            return arg1.toString();
         } else if (arg1 instanceof String) {
-            final Ticket ticket = this.ticketRegistry.getTicket((String) arg1);
-            if (ticket instanceof ServiceTicket) {
-                final ServiceTicket serviceTicket = (ServiceTicket) ticket;
-                return serviceTicket.getGrantingTicket().getAuthentication().getPrincipal().getId();
-            } else if (ticket instanceof TicketGrantingTicket) {
-                final TicketGrantingTicket tgt = (TicketGrantingTicket) ticket;
-                return tgt.getAuthentication().getPrincipal().getId();
+            String principalId = AuditTicketHolder.takePrincipalId((String) arg1);
+            if (principalId == null) {
+                principalId = AuditTicketHolder.getPrincipalId(this.ticketRegistry.getTicket((String) arg1));
+            }
+            if (principalId != null) {
+                return principalId;
             }
         } else {
             final SecurityContext securityContext = SecurityContextHolder.getContext();
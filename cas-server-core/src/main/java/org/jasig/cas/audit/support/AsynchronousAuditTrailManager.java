@@ -0,0 +1,576 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.audit.support;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import com.github.inspektr.audit.AuditActionContext;
+import com.github.inspektr.audit.AuditPointRuntimeInfo;
+import com.github.inspektr.audit.AuditTrailManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+/**
+ * Audit trail manager that takes audit records off the audited request. Records are put in a bounded buffer and a
+ * single writer thread passes them on to the delegate manager in batches of whatever has accumulated, up to the
+ * batch size; a delegate that implements {@link BatchAuditTrailManager} receives each batch in one call.
+ * <p>
+ * When the buffer is full, the {@link OverflowPolicy} decides what happens to a new record. With
+ * {@link OverflowPolicy#SPILL} the record is appended to a local file, as is a batch the delegate fails to record;
+ * the writer replays the spill file whenever the buffer runs empty, and on the next start if records are left in
+ * it at shutdown. After a replay fails, or the spill file cannot be written, the next attempt waits twice as long
+ * as the last, up to {@link #MAX_RETRY_INTERVAL}.
+ * <p>
+ * Records are only written in the background between {@link #afterPropertiesSet()} and {@link #destroy()}; outside
+ * that time they are passed to the delegate on the calling thread.
+ *
+ * @author agent
+ * @since 4.0
+ * @see org.jasig.cas.monitor.AuditTrailMonitor
+ */
+public final class AsynchronousAuditTrailManager implements AuditTrailManager, InitializingBean, DisposableBean {
+
+    /** What to do with a record when the buffer is full. */
+    public enum OverflowPolicy {
+        /** Wait for room in the buffer. */
+        BLOCK,
+        /** Discard the record. */
+        DROP,
+        /** Append the record to the spill file. */
+        SPILL
+    }
+
+    /** Default number of records the buffer holds. */
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    /** Default maximum number of records passed to the delegate at once. */
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    /** Default time in ms to wait for pending records to be written on shutdown. */
+    public static final long DEFAULT_SHUTDOWN_TIMEOUT = 10000;
+
+    /** Longest time in ms between attempts to replay or write the spill file after a failure. */
+    public static final long MAX_RETRY_INTERVAL = 60000;
+
+    /** Time in ms the writer waits for records before it looks at the spill file and the shutdown flag. */
+    private static final long IDLE_INTERVAL = 500;
+
+    private static final String SPILL_CHARSET = "UTF-8";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @NotNull
+    private final AuditTrailManager delegate;
+
+    @Min(1)
+    private int capacity = DEFAULT_CAPACITY;
+
+    @Min(1)
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    @NotNull
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+    private File spillFile;
+
+    private long shutdownTimeout = DEFAULT_SHUTDOWN_TIMEOUT;
+
+    private BlockingQueue<AuditActionContext> queue;
+
+    private Thread writer;
+
+    private volatile boolean running;
+
+    /** Creation time of the oldest record in the batch being written, or 0 when the writer is idle. */
+    private volatile long writingSince;
+
+    private final AtomicLong writtenCount = new AtomicLong();
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private final AtomicLong spilledCount = new AtomicLong();
+
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private final Object spillLock = new Object();
+
+    /** Open spill file, guarded by spillLock. */
+    private Writer spillWriter;
+
+    /** Delay before the spill file is opened again after it failed, guarded by spillLock. */
+    private final Backoff spillBackoff = new Backoff();
+
+    /**
+     * @param delegate Audit trail manager that records the audit records.
+     */
+    public AsynchronousAuditTrailManager(final AuditTrailManager delegate) {
+        this.delegate = delegate;
+    }
+
+    public void record(final AuditActionContext auditActionContext) {
+        if (!this.running) {
+            write(Collections.singletonList(auditActionContext));
+            return;
+        }
+        switch (this.overflowPolicy) {
+            case BLOCK:
+                try {
+                    this.queue.put(auditActionContext);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    write(Collections.singletonList(auditActionContext));
+                }
+                break;
+            case DROP:
+                if (!this.queue.offer(auditActionContext)) {
+                    this.droppedCount.incrementAndGet();
+                }
+                break;
+            default:
+                if (!this.queue.offer(auditActionContext)) {
+                    spill(Collections.singletonList(auditActionContext));
+                }
+        }
+    }
+
+    public void afterPropertiesSet() throws Exception {
+        Assert.isTrue(this.overflowPolicy != OverflowPolicy.SPILL || this.spillFile != null,
+                "A spill file is required by the SPILL overflow policy.");
+        this.queue = new ArrayBlockingQueue<AuditActionContext>(this.capacity);
+        this.running = true;
+        this.writer = new Thread(new BatchWriter(), "audit-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public void destroy() throws Exception {
+        if (this.writer == null) {
+            return;
+        }
+        this.running = false;
+        this.writer.join(this.shutdownTimeout);
+        if (this.writer.isAlive()) {
+            this.logger.warn("{} audit records were not written within {} ms of shutdown.",
+                    this.queue.size(), this.shutdownTimeout);
+        }
+        synchronized (this.spillLock) {
+            closeSpillWriter();
+        }
+    }
+
+    /**
+     * @param capacity Number of records the buffer holds.
+     */
+    public void setCapacity(final int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @param batchSize Maximum number of records passed to the delegate at once.
+     */
+    public void setBatchSize(final int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param policy What to do with a record when the buffer is full. Default is {@link OverflowPolicy#BLOCK}.
+     */
+    public void setOverflowPolicy(final OverflowPolicy policy) {
+        this.overflowPolicy = policy;
+    }
+
+    /**
+     * @param file File that holds records the buffer had no room for, required by {@link OverflowPolicy#SPILL}.
+     */
+    public void setSpillFile(final File file) {
+        this.spillFile = file;
+    }
+
+    /**
+     * @param timeout Time in ms to wait for pending records to be written on shutdown.
+     */
+    public void setShutdownTimeout(final long timeout) {
+        this.shutdownTimeout = timeout;
+    }
+
+    /**
+     * @return Number of records the buffer holds.
+     */
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * @return Number of records waiting in the buffer.
+     */
+    public int getQueueDepth() {
+        return this.queue == null ? 0 : this.queue.size();
+    }
+
+    /**
+     * @return Age in ms of the oldest record that has not been written yet, or 0 if there is none.
+     */
+    public long getLag() {
+        long oldest = this.writingSince;
+        final AuditActionContext head = this.queue == null ? null : this.queue.peek();
+        if (head != null) {
+            final long created = createdAt(head);
+            if (oldest == 0 || created < oldest) {
+                oldest = created;
+            }
+        }
+        return oldest == 0 ? 0 : Math.max(0, System.currentTimeMillis() - oldest);
+    }
+
+    /**
+     * @return Number of records passed to the delegate.
+     */
+    public long getWrittenCount() {
+        return this.writtenCount.get();
+    }
+
+    /**
+     * @return Number of records discarded because the buffer was full.
+     */
+    public long getDroppedCount() {
+        return this.droppedCount.get();
+    }
+
+    /**
+     * @return Number of records appended to the spill file.
+     */
+    public long getSpilledCount() {
+        return this.spilledCount.get();
+    }
+
+    /**
+     * @return Number of records lost because the delegate or the spill file failed to record them.
+     */
+    public long getFailedCount() {
+        return this.failedCount.get();
+    }
+
+    /**
+     * @return true if the delegate recorded the batch.
+     */
+    private boolean write(final List<AuditActionContext> batch) {
+        this.writingSince = createdAt(batch.get(0));
+        try {
+            if (this.delegate instanceof BatchAuditTrailManager) {
+                ((BatchAuditTrailManager) this.delegate).recordAll(batch);
+            } else {
+                for (final AuditActionContext context : batch) {
+                    this.delegate.record(context);
+                }
+            }
+            this.writtenCount.addAndGet(batch.size());
+            return true;
+        } catch (final RuntimeException e) {
+            if (this.overflowPolicy == OverflowPolicy.SPILL) {
+                this.logger.warn("Failed to record " + batch.size() + " audit records, spilling them to file.", e);
+                spill(batch);
+            } else {
+                this.logger.error("Failed to record " + batch.size() + " audit records.", e);
+                this.failedCount.addAndGet(batch.size());
+            }
+            return false;
+        } finally {
+            this.writingSince = 0;
+        }
+    }
+
+    private void spill(final List<AuditActionContext> records) {
+        synchronized (this.spillLock) {
+            if (this.spillWriter == null && !this.spillBackoff.isDue()) {
+                this.failedCount.addAndGet(records.size());
+                return;
+            }
+            try {
+                if (this.spillWriter == null) {
+                    this.spillWriter = new BufferedWriter(new OutputStreamWriter(
+                            new FileOutputStream(this.spillFile, true), SPILL_CHARSET));
+                }
+                for (final AuditActionContext context : records) {
+                    this.spillWriter.write(SpillFormat.format(context));
+                    this.spillWriter.write('\n');
+                }
+                this.spillWriter.flush();
+                this.spilledCount.addAndGet(records.size());
+                this.spillBackoff.succeeded();
+            } catch (final IOException e) {
+                spillFailed(records, e);
+            } catch (final RuntimeException e) {
+                spillFailed(records, e);
+            }
+        }
+    }
+
+    private void spillFailed(final List<AuditActionContext> records, final Exception e) {
+        this.logger.error("Failed to spill " + records.size() + " audit records to " + this.spillFile, e);
+        this.failedCount.addAndGet(records.size());
+        closeSpillWriter();
+        this.spillBackoff.failed();
+    }
+
+    /**
+     * Moves the spill file aside and writes the records it holds. Records spilled meanwhile go to a new spill
+     * file. A replay file left over by an interrupted replay is written first.
+     *
+     * @return false if the replay failed, or the delegate failed to record some of the records.
+     */
+    private boolean replaySpill(final List<AuditActionContext> batch) {
+        if (this.spillFile == null) {
+            return true;
+        }
+        final File replayFile = new File(this.spillFile.getPath() + ".replay");
+        if (!replayFile.exists()) {
+            synchronized (this.spillLock) {
+                if (!this.spillFile.exists() || this.spillFile.length() == 0) {
+                    return true;
+                }
+                closeSpillWriter();
+                if (!this.spillFile.renameTo(replayFile)) {
+                    this.logger.warn("Cannot move spill file {} to {}.", this.spillFile, replayFile);
+                    return false;
+                }
+            }
+        }
+        boolean written = true;
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(replayFile), SPILL_CHARSET));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final AuditActionContext context = SpillFormat.parse(line);
+                if (context == null) {
+                    this.logger.warn("Skipping malformed line in audit spill file: {}", line);
+                    continue;
+                }
+                batch.add(context);
+                if (batch.size() == this.batchSize) {
+                    written &= write(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                written &= write(batch);
+                batch.clear();
+            }
+        } catch (final IOException e) {
+            this.logger.error("Failed to replay audit spill file " + replayFile, e);
+            batch.clear();
+            return false;
+        } finally {
+            closeQuietly(reader);
+        }
+        if (!replayFile.delete()) {
+            this.logger.warn("Cannot delete replayed audit spill file {}.", replayFile);
+        }
+        return written;
+    }
+
+    private void closeSpillWriter() {
+        closeQuietly(this.spillWriter);
+        this.spillWriter = null;
+    }
+
+    private static long createdAt(final AuditActionContext context) {
+        final Date when = context.getWhenActionWasPerformed();
+        return when == null ? System.currentTimeMillis() : when.getTime();
+    }
+
+    private static void closeQuietly(final Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (final IOException e) {
+                // nothing left to do
+            }
+        }
+    }
+
+    private final class BatchWriter implements Runnable {
+        public void run() {
+            final List<AuditActionContext> batch = new ArrayList<AuditActionContext>(batchSize);
+            final Backoff replayBackoff = new Backoff();
+            while (running || !queue.isEmpty()) {
+                final AuditActionContext first;
+                try {
+                    first = queue.poll(IDLE_INTERVAL, TimeUnit.MILLISECONDS);
+                } catch (final InterruptedException e) {
+                    continue;
+                }
+                if (first == null) {
+                    if (running && replayBackoff.isDue()) {
+                        if (replaySpill(batch)) {
+                            replayBackoff.succeeded();
+                        } else {
+                            replayBackoff.failed();
+                        }
+                    }
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                write(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Delay before an operation that failed is tried again, doubling with each consecutive failure.
+     */
+    private static final class Backoff {
+
+        private long delay;
+
+        private long retryAt;
+
+        boolean isDue() {
+            return System.currentTimeMillis() >= this.retryAt;
+        }
+
+        void failed() {
+            this.delay = this.delay == 0 ? IDLE_INTERVAL * 2 : Math.min(this.delay * 2, MAX_RETRY_INTERVAL);
+            this.retryAt = System.currentTimeMillis() + this.delay;
+        }
+
+        void succeeded() {
+            this.delay = 0;
+            this.retryAt = 0;
+        }
+    }
+
+    /**
+     * One record per line, tab-separated, with backslash escapes for backslash, tab and line breaks. A null field is
+     * written as an empty one; a record without a date cannot be read back.
+     */
+    private static final class SpillFormat implements AuditPointRuntimeInfo {
+
+        private static final long serialVersionUID = 1L;
+
+        private static final SpillFormat RUNTIME_INFO = new SpillFormat();
+
+        private static final int FIELDS = 7;
+
+        public String asString() {
+            return "audit spill file";
+        }
+
+        static String format(final AuditActionContext context) {
+            final StringBuilder line = new StringBuilder(128);
+            if (context.getWhenActionWasPerformed() != null) {
+                line.append(context.getWhenActionWasPerformed().getTime());
+            }
+            append(line, context.getPrincipal());
+            append(line, context.getResourceOperatedUpon());
+            append(line, context.getActionPerformed());
+            append(line, context.getApplicationCode());
+            append(line, context.getClientIpAddress());
+            append(line, context.getServerIpAddress());
+            return line.toString();
+        }
+
+        static AuditActionContext parse(final String line) {
+            final String[] fields = line.split("\t", -1);
+            if (fields.length != FIELDS) {
+                return null;
+            }
+            final long when;
+            try {
+                when = Long.parseLong(fields[0]);
+            } catch (final NumberFormatException e) {
+                return null;
+            }
+            return new AuditActionContext(unescape(fields[1]), unescape(fields[2]), unescape(fields[3]),
+                    unescape(fields[4]), new Date(when), unescape(fields[5]), unescape(fields[6]), RUNTIME_INFO);
+        }
+
+        private static void append(final StringBuilder line, final String value) {
+            line.append('\t');
+            if (value == null) {
+                return;
+            }
+            for (int i = 0; i < value.length(); i++) {
+                final char c = value.charAt(i);
+                switch (c) {
+                    case '\\':
+                        line.append("\\\\");
+                        break;
+                    case '\t':
+                        line.append("\\t");
+                        break;
+                    case '\n':
+                        line.append("\\n");
+                        break;
+                    case '\r':
+                        line.append("\\r");
+                        break;
+                    default:
+                        line.append(c);
+                }
+            }
+        }
+
+        private static String unescape(final String value) {
+            if (value.indexOf('\\') < 0) {
+                return value;
+            }
+            final StringBuilder sb = new StringBuilder(value.length());
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '\\' && i + 1 < value.length()) {
+                    c = value.charAt(++i);
+                    if (c == 't') {
+                        c = '\t';
+                    } else if (c == 'n') {
+                        c = '\n';
+                    } else if (c == 'r') {
+                        c = '\r';
+                    }
+                }
+                sb.append(c);
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.audit.support;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.List;
+import javax.sql.DataSource;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import com.github.inspektr.audit.AuditActionContext;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Writes audit records to the Inspektr audit trail table with JDBC batch inserts. The table layout and the
+ * truncation of long values are those of the Inspektr <code>JdbcAuditTrailManager</code>, but records are written
+ * on the calling thread, one batch per statement execution; use {@link AsynchronousAuditTrailManager} to take the
+ * writes off the audited request.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public final class JdbcBatchAuditTrailManager implements BatchAuditTrailManager {
+
+    /** Default audit trail table name. */
+    public static final String DEFAULT_TABLE_NAME = "COM_AUDIT_TRAIL";
+
+    /** Default maximum length of the principal, resource and action columns. */
+    public static final int DEFAULT_COLUMN_LENGTH = 100;
+
+    private static final String INSERT_SQL_TEMPLATE = "INSERT INTO %s "
+            + "(AUD_USER, AUD_CLIENT_IP, AUD_SERVER_IP, AUD_RESOURCE, AUD_ACTION, APPLIC_CD, AUD_DATE) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    @NotNull
+    private final JdbcTemplate jdbcTemplate;
+
+    /** Transaction template wrapping each batch, or null to rely on the data source auto-commit mode. */
+    private TransactionTemplate transactionTemplate;
+
+    @NotNull
+    private String insertSql = String.format(INSERT_SQL_TEMPLATE, DEFAULT_TABLE_NAME);
+
+    @Min(1)
+    private int columnLength = DEFAULT_COLUMN_LENGTH;
+
+    public JdbcBatchAuditTrailManager(final DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    public void record(final AuditActionContext auditActionContext) {
+        recordAll(Collections.singletonList(auditActionContext));
+    }
+
+    public void recordAll(final List<AuditActionContext> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (this.transactionTemplate == null) {
+            insert(batch);
+            return;
+        }
+        this.transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            protected void doInTransactionWithoutResult(final TransactionStatus status) {
+                insert(batch);
+            }
+        });
+    }
+
+    /**
+     * @param tableName Name of the audit trail table.
+     */
+    public void setTableName(final String tableName) {
+        this.insertSql = String.format(INSERT_SQL_TEMPLATE, tableName);
+    }
+
+    /**
+     * @param length Length at which the principal, resource and action values are truncated.
+     */
+    public void setColumnLength(final int length) {
+        this.columnLength = length;
+    }
+
+    /**
+     * @param transactionTemplate Template that wraps each batch in a transaction.
+     */
+    public void setTransactionTemplate(final TransactionTemplate transactionTemplate) {
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    private void insert(final List<AuditActionContext> batch) {
+        this.jdbcTemplate.batchUpdate(this.insertSql, new BatchPreparedStatementSetter() {
+            public void setValues(final PreparedStatement ps, final int i) throws SQLException {
+                final AuditActionContext context = batch.get(i);
+                ps.setString(1, truncate(context.getPrincipal()));
+                ps.setString(2, context.getClientIpAddress());
+                ps.setString(3, context.getServerIpAddress());
+                ps.setString(4, truncate(context.getResourceOperatedUpon()));
+                ps.setString(5, truncate(context.getActionPerformed()));
+                ps.setString(6, context.getApplicationCode());
+                ps.setTimestamp(7, new Timestamp(context.getWhenActionWasPerformed().getTime()));
+            }
+
+            public int getBatchSize() {
+                return batch.size();
+            }
+        });
+    }
+
+    private String truncate(final String value) {
+        return value.length() <= this.columnLength ? value : value.substring(0, this.columnLength);
+    }
+}
@@ -65,14 +65,7 @@ public abstract class AbstractPersonDirectoryCredentialsToPrincipalResolver
                 + principalId + "]");
         }
 
-        final IPersonAttributes personAttributes = this.attributeRepository.getPerson(principalId);
-        final Map<String, List<Object>> attributes;
-
-        if (personAttributes == null) {
-            attributes = null;
-        } else {
-            attributes = personAttributes.getAttributes();
-        }
+        final Map<String, List<Object>> attributes = retrievePersonAttributes(principalId, credentials);
 
         if (attributes == null & !this.returnNullIfNoAttributes) {
             return new SimplePrincipal(principalId);
@@ -99,6 +92,19 @@ public abstract class AbstractPersonDirectoryCredentialsToPrincipalResolver
      * @return the username, or null if it could not be resolved.
      */
     protected abstract String extractPrincipalId(Credentials credentials);
+
+    /**
+     * Retrieves the attributes of the principal.  The default implementation queries the attribute repository;
+     * subclasses that obtain the attributes while extracting the principal id may return them instead.
+     *
+     * @param principalId the id returned by {@link #extractPrincipalId(Credentials)}.
+     * @param credentials the credentials provided by the user.
+     * @return the attributes of the principal, or null if there are none.
+     */
+    protected Map<String, List<Object>> retrievePersonAttributes(final String principalId, final Credentials credentials) {
+        final IPersonAttributes personAttributes = this.attributeRepository.getPerson(principalId);
+        return personAttributes == null ? null : personAttributes.getAttributes();
+    }
     
     public final void setAttributeRepository(final IPersonAttributeDao attributeRepository) {
         this.attributeRepository = attributeRepository;
@@ -83,7 +83,20 @@ public abstract class AbstractPoolMonitor extends AbstractNamedMonitor<PoolStatu
             code = StatusCode.ERROR;
             description = e.getMessage();
         }
-        return new PoolStatus(code, description, getActiveCount(), getIdleCount());
+        return new PoolStatus(code, describe(description), getActiveCount(), getIdleCount());
+    }
+
+
+    /**
+     * Adds details such as pool statistics to the status description.  The default implementation returns the
+     * description unchanged.
+     *
+     * @param description Status description, possibly null.
+     *
+     * @return Description to report.
+     */
+    protected String describe(final String description) {
+        return description;
     }
 
 
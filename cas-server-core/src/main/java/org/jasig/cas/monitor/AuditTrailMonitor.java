@@ -0,0 +1,95 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.monitor;
+
+import javax.validation.constraints.NotNull;
+
+import org.jasig.cas.audit.support.AsynchronousAuditTrailManager;
+
+/**
+ * Monitors the buffer of an {@link AsynchronousAuditTrailManager}. A warning is issued when the queue depth or the
+ * lag is above its threshold, or when audit records were dropped or lost since the previous observation.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public class AuditTrailMonitor extends AbstractNamedMonitor<AuditTrailStatus> {
+
+    @NotNull
+    private final AsynchronousAuditTrailManager auditTrailManager;
+
+    /** Threshold above which warnings are issued for queue depth. */
+    private int queueDepthWarnThreshold = -1;
+
+    /** Threshold in ms above which warnings are issued for lag. */
+    private long lagWarnThreshold = -1;
+
+    /** Number of dropped and lost records at the previous observation. */
+    private long lastLostCount;
+
+    public AuditTrailMonitor(final AsynchronousAuditTrailManager auditTrailManager) {
+        this.auditTrailManager = auditTrailManager;
+    }
+
+    /**
+     * Sets the threshold above which warnings are issued for the number of audit records waiting to be written.
+     *
+     * @param threshold Warn threshold if non-negative value, otherwise warnings are disabled.
+     */
+    public void setQueueDepthWarnThreshold(final int threshold) {
+        this.queueDepthWarnThreshold = threshold;
+    }
+
+    /**
+     * Sets the threshold above which warnings are issued for the age of the oldest audit record not written yet.
+     *
+     * @param threshold Warn threshold in ms if non-negative value, otherwise warnings are disabled.
+     */
+    public void setLagWarnThreshold(final long threshold) {
+        this.lagWarnThreshold = threshold;
+    }
+
+    /** {@inheritDoc} */
+    public AuditTrailStatus observe() {
+        final int depth = this.auditTrailManager.getQueueDepth();
+        final int capacity = this.auditTrailManager.getCapacity();
+        final long lag = this.auditTrailManager.getLag();
+        final long dropped = this.auditTrailManager.getDroppedCount();
+        final long failed = this.auditTrailManager.getFailedCount();
+
+        StatusCode code = StatusCode.OK;
+        if (this.queueDepthWarnThreshold > -1 && depth > this.queueDepthWarnThreshold) {
+            code = StatusCode.WARN;
+        }
+        if (this.lagWarnThreshold > -1 && lag > this.lagWarnThreshold) {
+            code = StatusCode.WARN;
+        }
+        synchronized (this) {
+            if (dropped + failed > this.lastLostCount) {
+                code = StatusCode.WARN;
+            }
+            this.lastLostCount = dropped + failed;
+        }
+        final String description = String.format(
+                "%s/%s audit records queued, lag %sms. %s written, %s spilled, %s dropped, %s failed.",
+                depth, capacity, lag, this.auditTrailManager.getWrittenCount(),
+                this.auditTrailManager.getSpilledCount(), dropped, failed);
+        return new AuditTrailStatus(code, description, depth, capacity, lag);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.monitor;
+
+/**
+ * Describes the state of an asynchronous audit trail pipeline.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public class AuditTrailStatus extends Status {
+
+    /** Number of audit records waiting to be written. */
+    private final int queueDepth;
+
+    /** Number of audit records the buffer holds. */
+    private final int capacity;
+
+    /** Age in ms of the oldest audit record not written yet. */
+    private final long lag;
+
+    /**
+     * Creates a new status object with the given code.
+     *
+     * @param code Status code.
+     * @param desc Human-readable status description.
+     * @param queueDepth Number of audit records waiting to be written.
+     * @param capacity Number of audit records the buffer holds.
+     * @param lag Age in ms of the oldest audit record not written yet.
+     */
+    public AuditTrailStatus(
+            final StatusCode code, final String desc, final int queueDepth, final int capacity, final long lag) {
+        super(code, desc);
+        this.queueDepth = queueDepth;
+        this.capacity = capacity;
+        this.lag = lag;
+    }
+
+    /**
+     * @return Number of audit records waiting to be written.
+     */
+    public int getQueueDepth() {
+        return this.queueDepth;
+    }
+
+    /**
+     * @return Number of audit records the buffer holds.
+     */
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * @return Age in ms of the oldest audit record not written yet.
+     */
+    public long getLag() {
+        return this.lag;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.monitor;
+
+import javax.validation.constraints.NotNull;
+
+import org.jasig.cas.util.ExpiringCache;
+
+/**
+ * Monitors one or more in-memory {@link ExpiringCache} instances.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public class ExpiringCacheMonitor extends AbstractCacheMonitor {
+
+    @NotNull
+    private final ExpiringCache<?, ?>[] caches;
+
+    public ExpiringCacheMonitor(final ExpiringCache<?, ?>... caches) {
+        this.caches = caches;
+    }
+
+    protected CacheStatistics[] getStatistics() {
+        return this.caches;
+    }
+}
@@ -18,24 +18,74 @@
  */
 package org.jasig.cas.monitor;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.validation.constraints.NotNull;
 
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
 /**
  * Simple health check monitor that reports the overall health as the greatest reported
  * {@link StatusCode} of an arbitrary number of individual checks.
+ * <p>
+ * The individual monitors are observed in parallel, and a monitor that does not report within
+ * the timeout is given an {@link StatusCode#ERROR} status, so a slow backend cannot delay the
+ * health check indefinitely. Such a monitor is left running and is not observed again until it
+ * reports, so a monitor that hangs occupies at most one thread. What it reports after the timeout
+ * is stale by the next health check and is discarded, so the monitor is observed afresh. An observation may be reused
+ * by callers for a freshness window, and may be refreshed periodically in the background, in
+ * which case {@link #getStatus()} never waits on the monitors once the first observation is made.
  *
  * @author Marvin S. Addison
  * @since 3.5.0
  */
-public class HealthCheckMonitor implements Monitor<HealthStatus> {
+public class HealthCheckMonitor implements Monitor<HealthStatus>, InitializingBean, DisposableBean {
+    /** Default time in milliseconds allowed for each monitor to report its status. */
+    public static final long DEFAULT_TIMEOUT = 1000;
+
     /** Individual monitors that comprise health check. */
     @NotNull
     private Collection<Monitor> monitors = Collections.emptySet();
 
+    /** Time in milliseconds allowed for each monitor to report its status. */
+    private long timeout = DEFAULT_TIMEOUT;
+
+    /** Time in milliseconds an observation is reused. */
+    private long freshness;
+
+    /** Interval in milliseconds between background observations. */
+    private long refreshInterval;
+
+    /** Most recent observation. */
+    private volatile Observation lastObservation;
+
+    private final Object observeLock = new Object();
+
+    /** Observations of individual monitors that have not reported yet. */
+    private final ConcurrentMap<Monitor, Future<Status>> pending = new ConcurrentHashMap<Monitor, Future<Status>>();
+
+    private ExecutorService executor;
+
+    private ScheduledExecutorService refresher;
+
 
     /**
      * Sets the monitors that comprise the health check.
@@ -46,29 +96,194 @@ public class HealthCheckMonitor implements Monitor<HealthStatus> {
         this.monitors = monitors;
     }
 
+    /**
+     * Sets the time allowed for each monitor to report its status.
+     *
+     * @param timeout Timeout in milliseconds. Zero or less waits for every monitor without limit.
+     */
+    public void setTimeout(final long timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Sets the time an observation is reused before the monitors are observed again. Concurrent callers
+     * that find no fresh observation share the next one.
+     *
+     * @param freshness Freshness window in milliseconds. Zero, the default, observes on every call.
+     */
+    public void setFreshness(final long freshness) {
+        this.freshness = freshness;
+    }
+
+    /**
+     * Sets the interval between observations made in the background.
+     *
+     * @param refreshInterval Refresh interval in milliseconds. Zero, the default, disables background refresh.
+     */
+    public void setRefreshInterval(final long refreshInterval) {
+        this.refreshInterval = refreshInterval;
+    }
+
+    public void afterPropertiesSet() throws Exception {
+        if (this.refreshInterval > 0) {
+            synchronized (this) {
+                this.refresher = Executors.newSingleThreadScheduledExecutor(newThreadFactory("HealthCheckRefresh"));
+            }
+            this.refresher.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    refresh();
+                }
+            }, 0, this.refreshInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized void destroy() throws Exception {
+        if (this.refresher != null) {
+            this.refresher.shutdownNow();
+        }
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+        }
+    }
+
     /** {@inheritDoc} */
     public String getName() {
         return HealthCheckMonitor.class.getSimpleName();
     }
 
-    /** {@inheritDoc} */
+    /**
+     * Gets the overall health status, observing the monitors unless an observation is still fresh.
+     *
+     * @return Overall health status.
+     */
     public HealthStatus observe() {
-        final Map<String, Status> results = new LinkedHashMap<String, Status>(this.monitors.size());
+        if (this.freshness <= 0) {
+            return refresh();
+        }
+        Observation observation = this.lastObservation;
+        if (!isFresh(observation)) {
+            synchronized (this.observeLock) {
+                observation = this.lastObservation;
+                if (!isFresh(observation)) {
+                    return refresh();
+                }
+            }
+        }
+        return observation.status;
+    }
+
+    /**
+     * Gets the overall health status without waiting on the monitors when they are observed in the background.
+     * Otherwise the same as {@link #observe()}.
+     *
+     * @return Most recent overall health status.
+     */
+    public HealthStatus getStatus() {
+        final Observation observation = this.lastObservation;
+        if (this.refreshInterval > 0 && observation != null) {
+            return observation.status;
+        }
+        return observe();
+    }
+
+    private boolean isFresh(final Observation observation) {
+        return observation != null && System.currentTimeMillis() - observation.time < this.freshness;
+    }
+
+    private HealthStatus refresh() {
+        final HealthStatus status = observeMonitors();
+        this.lastObservation = new Observation(status);
+        return status;
+    }
+
+    private HealthStatus observeMonitors() {
+        final List<Monitor> monitorList = new ArrayList<Monitor>(this.monitors);
+        final List<Future<Status>> futures = new ArrayList<Future<Status>>(monitorList.size());
+        final ExecutorService executorService = getExecutor();
+        for (final Monitor monitor : monitorList) {
+            final FutureTask<Status> task = new FutureTask<Status>(new Callable<Status>() {
+                public Status call() throws Exception {
+                    return monitor.observe();
+                }
+            });
+            Future<Status> running = this.pending.putIfAbsent(monitor, task);
+            while (running != null && running.isDone()) {
+                // Reported after an earlier observation timed out, so the result is stale
+                this.pending.remove(monitor, running);
+                running = this.pending.putIfAbsent(monitor, task);
+            }
+            if (running == null) {
+                executorService.execute(task);
+                futures.add(task);
+            } else {
+                // Previous observation has not reported yet, so wait on it instead of starting another
+                futures.add(running);
+            }
+        }
+
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.timeout);
+        final Map<String, Status> results = new LinkedHashMap<String, Status>(monitorList.size());
         StatusCode code = StatusCode.UNKNOWN;
         Status result;
-        for (final Monitor monitor : this.monitors) {
+        for (int i = 0; i < monitorList.size(); i++) {
+            final Future<Status> future = futures.get(i);
             try {
-                result = monitor.observe();
+                if (this.timeout > 0) {
+                    result = future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } else {
+                    result = future.get();
+                }
                 if (result.getCode().value() > code.value()) {
                     code = result.getCode();
                 }
+            } catch (final TimeoutException e) {
+                code = StatusCode.ERROR;
+                result = new Status(code, "No response within " + this.timeout + "ms");
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                code = StatusCode.ERROR;
+                result = new Status(code, "Interrupted");
             } catch (final Exception e) {
+                final Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
                 code = StatusCode.ERROR;
-                result = new Status(code, e.getClass().getSimpleName() + ": " + e.getMessage());
+                result = new Status(code, cause.getClass().getSimpleName() + ": " + cause.getMessage());
             }
-            results.put(monitor.getName(), result);
+            if (future.isDone()) {
+                this.pending.remove(monitorList.get(i), future);
+            }
+            results.put(monitorList.get(i).getName(), result);
         }
 
         return new HealthStatus(code, results);
     }
+
+    private synchronized ExecutorService getExecutor() {
+        if (this.executor == null) {
+            this.executor = Executors.newCachedThreadPool(newThreadFactory("HealthCheck"));
+        }
+        return this.executor;
+    }
+
+    private static ThreadFactory newThreadFactory(final String name) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, name + "-" + this.count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /** Health status with the time it was observed. */
+    private static final class Observation {
+        private final HealthStatus status;
+
+        private final long time = System.currentTimeMillis();
+
+        public Observation(final HealthStatus status) {
+            this.status = status;
+        }
+    }
 }
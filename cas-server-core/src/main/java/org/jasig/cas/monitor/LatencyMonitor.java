@@ -0,0 +1,72 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.monitor;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * Reports one or more {@link LatencyHistogram} instances recorded by a component, such as the operation latencies
+ * of a ticket registry. A warning is issued when the 99th percentile latency of a histogram is above a threshold.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public class LatencyMonitor extends AbstractNamedMonitor<Status> {
+
+    @NotNull
+    private final LatencyHistogram[] histograms;
+
+    /** Threshold in microseconds above which warnings are issued for the 99th percentile latency. */
+    private long percentileWarnThreshold = -1;
+
+    /**
+     * Creates a new monitor that reports the given histograms.
+     *
+     * @param histograms Latency histograms.
+     */
+    public LatencyMonitor(final LatencyHistogram... histograms) {
+        this.histograms = histograms;
+    }
+
+    /**
+     * Sets the threshold above which warnings are issued for the 99th percentile latency of any histogram.
+     *
+     * @param threshold Warn threshold in microseconds if non-negative value, otherwise warnings are disabled.
+     */
+    public void setPercentileWarnThreshold(final long threshold) {
+        this.percentileWarnThreshold = threshold;
+    }
+
+    /** {@inheritDoc} */
+    public Status observe() {
+        StatusCode code = StatusCode.OK;
+        final StringBuilder sb = new StringBuilder();
+        for (final LatencyHistogram histogram : this.histograms) {
+            if (sb.length() > 0) {
+                sb.append("; ");
+            }
+            histogram.toString(sb);
+            if (this.percentileWarnThreshold > -1 && histogram.getPercentile(99) > this.percentileWarnThreshold) {
+                code = StatusCode.WARN;
+                sb.append(" (p99 above ").append(this.percentileWarnThreshold).append("us)");
+            }
+        }
+        return new Status(code, sb.toString());
+    }
+}
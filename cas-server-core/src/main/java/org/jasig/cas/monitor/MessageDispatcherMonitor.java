@@ -0,0 +1,86 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.monitor;
+
+import javax.validation.constraints.NotNull;
+
+import org.jasig.cas.util.MessageDispatcher;
+
+/**
+ * Monitors the queue and delivery counters of a {@link MessageDispatcher}. A warning is issued when the queue size is
+ * above its threshold, or when messages were discarded or failed since the previous observation.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public class MessageDispatcherMonitor extends AbstractNamedMonitor<Status> {
+
+    @NotNull
+    private final MessageDispatcher dispatcher;
+
+    /** Threshold above which warnings are issued for queue size. */
+    private int queueSizeWarnThreshold = -1;
+
+    /** Number of discarded and failed messages at the previous observation. */
+    private long lastLostCount;
+
+    /**
+     * Creates a new monitor that observes the given dispatcher.
+     *
+     * @param dispatcher Message dispatcher.
+     */
+    public MessageDispatcherMonitor(final MessageDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Sets the threshold above which warnings are issued for the number of queued messages.
+     *
+     * @param threshold Warn threshold if non-negative value, otherwise warnings are disabled.
+     */
+    public void setQueueSizeWarnThreshold(final int threshold) {
+        this.queueSizeWarnThreshold = threshold;
+    }
+
+    /** {@inheritDoc} */
+    public Status observe() {
+        final int queued = this.dispatcher.getQueueSize();
+        final long failed = this.dispatcher.getFailedCount();
+        final long discarded = this.dispatcher.getDiscardedCount();
+
+        StatusCode code = StatusCode.OK;
+        if (this.queueSizeWarnThreshold > -1 && queued > this.queueSizeWarnThreshold) {
+            code = StatusCode.WARN;
+        }
+        synchronized (this) {
+            if (failed + discarded > this.lastLostCount) {
+                code = StatusCode.WARN;
+            }
+            this.lastLostCount = failed + discarded;
+        }
+        final StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%s/%s messages queued. %s sent, %s retried, %s failed, %s discarded. ",
+                queued, this.dispatcher.getQueueCapacity(), this.dispatcher.getSentCount(),
+                this.dispatcher.getRetryCount(), failed, discarded));
+        this.dispatcher.getSendLatency().toString(sb);
+        sb.append("; ");
+        this.dispatcher.getQueueLatency().toString(sb);
+        return new Status(code, sb.toString());
+    }
+}
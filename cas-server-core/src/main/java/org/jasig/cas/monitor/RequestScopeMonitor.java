@@ -0,0 +1,55 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.monitor;
+
+import javax.validation.constraints.NotNull;
+
+import org.jasig.cas.ticket.registry.AbstractDistributedTicketRegistry;
+
+/**
+ * Reports how many ticket lookups of a distributed ticket registry were answered from the request scope instead of
+ * the remote store.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public class RequestScopeMonitor extends AbstractNamedMonitor<Status> {
+
+    @NotNull
+    private final AbstractDistributedTicketRegistry ticketRegistry;
+
+    /**
+     * Creates a new monitor that observes the given registry.
+     *
+     * @param ticketRegistry Distributed ticket registry.
+     */
+    public RequestScopeMonitor(final AbstractDistributedTicketRegistry ticketRegistry) {
+        this.ticketRegistry = ticketRegistry;
+    }
+
+    /** {@inheritDoc} */
+    public Status observe() {
+        final long hits = this.ticketRegistry.getRequestScopeHits();
+        final long misses = this.ticketRegistry.getRequestScopeMisses();
+        final long lookups = hits + misses;
+        return new Status(StatusCode.OK, String.format(
+                "%s request scope hits, %s misses, %s%% of lookups served locally.",
+                hits, misses, lookups > 0 ? hits * 100 / lookups : 0));
+    }
+}
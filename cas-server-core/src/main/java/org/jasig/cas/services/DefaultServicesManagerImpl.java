@@ -49,6 +49,12 @@ public final class DefaultServicesManagerImpl implements ReloadableServicesManag
     /** Map to store all services. */
     private ConcurrentHashMap<Long, RegisteredService> services = new ConcurrentHashMap<Long, RegisteredService>();
 
+    /** Precompiled lookup structure over the registered services, rebuilt whenever they change. */
+    private volatile RegisteredServicesIndex index;
+
+    /** Maximum number of service lookup results cached by the index. */
+    private int lookupCacheSize = 10000;
+
     /** Default service to return if none have been registered. */
     private RegisteredService disabledRegisteredService;
     
@@ -81,6 +87,7 @@ public final class DefaultServicesManagerImpl implements ReloadableServicesManag
         
         this.serviceRegistryDao.delete(r);
         this.services.remove(id);
+        rebuildIndex();
         
         return r;
     }
@@ -91,19 +98,13 @@ public final class DefaultServicesManagerImpl implements ReloadableServicesManag
      * This preserves default CAS behavior.
      */
     public RegisteredService findServiceBy(final Service service) {
-        final Collection<RegisteredService> c = convertToTreeSet();
+        final RegisteredServicesIndex currentIndex = this.index;
         
-        if (c.isEmpty()) {
+        if (currentIndex.isEmpty()) {
             return this.disabledRegisteredService;
         }
 
-        for (final RegisteredService r : c) {
-            if (r.matches(service)) {
-                return r;
-            }
-        }
-
-        return null;
+        return currentIndex.find(service);
     }
 
     public RegisteredService findServiceBy(final long id) {
@@ -121,7 +122,7 @@ public final class DefaultServicesManagerImpl implements ReloadableServicesManag
     }
 
     public Collection<RegisteredService> getAllServices() {
-        return Collections.unmodifiableCollection(convertToTreeSet());
+        return this.index.getServices();
     }
 
     public boolean matchesExistingService(final Service service) {
@@ -133,6 +134,7 @@ public final class DefaultServicesManagerImpl implements ReloadableServicesManag
     public synchronized RegisteredService save(final RegisteredService registeredService) {
         final RegisteredService r = this.serviceRegistryDao.save(registeredService);
         this.services.put(r.getId(), r);
+        rebuildIndex();
         return r;
     }
     
@@ -141,7 +143,18 @@ public final class DefaultServicesManagerImpl implements ReloadableServicesManag
         load();
     }
     
-    private void load() {
+    /**
+     * Sets the maximum number of service id lookups whose result is cached until the next change to the
+     * registered services. Zero disables the cache.
+     *
+     * @param lookupCacheSize the maximum number of cached lookups.
+     */
+    public synchronized void setLookupCacheSize(final int lookupCacheSize) {
+        this.lookupCacheSize = lookupCacheSize;
+        rebuildIndex();
+    }
+
+    private synchronized void load() {
         final ConcurrentHashMap<Long, RegisteredService> localServices = new ConcurrentHashMap<Long, RegisteredService>();
                 
         for (final RegisteredService r : this.serviceRegistryDao.load()) {
@@ -150,9 +163,14 @@ public final class DefaultServicesManagerImpl implements ReloadableServicesManag
         }
         
         this.services = localServices;
+        rebuildIndex();
         log.info(String.format("Loaded %s services.", this.services.size()));
     }
     
+    private void rebuildIndex() {
+        this.index = new RegisteredServicesIndex(convertToTreeSet(), this.lookupCacheSize);
+    }
+    
     private RegisteredService constructDefaultRegisteredService(final List<String> attributes) {
         final RegisteredServiceImpl r = new RegisteredServiceImpl();
         r.setAllowedToProxy(true);
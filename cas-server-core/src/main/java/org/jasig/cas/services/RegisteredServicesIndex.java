@@ -0,0 +1,355 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jasig.cas.authentication.principal.Service;
+import org.springframework.util.StringUtils;
+
+/**
+ * Immutable lookup structure over a snapshot of registered services that avoids evaluating every
+ * service pattern for each request.
+ * <p>
+ * Services are kept in evaluation order and each one is assigned to at most one bucket:
+ * <ul>
+ *  <li>{@link RegisteredServiceImpl} patterns whose first two path tokens are literal
+ *  (e.g. <code>https://www.example.org/**</code>) are bucketed by those tokens;</li>
+ *  <li>{@link RegexRegisteredService} patterns whose literal prefix covers the complete
+ *  <code>scheme://authority/</code> part are bucketed by <code>scheme://authority</code>;</li>
+ *  <li>everything else is kept in a fallback list that is always evaluated.</li>
+ * </ul>
+ * A lookup only evaluates the candidates of the matching buckets together with the fallback list, merged back into
+ * evaluation order, so the first matching service is exactly the one a full scan would have returned.
+ * When all services are of the two built-in types, whose matching depends on the service id alone, results are
+ * additionally kept in a bounded cache keyed by service id that lives as long as the index.
+ *
+ * @author agent
+ * @since 4.0
+ */
+final class RegisteredServicesIndex {
+
+    private static final String PATH_SEPARATOR = "/";
+
+    private static final String SCHEME_SEPARATOR = "://";
+
+    private static final String REGEX_METACHARACTERS = "\\^$.|?*+()[]{}";
+
+    private static final String REGEX_QUANTIFIERS = "?*+{";
+
+    private static final int[] EMPTY = new int[0];
+
+    /** Marker stored in the cache for service ids that do not match any registered service. */
+    private static final Integer NO_MATCH = -1;
+
+    /** Services sorted by evaluation order. */
+    private final RegisteredService[] services;
+
+    private final Map<String, int[]> antBuckets;
+
+    private final Map<String, int[]> regexBuckets;
+
+    private final int[] fallback;
+
+    /** Lookup results by service id; only used when every service matches on its id alone. */
+    private final ConcurrentHashMap<String, Integer> cache;
+
+    private final int maxCacheSize;
+
+    /**
+     * Builds the index for the given services.
+     *
+     * @param sortedServices services in evaluation order.
+     * @param maxCacheSize maximum number of lookup results to cache; zero or less disables caching.
+     */
+    public RegisteredServicesIndex(final Collection<RegisteredService> sortedServices, final int maxCacheSize) {
+        this.services = sortedServices.toArray(new RegisteredService[sortedServices.size()]);
+        this.maxCacheSize = maxCacheSize;
+
+        final Map<String, List<Integer>> ant = new HashMap<String, List<Integer>>();
+        final Map<String, List<Integer>> regex = new HashMap<String, List<Integer>>();
+        final List<Integer> unindexed = new ArrayList<Integer>();
+        boolean cacheable = maxCacheSize > 0;
+
+        for (int i = 0; i < this.services.length; i++) {
+            final RegisteredService r = this.services[i];
+            final String serviceId = r.getServiceId();
+            String key = null;
+
+            if (serviceId != null && r.getClass() == RegisteredServiceImpl.class) {
+                key = antKeyForPattern(serviceId.toLowerCase());
+                if (key != null) {
+                    add(ant, key, i);
+                }
+            } else if (serviceId != null && r.getClass() == RegexRegisteredService.class) {
+                key = regexKeyForPattern(serviceId);
+                if (key != null) {
+                    add(regex, key, i);
+                }
+            } else {
+                cacheable = false;
+            }
+
+            if (key == null) {
+                unindexed.add(i);
+            }
+        }
+
+        this.antBuckets = toArrays(ant);
+        this.regexBuckets = toArrays(regex);
+        this.fallback = toArray(unindexed);
+        this.cache = cacheable ? new ConcurrentHashMap<String, Integer>() : null;
+    }
+
+    public boolean isEmpty() {
+        return this.services.length == 0;
+    }
+
+    /**
+     * @return the indexed services in evaluation order.
+     */
+    public Collection<RegisteredService> getServices() {
+        final List<RegisteredService> list = new ArrayList<RegisteredService>(this.services.length);
+        Collections.addAll(list, this.services);
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Finds the first service in evaluation order that matches the given service.
+     *
+     * @param service the service to look up.
+     * @return the matching registered service or null if none matches.
+     */
+    public RegisteredService find(final Service service) {
+        if (service == null) {
+            return null;
+        }
+
+        final String id = service.getId();
+        if (id == null) {
+            return scan(service);
+        }
+
+        if (this.cache != null) {
+            final Integer cached = this.cache.get(id);
+            if (cached != null) {
+                return cached.intValue() < 0 ? null : this.services[cached.intValue()];
+            }
+        }
+
+        final int position = findPosition(service, id);
+
+        if (this.cache != null) {
+            if (this.cache.size() >= this.maxCacheSize) {
+                this.cache.clear();
+            }
+            this.cache.put(id, position < 0 ? NO_MATCH : Integer.valueOf(position));
+        }
+        return position < 0 ? null : this.services[position];
+    }
+
+    private int findPosition(final Service service, final String id) {
+        final int[] ant = lookup(this.antBuckets, antKeyForId(id.toLowerCase()));
+        final int[] regex = lookup(this.regexBuckets, regexKeyForId(id));
+        int a = 0;
+        int r = 0;
+        int f = 0;
+
+        while (a < ant.length || r < regex.length || f < this.fallback.length) {
+            int next = Integer.MAX_VALUE;
+            if (a < ant.length) {
+                next = ant[a];
+            }
+            if (r < regex.length && regex[r] < next) {
+                next = regex[r];
+            }
+            if (f < this.fallback.length && this.fallback[f] < next) {
+                next = this.fallback[f];
+            }
+
+            if (a < ant.length && ant[a] == next) {
+                a++;
+            } else if (r < regex.length && regex[r] == next) {
+                r++;
+            } else {
+                f++;
+            }
+
+            if (this.services[next].matches(service)) {
+                return next;
+            }
+        }
+        return -1;
+    }
+
+    private RegisteredService scan(final Service service) {
+        for (final RegisteredService r : this.services) {
+            if (r.matches(service)) {
+                return r;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Computes the bucket key of an Ant pattern from its first two path tokens, using the same tokenization
+     * rules as {@link org.springframework.util.AntPathMatcher}. A literal token can only ever be matched by an
+     * identical path token, so any matching service id necessarily has the same key.
+     *
+     * @param pattern lower cased Ant pattern.
+     * @return the key or null if the pattern cannot be bucketed.
+     */
+    static String antKeyForPattern(final String pattern) {
+        final String[] tokens = StringUtils.tokenizeToStringArray(pattern, PATH_SEPARATOR);
+        if (tokens.length < 2 || !isAntLiteral(tokens[0]) || !isAntLiteral(tokens[1])) {
+            return null;
+        }
+        return tokens[0] + PATH_SEPARATOR + tokens[1];
+    }
+
+    static String antKeyForId(final String id) {
+        final String[] tokens = StringUtils.tokenizeToStringArray(id, PATH_SEPARATOR);
+        if (tokens.length < 2) {
+            return null;
+        }
+        return tokens[0] + PATH_SEPARATOR + tokens[1];
+    }
+
+    /**
+     * Computes the bucket key of a regular expression from its literal prefix. The key is only defined when
+     * the literal prefix contains the complete <code>scheme://authority/</code> part of the URL.
+     *
+     * @param pattern the regular expression.
+     * @return the key or null if the pattern cannot be bucketed.
+     */
+    static String regexKeyForPattern(final String pattern) {
+        final String prefix = literalPrefix(pattern);
+        if (prefix == null) {
+            return null;
+        }
+        final int scheme = prefix.indexOf(SCHEME_SEPARATOR);
+        if (scheme < 0) {
+            return null;
+        }
+        final int path = prefix.indexOf(PATH_SEPARATOR, scheme + SCHEME_SEPARATOR.length());
+        return path < 0 ? null : prefix.substring(0, path);
+    }
+
+    static String regexKeyForId(final String id) {
+        final int scheme = id.indexOf(SCHEME_SEPARATOR);
+        if (scheme < 0) {
+            return null;
+        }
+        final int path = id.indexOf(PATH_SEPARATOR, scheme + SCHEME_SEPARATOR.length());
+        return path < 0 ? null : id.substring(0, path);
+    }
+
+    /**
+     * Extracts the literal text every match of the regular expression must start with.
+     *
+     * @param pattern the regular expression.
+     * @return the literal prefix or null if the pattern may match alternatives with different prefixes.
+     */
+    static String literalPrefix(final String pattern) {
+        if (containsAlternation(pattern)) {
+            return null;
+        }
+
+        final StringBuilder prefix = new StringBuilder();
+        int i = pattern.startsWith("^") ? 1 : 0;
+
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            int next = i + 1;
+
+            if (c == '\\') {
+                if (next >= pattern.length() || Character.isLetterOrDigit(pattern.charAt(next))) {
+                    break;
+                }
+                c = pattern.charAt(next);
+                next++;
+            } else if (REGEX_METACHARACTERS.indexOf(c) >= 0) {
+                break;
+            }
+
+            if (next < pattern.length() && REGEX_QUANTIFIERS.indexOf(pattern.charAt(next)) >= 0) {
+                // the character is optional or repeated, so it is not part of the literal prefix
+                break;
+            }
+            prefix.append(c);
+            i = next;
+        }
+        return prefix.toString();
+    }
+
+    private static boolean containsAlternation(final String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            final char c = pattern.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '|') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isAntLiteral(final String token) {
+        return token.indexOf('*') < 0 && token.indexOf('?') < 0 && token.indexOf('{') < 0;
+    }
+
+    private static int[] lookup(final Map<String, int[]> buckets, final String key) {
+        if (key == null) {
+            return EMPTY;
+        }
+        final int[] positions = buckets.get(key);
+        return positions == null ? EMPTY : positions;
+    }
+
+    private static void add(final Map<String, List<Integer>> buckets, final String key, final int position) {
+        List<Integer> positions = buckets.get(key);
+        if (positions == null) {
+            positions = new ArrayList<Integer>();
+            buckets.put(key, positions);
+        }
+        positions.add(position);
+    }
+
+    private static Map<String, int[]> toArrays(final Map<String, List<Integer>> buckets) {
+        final Map<String, int[]> result = new HashMap<String, int[]>(buckets.size() * 2);
+        for (final Map.Entry<String, List<Integer>> entry : buckets.entrySet()) {
+            result.put(entry.getKey(), toArray(entry.getValue()));
+        }
+        return result;
+    }
+
+    private static int[] toArray(final List<Integer> positions) {
+        final int[] result = new int[positions.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = positions.get(i);
+        }
+        return result;
+    }
+}
@@ -23,6 +23,9 @@ import javax.persistence.Id;
 import javax.persistence.Lob;
 import javax.persistence.ManyToOne;
 import javax.persistence.MappedSuperclass;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import javax.persistence.Version;
 
 import org.springframework.util.Assert;
 
@@ -77,6 +80,21 @@ public abstract class AbstractTicket implements Ticket, TicketState {
     /** The number of times this was used. */
     @Column(name="NUMBER_OF_TIMES_USED")
     private int countOfUses;
+
+    /**
+     * Incremented on every update so that concurrent modifications are detected. Rows stored before the column was
+     * added must be given a version before they are loaded, see <code>etc/sql/ticket-registry-upgrade-4.0.sql</code>.
+     */
+    @Version
+    @Column(name="VERSION")
+    private Integer version;
+
+    /**
+     * The earliest expiration time as of the last time this ticket was stored, for querying by registries. Rows stored
+     * before the column was added must be given a value, see <code>etc/sql/ticket-registry-upgrade-4.0.sql</code>.
+     */
+    @Column(name="EXPIRATION_TIME", nullable=false)
+    private Long expirationTime;
     
     protected AbstractTicket() {
         // nothing to do
@@ -141,6 +159,35 @@ public abstract class AbstractTicket implements Ticket, TicketState {
         return false;
     }
 
+    /**
+     * Determines the earliest time at which this ticket may become expired, taking the parent ticket into account.
+     * Tickets whose expiration policy cannot predict expiration report the current time.
+     *
+     * @return the earliest possible expiration time in milliseconds since the epoch.
+     * @see PredictableExpirationPolicy
+     */
+    public final long getEarliestExpirationTime() {
+        if (isExpiredInternal() || !(this.expirationPolicy instanceof PredictableExpirationPolicy)) {
+            return System.currentTimeMillis();
+        }
+
+        final long expirationTime = ((PredictableExpirationPolicy) this.expirationPolicy).getEarliestExpirationTime(this);
+        if (this.ticketGrantingTicket != null) {
+            return Math.min(expirationTime, this.ticketGrantingTicket.getEarliestExpirationTime());
+        }
+        return expirationTime;
+    }
+
+    /**
+     * Records the earliest expiration time in a column so that JPA ticket registries can find expiration candidates
+     * with an indexed query.
+     */
+    @PrePersist
+    @PreUpdate
+    protected final void updateExpirationTime() {
+        this.expirationTime = getEarliestExpirationTime();
+    }
+
     public final int hashCode() {
         return 34 ^ this.getId().hashCode();
     }
@@ -0,0 +1,40 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.ticket;
+
+/**
+ * Expiration policy that can tell in advance when a ticket will expire if it is left alone. Ticket registries
+ * use this to index tickets by expiration time so that expired tickets can be found without checking every
+ * ticket in the registry.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public interface PredictableExpirationPolicy extends ExpirationPolicy {
+
+    /**
+     * Determines the earliest time at which the ticket may be considered expired by this policy, assuming the
+     * ticket is not used in the meantime. Using the ticket may only move the result forward in time.
+     *
+     * @param ticketState The snapshot of the current ticket state
+     * @return the earliest expiration time in milliseconds since the epoch, {@link Long#MAX_VALUE} if the
+     * ticket never expires.
+     */
+    long getEarliestExpirationTime(TicketState ticketState);
+}
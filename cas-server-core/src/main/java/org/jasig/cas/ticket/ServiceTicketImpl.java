@@ -23,6 +23,7 @@ import javax.persistence.Entity;
 import javax.persistence.Lob;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.Index;
 import org.jasig.cas.authentication.Authentication;
 import org.jasig.cas.authentication.principal.Service;
 import org.springframework.util.Assert;
@@ -39,6 +40,8 @@ import org.springframework.util.Assert;
  */
 @Entity
 @Table(name="SERVICETICKET")
+@org.hibernate.annotations.Table(appliesTo="SERVICETICKET",
+    indexes=@Index(name="ST_EXPIRATION_TIME_IDX", columnNames="EXPIRATION_TIME"))
 public final class ServiceTicketImpl extends AbstractTicket implements
     ServiceTicket {
 
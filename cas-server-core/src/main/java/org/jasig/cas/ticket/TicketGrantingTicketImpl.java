@@ -29,6 +29,7 @@ import javax.persistence.Entity;
 import javax.persistence.Lob;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.Index;
 import org.jasig.cas.authentication.Authentication;
 import org.jasig.cas.authentication.principal.Service;
 import org.slf4j.Logger;
@@ -48,6 +49,8 @@ import org.springframework.util.Assert;
  */
 @Entity
 @Table(name="TICKETGRANTINGTICKET")
+@org.hibernate.annotations.Table(appliesTo="TICKETGRANTINGTICKET",
+    indexes=@Index(name="TGT_EXPIRATION_TIME_IDX", columnNames="EXPIRATION_TIME"))
 public final class TicketGrantingTicketImpl extends AbstractTicket implements
     TicketGrantingTicket {
 
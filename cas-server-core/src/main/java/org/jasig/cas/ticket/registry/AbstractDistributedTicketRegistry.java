@@ -18,7 +18,11 @@
  */
 package org.jasig.cas.ticket.registry;
 
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.jasig.cas.authentication.Authentication;
 import org.jasig.cas.authentication.principal.Service;
@@ -30,15 +34,116 @@ import org.jasig.cas.ticket.TicketGrantingTicket;
 /**
  * Abstract Implementation that handles some of the commonalities between
  * distributed ticket registries.
+ * <p>
+ * Registries that need callbacks fetch the ticket-granting ticket of a ticket from the registry every time it is
+ * requested. Within a request scope, opened by {@link #beginRequestScope()} on the current thread, the tickets
+ * fetched that way are kept and reused, so that repeated lookups of the same ticket during one CAS operation do
+ * not go back to the registry. A ticket is removed from the request scope when it is updated or deleted.
  * 
  * @author Scott Battaglia
  * @version $Revision$ $Date$
  * @since 3.1
  */
 public abstract class AbstractDistributedTicketRegistry extends AbstractTicketRegistry {
-    
+
+    /** Tickets fetched during the request scope of the current thread, by registry and ticket ID. */
+    private static final ThreadLocal<Map<AbstractDistributedTicketRegistry, Map<String, Ticket>>> REQUEST_SCOPE =
+            new ThreadLocal<Map<AbstractDistributedTicketRegistry, Map<String, Ticket>>>();
+
+    /** Number of ticket lookups answered from a request scope. */
+    private final AtomicLong requestScopeHits = new AtomicLong();
+
+    /** Number of ticket lookups within a request scope that went to the registry. */
+    private final AtomicLong requestScopeMisses = new AtomicLong();
+
+    /**
+     * Opens a request scope on the current thread unless one is already open.
+     *
+     * @return true if a new scope was opened and must be closed by {@link #endRequestScope()}, false otherwise.
+     */
+    public static boolean beginRequestScope() {
+        if (REQUEST_SCOPE.get() != null) {
+            return false;
+        }
+        REQUEST_SCOPE.set(new IdentityHashMap<AbstractDistributedTicketRegistry, Map<String, Ticket>>());
+        return true;
+    }
+
+    /**
+     * Closes the request scope of the current thread and discards the tickets it holds.
+     */
+    public static void endRequestScope() {
+        REQUEST_SCOPE.remove();
+    }
+
+    /**
+     * @return the number of ticket lookups answered from a request scope instead of the registry.
+     */
+    public final long getRequestScopeHits() {
+        return this.requestScopeHits.get();
+    }
+
+    /**
+     * @return the number of ticket lookups within a request scope that had to go to the registry.
+     */
+    public final long getRequestScopeMisses() {
+        return this.requestScopeMisses.get();
+    }
+
+    /**
+     * Removes a ticket from the request scope of the current thread. Implementations must call this when a
+     * ticket is deleted.
+     *
+     * @param ticketId the id of the ticket to remove.
+     */
+    protected final void removeFromRequestScope(final String ticketId) {
+        final Map<AbstractDistributedTicketRegistry, Map<String, Ticket>> scope = REQUEST_SCOPE.get();
+        if (scope != null) {
+            final Map<String, Ticket> tickets = scope.get(this);
+            if (tickets != null) {
+                tickets.remove(ticketId);
+            }
+        }
+    }
+
+    private Ticket getTicketInRequestScope(final String ticketId) {
+        final Map<AbstractDistributedTicketRegistry, Map<String, Ticket>> scope = REQUEST_SCOPE.get();
+        if (scope == null) {
+            return getTicket(ticketId, Ticket.class);
+        }
+
+        Map<String, Ticket> tickets = scope.get(this);
+        if (tickets == null) {
+            tickets = new HashMap<String, Ticket>();
+            scope.put(this, tickets);
+        }
+
+        Ticket ticket = tickets.get(ticketId);
+        if (ticket != null) {
+            this.requestScopeHits.incrementAndGet();
+            return ticket;
+        }
+
+        this.requestScopeMisses.incrementAndGet();
+        ticket = getTicket(ticketId, Ticket.class);
+        if (ticket != null) {
+            tickets.put(ticketId, ticket);
+        }
+        return ticket;
+    }
+
     protected abstract void updateTicket(final Ticket ticket);
 
+    /**
+     * Called before a ticket obtained from this registry is changed. Registries that read tickets without locking
+     * them may lock the ticket and reload its current state here. The default implementation does nothing.
+     *
+     * @param ticket the ticket about to be changed.
+     */
+    protected void lockTicket(final Ticket ticket) {
+        // nothing to do
+    }
+
     protected abstract boolean needsCallback();
 
     protected final Ticket getProxiedTicketInstance(final Ticket ticket) {
@@ -69,7 +174,12 @@ public abstract class AbstractDistributedTicketRegistry extends AbstractTicketRe
             this.callback = callback;
         }
 
+        protected void lockTicket() {
+            this.ticketRegistry.lockTicket(this.ticket);
+        }
+
         protected void updateTicket() {
+            this.ticketRegistry.removeFromRequestScope(this.ticket.getId());
             this.ticketRegistry.updateTicket(this.ticket);
         }
 
@@ -98,7 +208,7 @@ public abstract class AbstractDistributedTicketRegistry extends AbstractTicketRe
                 return old;
             }
 
-            return (TicketGrantingTicket) this.ticketRegistry.getTicket(old.getId(), Ticket.class);
+            return (TicketGrantingTicket) this.ticketRegistry.getTicketInRequestScope(old.getId());
         }
 
         public final long getCreationTime() {
@@ -138,12 +248,14 @@ public abstract class AbstractDistributedTicketRegistry extends AbstractTicketRe
         }
 
         public boolean isValidFor(final Service service) {
+            lockTicket();
             final boolean b = this.getTicket().isValidFor(service);
             updateTicket();
             return b;
         }
 
         public TicketGrantingTicket grantTicketGrantingTicket(final String id, final Authentication authentication, final ExpirationPolicy expirationPolicy) {
+            lockTicket();
             final TicketGrantingTicket t = this.getTicket().grantTicketGrantingTicket(id, authentication, expirationPolicy);
             updateTicket();
             return t;
@@ -163,12 +275,14 @@ public abstract class AbstractDistributedTicketRegistry extends AbstractTicketRe
         }
 
         public ServiceTicket grantServiceTicket(final String id, final Service service, final ExpirationPolicy expirationPolicy, final boolean credentialsProvided) {
+            lockTicket();
             final ServiceTicket t = this.getTicket().grantServiceTicket(id, service, expirationPolicy, credentialsProvided);
             updateTicket();
             return t;
         }
 
         public void expire() {
+            lockTicket();
             this.getTicket().expire();
             updateTicket();
         }
@@ -31,7 +31,7 @@ import org.springframework.util.Assert;
  * This is a published and supported CAS Server 3 API.
  * </p>
  */
-public abstract class AbstractTicketRegistry implements TicketRegistry, TicketRegistryState {
+public abstract class AbstractTicketRegistry implements StreamingTicketRegistry, TicketRegistryState {
 
     /** The Commons Logging log instance. */
     protected final Logger log = LoggerFactory.getLogger(getClass());
@@ -60,6 +60,18 @@ public abstract class AbstractTicketRegistry implements TicketRegistry, TicketRe
         return ticket;
     }
     
+    /**
+     * Visits the tickets returned by {@link #getTickets()}. Registries that can load their tickets in batches
+     * should override this method.
+     */
+    public void forEachTicket(final Class<? extends Ticket> type, final int batchSize, final TicketVisitor visitor) {
+        for (final Ticket ticket : getTickets()) {
+            if (type.isInstance(ticket) && !visitor.visit(ticket)) {
+                return;
+            }
+        }
+    }
+
     public int sessionCount() {
       log.debug("sessionCount() operation is not implemented by the ticket registry instance {}. Returning unknown as {}", 
                 this.getClass().getName(), Integer.MIN_VALUE);
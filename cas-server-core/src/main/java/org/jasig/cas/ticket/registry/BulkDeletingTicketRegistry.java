@@ -0,0 +1,47 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.ticket.registry;
+
+/**
+ * Ticket registry that is able to remove expired tickets with a few set-based operations instead of one
+ * {@link #deleteTicket(String)} call per ticket. Registry cleaners should prefer
+ * {@link #deleteExpiredTickets(long, int, boolean)} when the registry implements this interface.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public interface BulkDeletingTicketRegistry extends TicketRegistry {
+
+    /**
+     * Removes a batch of expired tickets together with the tickets they granted. Candidates that turn out not to
+     * be expired are deferred past <code>now</code>, so that repeated calls with the same <code>now</code> make
+     * progress and eventually return zero.
+     *
+     * @param now start time of the cleanup run in milliseconds since the epoch; tickets stored as expiring after
+     * this time are not examined.
+     * @param maxTickets maximum number of expired tickets of each type to remove in this batch, not counting the
+     * tickets they granted.
+     * @param expireTicketGrantingTickets whether to call
+     * {@link org.jasig.cas.ticket.TicketGrantingTicket#expire()} on expired ticket-granting tickets before
+     * removing them, which logs users out of services.
+     * @return number of expiration candidates examined in this batch, whether they were removed or deferred; zero
+     * indicates that no more candidates are due as of <code>now</code>.
+     */
+    int deleteExpiredTickets(long now, int maxTickets, boolean expireTicketGrantingTickets);
+}
@@ -21,24 +21,38 @@ package org.jasig.cas.ticket.registry;
 import org.jasig.cas.ticket.ServiceTicket;
 import org.jasig.cas.ticket.Ticket;
 import org.jasig.cas.ticket.TicketGrantingTicket;
+import org.jasig.cas.ticket.registry.support.TicketExpirationIndex;
 import org.springframework.util.Assert;
 
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Implementation of the TicketRegistry that is backed by a ConcurrentHashMap.
+ * Tickets are additionally tracked by a {@link TicketExpirationIndex} so that expired tickets can be found
+ * without walking the whole map. Session and service ticket counts are maintained on add and delete so that
+ * monitors can report them in constant time.
  * 
  * @author Scott Battaglia
  * @version $Revision$ $Date$
  * @since 3.0
  */
-public final class DefaultTicketRegistry extends AbstractTicketRegistry  {
+public final class DefaultTicketRegistry extends AbstractTicketRegistry implements ExpirationIndexedTicketRegistry {
 
     /** A HashMap to contain the tickets. */
     private final Map<String, Ticket> cache;
+
+    /** Number of ticket granting tickets in the registry. */
+    private final AtomicInteger sessionCount = new AtomicInteger();
+
+    /** Number of service tickets in the registry. */
+    private final AtomicInteger serviceTicketCount = new AtomicInteger();
+
+    /** Index of the tickets by the earliest time they may expire. */
+    private TicketExpirationIndex expirationIndex = new TicketExpirationIndex();
     
     public DefaultTicketRegistry() {
         this.cache = new ConcurrentHashMap<String, Ticket>();
@@ -70,7 +84,13 @@ public final class DefaultTicketRegistry extends AbstractTicketRegistry  {
         if (log.isDebugEnabled()) {
             log.debug("Added ticket [" + ticket.getId() + "] to registry.");
         }
-        this.cache.put(ticket.getId(), ticket);
+        final Ticket previous = this.cache.put(ticket.getId(), ticket);
+        if (previous == null) {
+            this.expirationIndex.add(ticket);
+        } else {
+            count(previous, -1);
+        }
+        count(ticket, 1);
     }
 
     public Ticket getTicket(final String ticketId) {
@@ -98,30 +118,45 @@ public final class DefaultTicketRegistry extends AbstractTicketRegistry  {
             log.debug("Removing ticket [" + ticketId + "] from registry");
         }
 
-        return (this.cache.remove(ticketId) != null);
+        final Ticket ticket = this.cache.remove(ticketId);
+        if (ticket == null) {
+            return false;
+        }
+        count(ticket, -1);
+        return true;
     }
 
     public Collection<Ticket> getTickets() {
         return Collections.unmodifiableCollection(this.cache.values());
     }
 
+    public Collection<Ticket> getExpiredTickets(final int maxTickets) {
+        return this.expirationIndex.getExpiredTickets(this, maxTickets);
+    }
+
+    /**
+     * Sets the width in milliseconds of the time buckets used to index tickets by expiration time.
+     * Must be set before tickets are added.
+     *
+     * @param resolution bucket width in milliseconds.
+     */
+    public void setExpirationIndexResolution(final long resolution) {
+        this.expirationIndex = new TicketExpirationIndex(resolution);
+    }
+
     public int sessionCount() {
-        int count = 0;
-        for (Ticket t : this.cache.values()) {
-            if (t instanceof TicketGrantingTicket) {
-                count++;
-            }
-        }
-        return count;
+        return this.sessionCount.get();
     }
 
     public int serviceTicketCount() {
-        int count = 0;
-        for (Ticket t : this.cache.values()) {
-            if (t instanceof ServiceTicket) {
-                count++;
-            }
+        return this.serviceTicketCount.get();
+    }
+
+    private void count(final Ticket ticket, final int delta) {
+        if (ticket instanceof TicketGrantingTicket) {
+            this.sessionCount.addAndGet(delta);
+        } else if (ticket instanceof ServiceTicket) {
+            this.serviceTicketCount.addAndGet(delta);
         }
-        return count;
     }
 }
@@ -0,0 +1,44 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.ticket.registry;
+
+import java.util.Collection;
+
+import org.jasig.cas.ticket.Ticket;
+
+/**
+ * Ticket registry that keeps track of when its tickets may expire and is therefore able to find expired tickets
+ * without scanning all of them. Registry cleaners should prefer {@link #getExpiredTickets(int)} over
+ * {@link #getTickets()} when the registry implements this interface.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public interface ExpirationIndexedTicketRegistry extends TicketRegistry {
+
+    /**
+     * Retrieves a batch of expired tickets. Tickets stay in the registry until they are deleted, so callers are
+     * expected to delete the returned tickets before asking for the next batch.
+     *
+     * @param maxTickets maximum number of tickets to return.
+     * @return expired tickets; fewer than <code>maxTickets</code> tickets indicates that no more expired tickets
+     * are currently known.
+     */
+    Collection<Ticket> getExpiredTickets(int maxTickets);
+}
@@ -27,15 +27,33 @@ import javax.persistence.LockModeType;
 import javax.persistence.PersistenceContext;
 import javax.validation.constraints.NotNull;
 
+import org.jasig.cas.ticket.AbstractTicket;
 import org.jasig.cas.ticket.ServiceTicket;
 import org.jasig.cas.ticket.ServiceTicketImpl;
 import org.jasig.cas.ticket.Ticket;
+import org.jasig.cas.ticket.TicketGrantingTicket;
 import org.jasig.cas.ticket.TicketGrantingTicketImpl;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 /**
  * JPA implementation of a CAS {@link TicketRegistry}. This implementation of
  * ticket registry is suitable for HA environments.
+ * <p>
+ * Session and service ticket counts are computed with a count query on every call by default.
+ * Setting <code>countCacheDuration</code> enables an approximate mode where count results are
+ * reused for the configured number of milliseconds.
+ * <p>
+ * {@link #forEachTicket(Class, int, TicketVisitor)} reads tickets one page at a time, ordered by ticket id, so that
+ * visiting every ticket does not require loading all of them at once.
+ * <p>
+ * {@link #deleteExpiredTickets(long, int, boolean)} finds expired tickets through the indexed <code>EXPIRATION_TIME</code>
+ * column and removes them, along with the tickets they granted, with set-based delete statements.
+ * <p>
+ * Ticket-granting tickets are locked with <code>PESSIMISTIC_WRITE</code> whenever they are read by default. Setting
+ * <code>optimisticLocking</code> reads them without locks instead; a ticket-granting ticket is then locked and
+ * reloaded only right before it is changed, so the change is applied to its current state. Other concurrent writes
+ * are detected through the ticket version column and make the transaction fail instead of overwriting each other.
  *
  * @author Scott Battaglia
  * @author Marvin S. Addison
@@ -43,7 +61,10 @@ import org.springframework.transaction.annotation.Transactional;
  * @since 3.2.1
  *
  */
-public final class JpaTicketRegistry extends AbstractDistributedTicketRegistry {
+public final class JpaTicketRegistry extends AbstractDistributedTicketRegistry implements BulkDeletingTicketRegistry {
+
+    /** Maximum number of ids bound to a single <code>in</code> clause; Oracle does not accept more than 1000. */
+    private static final int MAX_IN_CLAUSE_SIZE = 1000;
     
     @NotNull
     @PersistenceContext
@@ -52,6 +73,16 @@ public final class JpaTicketRegistry extends AbstractDistributedTicketRegistry {
     @NotNull
     private String ticketGrantingTicketPrefix = "TGT";
 
+    /** Milliseconds for which count query results are reused; zero disables caching. */
+    private long countCacheDuration = 0;
+
+    private volatile CachedCount cachedSessionCount;
+
+    private volatile CachedCount cachedServiceTicketCount;
+
+    /** Whether ticket-granting tickets are read without locks and only locked before being changed. */
+    private boolean optimisticLocking = false;
+
 
     protected void updateTicket(final Ticket ticket) {
         entityManager.merge(ticket);
@@ -64,9 +95,19 @@ public final class JpaTicketRegistry extends AbstractDistributedTicketRegistry {
         log.debug("Added ticket [{}] to registry.", ticket);
     }
 
+    @Override
+    protected void lockTicket(final Ticket ticket) {
+        if (this.optimisticLocking && ticket instanceof TicketGrantingTicket && entityManager.contains(ticket)
+                && entityManager.getLockMode(ticket) != LockModeType.PESSIMISTIC_WRITE) {
+            // Changes made so far would be discarded by the refresh
+            entityManager.flush();
+            entityManager.refresh(ticket, LockModeType.PESSIMISTIC_WRITE);
+        }
+    }
+
     @Transactional(readOnly = false)
     public boolean deleteTicket(final String ticketId) {
-        final Ticket ticket = getRawTicket(ticketId);
+        final Ticket ticket = getRawTicket(ticketId, true);
         
         if (ticket == null) {
             return false;
@@ -117,15 +158,116 @@ public final class JpaTicketRegistry extends AbstractDistributedTicketRegistry {
         }
     }
     
+    /**
+     * Loads the tickets whose expiration time column lies in the past, checks whether they are actually expired and
+     * deletes the expired ones with a few bulk statements per level of proxy-granting tickets instead of locking and
+     * removing them one by one. Candidates that are not expired yet, e.g. because their parent ticket has been used
+     * since they were stored, get their expiration time column refreshed to a time after <code>now</code>. Rows
+     * stored before the column was introduced are given an expiration time of 0 by the upgrade script, which makes
+     * them candidates of the next run.
+     * <p>
+     * The persistence context is cleared, so this method should be called in a transaction of its own.
+     */
+    @Transactional(readOnly = false)
+    public int deleteExpiredTickets(final long now, final int maxTickets, final boolean expireTicketGrantingTickets) {
+        final List<String> ticketGrantingTicketIds = new ArrayList<String>();
+        final List<String> serviceTicketIds = new ArrayList<String>();
+        final List<AbstractTicket> unexpired = new ArrayList<AbstractTicket>();
+        int candidates = 0;
+
+        for (final TicketGrantingTicketImpl t : findExpirationCandidates(TicketGrantingTicketImpl.class, now, maxTickets)) {
+            candidates++;
+            if (t.isExpired()) {
+                // CAS-686: Expire TGT to trigger single sign-out
+                if (expireTicketGrantingTickets) {
+                    t.expire();
+                }
+                ticketGrantingTicketIds.add(t.getId());
+            } else {
+                unexpired.add(t);
+            }
+        }
+        for (final ServiceTicketImpl s : findExpirationCandidates(ServiceTicketImpl.class, now, maxTickets)) {
+            candidates++;
+            if (s.isExpired()) {
+                serviceTicketIds.add(s.getId());
+            } else {
+                unexpired.add(s);
+            }
+        }
+
+        // Changes made by expire() need not be written since the tickets are deleted below
+        entityManager.clear();
+
+        // Tickets that cannot predict their expiration report the current time, which must not make them candidates
+        // again in this cleanup run.
+        for (final AbstractTicket ticket : unexpired) {
+            entityManager
+                .createQuery("update " + ticket.getClass().getSimpleName() + " t set t.expirationTime = :time where t.id = :id")
+                .setParameter("time", Math.max(ticket.getEarliestExpirationTime(), now + 1))
+                .setParameter("id", ticket.getId())
+                .executeUpdate();
+        }
+
+        // Every level holds the children of the previous one, so deleting the levels backwards never removes a
+        // ticket before the tickets it granted.
+        final List<List<String>> levels = new ArrayList<List<String>>();
+        List<String> level = ticketGrantingTicketIds;
+        while (!level.isEmpty()) {
+            levels.add(level);
+            level = selectIds("select t.id from TicketGrantingTicketImpl t where t.ticketGrantingTicket.id in :ids", level);
+        }
+        for (final List<String> ids : levels) {
+            executeUpdate("delete from ServiceTicketImpl s where s.ticketGrantingTicket.id in :ids", ids);
+        }
+        executeUpdate("delete from ServiceTicketImpl s where s.id in :ids", serviceTicketIds);
+        for (int i = levels.size() - 1; i >= 0; i--) {
+            executeUpdate("delete from TicketGrantingTicketImpl t where t.id in :ids", levels.get(i));
+        }
+
+        log.debug("Deleted {} expired ticket granting tickets and {} expired service tickets from the registry, deferred {}.",
+            new Object[] {ticketGrantingTicketIds.size(), serviceTicketIds.size(), unexpired.size()});
+        return candidates;
+    }
+
+    private <T extends AbstractTicket> List<T> findExpirationCandidates(final Class<T> entityClass, final long now, final int maxTickets) {
+        return entityManager
+            .createQuery("select t from " + entityClass.getSimpleName() + " t where t.expirationTime <= :now order by t.expirationTime", entityClass)
+            .setParameter("now", now)
+            .setMaxResults(maxTickets)
+            .getResultList();
+    }
+
+    private List<String> selectIds(final String query, final List<String> ids) {
+        final List<String> result = new ArrayList<String>();
+        for (int i = 0; i < ids.size(); i += MAX_IN_CLAUSE_SIZE) {
+            result.addAll(entityManager.createQuery(query, String.class)
+                .setParameter("ids", ids.subList(i, Math.min(i + MAX_IN_CLAUSE_SIZE, ids.size())))
+                .getResultList());
+        }
+        return result;
+    }
+
+    private void executeUpdate(final String statement, final List<String> ids) {
+        for (int i = 0; i < ids.size(); i += MAX_IN_CLAUSE_SIZE) {
+            entityManager.createQuery(statement)
+                .setParameter("ids", ids.subList(i, Math.min(i + MAX_IN_CLAUSE_SIZE, ids.size())))
+                .executeUpdate();
+        }
+    }
+
     @Transactional(readOnly=true)
     public Ticket getTicket(final String ticketId) {
-        return getProxiedTicketInstance(getRawTicket(ticketId));
+        return getProxiedTicketInstance(getRawTicket(ticketId, !this.optimisticLocking));
     }
     
-    private Ticket getRawTicket(final String ticketId) {
+    private Ticket getRawTicket(final String ticketId, final boolean lock) {
         try {
             if (ticketId.startsWith(this.ticketGrantingTicketPrefix)) {
-                return entityManager.find(TicketGrantingTicketImpl.class, ticketId, LockModeType.PESSIMISTIC_WRITE);
+                if (lock) {
+                    return entityManager.find(TicketGrantingTicketImpl.class, ticketId, LockModeType.PESSIMISTIC_WRITE);
+                }
+                return entityManager.find(TicketGrantingTicketImpl.class, ticketId);
             }
             
             return entityManager.find(ServiceTicketImpl.class, ticketId);
@@ -151,10 +293,74 @@ public final class JpaTicketRegistry extends AbstractDistributedTicketRegistry {
         return tickets;
     }
     
+    /**
+     * Visits tickets one page at a time. Pages are selected by ticket id rather than by offset so that tickets
+     * deleted by the visitor do not cause others to be skipped. When called within a transaction, the persistence
+     * context is flushed and cleared after each page so that visited tickets do not accumulate in it; changes must
+     * therefore be made through the registry rather than by modifying visited tickets.
+     */
+    public void forEachTicket(final Class<? extends Ticket> type, final int batchSize, final TicketVisitor visitor) {
+        if (type.isAssignableFrom(TicketGrantingTicketImpl.class)
+                && !visit(TicketGrantingTicketImpl.class, batchSize, visitor)) {
+            return;
+        }
+        if (type.isAssignableFrom(ServiceTicketImpl.class)) {
+            visit(ServiceTicketImpl.class, batchSize, visitor);
+        }
+    }
+
+    private <T extends Ticket> boolean visit(final Class<T> entityClass, final int batchSize, final TicketVisitor visitor) {
+        final String query = "select t from " + entityClass.getSimpleName() + " t where t.id > :id order by t.id";
+        String lastId = "";
+        while (true) {
+            final List<T> page = entityManager.createQuery(query, entityClass)
+                .setParameter("id", lastId)
+                .setMaxResults(batchSize)
+                .getResultList();
+            for (final T ticket : page) {
+                if (!visitor.visit(ticket)) {
+                    return false;
+                }
+            }
+            if (page.size() < batchSize) {
+                return true;
+            }
+            lastId = page.get(page.size() - 1).getId();
+            if (TransactionSynchronizationManager.isActualTransactionActive()) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+    }
+
     public void setTicketGrantingTicketPrefix(final String ticketGrantingTicketPrefix) {
         this.ticketGrantingTicketPrefix = ticketGrantingTicketPrefix;
     }
 
+    /**
+     * Sets whether ticket-granting tickets are read without locking them and only locked right before they are
+     * changed. This avoids contention on popular ticket-granting tickets, which are mostly read. The default is
+     * false, which locks ticket-granting tickets on every read.
+     *
+     * @param optimisticLocking true to lock ticket-granting tickets only before changing them.
+     */
+    public void setOptimisticLocking(final boolean optimisticLocking) {
+        this.optimisticLocking = optimisticLocking;
+    }
+
+    /**
+     * Sets the number of milliseconds during which the results of {@link #sessionCount()} and
+     * {@link #serviceTicketCount()} are reused instead of querying the database again. The default of zero
+     * queries the database on every call.
+     *
+     * @param countCacheDuration cache duration in milliseconds.
+     */
+    public void setCountCacheDuration(final long countCacheDuration) {
+        this.countCacheDuration = countCacheDuration;
+        this.cachedSessionCount = null;
+        this.cachedServiceTicketCount = null;
+    }
+
     @Override
     protected boolean needsCallback() {
         return false;
@@ -162,12 +368,28 @@ public final class JpaTicketRegistry extends AbstractDistributedTicketRegistry {
 
     @Transactional(readOnly=true)
     public int sessionCount() {
-        return countToInt(entityManager.createQuery("select count(t) from TicketGrantingTicketImpl t").getSingleResult());
+        final CachedCount cached = this.cachedSessionCount;
+        if (cached != null && cached.isValid()) {
+            return cached.value;
+        }
+        final int count = countToInt(entityManager.createQuery("select count(t) from TicketGrantingTicketImpl t").getSingleResult());
+        if (this.countCacheDuration > 0) {
+            this.cachedSessionCount = new CachedCount(count, this.countCacheDuration);
+        }
+        return count;
     }
 
     @Transactional(readOnly=true)
     public int serviceTicketCount() {
-        return countToInt(entityManager.createQuery("select count(t) from ServiceTicketImpl t").getSingleResult());
+        final CachedCount cached = this.cachedServiceTicketCount;
+        if (cached != null && cached.isValid()) {
+            return cached.value;
+        }
+        final int count = countToInt(entityManager.createQuery("select count(t) from ServiceTicketImpl t").getSingleResult());
+        if (this.countCacheDuration > 0) {
+            this.cachedServiceTicketCount = new CachedCount(count, this.countCacheDuration);
+        }
+        return count;
     }
 
     private int countToInt(final Object result) {
@@ -182,4 +404,20 @@ public final class JpaTicketRegistry extends AbstractDistributedTicketRegistry {
         }
         return intval;
     }
+
+    private static final class CachedCount {
+
+        private final int value;
+
+        private final long expirationTime;
+
+        public CachedCount(final int value, final long duration) {
+            this.value = value;
+            this.expirationTime = System.currentTimeMillis() + duration;
+        }
+
+        public boolean isValid() {
+            return System.currentTimeMillis() < this.expirationTime;
+        }
+    }
 }
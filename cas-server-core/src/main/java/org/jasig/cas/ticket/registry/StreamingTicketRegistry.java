@@ -0,0 +1,41 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.ticket.registry;
+
+import org.jasig.cas.ticket.Ticket;
+
+/**
+ * Ticket registry that can hand out its tickets one batch at a time instead of materializing all of them at once
+ * like {@link #getTickets()} does, so that callers visiting every ticket run in constant memory.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public interface StreamingTicketRegistry extends TicketRegistry {
+
+    /**
+     * Passes each ticket of the given type to the visitor. Tickets added or removed while the registry is being
+     * visited may or may not be visited. The visitor may delete visited tickets from the registry.
+     *
+     * @param type the type of tickets to visit, {@link Ticket} to visit all tickets.
+     * @param batchSize number of tickets the registry may load at once.
+     * @param visitor receives the tickets.
+     */
+    void forEachTicket(Class<? extends Ticket> type, int batchSize, TicketVisitor visitor);
+}
@@ -24,8 +24,12 @@ import java.util.List;
 
 import org.jasig.cas.ticket.Ticket;
 import org.jasig.cas.ticket.TicketGrantingTicket;
+import org.jasig.cas.ticket.registry.BulkDeletingTicketRegistry;
+import org.jasig.cas.ticket.registry.ExpirationIndexedTicketRegistry;
 import org.jasig.cas.ticket.registry.RegistryCleaner;
+import org.jasig.cas.ticket.registry.StreamingTicketRegistry;
 import org.jasig.cas.ticket.registry.TicketRegistry;
+import org.jasig.cas.ticket.registry.TicketVisitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,6 +53,15 @@ import javax.validation.constraints.NotNull;
  * should be used with {@link org.jasig.cas.ticket.registry.JpaTicketRegistry}
  * in a clustered CAS environment.
  * </p>
+ * <p>
+ * Registries implementing {@link BulkDeletingTicketRegistry} remove expired
+ * tickets themselves, <code>batchSize</code> tickets per call. Registries
+ * implementing {@link ExpirationIndexedTicketRegistry} are asked for
+ * expired tickets in batches of <code>batchSize</code> tickets instead of being
+ * scanned entirely. Other registries implementing {@link StreamingTicketRegistry}
+ * are scanned one batch at a time, and expired tickets are removed after each
+ * batch rather than collected for the whole registry.
+ * </p>
  * <p>The following property is required.</p>
  * <ul>
  * <li>ticketRegistry - CAS ticket registry.</li>
@@ -76,6 +89,9 @@ public final class DefaultTicketRegistryCleaner implements RegistryCleaner {
 
     private boolean logUserOutOfServices = true;
 
+    /** Maximum number of expired tickets to remove at once. */
+    private int batchSize = 1000;
+
 
     /**
      * @see org.jasig.cas.ticket.registry.RegistryCleaner#clean()
@@ -89,22 +105,14 @@ public final class DefaultTicketRegistryCleaner implements RegistryCleaner {
         }
         this.log.debug("Acquired lock.  Proceeding with cleanup.");
         try {
-            final List<Ticket> ticketsToRemove = new ArrayList<Ticket>();
-            final Collection<Ticket> ticketsInCache;
-            ticketsInCache = this.ticketRegistry.getTickets();
-            for (final Ticket ticket : ticketsInCache) {
-                if (ticket.isExpired()) {
-                    ticketsToRemove.add(ticket);
-                }
-            }
-
-            this.log.info(ticketsToRemove.size() + " tickets found to be removed.");
-            for (final Ticket ticket : ticketsToRemove) {
-                // CAS-686: Expire TGT to trigger single sign-out
-                if (this.logUserOutOfServices && ticket instanceof TicketGrantingTicket) {
-                    ((TicketGrantingTicket) ticket).expire();
-                }
-                this.ticketRegistry.deleteTicket(ticket.getId());
+            if (this.ticketRegistry instanceof BulkDeletingTicketRegistry) {
+                cleanBulk((BulkDeletingTicketRegistry) this.ticketRegistry);
+            } else if (this.ticketRegistry instanceof ExpirationIndexedTicketRegistry) {
+                cleanIndexed((ExpirationIndexedTicketRegistry) this.ticketRegistry);
+            } else if (this.ticketRegistry instanceof StreamingTicketRegistry) {
+                cleanStreamed((StreamingTicketRegistry) this.ticketRegistry);
+            } else {
+                cleanAll();
             }
         } finally {
             this.log.debug("Releasing ticket cleanup lock.");
@@ -115,6 +123,76 @@ public final class DefaultTicketRegistryCleaner implements RegistryCleaner {
     }
 
 
+    private void cleanAll() {
+        final List<Ticket> ticketsToRemove = new ArrayList<Ticket>();
+        final Collection<Ticket> ticketsInCache;
+        ticketsInCache = this.ticketRegistry.getTickets();
+        for (final Ticket ticket : ticketsInCache) {
+            if (ticket.isExpired()) {
+                ticketsToRemove.add(ticket);
+            }
+        }
+
+        this.log.info(ticketsToRemove.size() + " tickets found to be removed.");
+        removeTickets(ticketsToRemove);
+    }
+
+    private void cleanBulk(final BulkDeletingTicketRegistry registry) {
+        final long now = System.currentTimeMillis();
+        int count = 0;
+        int examined;
+        do {
+            examined = registry.deleteExpiredTickets(now, this.batchSize, this.logUserOutOfServices);
+            count += examined;
+        } while (examined > 0);
+
+        this.log.info(count + " expiration candidates examined.");
+    }
+
+    private void cleanIndexed(final ExpirationIndexedTicketRegistry registry) {
+        int count = 0;
+        Collection<Ticket> ticketsToRemove;
+        do {
+            ticketsToRemove = registry.getExpiredTickets(this.batchSize);
+            removeTickets(ticketsToRemove);
+            count += ticketsToRemove.size();
+        } while (ticketsToRemove.size() >= this.batchSize);
+
+        this.log.info(count + " tickets removed.");
+    }
+
+    private void cleanStreamed(final StreamingTicketRegistry registry) {
+        final List<Ticket> ticketsToRemove = new ArrayList<Ticket>(this.batchSize);
+        final int[] count = new int[1];
+        registry.forEachTicket(Ticket.class, this.batchSize, new TicketVisitor() {
+            public boolean visit(final Ticket ticket) {
+                if (ticket.isExpired()) {
+                    ticketsToRemove.add(ticket);
+                    if (ticketsToRemove.size() >= batchSize) {
+                        removeTickets(ticketsToRemove);
+                        count[0] += ticketsToRemove.size();
+                        ticketsToRemove.clear();
+                    }
+                }
+                return true;
+            }
+        });
+        removeTickets(ticketsToRemove);
+        count[0] += ticketsToRemove.size();
+
+        this.log.info(count[0] + " tickets removed.");
+    }
+
+    private void removeTickets(final Collection<Ticket> ticketsToRemove) {
+        for (final Ticket ticket : ticketsToRemove) {
+            // CAS-686: Expire TGT to trigger single sign-out
+            if (this.logUserOutOfServices && ticket instanceof TicketGrantingTicket) {
+                ((TicketGrantingTicket) ticket).expire();
+            }
+            this.ticketRegistry.deleteTicket(ticket.getId());
+        }
+    }
+
     /**
      * @param ticketRegistry The ticketRegistry to set.
      */
@@ -143,4 +221,15 @@ public final class DefaultTicketRegistryCleaner implements RegistryCleaner {
     public void setLogUserOutOfServices(final boolean logUserOutOfServices) {
         this.logUserOutOfServices = logUserOutOfServices;
     }
+
+    /**
+     * Sets the maximum number of expired tickets fetched at once from registries that implement
+     * {@link ExpirationIndexedTicketRegistry} or {@link BulkDeletingTicketRegistry}, and the number of tickets read at once from registries that
+     * implement {@link StreamingTicketRegistry}. The default is 1000.
+     *
+     * @param batchSize number of tickets per batch.
+     */
+    public void setBatchSize(final int batchSize) {
+        this.batchSize = batchSize;
+    }
 }
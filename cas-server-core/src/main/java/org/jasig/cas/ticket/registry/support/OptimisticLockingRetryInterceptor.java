@@ -0,0 +1,91 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.ticket.registry.support;
+
+import javax.persistence.OptimisticLockException;
+import javax.validation.constraints.Min;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.ProxyMethodInvocation;
+import org.springframework.core.Ordered;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+/**
+ * Retries method invocations that fail because of a concurrent modification of a versioned ticket, as happens
+ * with {@link org.jasig.cas.ticket.registry.JpaTicketRegistry} in optimistic locking mode. The interceptor must
+ * be applied outside of the transaction so that every attempt runs in a new transaction; by default it has the
+ * highest precedence, which places it outside the transaction interceptor. The <code>ticketRegistry.xml</code>
+ * configuration of the CAS webapp shows how to apply it to the CentralAuthenticationService.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public final class OptimisticLockingRetryInterceptor implements MethodInterceptor, Ordered {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    @Min(0)
+    private int maxRetries = 3;
+
+    private int order = Ordered.HIGHEST_PRECEDENCE;
+
+    public Object invoke(final MethodInvocation invocation) throws Throwable {
+        int attempt = 0;
+        while (true) {
+            final MethodInvocation current = attempt < this.maxRetries && invocation instanceof ProxyMethodInvocation
+                ? ((ProxyMethodInvocation) invocation).invocableClone() : invocation;
+            try {
+                return current.proceed();
+            } catch (final RuntimeException e) {
+                if (current == invocation || !isConflict(e)) {
+                    throw e;
+                }
+                attempt++;
+                log.debug("Concurrent modification in {}; retrying (attempt {}).", invocation.getMethod().getName(), attempt);
+            }
+        }
+    }
+
+    private static boolean isConflict(final Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof OptimisticLockingFailureException || t instanceof OptimisticLockException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param maxRetries number of times a conflicting invocation is retried. Default is 3.
+     */
+    public void setMaxRetries(final int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public int getOrder() {
+        return this.order;
+    }
+
+    public void setOrder(final int order) {
+        this.order = order;
+    }
+}
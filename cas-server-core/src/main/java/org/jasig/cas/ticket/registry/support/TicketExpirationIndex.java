@@ -0,0 +1,186 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.ticket.registry.support;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.jasig.cas.ticket.AbstractTicket;
+import org.jasig.cas.ticket.Ticket;
+import org.jasig.cas.ticket.registry.TicketRegistry;
+import org.springframework.util.Assert;
+
+/**
+ * Secondary index of ticket ids ordered by the earliest time each ticket may expire. Ticket ids are grouped into
+ * buckets of a fixed time resolution so that a registry cleaner only has to look at the tickets of the buckets
+ * that are due instead of every ticket in the registry.
+ * <p>
+ * The index never holds tickets, only their ids. Removing a ticket from the registry does not require updating
+ * the index: ids of tickets that no longer exist are dropped when their bucket comes due. Tickets that are due
+ * but not yet expired, e.g. because they have been used since they were indexed, are rescheduled.
+ * Tickets that do not extend {@link AbstractTicket} or whose expiration policy cannot predict expiration are
+ * rescheduled into the next bucket every time, which degrades to checking them on every cleaner run.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public final class TicketExpirationIndex {
+
+    /** Default bucket resolution in milliseconds. */
+    public static final long DEFAULT_RESOLUTION = 10000;
+
+    private final ConcurrentSkipListMap<Long, Bucket> buckets = new ConcurrentSkipListMap<Long, Bucket>();
+
+    private final long resolution;
+
+    public TicketExpirationIndex() {
+        this(DEFAULT_RESOLUTION);
+    }
+
+    /**
+     * @param resolution width of each bucket in milliseconds.
+     */
+    public TicketExpirationIndex(final long resolution) {
+        Assert.isTrue(resolution > 0, "resolution must be greater than 0.");
+        this.resolution = resolution;
+    }
+
+    /**
+     * Adds a ticket to the index.
+     *
+     * @param ticket the ticket to index.
+     */
+    public void add(final Ticket ticket) {
+        final long time = getEarliestExpirationTime(ticket);
+
+        if (time != Long.MAX_VALUE) {
+            schedule(ticket.getId(), time);
+        }
+    }
+
+    /**
+     * Finds expired tickets among the tickets whose bucket is due. The returned tickets are kept in the index until
+     * they are removed from the registry. Due ids left unexamined because the batch is full stay due, so that
+     * the next call continues with them.
+     *
+     * @param registry the registry used to resolve indexed ticket ids.
+     * @param maxTickets maximum number of expired tickets to return.
+     * @return the expired tickets, never more than <code>maxTickets</code>.
+     */
+    public List<Ticket> getExpiredTickets(final TicketRegistry registry, final int maxTickets) {
+        final long now = System.currentTimeMillis();
+        final long next = now + this.resolution;
+        final List<Ticket> expired = new ArrayList<Ticket>();
+        final List<String> recheck = new ArrayList<String>();
+        final List<String> overflow = new ArrayList<String>();
+        final ConcurrentNavigableMap<Long, Bucket> due = this.buckets.headMap(bucketOf(now), true);
+        final Iterator<Map.Entry<Long, Bucket>> iterator = due.entrySet().iterator();
+
+        while (expired.size() < maxTickets && iterator.hasNext()) {
+            final Bucket bucket = iterator.next().getValue();
+            bucket.closed = true;
+            iterator.remove();
+
+            String id;
+            while ((id = bucket.ids.poll()) != null) {
+                if (expired.size() >= maxTickets) {
+                    overflow.add(id);
+                    continue;
+                }
+                final Ticket ticket = registry.getTicket(id);
+                if (ticket == null) {
+                    continue;
+                }
+                if (ticket.isExpired()) {
+                    expired.add(ticket);
+                    recheck.add(id);
+                } else {
+                    final long time = getEarliestExpirationTime(ticket);
+                    if (time != Long.MAX_VALUE) {
+                        // not before the next run, so that the remaining due buckets are not polluted
+                        schedule(id, Math.max(time, next));
+                    }
+                }
+            }
+        }
+
+        for (final String ticketId : recheck) {
+            schedule(ticketId, next);
+        }
+        for (final String ticketId : overflow) {
+            schedule(ticketId, now);
+        }
+        return expired;
+    }
+
+    /**
+     * @return the number of ticket ids currently indexed, including ids of tickets removed from the registry.
+     */
+    public int size() {
+        int size = 0;
+        for (final Bucket bucket : this.buckets.values()) {
+            size += bucket.ids.size();
+        }
+        return size;
+    }
+
+    private void schedule(final String ticketId, final long time) {
+        final Long key = bucketOf(time);
+
+        while (true) {
+            Bucket bucket = this.buckets.get(key);
+            if (bucket == null) {
+                final Bucket newBucket = new Bucket();
+                bucket = this.buckets.putIfAbsent(key, newBucket);
+                if (bucket == null) {
+                    bucket = newBucket;
+                }
+            }
+            bucket.ids.add(ticketId);
+            if (!bucket.closed) {
+                return;
+            }
+            // the bucket was drained while we were adding to it; the id may or may not have been seen so add it again
+            this.buckets.remove(key, bucket);
+        }
+    }
+
+    private static long getEarliestExpirationTime(final Ticket ticket) {
+        if (ticket instanceof AbstractTicket) {
+            return ((AbstractTicket) ticket).getEarliestExpirationTime();
+        }
+        return System.currentTimeMillis();
+    }
+
+    private long bucketOf(final long time) {
+        return time / this.resolution;
+    }
+
+    private static final class Bucket {
+
+        private final ConcurrentLinkedQueue<String> ids = new ConcurrentLinkedQueue<String>();
+
+        private volatile boolean closed;
+    }
+}
@@ -18,7 +18,7 @@
  */
 package org.jasig.cas.ticket.support;
 
-import org.jasig.cas.ticket.ExpirationPolicy;
+import org.jasig.cas.ticket.PredictableExpirationPolicy;
 import org.jasig.cas.ticket.TicketState;
 
 /**
@@ -29,7 +29,7 @@ import org.jasig.cas.ticket.TicketState;
  * @version $Revision$ $Date$
  * @since 3.1.2
  */
-public final class HardTimeoutExpirationPolicy implements ExpirationPolicy {
+public final class HardTimeoutExpirationPolicy implements PredictableExpirationPolicy {
 
 	/** Unique Id for serialization. */
     private static final long serialVersionUID = -1465997330804816888L;
@@ -45,4 +45,8 @@ public final class HardTimeoutExpirationPolicy implements ExpirationPolicy {
 		return (ticketState == null)
 					|| (System.currentTimeMillis() - ticketState.getCreationTime() >= this.timeToKillInMilliSeconds);
 	}
+
+	public long getEarliestExpirationTime(final TicketState ticketState) {
+		return ticketState.getCreationTime() + this.timeToKillInMilliSeconds;
+	}
 }
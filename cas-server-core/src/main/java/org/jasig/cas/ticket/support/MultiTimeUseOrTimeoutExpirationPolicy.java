@@ -18,7 +18,7 @@
  */
 package org.jasig.cas.ticket.support;
 
-import org.jasig.cas.ticket.ExpirationPolicy;
+import org.jasig.cas.ticket.PredictableExpirationPolicy;
 import org.jasig.cas.ticket.TicketState;
 import org.springframework.util.Assert;
 
@@ -33,7 +33,7 @@ import java.util.concurrent.TimeUnit;
  * @since 3.0
  */
 public final class MultiTimeUseOrTimeoutExpirationPolicy implements
-    ExpirationPolicy {
+    PredictableExpirationPolicy {
 
     /** Serializable Unique ID. */
     private static final long serialVersionUID = 3257844372614558261L;
@@ -62,4 +62,11 @@ public final class MultiTimeUseOrTimeoutExpirationPolicy implements
             || (ticketState.getCountOfUses() >= this.numberOfUses)
             || (System.currentTimeMillis() - ticketState.getLastTimeUsed() >= this.timeToKillInMilliSeconds);
     }
+
+    public long getEarliestExpirationTime(final TicketState ticketState) {
+        if (ticketState.getCountOfUses() >= this.numberOfUses) {
+            return ticketState.getLastTimeUsed();
+        }
+        return ticketState.getLastTimeUsed() + this.timeToKillInMilliSeconds;
+    }
 }
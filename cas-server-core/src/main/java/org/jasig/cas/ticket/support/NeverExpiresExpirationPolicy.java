@@ -18,7 +18,7 @@
  */
 package org.jasig.cas.ticket.support;
 
-import org.jasig.cas.ticket.ExpirationPolicy;
+import org.jasig.cas.ticket.PredictableExpirationPolicy;
 import org.jasig.cas.ticket.TicketState;
 
 /**
@@ -30,7 +30,7 @@ import org.jasig.cas.ticket.TicketState;
  * @version $Revision$ $Date$
  * @since 3.0
  */
-public final class NeverExpiresExpirationPolicy implements ExpirationPolicy {
+public final class NeverExpiresExpirationPolicy implements PredictableExpirationPolicy {
 
     /** Serializable Unique ID. */
     private static final long serialVersionUID = 3833747698242303540L;
@@ -38,4 +38,8 @@ public final class NeverExpiresExpirationPolicy implements ExpirationPolicy {
     public boolean isExpired(final TicketState ticketState) {
         return false;
     }
+
+    public long getEarliestExpirationTime(final TicketState ticketState) {
+        return Long.MAX_VALUE;
+    }
 }
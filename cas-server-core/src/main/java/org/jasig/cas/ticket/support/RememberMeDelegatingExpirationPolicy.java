@@ -20,6 +20,7 @@ package org.jasig.cas.ticket.support;
 
 import org.jasig.cas.authentication.principal.RememberMeCredentials;
 import org.jasig.cas.ticket.ExpirationPolicy;
+import org.jasig.cas.ticket.PredictableExpirationPolicy;
 import org.jasig.cas.ticket.TicketState;
 
 import javax.validation.constraints.NotNull;
@@ -33,7 +34,7 @@ import javax.validation.constraints.NotNull;
  * @since 3.2.1
  *
  */
-public final class RememberMeDelegatingExpirationPolicy implements ExpirationPolicy {
+public final class RememberMeDelegatingExpirationPolicy implements PredictableExpirationPolicy {
     
     /** Unique Id for Serialization */
     private static final long serialVersionUID = -575145836880428365L;
@@ -45,13 +46,29 @@ public final class RememberMeDelegatingExpirationPolicy implements ExpirationPol
     private ExpirationPolicy sessionExpirationPolicy;
 
     public boolean isExpired(TicketState ticketState) {
+        return getPolicy(ticketState).isExpired(ticketState);
+    }
+
+    /**
+     * @return the earliest expiration time of the delegate, or the current time if the delegate cannot tell.
+     */
+    public long getEarliestExpirationTime(final TicketState ticketState) {
+        final ExpirationPolicy policy = getPolicy(ticketState);
+
+        if (policy instanceof PredictableExpirationPolicy) {
+            return ((PredictableExpirationPolicy) policy).getEarliestExpirationTime(ticketState);
+        }
+        return System.currentTimeMillis();
+    }
+
+    private ExpirationPolicy getPolicy(final TicketState ticketState) {
         final Boolean b = (Boolean) ticketState.getAuthentication().getAttributes().get(RememberMeCredentials.AUTHENTICATION_ATTRIBUTE_REMEMBER_ME);
         
         if (b == null || b.equals(Boolean.FALSE)) {
-            return this.sessionExpirationPolicy.isExpired(ticketState);
+            return this.sessionExpirationPolicy;
         }
         
-        return this.rememberMeExpirationPolicy.isExpired(ticketState);
+        return this.rememberMeExpirationPolicy;
     }
     
     public void setRememberMeExpirationPolicy(
@@ -18,7 +18,7 @@
  */
 package org.jasig.cas.ticket.support;
 
-import org.jasig.cas.ticket.ExpirationPolicy;
+import org.jasig.cas.ticket.PredictableExpirationPolicy;
 import org.jasig.cas.ticket.TicketState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,7 +33,7 @@ import org.slf4j.LoggerFactory;
  * @since 3.0.5
  */
 public final class ThrottledUseAndTimeoutExpirationPolicy implements
-    ExpirationPolicy {
+    PredictableExpirationPolicy {
 
     private static final Logger log = LoggerFactory.getLogger(ThrottledUseAndTimeoutExpirationPolicy.class);
 
@@ -81,4 +81,17 @@ public final class ThrottledUseAndTimeoutExpirationPolicy implements
 
         return false;
     }
+
+    /**
+     * A ticket that has been used within the time in between uses counts as expired until that time has passed, just
+     * as {@link #isExpired(TicketState)} reports it, so its earliest expiration time is its last use. Otherwise it
+     * expires the time to kill after its last use.
+     */
+    public long getEarliestExpirationTime(final TicketState ticketState) {
+        if (ticketState.getCountOfUses() > 0
+            && System.currentTimeMillis() - ticketState.getLastTimeUsed() <= this.timeInBetweenUsesInMilliSeconds) {
+            return ticketState.getLastTimeUsed();
+        }
+        return ticketState.getLastTimeUsed() + this.timeToKillInMilliSeconds;
+    }
 }
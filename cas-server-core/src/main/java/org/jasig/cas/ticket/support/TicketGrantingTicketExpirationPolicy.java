@@ -18,7 +18,7 @@
  */
 package org.jasig.cas.ticket.support;
 
-import org.jasig.cas.ticket.ExpirationPolicy;
+import org.jasig.cas.ticket.PredictableExpirationPolicy;
 import org.jasig.cas.ticket.TicketState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,7 +35,7 @@ import java.util.concurrent.TimeUnit;
  * @version $Revision$ $Date$
  * @since 3.4.10
  */
-public final class TicketGrantingTicketExpirationPolicy implements ExpirationPolicy, InitializingBean {
+public final class TicketGrantingTicketExpirationPolicy implements PredictableExpirationPolicy, InitializingBean {
 
     private static final Logger log = LoggerFactory.getLogger(TicketGrantingTicketExpirationPolicy.class);
 
@@ -94,4 +94,9 @@ public final class TicketGrantingTicketExpirationPolicy implements ExpirationPol
         return false;
     }
 
+    public long getEarliestExpirationTime(final TicketState ticketState) {
+        return Math.min(ticketState.getCreationTime() + this.maxTimeToLiveInMilliSeconds,
+                ticketState.getLastTimeUsed() + this.timeToKillInMilliSeconds);
+    }
+
 }
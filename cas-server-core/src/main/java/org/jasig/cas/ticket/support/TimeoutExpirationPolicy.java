@@ -18,7 +18,7 @@
  */
 package org.jasig.cas.ticket.support;
 
-import org.jasig.cas.ticket.ExpirationPolicy;
+import org.jasig.cas.ticket.PredictableExpirationPolicy;
 import org.jasig.cas.ticket.TicketState;
 
 /**
@@ -32,7 +32,7 @@ import org.jasig.cas.ticket.TicketState;
  * @version $Revision$ $Date$
  * @since 3.0
  */
-public final class TimeoutExpirationPolicy implements ExpirationPolicy {
+public final class TimeoutExpirationPolicy implements PredictableExpirationPolicy {
 
     /** Serializable ID. */
     private static final long serialVersionUID = 3545511790222979383L;
@@ -48,4 +48,8 @@ public final class TimeoutExpirationPolicy implements ExpirationPolicy {
         return (ticketState == null)
             || (System.currentTimeMillis() - ticketState.getLastTimeUsed() >= this.timeToKillInMilliSeconds);
     }
+
+    public long getEarliestExpirationTime(final TicketState ticketState) {
+        return ticketState.getLastTimeUsed() + this.timeToKillInMilliSeconds;
+    }
 }
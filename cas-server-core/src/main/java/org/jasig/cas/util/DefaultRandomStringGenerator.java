@@ -18,11 +18,13 @@
  */
 package org.jasig.cas.util;
 
-import java.security.SecureRandom;
-
 /**
  * Implementation of the RandomStringGenerator that allows you to define the
  * length of the random part.
+ * <p>
+ * Random data comes from a {@link StripedSecureRandom} shared by all instances,
+ * so that concurrent threads do not contend for a single generator. Each
+ * character is drawn uniformly from the printable characters.
  * 
  * @author Scott Battaglia
  * @version $Revision$ $Date$
@@ -38,8 +40,8 @@ public final class DefaultRandomStringGenerator implements
     /** The default maximum length. */
     private static final int DEFAULT_MAX_RANDOM_LENGTH = 35;
 
-    /** An instance of secure random to ensure randomness is secure. */
-    private SecureRandom randomizer = new SecureRandom();
+    /** Source of secure random data shared by all instances. */
+    private static final StripedSecureRandom RANDOMIZER = new StripedSecureRandom();
 
     /** The maximum length the random string can be. */
     private final int maximumRandomLength;
@@ -61,27 +63,28 @@ public final class DefaultRandomStringGenerator implements
     }
 
     public String getNewString() {
-        final byte[] random = getNewStringAsBytes();
+        final char[] output = new char[this.maximumRandomLength];
+        writeNewString(output, 0);
 
-        return convertBytesToString(random);
+        return new String(output);
     }
 
 
     public byte[] getNewStringAsBytes() {
         final byte[] random = new byte[this.maximumRandomLength];
 
-        this.randomizer.nextBytes(random);
+        RANDOMIZER.nextBytes(random);
         
         return random;
     }
 
-    private String convertBytesToString(final byte[] random) {
-        final char[] output = new char[random.length];
-        for (int i = 0; i < random.length; i++) {
-            final int index = Math.abs(random[i] % PRINTABLE_CHARACTERS.length);
-            output[i] = PRINTABLE_CHARACTERS[index];
-        }
-
-        return new String(output);
+    /**
+     * Writes a new random string of the maximum length to a buffer.
+     *
+     * @param buffer Buffer to write to.
+     * @param offset Index of the first character written.
+     */
+    void writeNewString(final char[] buffer, final int offset) {
+        RANDOMIZER.nextChars(PRINTABLE_CHARACTERS, buffer, offset, this.maximumRandomLength);
     }
 }
@@ -25,6 +25,9 @@ package org.jasig.cas.util;
  * <p>
  * Tickets are of the form [PREFIX]-[SEQUENCE NUMBER]-[RANDOM STRING]-[SUFFIX]
  * </p>
+ * <p>
+ * Each id is written into a single character array of its exact length.
+ * </p>
  * 
  * @author Scott Battaglia
  * @version $Revision$ $Date$
@@ -34,10 +37,10 @@ public final class DefaultUniqueTicketIdGenerator implements
     UniqueTicketIdGenerator {
 
     /** The numeric generator to generate the static part of the id. */
-    private final NumericGenerator numericGenerator;
+    private final LongNumericGenerator numericGenerator;
 
     /** The RandomStringGenerator to generate the secure random part of the id. */
-    private final RandomStringGenerator randomStringGenerator;
+    private final DefaultRandomStringGenerator randomStringGenerator;
 
     /**
      * Optional suffix to ensure uniqueness across JVMs by specifying unique
@@ -106,21 +109,43 @@ public final class DefaultUniqueTicketIdGenerator implements
     }
 
     public String getNewTicketId(final String prefix) {
-        final String number = this.numericGenerator.getNextNumberAsString();
-        final StringBuilder buffer = new StringBuilder(prefix.length() + 2
-            + (this.suffix != null ? this.suffix.length() : 0) + this.randomStringGenerator.getMaxLength()
-            + number.length());
+        final long number = this.numericGenerator.getNextLong();
+        final int numberLength = getDigitCount(number);
+        final int randomLength = this.randomStringGenerator.getMaxLength();
+        final char[] id = new char[prefix.length() + 2 + numberLength + randomLength
+            + (this.suffix != null ? this.suffix.length() : 0)];
+
+        prefix.getChars(0, prefix.length(), id, 0);
+        int position = prefix.length();
+        id[position++] = '-';
+
+        long remaining = number;
+        for (int i = position + numberLength - 1; i >= position; i--) {
+            id[i] = (char) ('0' + remaining % 10);
+            remaining /= 10;
+        }
+        position += numberLength;
+        id[position++] = '-';
 
-        buffer.append(prefix);
-        buffer.append("-");
-        buffer.append(number);
-        buffer.append("-");
-        buffer.append(this.randomStringGenerator.getNewString());
+        this.randomStringGenerator.writeNewString(id, position);
+        position += randomLength;
 
         if (this.suffix != null) {
-            buffer.append(this.suffix);
+            this.suffix.getChars(0, this.suffix.length(), id, position);
         }
 
-        return buffer.toString();
+        return new String(id);
+    }
+
+    /**
+     * @param number non-negative number.
+     * @return number of decimal digits of the number.
+     */
+    private static int getDigitCount(final long number) {
+        int count = 1;
+        for (long n = number; n >= 10; n /= 10) {
+            count++;
+        }
+        return count;
     }
 }
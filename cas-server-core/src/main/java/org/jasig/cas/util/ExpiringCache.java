@@ -0,0 +1,266 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jasig.cas.monitor.CacheStatistics;
+
+/**
+ * In-memory cache with a maximum number of entries and a time to live per entry.
+ * <p>
+ * When the cache is full, the least recently used entry is evicted to make room for a new one. Expired entries are
+ * removed when they are looked up. The cache reports its size, hit, miss and eviction counts as
+ * {@link CacheStatistics}, so it can be observed by {@link org.jasig.cas.monitor.ExpiringCacheMonitor}.
+ *
+ * @param <K> Type of keys.
+ * @param <V> Type of values.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public final class ExpiringCache<K, V> implements CacheStatistics {
+
+    private final String name;
+
+    private final int maxSize;
+
+    private final long timeToLive;
+
+    private final Map<K, Entry<V>> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final AtomicLong expirations = new AtomicLong();
+
+
+    /**
+     * Creates a new cache.
+     *
+     * @param name Name of the cache, used in statistics.
+     * @param maxSize Maximum number of entries.
+     * @param timeToLive Default time to live of entries in milliseconds.
+     */
+    public ExpiringCache(final String name, final int maxSize, final long timeToLive) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive.");
+        }
+        this.name = name;
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+        this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<K, Entry<V>> eldest) {
+                if (size() > ExpiringCache.this.maxSize) {
+                    if (eldest.getValue().isExpired(System.currentTimeMillis())) {
+                        expirations.incrementAndGet();
+                    } else {
+                        evictions.incrementAndGet();
+                    }
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+
+    /**
+     * Gets the value cached for the given key.
+     *
+     * @param key Key to look up.
+     *
+     * @return Cached value, or null if there is none or it has expired.
+     */
+    public V get(final K key) {
+        final Entry<V> entry;
+        synchronized (this.entries) {
+            entry = this.entries.get(key);
+            if (entry != null && entry.isExpired(System.currentTimeMillis())) {
+                this.entries.remove(key);
+                this.expirations.incrementAndGet();
+                this.misses.incrementAndGet();
+                return null;
+            }
+        }
+        if (entry == null) {
+            this.misses.incrementAndGet();
+            return null;
+        }
+        this.hits.incrementAndGet();
+        return entry.value;
+    }
+
+
+    /**
+     * Caches a value for the default time to live.
+     *
+     * @param key Key of the value.
+     * @param value Value to cache.
+     */
+    public void put(final K key, final V value) {
+        put(key, value, this.timeToLive);
+    }
+
+
+    /**
+     * Caches a value for the given time.
+     *
+     * @param key Key of the value.
+     * @param value Value to cache.
+     * @param ttl Time to live in milliseconds; values with a non-positive time to live are not cached.
+     */
+    public void put(final K key, final V value, final long ttl) {
+        if (ttl <= 0) {
+            remove(key);
+            return;
+        }
+        final Entry<V> entry = new Entry<V>(value, System.currentTimeMillis() + ttl);
+        synchronized (this.entries) {
+            this.entries.put(key, entry);
+        }
+    }
+
+
+    /**
+     * Removes the value cached for the given key.
+     *
+     * @param key Key of the value.
+     *
+     * @return True if a value was removed, false otherwise.
+     */
+    public boolean remove(final K key) {
+        synchronized (this.entries) {
+            return this.entries.remove(key) != null;
+        }
+    }
+
+
+    /** Removes all entries. */
+    public void clear() {
+        synchronized (this.entries) {
+            this.entries.clear();
+        }
+    }
+
+
+    /**
+     * @return Default time to live of entries in milliseconds.
+     */
+    public long getTimeToLive() {
+        return this.timeToLive;
+    }
+
+
+    public long getHits() {
+        return this.hits.get();
+    }
+
+
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+
+    /**
+     * @return Number of entries removed because they expired.
+     */
+    public long getExpirations() {
+        return this.expirations.get();
+    }
+
+
+    /**
+     * @return Number of entries in the cache, including expired entries not removed yet.
+     */
+    public long getSize() {
+        synchronized (this.entries) {
+            return this.entries.size();
+        }
+    }
+
+
+    public long getCapacity() {
+        return this.maxSize;
+    }
+
+
+    /**
+     * @return Number of entries evicted before they expired to make room for new entries.
+     */
+    public long getEvictions() {
+        return this.evictions.get();
+    }
+
+
+    public int getPercentFree() {
+        return (int) ((this.maxSize - getSize()) * 100 / this.maxSize);
+    }
+
+
+    public String getName() {
+        return this.name;
+    }
+
+
+    public void toString(final StringBuilder builder) {
+        if (this.name != null) {
+            builder.append(this.name).append(':');
+        }
+        builder.append(getSize()).append(" items, ");
+        builder.append(getPercentFree()).append("% free, ");
+        builder.append(getHits()).append(" hits, ");
+        builder.append(getMisses()).append(" misses, ");
+        builder.append(getExpirations()).append(" expirations, ");
+        builder.append(getEvictions()).append(" evictions");
+    }
+
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        toString(builder);
+        return builder.toString();
+    }
+
+
+    private static final class Entry<V> {
+
+        private final V value;
+
+        private final long expiresAt;
+
+        public Entry(final V value, final long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        public boolean isExpired(final long now) {
+            return now >= this.expiresAt;
+        }
+    }
+}
@@ -66,6 +66,8 @@ public final class HttpClient implements Serializable, DisposableBean {
 
     private static ExecutorService EXECUTOR_SERVICE = Executors.newFixedThreadPool(100);
 
+    private static MessageDispatcher MESSAGE_DISPATCHER;
+
 
     /** List of HTTP status codes considered valid by this AuthenticationHandler. */
     @NotNull
@@ -104,6 +106,18 @@ public final class HttpClient implements Serializable, DisposableBean {
         EXECUTOR_SERVICE = executorService;
     }
 
+    /**
+     * Sets the dispatcher used to deliver messages sent asynchronously, e.g. single sign-out requests. Without a
+     * dispatcher they are submitted to the executor service with no bound on the number of pending messages.
+     * Like the executor service, the dispatcher is shared by all httpClients.
+     *
+     * @param dispatcher Message dispatcher.
+     * @see #setExecutorService(ExecutorService)
+     */
+    public void setMessageDispatcher(final MessageDispatcher dispatcher) {
+        MESSAGE_DISPATCHER = dispatcher;
+    }
+
     /**
      * Sends a message to a particular endpoint.  Option of sending it without waiting to ensure a response was returned.
      * <p>
@@ -115,7 +129,14 @@ public final class HttpClient implements Serializable, DisposableBean {
      * @return boolean if the message was sent, or async was used.  false if the message failed.
      */
     public boolean sendMessageToEndPoint(final String url, final String message, final boolean async) {
-        final Future<Boolean> result = EXECUTOR_SERVICE.submit(new MessageSender(url, message, this.readTimeout, this.connectionTimeout, this.followRedirects));
+        final MessageSender sender = new MessageSender(url, message, this.readTimeout, this.connectionTimeout, this.followRedirects);
+        final MessageDispatcher dispatcher = MESSAGE_DISPATCHER;
+
+        if (async && dispatcher != null) {
+            return dispatcher.dispatch(url, sender);
+        }
+
+        final Future<Boolean> result = EXECUTOR_SERVICE.submit(sender);
 
         if (async) {
             return true;
@@ -263,6 +284,7 @@ public final class HttpClient implements Serializable, DisposableBean {
         public Boolean call() throws Exception {
             HttpURLConnection connection = null;
             BufferedReader in = null;
+            boolean success = false;
             try {
                 if (log.isDebugEnabled()) {
                     log.debug("Attempting to access " + url);
@@ -293,6 +315,7 @@ public final class HttpClient implements Serializable, DisposableBean {
                 if (log.isDebugEnabled()) {
                     log.debug("Finished sending message to" + url);
                 }
+                success = true;
                 return true;
             } catch (final SocketTimeoutException e) {
                 log.warn("Socket Timeout Detected while attempting to send message to [" + url + "].");
@@ -308,7 +331,9 @@ public final class HttpClient implements Serializable, DisposableBean {
                         // can't do anything
                     }
                 }
-                if (connection != null) {
+                // after a successful exchange the response has been read completely and the connection is
+                // left open so that it can be reused for the next message to the same host
+                if (connection != null && !success) {
                     connection.disconnect();
                 }
             }
@@ -0,0 +1,411 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.util;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import org.jasig.cas.monitor.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Delivers messages that nobody waits for, such as single sign-out requests, to HTTP endpoints.
+ * <p>
+ * Messages are queued per endpoint (scheme, host and port of the URL) and sent by a fixed number of threads.
+ * At most {@link #setMaxConnectionsPerEndpoint(int) maxConnectionsPerEndpoint} messages are in flight per
+ * endpoint at any time, so a slow or unreachable endpoint cannot tie up every thread. A thread sends up to
+ * {@link #setBatchSize(int) batchSize} queued messages of an endpoint back to back, which lets them reuse the
+ * same keep-alive connection, before moving on to other endpoints. Failed messages are retried with exponential
+ * backoff.
+ * <p>
+ * The total number of queued messages is bounded by {@link #setQueueCapacity(int) queueCapacity}; what happens to
+ * messages beyond that is decided by the {@link OverflowPolicy}.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public final class MessageDispatcher implements DisposableBean {
+
+    /** What to do with a message when the queue is full. */
+    public enum OverflowPolicy {
+        /** The new message is discarded. */
+        DISCARD,
+
+        /** The oldest message queued for the same endpoint is discarded, or the new message if there is none. */
+        DISCARD_OLDEST,
+
+        /** The new message is sent by the calling thread, which slows down producers to the delivery rate. */
+        CALLER_RUNS
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(MessageDispatcher.class);
+
+    private final ConcurrentHashMap<String, Endpoint> endpoints = new ConcurrentHashMap<String, Endpoint>();
+
+    private final AtomicInteger queueSize = new AtomicInteger();
+
+    private final AtomicLong sentCount = new AtomicLong();
+
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private final AtomicLong retryCount = new AtomicLong();
+
+    private final AtomicLong discardedCount = new AtomicLong();
+
+    private final LatencyHistogram sendLatency = new LatencyHistogram("send");
+
+    private final LatencyHistogram queueLatency = new LatencyHistogram("queue");
+
+    @Min(1)
+    private int threads = 20;
+
+    @Min(1)
+    private int queueCapacity = 10000;
+
+    @NotNull
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DISCARD_OLDEST;
+
+    @Min(1)
+    private int maxConnectionsPerEndpoint = 2;
+
+    @Min(1)
+    private int batchSize = 50;
+
+    @Min(0)
+    private int maxRetries = 2;
+
+    @Min(0)
+    private long retryDelay = 1000;
+
+    private ExecutorService executor;
+
+    private ScheduledExecutorService retryScheduler;
+
+    /**
+     * Queues a message for delivery.
+     *
+     * @param url the URL the message is sent to; messages are grouped into endpoints by scheme, host and port.
+     * @param sender sends the message and returns true on success, false or an exception on failure.
+     * @return true if the message was queued or sent, false if it was discarded.
+     */
+    public boolean dispatch(final String url, final Callable<Boolean> sender) {
+        return enqueue(new Message(getEndpoint(url), sender), true);
+    }
+
+    /**
+     * @param threads number of threads sending messages. Default is 20.
+     */
+    public void setThreads(final int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * @param capacity maximum number of queued messages over all endpoints. Default is 10000.
+     */
+    public void setQueueCapacity(final int capacity) {
+        this.queueCapacity = capacity;
+    }
+
+    /**
+     * @param policy what to do with messages when the queue is full. Default is
+     * {@link OverflowPolicy#DISCARD_OLDEST}.
+     */
+    public void setOverflowPolicy(final OverflowPolicy policy) {
+        this.overflowPolicy = policy;
+    }
+
+    /**
+     * @param max maximum number of messages sent to the same endpoint concurrently. Default is 2.
+     */
+    public void setMaxConnectionsPerEndpoint(final int max) {
+        this.maxConnectionsPerEndpoint = max;
+    }
+
+    /**
+     * @param size maximum number of messages sent to an endpoint before the thread moves on to other endpoints.
+     * Default is 50.
+     */
+    public void setBatchSize(final int size) {
+        this.batchSize = size;
+    }
+
+    /**
+     * @param retries number of times a failed message is retried. Default is 2.
+     */
+    public void setMaxRetries(final int retries) {
+        this.maxRetries = retries;
+    }
+
+    /**
+     * @param delay delay in milliseconds before the first retry of a failed message; every further retry waits
+     * twice as long as the previous one. Default is 1000.
+     */
+    public void setRetryDelay(final long delay) {
+        this.retryDelay = delay;
+    }
+
+    public int getQueueCapacity() {
+        return this.queueCapacity;
+    }
+
+    public int getQueueSize() {
+        return this.queueSize.get();
+    }
+
+    public long getSentCount() {
+        return this.sentCount.get();
+    }
+
+    /**
+     * @return number of messages that could not be delivered after all retries.
+     */
+    public long getFailedCount() {
+        return this.failedCount.get();
+    }
+
+    public long getRetryCount() {
+        return this.retryCount.get();
+    }
+
+    public long getDiscardedCount() {
+        return this.discardedCount.get();
+    }
+
+    /**
+     * @return time taken by each delivery attempt.
+     */
+    public LatencyHistogram getSendLatency() {
+        return this.sendLatency;
+    }
+
+    /**
+     * @return time messages spent in the queue before a delivery attempt.
+     */
+    public LatencyHistogram getQueueLatency() {
+        return this.queueLatency;
+    }
+
+    public void destroy() throws Exception {
+        synchronized (this) {
+            if (this.executor != null) {
+                this.executor.shutdownNow();
+                this.retryScheduler.shutdownNow();
+            }
+        }
+        if (this.queueSize.get() > 0) {
+            log.warn("Discarding {} undelivered messages on shutdown.", this.queueSize.get());
+        }
+    }
+
+    private boolean enqueue(final Message message, final boolean allowCallerRuns) {
+        final Endpoint endpoint = message.endpoint;
+
+        if (this.queueSize.incrementAndGet() > this.queueCapacity) {
+            this.queueSize.decrementAndGet();
+            if (this.overflowPolicy == OverflowPolicy.CALLER_RUNS && allowCallerRuns) {
+                send(message);
+                return true;
+            }
+            if (this.overflowPolicy != OverflowPolicy.DISCARD_OLDEST || endpoint.queue.poll() == null) {
+                discard(message);
+                return false;
+            }
+            // the new message takes the slot of the discarded one
+            this.discardedCount.incrementAndGet();
+            log.warn("Message queue full; discarding oldest message to {}", endpoint.name);
+        }
+
+        message.queuedAt = System.nanoTime();
+        endpoint.queue.add(message);
+        startWorker(endpoint);
+        return true;
+    }
+
+    private void startWorker(final Endpoint endpoint) {
+        int active;
+        do {
+            active = endpoint.workers.get();
+            if (active >= this.maxConnectionsPerEndpoint || endpoint.queue.isEmpty()) {
+                return;
+            }
+        } while (!endpoint.workers.compareAndSet(active, active + 1));
+
+        getExecutor().execute(new Worker(endpoint));
+    }
+
+    private void send(final Message message) {
+        final long start = System.nanoTime();
+        boolean success;
+        try {
+            success = Boolean.TRUE.equals(message.sender.call());
+        } catch (final Exception e) {
+            log.debug("Failed sending message to {}", message.endpoint.name, e);
+            success = false;
+        }
+        this.sendLatency.record(System.nanoTime() - start);
+
+        if (success) {
+            this.sentCount.incrementAndGet();
+        } else if (message.attempts < this.maxRetries && !getRetryScheduler().isShutdown()) {
+            final long delay = this.retryDelay << message.attempts;
+            message.attempts++;
+            this.retryCount.incrementAndGet();
+            getRetryScheduler().schedule(new Runnable() {
+                public void run() {
+                    enqueue(message, false);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } else {
+            this.failedCount.incrementAndGet();
+            log.warn("Giving up sending message to {} after {} attempts.", message.endpoint.name, message.attempts + 1);
+        }
+    }
+
+    private void discard(final Message message) {
+        this.discardedCount.incrementAndGet();
+        log.warn("Message queue full; discarding message to {}", message.endpoint.name);
+    }
+
+    private Endpoint getEndpoint(final String url) {
+        final String name = getEndpointName(url);
+        Endpoint endpoint = this.endpoints.get(name);
+        if (endpoint == null) {
+            final Endpoint newEndpoint = new Endpoint(name);
+            endpoint = this.endpoints.putIfAbsent(name, newEndpoint);
+            if (endpoint == null) {
+                endpoint = newEndpoint;
+            }
+        }
+        return endpoint;
+    }
+
+    private static String getEndpointName(final String url) {
+        try {
+            final URL u = new URL(url);
+            return u.getProtocol() + "://" + u.getHost() + ":" + (u.getPort() < 0 ? u.getDefaultPort() : u.getPort());
+        } catch (final MalformedURLException e) {
+            // the sender will fail on its own; group all invalid URLs together
+            return "";
+        }
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (this.executor == null) {
+            this.executor = Executors.newFixedThreadPool(this.threads, new NamedThreadFactory("MessageDispatcher"));
+            this.retryScheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("MessageDispatcher-retry"));
+        }
+        return this.executor;
+    }
+
+    private synchronized ScheduledExecutorService getRetryScheduler() {
+        getExecutor();
+        return this.retryScheduler;
+    }
+
+    /**
+     * Sends queued messages of one endpoint until its queue is empty or a batch has been sent.
+     */
+    private final class Worker implements Runnable {
+
+        private final Endpoint endpoint;
+
+        public Worker(final Endpoint endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        public void run() {
+            try {
+                Message message;
+                int sent = 0;
+                while (sent < batchSize && (message = this.endpoint.queue.poll()) != null) {
+                    queueSize.decrementAndGet();
+                    queueLatency.record(System.nanoTime() - message.queuedAt);
+                    send(message);
+                    sent++;
+                }
+            } finally {
+                this.endpoint.workers.decrementAndGet();
+                // messages may have been queued after the last poll, or the batch may be exhausted
+                startWorker(this.endpoint);
+            }
+        }
+    }
+
+    private static final class Endpoint {
+
+        private final String name;
+
+        private final ConcurrentLinkedQueue<Message> queue = new ConcurrentLinkedQueue<Message>();
+
+        /** Number of workers currently sending messages to this endpoint. */
+        private final AtomicInteger workers = new AtomicInteger();
+
+        public Endpoint(final String name) {
+            this.name = name;
+        }
+    }
+
+    private static final class Message {
+
+        private final Endpoint endpoint;
+
+        private final Callable<Boolean> sender;
+
+        private int attempts;
+
+        private long queuedAt;
+
+        public Message(final Endpoint endpoint, final Callable<Boolean> sender) {
+            this.endpoint = endpoint;
+            this.sender = sender;
+        }
+    }
+
+    private static final class NamedThreadFactory implements ThreadFactory {
+
+        private final String name;
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        public NamedThreadFactory(final String name) {
+            this.name = name;
+        }
+
+        public Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r, this.name + "-" + this.count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.util;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+/**
+ * Source of secure random data for many concurrent threads. Threads are spread by id over a
+ * number of stripes, each with its own {@link SecureRandom} and a block of random bytes that is
+ * refilled when used up, so threads rarely wait on one another or on the random number generator.
+ * <p>
+ * The stripes use the SHA1PRNG algorithm, which unlike the default native generator on Unix
+ * platforms holds no lock shared between instances. Each is seeded from the default generator.
+ *
+ * @author agent
+ * @since 4.0
+ */
+final class StripedSecureRandom {
+
+    /** Algorithm of the generator of each stripe. */
+    private static final String ALGORITHM = "SHA1PRNG";
+
+    /** Number of random bytes generated at a time for each stripe. */
+    private static final int BLOCK_SIZE = 512;
+
+    /** Number of seed bytes for each stripe. */
+    private static final int SEED_SIZE = 32;
+
+    private final Stripe[] stripes;
+
+    private final int stripeMask;
+
+    /**
+     * Creates an instance with a stripe per available processor.
+     */
+    public StripedSecureRandom() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates an instance with at least the given number of stripes.
+     *
+     * @param concurrency Expected number of threads using the instance at once.
+     */
+    public StripedSecureRandom(final int concurrency) {
+        final int count = concurrency > 1 ? Integer.highestOneBit(concurrency - 1) << 1 : 1;
+        final SecureRandom seedSource = new SecureRandom();
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new Stripe(newSecureRandom(seedSource));
+        }
+        this.stripeMask = count - 1;
+    }
+
+    /**
+     * Fills an array with random bytes.
+     *
+     * @param bytes Array to fill.
+     */
+    public void nextBytes(final byte[] bytes) {
+        final Stripe stripe = getStripe();
+        synchronized (stripe) {
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = (byte) stripe.next();
+            }
+        }
+    }
+
+    /**
+     * Writes random characters of an alphabet to an array. Random bytes that fall outside the
+     * alphabet are discarded rather than reduced modulo its size, so every character is equally likely.
+     *
+     * @param alphabet Characters to choose from, at most 256.
+     * @param buffer Array to write to.
+     * @param offset Index of the first character written.
+     * @param length Number of characters written.
+     */
+    public void nextChars(final char[] alphabet, final char[] buffer, final int offset, final int length) {
+        final int mask = alphabet.length > 1 ? (Integer.highestOneBit(alphabet.length - 1) << 1) - 1 : 0;
+        final int end = offset + length;
+        final Stripe stripe = getStripe();
+        synchronized (stripe) {
+            int i = offset;
+            while (i < end) {
+                final int index = stripe.next() & mask;
+                if (index < alphabet.length) {
+                    buffer[i++] = alphabet[index];
+                }
+            }
+        }
+    }
+
+    private Stripe getStripe() {
+        return this.stripes[(int) Thread.currentThread().getId() & this.stripeMask];
+    }
+
+    private static SecureRandom newSecureRandom(final SecureRandom seedSource) {
+        final byte[] seed = new byte[SEED_SIZE];
+        seedSource.nextBytes(seed);
+        try {
+            // Seeding before first use keeps the generator from seeding itself, which may block
+            final SecureRandom random = SecureRandom.getInstance(ALGORITHM);
+            random.setSeed(seed);
+            return random;
+        } catch (final NoSuchAlgorithmException e) {
+            return new SecureRandom(seed);
+        }
+    }
+
+    /** Generator of a stripe with its block of random bytes. Guarded by its own lock. */
+    private static final class Stripe {
+        private final SecureRandom random;
+
+        private final byte[] block = new byte[BLOCK_SIZE];
+
+        private int position = BLOCK_SIZE;
+
+        public Stripe(final SecureRandom random) {
+            this.random = random;
+        }
+
+        public int next() {
+            if (this.position == BLOCK_SIZE) {
+                this.random.nextBytes(this.block);
+                this.position = 0;
+            }
+            return this.block[this.position++] & 0xff;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.web.support;
+
+import java.io.IOException;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.jasig.cas.ticket.registry.AbstractDistributedTicketRegistry;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Opens a ticket registry request scope for the duration of each request so that distributed ticket registries
+ * fetch each ticket-granting ticket at most once per request.
+ *
+ * @author agent
+ * @since 4.0
+ * @see AbstractDistributedTicketRegistry#beginRequestScope()
+ */
+public final class TicketRegistryRequestScopeFilter extends OncePerRequestFilter {
+
+    @Override
+    protected void doFilterInternal(final HttpServletRequest request, final HttpServletResponse response,
+            final FilterChain filterChain) throws ServletException, IOException {
+        final boolean opened = AbstractDistributedTicketRegistry.beginRequestScope();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            if (opened) {
+                AbstractDistributedTicketRegistry.endRequestScope();
+            }
+        }
+    }
+}
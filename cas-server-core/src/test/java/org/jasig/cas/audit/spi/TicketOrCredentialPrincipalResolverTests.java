@@ -0,0 +1,87 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.audit.spi;
+
+import org.aspectj.lang.JoinPoint;
+import org.jasig.cas.TestUtils;
+import org.jasig.cas.ticket.TicketGrantingTicket;
+import org.jasig.cas.ticket.TicketGrantingTicketImpl;
+import org.jasig.cas.ticket.registry.TicketRegistry;
+import org.jasig.cas.ticket.support.NeverExpiresExpirationPolicy;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit test for {@link TicketOrCredentialPrincipalResolver}.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public class TicketOrCredentialPrincipalResolverTests {
+
+    private final TicketGrantingTicket ticket = new TicketGrantingTicketImpl(
+            "TGT-1", TestUtils.getAuthentication(), new NeverExpiresExpirationPolicy());
+
+    private TicketRegistry ticketRegistry;
+
+    private TicketOrCredentialPrincipalResolver resolver;
+
+    @Before
+    public void setUp() {
+        this.ticketRegistry = mock(TicketRegistry.class);
+        when(this.ticketRegistry.getTicket("TGT-1")).thenReturn(this.ticket);
+        this.resolver = new TicketOrCredentialPrincipalResolver(this.ticketRegistry);
+    }
+
+    @Test
+    public void testHeldTicketIsUsed() {
+        AuditTicketHolder.setTicket(this.ticket);
+        assertEquals(TestUtils.CONST_USERNAME, this.resolver.resolveFrom(joinPoint("TGT-1"), (Object) null));
+        verify(this.ticketRegistry, never()).getTicket(anyString());
+
+        // The ticket is released once taken
+        assertEquals(TestUtils.CONST_USERNAME, this.resolver.resolveFrom(joinPoint("TGT-1"), (Object) null));
+        verify(this.ticketRegistry).getTicket("TGT-1");
+    }
+
+    @Test
+    public void testReleasedTicketKeepsPrincipalId() {
+        AuditTicketHolder.setTicket(this.ticket);
+        AuditTicketHolder.release();
+        assertEquals(TestUtils.CONST_USERNAME, this.resolver.resolveFrom(joinPoint("TGT-1"), (Object) null));
+        verify(this.ticketRegistry, never()).getTicket(anyString());
+    }
+
+    @Test
+    public void testHeldTicketWithOtherIdIsIgnored() {
+        AuditTicketHolder.setTicket(new TicketGrantingTicketImpl(
+                "TGT-2", TestUtils.getAuthentication("other"), new NeverExpiresExpirationPolicy()));
+        assertEquals(TestUtils.CONST_USERNAME, this.resolver.resolveFrom(joinPoint("TGT-1"), new Exception()));
+        verify(this.ticketRegistry).getTicket("TGT-1");
+    }
+
+    private static JoinPoint joinPoint(final Object... args) {
+        final JoinPoint joinPoint = mock(JoinPoint.class);
+        when(joinPoint.getArgs()).thenReturn(args);
+        return joinPoint;
+    }
+}
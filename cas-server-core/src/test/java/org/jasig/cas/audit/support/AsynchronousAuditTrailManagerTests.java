@@ -0,0 +1,251 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.audit.support;
+
+import java.io.File;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.inspektr.audit.AuditActionContext;
+import com.github.inspektr.audit.AuditPointRuntimeInfo;
+import com.github.inspektr.audit.AuditTrailManager;
+import org.jasig.cas.monitor.AuditTrailMonitor;
+import org.jasig.cas.monitor.AuditTrailStatus;
+import org.jasig.cas.monitor.StatusCode;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for {@link AsynchronousAuditTrailManager}.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public class AsynchronousAuditTrailManagerTests {
+
+    private static final AuditPointRuntimeInfo RUNTIME_INFO = new AuditPointRuntimeInfo() {
+        public String asString() {
+            return "test";
+        }
+    };
+
+    private AsynchronousAuditTrailManager manager;
+
+    @After
+    public void tearDown() throws Exception {
+        if (this.manager != null) {
+            this.manager.destroy();
+        }
+    }
+
+    @Test
+    public void testBatchesAreInsertedIntoAuditTable() throws Exception {
+        final DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:hsqldb:mem:cas-audit-trail", "sa", "");
+        final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE COM_AUDIT_TRAIL (AUD_USER VARCHAR(100), AUD_CLIENT_IP VARCHAR(15), "
+                + "AUD_SERVER_IP VARCHAR(15), AUD_RESOURCE VARCHAR(100), AUD_ACTION VARCHAR(100), "
+                + "APPLIC_CD VARCHAR(5), AUD_DATE TIMESTAMP)");
+        try {
+            final CountingBatchManager delegate = new CountingBatchManager(new JdbcBatchAuditTrailManager(dataSource));
+            this.manager = new AsynchronousAuditTrailManager(delegate);
+            this.manager.setBatchSize(50);
+            this.manager.afterPropertiesSet();
+
+            final StringBuilder longResource = new StringBuilder();
+            for (int i = 0; i < 150; i++) {
+                longResource.append('x');
+            }
+            for (int i = 0; i < 250; i++) {
+                this.manager.record(context("user" + i, longResource.toString()));
+            }
+            this.manager.destroy();
+            this.manager = null;
+
+            assertEquals(250, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM COM_AUDIT_TRAIL"));
+            assertEquals(100, jdbcTemplate.queryForInt("SELECT MAX(LENGTH(AUD_RESOURCE)) FROM COM_AUDIT_TRAIL"));
+            assertEquals(250, delegate.records);
+            assertTrue(delegate.batches >= 5);
+        } finally {
+            jdbcTemplate.execute("DROP TABLE COM_AUDIT_TRAIL");
+        }
+    }
+
+    @Test
+    public void testRecordsAreDroppedWhenBufferIsFull() throws Exception {
+        final BlockingManager delegate = new BlockingManager();
+        this.manager = new AsynchronousAuditTrailManager(delegate);
+        this.manager.setCapacity(2);
+        this.manager.setBatchSize(1);
+        this.manager.setOverflowPolicy(AsynchronousAuditTrailManager.OverflowPolicy.DROP);
+        this.manager.afterPropertiesSet();
+        final AuditTrailMonitor monitor = new AuditTrailMonitor(this.manager);
+        monitor.setQueueDepthWarnThreshold(5);
+
+        this.manager.record(context("user0", "resource"));
+        delegate.entered.await();
+        for (int i = 1; i < 4; i++) {
+            this.manager.record(context("user" + i, "resource"));
+        }
+        assertEquals(2, this.manager.getQueueDepth());
+        assertEquals(1, this.manager.getDroppedCount());
+        assertTrue(this.manager.getLag() >= 0);
+
+        final AuditTrailStatus status = monitor.observe();
+        assertEquals(StatusCode.WARN, status.getCode());
+        assertEquals(2, status.getQueueDepth());
+        assertEquals(StatusCode.OK, monitor.observe().getCode());
+
+        delegate.release.countDown();
+        this.manager.destroy();
+        this.manager = null;
+        assertEquals(3, delegate.records.size());
+        assertEquals("user2", delegate.records.get(2).getPrincipal());
+    }
+
+    @Test
+    public void testFailedBatchesAreSpilledAndReplayed() throws Exception {
+        final File spillFile = File.createTempFile("audit", ".spill");
+        spillFile.deleteOnExit();
+        final FailingManager delegate = new FailingManager();
+        this.manager = new AsynchronousAuditTrailManager(delegate);
+        this.manager.setOverflowPolicy(AsynchronousAuditTrailManager.OverflowPolicy.SPILL);
+        this.manager.setSpillFile(spillFile);
+        this.manager.afterPropertiesSet();
+
+        this.manager.record(context("first\tuser\\", "line\nbreak"));
+        this.manager.record(context("second", "resource"));
+        waitFor(new Condition() {
+            public boolean isMet() {
+                return manager.getSpilledCount() == 2;
+            }
+        });
+        assertTrue(delegate.records.isEmpty());
+
+        delegate.failing = false;
+        waitFor(new Condition() {
+            public boolean isMet() {
+                return manager.getWrittenCount() == 2;
+            }
+        });
+        assertEquals("first\tuser\\", delegate.records.get(0).getPrincipal());
+        assertEquals("line\nbreak", delegate.records.get(0).getResourceOperatedUpon());
+        assertEquals("second", delegate.records.get(1).getPrincipal());
+        assertEquals(0, this.manager.getFailedCount());
+        assertFalse(new File(spillFile.getPath() + ".replay").exists());
+    }
+
+    @Test
+    public void testReplayBacksOffWhileDelegateFails() throws Exception {
+        final File spillFile = File.createTempFile("audit", ".spill");
+        spillFile.deleteOnExit();
+        final FailingManager delegate = new FailingManager();
+        this.manager = new AsynchronousAuditTrailManager(delegate);
+        this.manager.setOverflowPolicy(AsynchronousAuditTrailManager.OverflowPolicy.SPILL);
+        this.manager.setSpillFile(spillFile);
+        this.manager.afterPropertiesSet();
+
+        this.manager.record(context("user", "resource"));
+        Thread.sleep(3000);
+        // One write and replays after 0.5, 1.5 and 3.5 s; without a backoff it would be replayed every 0.5 s
+        assertTrue(delegate.attempts.get() <= 4);
+        assertEquals(0, this.manager.getFailedCount());
+
+        delegate.failing = false;
+        this.manager.destroy();
+        this.manager = null;
+        assertTrue(spillFile.length() > 0);
+    }
+
+    private static AuditActionContext context(final String principal, final String resource) {
+        return new AuditActionContext(
+                principal, resource, "TEST_ACTION", "CAS", new Date(), "127.0.0.1", "127.0.0.1", RUNTIME_INFO);
+    }
+
+    private static void waitFor(final Condition condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.isMet()) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private interface Condition {
+        boolean isMet();
+    }
+
+    private static class CountingBatchManager implements BatchAuditTrailManager {
+        private final BatchAuditTrailManager delegate;
+        private int batches;
+        private int records;
+
+        CountingBatchManager(final BatchAuditTrailManager delegate) {
+            this.delegate = delegate;
+        }
+
+        public void record(final AuditActionContext auditActionContext) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void recordAll(final List<AuditActionContext> batch) {
+            this.delegate.recordAll(batch);
+            this.batches++;
+            this.records += batch.size();
+        }
+    }
+
+    private static class BlockingManager implements AuditTrailManager {
+        private final List<AuditActionContext> records = new CopyOnWriteArrayList<AuditActionContext>();
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        public void record(final AuditActionContext auditActionContext) {
+            this.entered.countDown();
+            try {
+                this.release.await();
+            } catch (final InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            this.records.add(auditActionContext);
+        }
+    }
+
+    private static class FailingManager implements AuditTrailManager {
+        private final List<AuditActionContext> records = new CopyOnWriteArrayList<AuditActionContext>();
+        private final AtomicInteger attempts = new AtomicInteger();
+        private volatile boolean failing = true;
+
+        public void record(final AuditActionContext auditActionContext) {
+            this.attempts.incrementAndGet();
+            if (this.failing) {
+                throw new IllegalStateException("Audit database is down");
+            }
+            this.records.add(auditActionContext);
+        }
+    }
+}
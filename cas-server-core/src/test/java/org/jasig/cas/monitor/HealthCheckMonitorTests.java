@@ -18,15 +18,19 @@
  */
 package org.jasig.cas.monitor;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jasig.cas.ticket.registry.DefaultTicketRegistry;
 import org.junit.Before;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Unit test for {@link HealthCheckMonitor} class.
@@ -85,6 +89,160 @@ public class HealthCheckMonitorTests {
         assertEquals(StatusCode.ERROR, this.monitor.observe().getCode());
     }
     
+    @Test
+    public void testMonitorsAreObservedInParallel() throws Exception {
+        this.monitor.setTimeout(5000);
+        this.monitor.setMonitors(Arrays.<Monitor>asList(newSlowMonitor("A", 300), newSlowMonitor("B", 300)));
+        final long start = System.currentTimeMillis();
+        final HealthStatus status = this.monitor.observe();
+        assertTrue(System.currentTimeMillis() - start < 550);
+        assertEquals(StatusCode.OK, status.getCode());
+        assertEquals(2, status.getDetails().size());
+    }
+
+    @Test
+    public void testSlowMonitorTimesOut() throws Exception {
+        this.monitor.setTimeout(100);
+        this.monitor.setMonitors(Arrays.<Monitor>asList(new MemoryMonitor(), newSlowMonitor("Slow", 10000)));
+        final long start = System.currentTimeMillis();
+        final HealthStatus status = this.monitor.observe();
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        assertEquals(StatusCode.ERROR, status.getCode());
+        assertEquals(StatusCode.OK, status.getDetails().get(MemoryMonitor.class.getSimpleName()).getCode());
+        assertEquals(StatusCode.ERROR, status.getDetails().get("Slow").getCode());
+    }
+
+    @Test
+    public void testHungMonitorIsNotObservedAgain() throws Exception {
+        final AtomicInteger count = new AtomicInteger();
+        final Monitor hung = new Monitor() {
+            @Override
+            public String getName() {
+                return "Hung";
+            }
+
+            @Override
+            public Status observe() {
+                count.incrementAndGet();
+                try {
+                    Thread.sleep(10000);
+                } catch (final InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return new Status(StatusCode.OK);
+            }
+        };
+        this.monitor.setTimeout(50);
+        this.monitor.setMonitors(Collections.singleton(hung));
+        try {
+            for (int i = 0; i < 3; i++) {
+                assertEquals(StatusCode.ERROR, this.monitor.observe().getCode());
+            }
+            assertEquals(1, count.get());
+        } finally {
+            this.monitor.destroy();
+        }
+    }
+
+    @Test
+    public void testLateResultIsNotReported() throws Exception {
+        final AtomicInteger count = new AtomicInteger();
+        final Monitor late = new Monitor() {
+            @Override
+            public String getName() {
+                return "Late";
+            }
+
+            @Override
+            public Status observe() {
+                if (count.incrementAndGet() > 1) {
+                    return new Status(StatusCode.WARN);
+                }
+                try {
+                    Thread.sleep(200);
+                } catch (final InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return new Status(StatusCode.OK);
+            }
+        };
+        this.monitor.setTimeout(50);
+        this.monitor.setMonitors(Collections.singleton(late));
+        try {
+            assertEquals(StatusCode.ERROR, this.monitor.observe().getCode());
+            Thread.sleep(400);
+            assertEquals(StatusCode.WARN, this.monitor.observe().getCode());
+            assertEquals(2, count.get());
+        } finally {
+            this.monitor.destroy();
+        }
+    }
+
+    @Test
+    public void testFreshObservationIsReused() throws Exception {
+        final AtomicInteger count = new AtomicInteger();
+        this.monitor.setMonitors(Collections.singleton(newCountingMonitor(count)));
+        this.monitor.setFreshness(60000);
+        final HealthStatus status = this.monitor.observe();
+        assertSame(status, this.monitor.observe());
+        assertEquals(1, count.get());
+
+        this.monitor.setFreshness(0);
+        this.monitor.observe();
+        assertEquals(2, count.get());
+    }
+
+    @Test
+    public void testStatusIsRefreshedInBackground() throws Exception {
+        final AtomicInteger count = new AtomicInteger();
+        this.monitor.setMonitors(Collections.singleton(newCountingMonitor(count)));
+        this.monitor.setRefreshInterval(50);
+        this.monitor.afterPropertiesSet();
+        try {
+            Thread.sleep(300);
+            final int observed = count.get();
+            assertTrue(observed > 1);
+            assertEquals(StatusCode.OK, this.monitor.getStatus().getCode());
+            assertTrue(count.get() - observed <= 1);
+        } finally {
+            this.monitor.destroy();
+        }
+    }
+
+    private static Monitor newSlowMonitor(final String name, final long millis) {
+        return new Monitor() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public Status observe() {
+                try {
+                    Thread.sleep(millis);
+                } catch (final InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return new Status(StatusCode.OK);
+            }
+        };
+    }
+
+    private static Monitor newCountingMonitor(final AtomicInteger count) {
+        return new Monitor() {
+            @Override
+            public String getName() {
+                return "Counting";
+            }
+
+            @Override
+            public Status observe() {
+                count.incrementAndGet();
+                return new Status(StatusCode.OK);
+            }
+        };
+    }
+
     private SessionMonitor newSessionMonitor() {
         final SessionMonitor sessionMonitor = new SessionMonitor();
         sessionMonitor.setTicketRegistry(new DefaultTicketRegistry());
@@ -0,0 +1,75 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.monitor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for {@link LatencyHistogram} class.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public class LatencyHistogramTests {
+
+    @Test
+    public void testEmpty() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram("test");
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMean());
+        assertEquals(0, histogram.getPercentile(99));
+    }
+
+    @Test
+    public void testPercentiles() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram("test");
+        for (int i = 0; i < 99; i++) {
+            histogram.record(100000);
+        }
+        histogram.record(50000000);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(50000, histogram.getMax());
+        assertEquals(599, histogram.getMean());
+        // 100us falls in the bucket [64, 127]
+        assertEquals(127, histogram.getPercentile(50));
+        assertEquals(127, histogram.getPercentile(99));
+        assertEquals(50000, histogram.getPercentile(100));
+        assertTrue(histogram.toString().startsWith("test:100 samples"));
+    }
+
+    @Test
+    public void testMonitor() throws Exception {
+        final LatencyHistogram fast = new LatencyHistogram("fast");
+        final LatencyHistogram slow = new LatencyHistogram("slow");
+        fast.record(100000);
+        slow.record(50000000);
+        final LatencyMonitor monitor = new LatencyMonitor(fast, slow);
+        assertEquals(StatusCode.OK, monitor.observe().getCode());
+
+        monitor.setPercentileWarnThreshold(1000);
+        final Status status = monitor.observe();
+        assertEquals(StatusCode.WARN, status.getCode());
+        assertTrue(status.getDescription().startsWith("fast:1 samples"));
+        assertTrue(status.getDescription().contains("slow:1 samples"));
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.jasig.cas.TestUtils;
+import org.jasig.cas.authentication.principal.Service;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link RegisteredServicesIndex}.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public class RegisteredServicesIndexTests {
+
+    @Test
+    public void testAntKeys() {
+        assertEquals("https:/www.example.org", RegisteredServicesIndex.antKeyForPattern("https://www.example.org/**"));
+        assertEquals("https:/www.example.org", RegisteredServicesIndex.antKeyForId("https://www.example.org/app?a=b"));
+        assertNull(RegisteredServicesIndex.antKeyForPattern("https://*.example.org/**"));
+        assertNull(RegisteredServicesIndex.antKeyForPattern("**"));
+        assertNull(RegisteredServicesIndex.antKeyForId("test"));
+    }
+
+    @Test
+    public void testRegexKeys() {
+        assertEquals("https://www.example.org", RegisteredServicesIndex.regexKeyForPattern("^https://www\\.example\\.org/.*"));
+        assertEquals("https://host:8443", RegisteredServicesIndex.regexKeyForPattern("https://host:8443/app.*"));
+        assertNull(RegisteredServicesIndex.regexKeyForPattern("https://www\\.example\\.org.*"));
+        assertNull(RegisteredServicesIndex.regexKeyForPattern("https?://www\\.example\\.org/.*"));
+        assertNull(RegisteredServicesIndex.regexKeyForPattern("https://a\\.org/.*|https://b\\.org/.*"));
+        assertNull(RegisteredServicesIndex.regexKeyForPattern("(?i)https://a\\.org/.*"));
+        assertEquals("https://host", RegisteredServicesIndex.regexKeyForId("https://host/app"));
+        assertNull(RegisteredServicesIndex.regexKeyForId("https://host"));
+    }
+
+    @Test
+    public void testLiteralPrefix() {
+        assertEquals("https://host", RegisteredServicesIndex.literalPrefix("https://hosts?/.*"));
+        assertEquals("https://a.b/", RegisteredServicesIndex.literalPrefix("^https://a\\.b/\\d+"));
+        assertEquals("", RegisteredServicesIndex.literalPrefix(".*"));
+    }
+
+    @Test
+    public void testEvaluationOrderIsPreserved() {
+        final List<RegisteredService> list = new ArrayList<RegisteredService>();
+        list.add(newAntService(1, "https://www.example.org/app/**", 10));
+        list.add(newRegexService(2, "^https://.*", 5));
+        list.add(newRegexService(3, "^https://www\\.example\\.org/.*", 1));
+        list.add(newAntService(4, "**", 100));
+
+        final RegisteredServicesIndex index = newIndex(list, 100);
+
+        assertEquals(3, index.find(TestUtils.getService("https://www.example.org/app/page")).getId());
+        assertEquals(2, index.find(TestUtils.getService("https://other.example.org/app")).getId());
+        assertEquals(4, index.find(TestUtils.getService("http://other.example.org/app")).getId());
+        // cached results must be identical
+        assertEquals(3, index.find(TestUtils.getService("https://www.example.org/app/page")).getId());
+    }
+
+    @Test
+    public void testMatchesFullScan() {
+        final List<RegisteredService> list = new ArrayList<RegisteredService>();
+        list.add(newAntService(1, "https://www.example.org/app/**", 3));
+        list.add(newAntService(2, "HTTPS://WWW.EXAMPLE.ORG/**", 4));
+        list.add(newRegexService(3, "https://www\\.example\\.org/app2/.*", 2));
+        list.add(newRegexService(4, "https://host(:8443)?/.*", 1));
+        list.add(newAntService(5, "https://*.example.net/**", 6));
+        list.add(newRegexService(6, "http://a\\.org/.*|http://b\\.org/.*", 7));
+
+        final RegisteredServicesIndex index = newIndex(list, 0);
+        final String[] ids = {
+                "https://www.example.org/app/x", "https://www.example.org/app2/x", "https://WWW.example.org/other",
+                "https://host/x", "https://host:8443/x", "https://www.example.net/x", "http://b.org/x",
+                "http://c.org/x", "https://www.example.org", "nothing"};
+
+        for (final String id : ids) {
+            final Service service = TestUtils.getService(id);
+            assertSame(id, scan(list, service), index.find(service));
+        }
+    }
+
+    @Test
+    public void testNoMatch() {
+        final List<RegisteredService> list = new ArrayList<RegisteredService>();
+        list.add(newAntService(1, "https://www.example.org/**", 1));
+
+        final RegisteredServicesIndex index = newIndex(list, 10);
+        assertNull(index.find(TestUtils.getService("https://www.example.com/")));
+        assertNull(index.find(TestUtils.getService("https://www.example.com/")));
+        assertNull(index.find(null));
+    }
+
+    private static RegisteredServicesIndex newIndex(final List<RegisteredService> list, final int cacheSize) {
+        return new RegisteredServicesIndex(new TreeSet<RegisteredService>(list), cacheSize);
+    }
+
+    private static RegisteredService scan(final List<RegisteredService> list, final Service service) {
+        for (final RegisteredService r : new TreeSet<RegisteredService>(list)) {
+            if (r.matches(service)) {
+                return r;
+            }
+        }
+        return null;
+    }
+
+    private static RegisteredService newAntService(final long id, final String serviceId, final int order) {
+        final RegisteredServiceImpl r = new RegisteredServiceImpl();
+        configure(r, id, serviceId, order);
+        return r;
+    }
+
+    private static RegisteredService newRegexService(final long id, final String serviceId, final int order) {
+        final RegexRegisteredService r = new RegexRegisteredService();
+        configure(r, id, serviceId, order);
+        return r;
+    }
+
+    private static void configure(final AbstractRegisteredService r, final long id, final String serviceId, final int order) {
+        r.setId(id);
+        r.setName("service" + id);
+        r.setServiceId(serviceId);
+        r.setEvaluationOrder(order);
+    }
+}
@@ -18,6 +18,12 @@
  */
 package org.jasig.cas.ticket.registry;
 
+import org.jasig.cas.TestUtils;
+import org.jasig.cas.ticket.ServiceTicket;
+import org.jasig.cas.ticket.TicketGrantingTicket;
+import org.jasig.cas.ticket.TicketGrantingTicketImpl;
+import org.jasig.cas.ticket.support.NeverExpiresExpirationPolicy;
+
 /**
  * Test case to test the DefaultTicketRegistry based on test cases to test all
  * Ticket Registries.
@@ -35,4 +41,25 @@ public class DefaultTicketRegistryTests extends AbstractTicketRegistryTests {
     public void testOtherConstructor() {
         assertNotNull(new DefaultTicketRegistry(10, 10F, 5));
     }
+
+    public void testCounts() {
+        final DefaultTicketRegistry registry = new DefaultTicketRegistry();
+        final TicketGrantingTicket tgt = new TicketGrantingTicketImpl(
+            "TGT", TestUtils.getAuthentication(), new NeverExpiresExpirationPolicy());
+        final ServiceTicket st = tgt.grantServiceTicket("ST", TestUtils.getService(), new NeverExpiresExpirationPolicy(), false);
+        registry.addTicket(tgt);
+        registry.addTicket(st);
+        registry.addTicket(st);
+
+        assertEquals(1, registry.sessionCount());
+        assertEquals(1, registry.serviceTicketCount());
+
+        registry.deleteTicket(st.getId());
+        registry.deleteTicket(st.getId());
+        assertEquals(1, registry.sessionCount());
+        assertEquals(0, registry.serviceTicketCount());
+
+        registry.deleteTicket(tgt.getId());
+        assertEquals(0, registry.sessionCount());
+    }
 }
\ No newline at end of file
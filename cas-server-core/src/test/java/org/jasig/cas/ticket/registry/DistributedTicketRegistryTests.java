@@ -23,6 +23,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.jasig.cas.TestUtils;
+import org.jasig.cas.monitor.RequestScopeMonitor;
 import org.jasig.cas.ticket.ServiceTicket;
 import org.jasig.cas.ticket.Ticket;
 import org.jasig.cas.ticket.TicketGrantingTicket;
@@ -103,6 +104,37 @@ public class DistributedTicketRegistryTests extends TestCase {
     public void testTicketDoesntExist() {
         assertNull(this.ticketRegistry.getTicket("fdfas"));
     }
+
+    public void testRequestScope() {
+        final TicketGrantingTicket t = new TicketGrantingTicketImpl("test", TestUtils.getAuthentication(), new NeverExpiresExpirationPolicy());
+        this.ticketRegistry.addTicket(t);
+        this.ticketRegistry.addTicket(t.grantServiceTicket("stest", TestUtils.getService(), new NeverExpiresExpirationPolicy(), false));
+
+        assertTrue(AbstractDistributedTicketRegistry.beginRequestScope());
+        try {
+            assertFalse(AbstractDistributedTicketRegistry.beginRequestScope());
+            final ServiceTicket s = (ServiceTicket) this.ticketRegistry.getTicket("stest");
+            final TicketGrantingTicket granting = s.getGrantingTicket();
+            assertSame(granting, s.getGrantingTicket());
+            assertFalse(s.isExpired());
+            assertEquals(1, this.ticketRegistry.getRequestScopeMisses());
+            assertEquals(2, this.ticketRegistry.getRequestScopeHits());
+
+            granting.expire();
+            assertNotSame(granting, s.getGrantingTicket());
+
+            this.ticketRegistry.deleteTicket("test");
+            assertNull(s.getGrantingTicket());
+        } finally {
+            AbstractDistributedTicketRegistry.endRequestScope();
+        }
+
+        assertNull(this.ticketRegistry.getTicket("stest").getGrantingTicket());
+        assertEquals(3, this.ticketRegistry.getRequestScopeMisses());
+        assertEquals(
+                "2 request scope hits, 3 misses, 40% of lookups served locally.",
+                new RequestScopeMonitor(this.ticketRegistry).observe().getDescription());
+    }
     
     protected class TestDistributedTicketRegistry extends AbstractDistributedTicketRegistry {
 
@@ -117,6 +149,7 @@ public class DistributedTicketRegistryTests extends TestCase {
         }
 
         public boolean deleteTicket(final String ticketId) {
+            removeFromRequestScope(ticketId);
             return this.tickets.remove(ticketId) != null;
         }
 
@@ -27,6 +27,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.sql.DataSource;
 
@@ -39,6 +40,7 @@ import org.jasig.cas.ticket.ServiceTicket;
 import org.jasig.cas.ticket.Ticket;
 import org.jasig.cas.ticket.TicketGrantingTicket;
 import org.jasig.cas.ticket.TicketGrantingTicketImpl;
+import org.jasig.cas.ticket.registry.support.OptimisticLockingRetryInterceptor;
 import org.jasig.cas.ticket.support.HardTimeoutExpirationPolicy;
 import org.jasig.cas.ticket.support.MultiTimeUseOrTimeoutExpirationPolicy;
 import org.jasig.cas.util.DefaultUniqueTicketIdGenerator;
@@ -51,6 +53,7 @@ import org.junit.runner.RunWith;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.springframework.aop.framework.ProxyFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.IfProfileValue;
@@ -60,6 +63,7 @@ import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.jdbc.JdbcTestUtils;
 import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionCallback;
 import org.springframework.transaction.support.TransactionTemplate;
@@ -128,6 +132,201 @@ public class JpaTicketRegistryTests {
         assertNull(getTicketInTransaction(newSt.getId()));
     }
     
+    @Test
+    public void testApproximateCounts() throws Exception {
+        addTicketInTransaction(newTGT());
+        assertEquals(1, jpaTicketRegistry.sessionCount());
+        jpaTicketRegistry.setCountCacheDuration(60000);
+        try {
+            assertEquals(1, jpaTicketRegistry.sessionCount());
+            assertEquals(0, jpaTicketRegistry.serviceTicketCount());
+            final TicketGrantingTicket newTgt = newTGT();
+            addTicketInTransaction(newTgt);
+            grantServiceTicketInTransaction(newTgt);
+            assertEquals(1, jpaTicketRegistry.sessionCount());
+            assertEquals(0, jpaTicketRegistry.serviceTicketCount());
+        } finally {
+            jpaTicketRegistry.setCountCacheDuration(0);
+        }
+        assertEquals(2, jpaTicketRegistry.sessionCount());
+        assertEquals(1, jpaTicketRegistry.serviceTicketCount());
+    }
+
+    @Test
+    public void testDeleteExpiredTickets() throws Exception {
+        final TicketGrantingTicket expiredTgt = new TicketGrantingTicketImpl(
+                idGenerator.getNewTicketId("TGT"),
+                new ImmutableAuthentication(new SimplePrincipal("bob"), null),
+                new HardTimeoutExpirationPolicy(0));
+        addTicketInTransaction(expiredTgt);
+        final ServiceTicket expiredSt = grantServiceTicketInTransaction(expiredTgt);
+        final TicketGrantingTicket pgt = new TicketGrantingTicketImpl(
+                idGenerator.getNewTicketId("TGT"),
+                (TicketGrantingTicketImpl) expiredTgt,
+                new ImmutableAuthentication(new SimplePrincipal("proxy"), null),
+                expirationPolicyTGT);
+        addTicketInTransaction(pgt);
+        final ServiceTicket proxySt = grantServiceTicketInTransaction(pgt);
+
+        final TicketGrantingTicket validTgt = newTGT();
+        addTicketInTransaction(validTgt);
+        final ServiceTicket validSt = grantServiceTicketInTransaction(validTgt);
+
+        final long now = System.currentTimeMillis();
+        assertEquals(4, deleteExpiredTicketsInTransaction(now, 100));
+        assertNull(getTicketInTransaction(expiredTgt.getId()));
+        assertNull(getTicketInTransaction(expiredSt.getId()));
+        assertNull(getTicketInTransaction(pgt.getId()));
+        assertNull(getTicketInTransaction(proxySt.getId()));
+        assertNotNull(getTicketInTransaction(validTgt.getId()));
+        assertNotNull(getTicketInTransaction(validSt.getId()));
+
+        assertEquals(0, deleteExpiredTicketsInTransaction(now, 100));
+    }
+
+    @Test
+    public void testDeleteExpiredTicketsWithUpgradedExpirationTime() throws Exception {
+        final TicketGrantingTicket tgt = newTGT();
+        addTicketInTransaction(tgt);
+        final TicketGrantingTicket otherTgt = newTGT();
+        addTicketInTransaction(otherTgt);
+        // Rows stored before the EXPIRATION_TIME column was added, as filled in by the upgrade script
+        simpleJdbcTemplate.update("update TICKETGRANTINGTICKET set EXPIRATION_TIME = 0");
+
+        final long now = System.currentTimeMillis();
+        assertEquals(1, deleteExpiredTicketsInTransaction(now, 1));
+        assertEquals(1, deleteExpiredTicketsInTransaction(now, 1));
+        assertEquals(0, deleteExpiredTicketsInTransaction(now, 1));
+        assertNotNull(getTicketInTransaction(tgt.getId()));
+        assertNotNull(getTicketInTransaction(otherTgt.getId()));
+        assertEquals(0, simpleJdbcTemplate.queryForInt(
+            "select count(*) from TICKETGRANTINGTICKET where EXPIRATION_TIME <= ?", now));
+    }
+
+    private int deleteExpiredTicketsInTransaction(final long now, final int maxTickets) {
+        return new TransactionTemplate(txManager).execute(new TransactionCallback<Integer>() {
+            public Integer doInTransaction(final TransactionStatus status) {
+                return jpaTicketRegistry.deleteExpiredTickets(now, maxTickets, false);
+            }
+        });
+    }
+
+    @Test
+    public void testForEachTicket() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            final TicketGrantingTicket newTgt = newTGT();
+            addTicketInTransaction(newTgt);
+            grantServiceTicketInTransaction(newTgt);
+        }
+
+        final List<Ticket> visited = new ArrayList<Ticket>();
+        final TicketVisitor visitor = new TicketVisitor() {
+            public boolean visit(final Ticket ticket) {
+                visited.add(ticket);
+                return true;
+            }
+        };
+        new TransactionTemplate(txManager).execute(new TransactionCallback<Void>() {
+            public Void doInTransaction(final TransactionStatus status) {
+                jpaTicketRegistry.forEachTicket(Ticket.class, 2, visitor);
+                return null;
+            }
+        });
+        assertEquals(10, visited.size());
+
+        visited.clear();
+        jpaTicketRegistry.forEachTicket(TicketGrantingTicket.class, 2, visitor);
+        assertEquals(5, visited.size());
+        for (final Ticket ticket : visited) {
+            assertTrue(ticket instanceof TicketGrantingTicket);
+        }
+    }
+
+    @Test
+    public void testOptimisticLockingAppliesChangesToCurrentState() throws Exception {
+        final TicketGrantingTicket newTgt = newTGT();
+        addTicketInTransaction(newTgt);
+        jpaTicketRegistry.setOptimisticLocking(true);
+        try {
+            new TransactionTemplate(txManager).execute(new TransactionCallback<Void>() {
+                public Void doInTransaction(final TransactionStatus status) {
+                    final TicketGrantingTicket tgt = (TicketGrantingTicket) jpaTicketRegistry.getTicket(newTgt.getId());
+                    // Concurrent grant committed after the ticket-granting ticket was read
+                    grantServiceTicketInNewTransaction(newTgt.getId());
+                    jpaTicketRegistry.addTicket(newST(tgt));
+                    return null;
+                }
+            });
+        } finally {
+            jpaTicketRegistry.setOptimisticLocking(false);
+        }
+        assertEquals(2, getTicketInTransaction(newTgt.getId()).getCountOfUses());
+    }
+
+    @Test
+    public void testOptimisticLockingConflictIsRetried() throws Exception {
+        final TicketGrantingTicket newTgt = newTGT();
+        addTicketInTransaction(newTgt);
+        final String stId = grantServiceTicketInTransaction(newTgt).getId();
+        final AtomicInteger attempts = new AtomicInteger();
+        final Callable<Boolean> validator = new Callable<Boolean>() {
+            public Boolean call() {
+                return new TransactionTemplate(txManager).execute(new TransactionCallback<Boolean>() {
+                    public Boolean doInTransaction(final TransactionStatus status) {
+                        final ServiceTicket st = (ServiceTicket) jpaTicketRegistry.getTicket(stId);
+                        if (attempts.incrementAndGet() == 1) {
+                            // Concurrent validation committed after the service ticket was read
+                            assertTrue(validateServiceTicketInNewTransaction(stId));
+                        }
+                        return st.isValidFor(st.getService());
+                    }
+                });
+            }
+        };
+        final ProxyFactory factory = new ProxyFactory(validator);
+        factory.addAdvice(new OptimisticLockingRetryInterceptor());
+        @SuppressWarnings("unchecked")
+        final Callable<Boolean> retryingValidator = (Callable<Boolean>) factory.getProxy();
+
+        assertTrue(retryingValidator.call());
+        assertEquals(2, attempts.get());
+        assertEquals(2, getTicketInTransaction(stId).getCountOfUses());
+    }
+
+    @Test(timeout = 60000)
+    public void testConcurrentGrantAndValidateWithOptimisticLocking() throws Exception {
+        final TicketGrantingTicket newTgt = newTGT();
+        addTicketInTransaction(newTgt);
+        jpaTicketRegistry.setOptimisticLocking(true);
+        final OptimisticLockingRetryInterceptor retryInterceptor = new OptimisticLockingRetryInterceptor();
+        // Every conflict lets at least one transaction commit
+        retryInterceptor.setMaxRetries(CONCURRENT_SIZE);
+        final ExecutorService executor = Executors.newFixedThreadPool(CONCURRENT_SIZE);
+        try {
+            final List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>(CONCURRENT_SIZE);
+            for (int i = 0; i < CONCURRENT_SIZE; i++) {
+                final ProxyFactory factory = new ProxyFactory(new ServiceTicketGenerator(newTgt.getId()));
+                factory.addAdvice(retryInterceptor);
+                @SuppressWarnings("unchecked")
+                final Callable<String> generator = (Callable<String>) factory.getProxy();
+                tasks.add(new Callable<Boolean>() {
+                    public Boolean call() throws Exception {
+                        return validateServiceTicketInTransaction(generator.call());
+                    }
+                });
+            }
+            for (final Future<Boolean> result : executor.invokeAll(tasks)) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+            jpaTicketRegistry.setOptimisticLocking(false);
+        }
+
+        // Every grant must have been applied to the current state of the ticket-granting ticket
+        assertEquals(CONCURRENT_SIZE, getTicketInTransaction(newTgt.getId()).getCountOfUses());
+    }
+
     @Test
     @IfProfileValue(name="cas.jpa.concurrent", value="true") 
     public void testConcurrentServiceTicketGeneration() throws Exception {
@@ -195,6 +394,36 @@ public class JpaTicketRegistryTests {
         });
     }
     
+    void grantServiceTicketInNewTransaction(final String ticketGrantingTicketId) {
+        final TransactionTemplate template = new TransactionTemplate(txManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        template.execute(new TransactionCallback<Void>() {
+            public Void doInTransaction(final TransactionStatus status) {
+                jpaTicketRegistry.addTicket(newST((TicketGrantingTicket) jpaTicketRegistry.getTicket(ticketGrantingTicketId)));
+                return null;
+            }
+        });
+    }
+
+    boolean validateServiceTicketInNewTransaction(final String serviceTicketId) {
+        final TransactionTemplate template = new TransactionTemplate(txManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return validateServiceTicket(template, serviceTicketId);
+    }
+
+    boolean validateServiceTicketInTransaction(final String serviceTicketId) {
+        return validateServiceTicket(new TransactionTemplate(txManager), serviceTicketId);
+    }
+
+    private boolean validateServiceTicket(final TransactionTemplate template, final String serviceTicketId) {
+        return template.execute(new TransactionCallback<Boolean>() {
+            public Boolean doInTransaction(final TransactionStatus status) {
+                final ServiceTicket st = (ServiceTicket) jpaTicketRegistry.getTicket(serviceTicketId);
+                return st.isValidFor(st.getService());
+            }
+        });
+    }
+
     ServiceTicket grantServiceTicketInTransaction(final TicketGrantingTicket parent) {
         return new TransactionTemplate(txManager).execute(new TransactionCallback<ServiceTicket>() {
             public ServiceTicket doInTransaction(final TransactionStatus status) {
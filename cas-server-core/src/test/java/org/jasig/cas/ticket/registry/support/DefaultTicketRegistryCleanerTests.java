@@ -18,10 +18,14 @@
  */
 package org.jasig.cas.ticket.registry.support;
 
+import org.jasig.cas.TestUtils;
+import org.jasig.cas.ticket.TicketGrantingTicket;
+import org.jasig.cas.ticket.TicketGrantingTicketImpl;
 import org.jasig.cas.ticket.registry.AbstractRegistryCleanerTests;
 import org.jasig.cas.ticket.registry.DefaultTicketRegistry;
 import org.jasig.cas.ticket.registry.RegistryCleaner;
 import org.jasig.cas.ticket.registry.TicketRegistry;
+import org.jasig.cas.ticket.support.NeverExpiresExpirationPolicy;
 
 /**
  * @author Scott Battaglia
@@ -42,4 +46,23 @@ public class DefaultTicketRegistryCleanerTests extends
     public TicketRegistry getNewTicketRegistry() {
         return new DefaultTicketRegistry();
     }
+
+    public void testCleanMoreExpiredTicketsThanBatchSize() {
+        final TicketRegistry ticketRegistry = getNewTicketRegistry();
+        final DefaultTicketRegistryCleaner cleaner = (DefaultTicketRegistryCleaner) getNewRegistryCleaner(ticketRegistry);
+        cleaner.setBatchSize(10);
+        for (int i = 0; i < 25; i++) {
+            final TicketGrantingTicket ticket = new TicketGrantingTicketImpl(
+                "test" + i, TestUtils.getAuthentication(), new NeverExpiresExpirationPolicy());
+            ticket.expire();
+            ticketRegistry.addTicket(ticket);
+        }
+        ticketRegistry.addTicket(new TicketGrantingTicketImpl(
+            "testNoExpire", TestUtils.getAuthentication(), new NeverExpiresExpirationPolicy()));
+
+        cleaner.clean();
+
+        assertEquals(1, ticketRegistry.getTickets().size());
+        assertNotNull(ticketRegistry.getTicket("testNoExpire"));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,116 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.ticket.registry.support;
+
+import java.util.List;
+
+import org.jasig.cas.TestUtils;
+import org.jasig.cas.ticket.Ticket;
+import org.jasig.cas.ticket.TicketGrantingTicketImpl;
+import org.jasig.cas.ticket.registry.DefaultTicketRegistry;
+import org.jasig.cas.ticket.support.NeverExpiresExpirationPolicy;
+import org.jasig.cas.ticket.support.TimeoutExpirationPolicy;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link TicketExpirationIndex}.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public class TicketExpirationIndexTests {
+
+    private DefaultTicketRegistry registry;
+
+    private TicketExpirationIndex index;
+
+    @Before
+    public void setUp() {
+        this.registry = new DefaultTicketRegistry();
+        this.index = new TicketExpirationIndex(1);
+    }
+
+    @Test
+    public void testExpiredTicketsAreFound() throws Exception {
+        add(new TicketGrantingTicketImpl("expiring", TestUtils.getAuthentication(), new TimeoutExpirationPolicy(5)));
+        add(new TicketGrantingTicketImpl("valid", TestUtils.getAuthentication(), new TimeoutExpirationPolicy(60000)));
+        Thread.sleep(20);
+
+        final List<Ticket> expired = this.index.getExpiredTickets(this.registry, 10);
+        assertEquals(1, expired.size());
+        assertEquals("expiring", expired.get(0).getId());
+    }
+
+    @Test
+    public void testTicketsThatNeverExpireAreNotIndexed() {
+        add(new TicketGrantingTicketImpl("never", TestUtils.getAuthentication(), new NeverExpiresExpirationPolicy()));
+        assertEquals(0, this.index.size());
+    }
+
+    @Test
+    public void testExpiredTicketsStayIndexedUntilDeleted() throws Exception {
+        final TicketGrantingTicketImpl ticket = new TicketGrantingTicketImpl(
+                "test", TestUtils.getAuthentication(), new NeverExpiresExpirationPolicy());
+        ticket.expire();
+        add(ticket);
+
+        assertEquals(1, this.index.getExpiredTickets(this.registry, 10).size());
+        Thread.sleep(20);
+        assertEquals(1, this.index.getExpiredTickets(this.registry, 10).size());
+
+        this.registry.deleteTicket("test");
+        Thread.sleep(20);
+        assertTrue(this.index.getExpiredTickets(this.registry, 10).isEmpty());
+        assertEquals(0, this.index.size());
+    }
+
+    @Test
+    public void testBatchSize() {
+        for (int i = 0; i < 10; i++) {
+            final TicketGrantingTicketImpl ticket = new TicketGrantingTicketImpl(
+                    "test" + i, TestUtils.getAuthentication(), new NeverExpiresExpirationPolicy());
+            ticket.expire();
+            add(ticket);
+        }
+
+        assertEquals(4, deleteExpiredTickets(4));
+        assertEquals(10, this.index.size());
+
+        // The ids left over by a full batch are still due
+        assertEquals(4, deleteExpiredTickets(4));
+        assertEquals(2, deleteExpiredTickets(4));
+        assertEquals(0, this.registry.getTickets().size());
+    }
+
+    private int deleteExpiredTickets(final int maxTickets) {
+        final List<Ticket> expired = this.index.getExpiredTickets(this.registry, maxTickets);
+        for (final Ticket ticket : expired) {
+            this.registry.deleteTicket(ticket.getId());
+        }
+        return expired.size();
+    }
+
+    private void add(final Ticket ticket) {
+        this.registry.addTicket(ticket);
+        this.index.add(ticket);
+    }
+}
@@ -75,4 +75,12 @@ public class ThrottledUseAndTimeoutExpirationPolicyTests extends TestCase {
         this.ticket.grantServiceTicket("test", TestUtils.getService(), this.expirationPolicy, false);
         assertTrue(this.ticket.isExpired());
     }
+
+    public void testEarliestExpirationTimeIncludesThrottleWindow() {
+        final TicketGrantingTicketImpl state = (TicketGrantingTicketImpl) this.ticket;
+        assertEquals(state.getLastTimeUsed() + TIMEOUT, state.getEarliestExpirationTime());
+
+        this.ticket.grantServiceTicket("test", TestUtils.getService(), this.expirationPolicy, false);
+        assertEquals(state.getLastTimeUsed(), state.getEarliestExpirationTime());
+    }
 }
@@ -18,6 +18,9 @@
  */
 package org.jasig.cas.util;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import junit.framework.TestCase;
 
 /**
@@ -44,4 +47,22 @@ public class DefaultRandomStringGeneratorTests extends TestCase {
         assertNotSame(this.randomStringGenerator.getNewString(),
             this.randomStringGenerator.getNewString());
     }
+
+    public void testCharactersAreUniformlyDistributed() {
+        final Map<Character, Integer> counts = new HashMap<Character, Integer>();
+        for (int i = 0; i < 20000; i++) {
+            final String random = this.randomStringGenerator.getNewString();
+            assertEquals(LENGTH, random.length());
+            for (final char c : random.toCharArray()) {
+                final Integer count = counts.get(c);
+                counts.put(c, count == null ? 1 : count + 1);
+            }
+        }
+        assertEquals(61, counts.size());
+        final double expected = 20000.0 * LENGTH / counts.size();
+        for (final Map.Entry<Character, Integer> entry : counts.entrySet()) {
+            assertTrue("Character " + entry.getKey(), Character.isLetterOrDigit(entry.getKey()));
+            assertTrue("Character " + entry.getKey(), Math.abs(entry.getValue() - expected) < expected / 10);
+        }
+    }
 }
@@ -41,4 +41,16 @@ public class DefaultUniqueTicketIdGeneratorTests extends TestCase {
         
         assertTrue(generator.getNewTicketId("test").endsWith(SUFFIX));
     }
+
+    public void testFormat() {
+        DefaultUniqueTicketIdGenerator generator = new DefaultUniqueTicketIdGenerator(12, "cas01.example.org");
+
+        assertTrue(generator.getNewTicketId("ST").matches("ST-1-[a-zA-Z0-9]{12}-cas01\\.example\\.org"));
+        assertTrue(generator.getNewTicketId("TGT").matches("TGT-2-[a-zA-Z0-9]{12}-cas01\\.example\\.org"));
+        for (int i = 3; i < 12; i++) {
+            generator.getNewTicketId("LT");
+        }
+        assertTrue(generator.getNewTicketId("LT").matches("LT-12-[a-zA-Z0-9]{12}-cas01\\.example\\.org"));
+        assertTrue(new DefaultUniqueTicketIdGenerator().getNewTicketId("PGT").matches("PGT-1-[a-zA-Z0-9]{35}"));
+    }
 }
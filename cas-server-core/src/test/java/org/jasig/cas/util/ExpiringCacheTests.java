@@ -0,0 +1,75 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.util;
+
+import org.jasig.cas.monitor.ExpiringCacheMonitor;
+import org.jasig.cas.monitor.StatusCode;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link ExpiringCache}.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public class ExpiringCacheTests {
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() {
+        final ExpiringCache<String, String> cache = new ExpiringCache<String, String>("test", 2, 60000);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        assertEquals("1", cache.get("a"));
+        cache.put("c", "3");
+
+        assertEquals("1", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("3", cache.get("c"));
+        assertEquals(2, cache.getSize());
+        assertEquals(1, cache.getEvictions());
+        assertEquals(3, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testEntriesExpire() throws Exception {
+        final ExpiringCache<String, String> cache = new ExpiringCache<String, String>("test", 10, 60000);
+        cache.put("a", "1", 10);
+        cache.put("b", "2");
+        cache.put("c", "3", 0);
+        Thread.sleep(20);
+
+        assertNull(cache.get("a"));
+        assertEquals("2", cache.get("b"));
+        assertNull(cache.get("c"));
+        assertEquals(1, cache.getExpirations());
+        assertEquals(0, cache.getEvictions());
+    }
+
+    @Test
+    public void testMonitor() {
+        final ExpiringCache<String, String> cache = new ExpiringCache<String, String>("test", 10, 60000);
+        cache.put("a", "1");
+        final ExpiringCacheMonitor monitor = new ExpiringCacheMonitor(cache);
+        assertEquals(StatusCode.OK, monitor.observe().getCode());
+        assertTrue(monitor.observe().getDescription().contains("test:1 items, 90% free"));
+    }
+}
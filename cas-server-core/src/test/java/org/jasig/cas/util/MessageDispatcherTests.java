@@ -0,0 +1,155 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jasig.cas.monitor.MessageDispatcherMonitor;
+import org.jasig.cas.monitor.Status;
+import org.jasig.cas.monitor.StatusCode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link MessageDispatcher}.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public class MessageDispatcherTests {
+
+    private static final String URL = "https://app.example.org/logout";
+
+    private MessageDispatcher dispatcher;
+
+    @Before
+    public void setUp() {
+        this.dispatcher = new MessageDispatcher();
+        this.dispatcher.setRetryDelay(10);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.dispatcher.destroy();
+    }
+
+    @Test
+    public void testFailedMessagesAreRetried() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        assertTrue(this.dispatcher.dispatch(URL, new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                if (calls.incrementAndGet() == 1) {
+                    throw new Exception("first attempt fails");
+                }
+                return calls.get() > 2;
+            }
+        }));
+
+        waitFor(new Callable<Boolean>() {
+            public Boolean call() {
+                return dispatcher.getSentCount() == 1;
+            }
+        });
+        assertEquals(3, calls.get());
+        assertEquals(2, this.dispatcher.getRetryCount());
+        assertEquals(0, this.dispatcher.getFailedCount());
+        assertEquals(3, this.dispatcher.getSendLatency().getCount());
+    }
+
+    @Test
+    public void testConcurrencyPerEndpoint() throws Exception {
+        this.dispatcher.setMaxConnectionsPerEndpoint(1);
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger maxActive = new AtomicInteger();
+        final Callable<Boolean> sender = new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                maxActive.set(Math.max(maxActive.get(), active.incrementAndGet()));
+                Thread.sleep(2);
+                active.decrementAndGet();
+                return true;
+            }
+        };
+        for (int i = 0; i < 20; i++) {
+            this.dispatcher.dispatch(URL, sender);
+        }
+
+        waitFor(new Callable<Boolean>() {
+            public Boolean call() {
+                return dispatcher.getSentCount() == 20;
+            }
+        });
+        assertEquals(1, maxActive.get());
+        assertEquals(0, this.dispatcher.getQueueSize());
+    }
+
+    @Test
+    public void testQueueOverflow() throws Exception {
+        this.dispatcher.setMaxConnectionsPerEndpoint(1);
+        this.dispatcher.setQueueCapacity(1);
+        this.dispatcher.setOverflowPolicy(MessageDispatcher.OverflowPolicy.DISCARD);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        assertTrue(this.dispatcher.dispatch(URL, new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                started.countDown();
+                release.await();
+                return true;
+            }
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        final Callable<Boolean> sender = new Callable<Boolean>() {
+            public Boolean call() {
+                return true;
+            }
+        };
+        assertTrue(this.dispatcher.dispatch(URL, sender));
+        assertFalse(this.dispatcher.dispatch(URL, sender));
+        assertEquals(1, this.dispatcher.getDiscardedCount());
+        assertEquals(1, this.dispatcher.getQueueSize());
+
+        final MessageDispatcherMonitor monitor = new MessageDispatcherMonitor(this.dispatcher);
+        final Status status = monitor.observe();
+        assertEquals(StatusCode.WARN, status.getCode());
+        assertTrue(status.getDescription().startsWith("1/1 messages queued. 0 sent, 0 retried, 0 failed, 1 discarded."));
+        assertEquals(StatusCode.OK, monitor.observe().getCode());
+
+        release.countDown();
+        waitFor(new Callable<Boolean>() {
+            public Boolean call() {
+                return dispatcher.getSentCount() == 2;
+            }
+        });
+    }
+
+    private static void waitFor(final Callable<Boolean> condition) throws Exception {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.call()) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+}
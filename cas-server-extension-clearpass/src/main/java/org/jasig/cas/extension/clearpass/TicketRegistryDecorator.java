@@ -27,7 +27,9 @@ import org.jasig.cas.monitor.TicketRegistryState;
 import org.jasig.cas.ticket.Ticket;
 import org.jasig.cas.ticket.TicketGrantingTicket;
 import org.jasig.cas.ticket.registry.AbstractTicketRegistry;
+import org.jasig.cas.ticket.registry.StreamingTicketRegistry;
 import org.jasig.cas.ticket.registry.TicketRegistry;
+import org.jasig.cas.ticket.registry.TicketVisitor;
 
 /**
  * Decorator that captures tickets and attempts to map them.
@@ -92,6 +94,14 @@ public final class TicketRegistryDecorator extends AbstractTicketRegistry {
         return this.ticketRegistry.getTickets();
     }
 
+    public void forEachTicket(final Class<? extends Ticket> type, final int batchSize, final TicketVisitor visitor) {
+        if (this.ticketRegistry instanceof StreamingTicketRegistry) {
+            ((StreamingTicketRegistry) this.ticketRegistry).forEachTicket(type, batchSize, visitor);
+        } else {
+            super.forEachTicket(type, batchSize, visitor);
+        }
+    }
+
     public int sessionCount() {
         if (this.ticketRegistry instanceof TicketRegistryState) {
           return ((TicketRegistryState)this.ticketRegistry).sessionCount();
@@ -18,13 +18,18 @@
  */
 package org.jasig.cas.ticket.registry;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.sf.ehcache.Cache;
+import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
 import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.event.CacheEventListenerAdapter;
 
 import org.apache.commons.lang.BooleanUtils;
 import org.apache.commons.lang.StringUtils;
@@ -47,6 +52,14 @@ import org.springframework.core.style.ToStringCreator;
  * <li>Monitoring : follow separately the number of TGT and ST.</li>
  * <ul>
  * </p>
+ * <p>
+ * The number of tickets in each cache is tracked by cache event listeners so that
+ * {@link #sessionCount()} and {@link #serviceTicketCount()} do not need to walk the caches.
+ * </p>
+ * <p>
+ * {@link #forEachTicket(Class, int, TicketVisitor)} reads the caches in chunks of keys so that only the keys,
+ * rather than all tickets, are held in memory at once.
+ * </p>
  * 
  * @author <a href="mailto:cleclerc@xebia.fr">Cyrille Le Clerc</a>
  * @author Adam Rybicki
@@ -57,6 +70,10 @@ public final class EhCacheTicketRegistry extends AbstractDistributedTicketRegist
     private Cache serviceTicketsCache  = null;
     
     private Cache ticketGrantingTicketsCache = null;
+
+    private final TicketCounter serviceTicketCounter = new TicketCounter();
+
+    private final TicketCounter ticketGrantingTicketCounter = new TicketCounter();
   
     /** @see #setSupportRegistryState(boolean)*/
     private boolean supportRegistryState = true;
@@ -123,12 +140,54 @@ public final class EhCacheTicketRegistry extends AbstractDistributedTicketRegist
         return allTickets;
     }
     
+    public void forEachTicket(final Class<? extends Ticket> type, final int batchSize, final TicketVisitor visitor) {
+        if (type.isAssignableFrom(TicketGrantingTicket.class) || TicketGrantingTicket.class.isAssignableFrom(type)) {
+            if (!visit(this.ticketGrantingTicketsCache, type, batchSize, visitor)) {
+                return;
+            }
+        }
+        if (type.isAssignableFrom(ServiceTicket.class) || ServiceTicket.class.isAssignableFrom(type)) {
+            visit(this.serviceTicketsCache, type, batchSize, visitor);
+        }
+    }
+
+    private boolean visit(final Cache cache, final Class<? extends Ticket> type, final int batchSize, final TicketVisitor visitor) {
+        final List<Object> chunk = new ArrayList<Object>(batchSize);
+        final Iterator<?> keys = cache.getKeys().iterator();
+        while (keys.hasNext()) {
+            chunk.add(keys.next());
+            if ((chunk.size() >= batchSize || !keys.hasNext()) && !visit(cache.getAll(chunk).values(), type, visitor)) {
+                return false;
+            }
+            if (chunk.size() >= batchSize) {
+                chunk.clear();
+            }
+        }
+        return true;
+    }
+
+    private boolean visit(final Collection<Element> elements, final Class<? extends Ticket> type, final TicketVisitor visitor) {
+        for (final Element element : elements) {
+            // expired or removed since the keys were read
+            if (element == null) {
+                continue;
+            }
+            final Ticket ticket = (Ticket) element.getObjectValue();
+            if (type.isInstance(ticket) && !visitor.visit(ticket)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public void setServiceTicketsCache(final Cache serviceTicketsCache) {
         this.serviceTicketsCache = serviceTicketsCache;
+        this.serviceTicketCounter.register(serviceTicketsCache);
     }
     
     public void setTicketGrantingTicketsCache(final Cache ticketGrantingTicketsCache) {
         this.ticketGrantingTicketsCache = ticketGrantingTicketsCache;
+        this.ticketGrantingTicketCounter.register(ticketGrantingTicketsCache);
     }
     
     @Override
@@ -149,11 +208,10 @@ public final class EhCacheTicketRegistry extends AbstractDistributedTicketRegist
 
     /** 
      * Flag to indicate whether this registry instance should participate in reporting its state with default value set to <code>true</code>.
-     * Based on the <a href="http://ehcache.org/apidocs/net/sf/ehcache/Ehcache.html#getKeysWithExpiryCheck()">EhCache documentation</a>, 
-     * determining the number of service tickets and the total session count from the cache can be considered an expensive operation with the 
-     * time taken as O(n), where n is the number of elements in the cache. 
+     * The reported counts are maintained by cache event listeners and are therefore cheap to obtain, but they include elements that
+     * have expired and have not yet been evicted by the cache.
      * 
-     * <p>Therefore, the flag provides a level of flexibility such that depending on the cache and environment settings, reporting statistics
+     * <p>The flag provides a level of flexibility such that depending on the cache and environment settings, reporting statistics
      * can be set to false and disabled.</p>
      *  
      * @see #sessionCount()
@@ -188,17 +246,65 @@ public final class EhCacheTicketRegistry extends AbstractDistributedTicketRegist
       } 
     }
 
-    /**
-     * @see Cache#getKeysWithExpiryCheck()
-     */
     public int sessionCount() {
-        return BooleanUtils.toInteger(this.supportRegistryState, this.ticketGrantingTicketsCache.getKeysWithExpiryCheck().size() , super.sessionCount());
+        return BooleanUtils.toInteger(this.supportRegistryState, this.ticketGrantingTicketCounter.get(), super.sessionCount());
+    }
+
+    public int serviceTicketCount() {
+        return BooleanUtils.toInteger(this.supportRegistryState, this.serviceTicketCounter.get(), super.serviceTicketCount());
     }
 
     /**
-     * @see Cache#getKeysWithExpiryCheck()
+     * Keeps track of the number of elements in a cache from the cache events, including the ones
+     * received from replication peers.
      */
-    public int serviceTicketCount() {
-        return BooleanUtils.toInteger(this.supportRegistryState, this.serviceTicketsCache.getKeysWithExpiryCheck().size() , super.serviceTicketCount());
+    private static final class TicketCounter extends CacheEventListenerAdapter {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        private Cache cache;
+
+        public synchronized void register(final Cache newCache) {
+            if (this.cache != null) {
+                this.cache.getCacheEventNotificationService().unregisterListener(this);
+            }
+            this.cache = newCache;
+            if (newCache != null) {
+                newCache.getCacheEventNotificationService().registerListener(this);
+                this.count.set(newCache.getSize());
+            }
+        }
+
+        public int get() {
+            return Math.max(0, this.count.get());
+        }
+
+        @Override
+        public void notifyElementPut(final Ehcache ehcache, final Element element) {
+            this.count.incrementAndGet();
+        }
+
+        @Override
+        public void notifyElementRemoved(final Ehcache ehcache, final Element element) {
+            // removing a key that is not in the cache notifies listeners with an element without value
+            if (element != null && element.getObjectValue() != null) {
+                this.count.decrementAndGet();
+            }
+        }
+
+        @Override
+        public void notifyElementExpired(final Ehcache ehcache, final Element element) {
+            this.count.decrementAndGet();
+        }
+
+        @Override
+        public void notifyElementEvicted(final Ehcache ehcache, final Element element) {
+            this.count.decrementAndGet();
+        }
+
+        @Override
+        public void notifyRemoveAll(final Ehcache ehcache) {
+            this.count.set(0);
+        }
     }
 }
\ No newline at end of file
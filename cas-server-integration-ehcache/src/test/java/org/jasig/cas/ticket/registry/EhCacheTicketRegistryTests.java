@@ -27,6 +27,7 @@ import org.jasig.cas.authentication.ImmutableAuthentication;
 import org.jasig.cas.authentication.principal.Service;
 import org.jasig.cas.authentication.principal.SimplePrincipal;
 import org.jasig.cas.authentication.principal.SimpleWebApplicationServiceImpl;
+import org.jasig.cas.monitor.TicketRegistryState;
 import org.jasig.cas.ticket.ServiceTicket;
 import org.jasig.cas.ticket.Ticket;
 import org.jasig.cas.ticket.TicketGrantingTicket;
@@ -256,6 +257,70 @@ public final class EhCacheTicketRegistryTests  implements ApplicationContextAwar
         }
     }
 
+    @Test
+    public void testCounts() {
+        final TicketRegistryState state = (TicketRegistryState) this.ticketRegistry;
+        assertEquals(0, state.sessionCount());
+        assertEquals(0, state.serviceTicketCount());
+
+        for (int i = 0; i < TICKETS_IN_REGISTRY; i++) {
+            final TicketGrantingTicket ticketGrantingTicket = new TicketGrantingTicketImpl(
+                "TEST" + i, getAuthentication(),
+                new NeverExpiresExpirationPolicy());
+            final ServiceTicket st = ticketGrantingTicket.grantServiceTicket("tests" + i, getService(), new NeverExpiresExpirationPolicy(), false);
+            this.ticketRegistry.addTicket(ticketGrantingTicket);
+            this.ticketRegistry.addTicket(st);
+            this.ticketRegistry.addTicket(st);
+        }
+        assertEquals(TICKETS_IN_REGISTRY, state.sessionCount());
+        assertEquals(TICKETS_IN_REGISTRY, state.serviceTicketCount());
+
+        this.ticketRegistry.deleteTicket("tests0");
+        this.ticketRegistry.deleteTicket("TEST0");
+        this.ticketRegistry.deleteTicket("TEST0");
+        assertEquals(TICKETS_IN_REGISTRY - 1, state.sessionCount());
+        assertEquals(TICKETS_IN_REGISTRY - 1, state.serviceTicketCount());
+    }
+
+    @Test
+    public void testForEachTicket() {
+        for (int i = 0; i < TICKETS_IN_REGISTRY; i++) {
+            final TicketGrantingTicket ticketGrantingTicket = new TicketGrantingTicketImpl(
+                "TEST" + i, getAuthentication(),
+                new NeverExpiresExpirationPolicy());
+            final ServiceTicket st = ticketGrantingTicket.grantServiceTicket("tests" + i, getService(), new NeverExpiresExpirationPolicy(), false);
+            this.ticketRegistry.addTicket(ticketGrantingTicket);
+            this.ticketRegistry.addTicket(st);
+        }
+
+        final StreamingTicketRegistry registry = (StreamingTicketRegistry) this.ticketRegistry;
+        final Collection<Ticket> visited = new ArrayList<Ticket>();
+        final TicketVisitor visitor = new TicketVisitor() {
+            public boolean visit(final Ticket ticket) {
+                visited.add(ticket);
+                return true;
+            }
+        };
+        registry.forEachTicket(Ticket.class, 3, visitor);
+        assertEquals(2 * TICKETS_IN_REGISTRY, visited.size());
+
+        visited.clear();
+        registry.forEachTicket(ServiceTicket.class, 3, visitor);
+        assertEquals(TICKETS_IN_REGISTRY, visited.size());
+        for (final Ticket ticket : visited) {
+            assertTrue(ticket instanceof ServiceTicket);
+        }
+
+        visited.clear();
+        registry.forEachTicket(Ticket.class, 3, new TicketVisitor() {
+            public boolean visit(final Ticket ticket) {
+                visited.add(ticket);
+                return visited.size() < 4;
+            }
+        });
+        assertEquals(4, visited.size());
+    }
+
     @Override
     public void setApplicationContext(final ApplicationContext applicationContext) throws BeansException {
       this.applicationContext = applicationContext;      
@@ -71,6 +71,7 @@ public final class JBossCacheTicketRegistry extends AbstractDistributedTicketReg
     }
 
     public boolean deleteTicket(final String ticketId) {
+        removeFromRequestScope(ticketId);
         try {
             if (log.isDebugEnabled()){
                 log.debug("Removing ticket from registry for: " + ticketId);
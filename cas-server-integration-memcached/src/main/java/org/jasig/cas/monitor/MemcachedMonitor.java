@@ -27,9 +27,11 @@ import java.util.Map;
 import javax.validation.constraints.NotNull;
 
 import net.spy.memcached.MemcachedClient;
+import org.jasig.cas.ticket.registry.support.kryo.KryoTranscoder;
 
 /**
  * Monitors the memcached hosts known to an instance of {@link net.spy.memcached.MemcachedClient}.
+ * If a {@link KryoTranscoder} is configured, its encoding statistics are included in the status description.
  *
  * @author Marvin S. Addison
  * @since 3.5.1
@@ -39,6 +41,9 @@ public class MemcachedMonitor extends AbstractCacheMonitor {
     @NotNull
     private final MemcachedClient memcachedClient;
 
+    /** Optional transcoder whose statistics are reported. */
+    private KryoTranscoder transcoder;
+
 
     /**
      * Creates a new monitor that observes the given memcached client.
@@ -50,6 +55,15 @@ public class MemcachedMonitor extends AbstractCacheMonitor {
     }
 
 
+    /**
+     * Sets the transcoder used by the memcached client in order to report its encoding statistics.
+     *
+     * @param transcoder Kryo transcoder.
+     */
+    public void setTranscoder(final KryoTranscoder transcoder) {
+        this.transcoder = transcoder;
+    }
+
     /**
      * Supersede the default cache status algorithm by considering unavailable memcached nodes above cache statistics.
      * If all nodes are unavailable, raise an error; if one or more nodes are unavailable, raise a warning; otherwise
@@ -65,9 +79,15 @@ public class MemcachedMonitor extends AbstractCacheMonitor {
         final CacheStatus status;
         if (unavailableList.size() > 0) {
             final String description = "One or more memcached servers is unavailable: " + unavailableList;
-            status = new CacheStatus(StatusCode.WARN, description, getStatistics());
+            status = new CacheStatus(StatusCode.WARN, appendTranscoderStatistics(description), getStatistics());
         } else {
-            status = super.observe();
+            final CacheStatus cacheStatus = super.observe();
+            if (transcoder != null && cacheStatus.getStatistics() != null) {
+                status = new CacheStatus(
+                        cacheStatus.getCode(), appendTranscoderStatistics(null), cacheStatus.getStatistics());
+            } else {
+                status = cacheStatus;
+            }
         }
         return status;
     }
@@ -102,4 +122,41 @@ public class MemcachedMonitor extends AbstractCacheMonitor {
         }
         return statsList.toArray(new CacheStatistics[statsList.size()]);
     }
+
+
+    /**
+     * Appends transcoder statistics, if a transcoder is configured, to the given status description.
+     *
+     * @param description Status description, may be null.
+     *
+     * @return Description including transcoder statistics.
+     */
+    private String appendTranscoderStatistics(final String description) {
+        if (transcoder == null) {
+            return description;
+        }
+        final StringBuilder sb = new StringBuilder();
+        if (description != null) {
+            sb.append(description).append(". ");
+        }
+        sb.append("Transcoder statistics: [encoded=").append(transcoder.getEncodeCount());
+        sb.append(", avgEncodeMicros=").append(averageMicros(transcoder.getEncodeTime(), transcoder.getEncodeCount()));
+        sb.append(", avgEncodedBytes=").append(average(transcoder.getEncodedBytes(), transcoder.getEncodeCount()));
+        sb.append(", decoded=").append(transcoder.getDecodeCount());
+        sb.append(", avgDecodeMicros=").append(averageMicros(transcoder.getDecodeTime(), transcoder.getDecodeCount()));
+        sb.append(", bufferOverflows=").append(transcoder.getBufferOverflowCount());
+        sb.append(", bufferSize=").append(transcoder.getBufferHighWaterMark());
+        sb.append(']');
+        return sb.toString();
+    }
+
+
+    private static long averageMicros(final long totalNanos, final long count) {
+        return average(totalNanos, count) / 1000;
+    }
+
+
+    private static long average(final long total, final long count) {
+        return count > 0 ? total / count : 0;
+    }
 }
@@ -21,11 +21,19 @@ package org.jasig.cas.ticket.registry;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
 import net.spy.memcached.AddrUtil;
 import net.spy.memcached.MemcachedClient;
+import org.jasig.cas.monitor.LatencyHistogram;
 import org.jasig.cas.ticket.ServiceTicket;
 import org.jasig.cas.ticket.Ticket;
 import org.jasig.cas.ticket.TicketGrantingTicket;
@@ -33,6 +41,13 @@ import org.springframework.beans.factory.DisposableBean;
 
 /**
  * Key-value ticket registry implementation that stores tickets in memcached keyed on the ticket ID.
+ * <p>
+ * By default every write waits for the acknowledgement of the memcached server. A less strict
+ * {@link TicketWritePolicy} lets writes return without waiting; updates of tickets written that way are
+ * deferred by {@link #setUpdateDelay(long) updateDelay} and coalesced, so that the many updates of a
+ * ticket-granting ticket made while processing one request result in a single <code>replace</code>.
+ * Until a deferred update is sent, this registry returns the pending ticket state rather than the stored one.
+ * Latencies observed by callers are recorded per operation so that policies can be compared under load.
  *
  * @author Scott Battaglia
  * @author Marvin S. Addison
@@ -41,6 +56,9 @@ import org.springframework.beans.factory.DisposableBean;
  */
 public final class MemCacheTicketRegistry extends AbstractDistributedTicketRegistry implements DisposableBean {
 
+    /** Time in milliseconds allowed for queued writes to be sent on shutdown. */
+    private static final long SHUTDOWN_TIMEOUT = 5000;
+
     /** Memcached client */
     @NotNull
     private final MemcachedClient client;
@@ -57,6 +75,32 @@ public final class MemCacheTicketRegistry extends AbstractDistributedTicketRegis
     @Min(0)
     private final int stTimeout;
 
+    /** Which writes wait for acknowledgement. */
+    @NotNull
+    private TicketWritePolicy writePolicy = TicketWritePolicy.SYNCHRONOUS;
+
+    /** Maximum time in milliseconds to wait for acknowledgement of a write; 0 waits as long as the client does. */
+    @Min(0)
+    private long writeTimeout;
+
+    /** Time in milliseconds by which asynchronous updates are deferred in order to coalesce them. */
+    @Min(0)
+    private long updateDelay;
+
+    /** Tickets whose asynchronous update has not been sent yet, keyed by ticket ID. */
+    private final ConcurrentHashMap<String, Ticket> pendingUpdates = new ConcurrentHashMap<String, Ticket>();
+
+    /** Sends deferred updates; created on first use. */
+    private ScheduledExecutorService updateExecutor;
+
+    private final LatencyHistogram addLatency = new LatencyHistogram("add");
+
+    private final LatencyHistogram updateLatency = new LatencyHistogram("update");
+
+    private final LatencyHistogram deleteLatency = new LatencyHistogram("delete");
+
+    private final LatencyHistogram getLatency = new LatencyHistogram("get");
+
 
     /**
      * Creates a new instance that stores tickets in the given memcached hosts.
@@ -103,52 +147,121 @@ public final class MemCacheTicketRegistry extends AbstractDistributedTicketRegis
         this.client = client;
     }
 
+    /**
+     * Sets which writes wait for acknowledgement of the memcached server. Default is
+     * {@link TicketWritePolicy#SYNCHRONOUS}.
+     *
+     * @param policy Write durability policy.
+     */
+    public void setWritePolicy(final TicketWritePolicy policy) {
+        this.writePolicy = policy;
+    }
+
+    /**
+     * Sets the maximum time to wait for acknowledgement of a synchronous write. A write that times out is logged
+     * and may or may not have been applied. Default is 0, which waits as long as the memcached client allows.
+     *
+     * @param timeout Timeout in milliseconds.
+     */
+    public void setWriteTimeout(final long timeout) {
+        this.writeTimeout = timeout;
+    }
+
+    /**
+     * Sets the time by which asynchronous updates are deferred. All updates of a ticket made within that time are
+     * coalesced into a single write. Default is 0, which still coalesces updates made while a previous update of
+     * the same ticket waits to be sent.
+     *
+     * @param delay Delay in milliseconds.
+     */
+    public void setUpdateDelay(final long delay) {
+        this.updateDelay = delay;
+    }
+
+    public LatencyHistogram getAddLatency() {
+        return this.addLatency;
+    }
+
+    public LatencyHistogram getUpdateLatency() {
+        return this.updateLatency;
+    }
+
+    public LatencyHistogram getDeleteLatency() {
+        return this.deleteLatency;
+    }
+
+    public LatencyHistogram getGetLatency() {
+        return this.getLatency;
+    }
+
+    /**
+     * @return Latencies of all memcached operations, for {@link org.jasig.cas.monitor.LatencyMonitor}.
+     */
+    public LatencyHistogram[] getLatencies() {
+        return new LatencyHistogram[] {this.addLatency, this.updateLatency, this.deleteLatency, this.getLatency};
+    }
+
     protected void updateTicket(final Ticket ticket) {
         log.debug("Updating ticket {}", ticket);
-        try {
-            if (!this.client.replace(ticket.getId(), getTimeout(ticket), ticket).get()) {
-                log.error("Failed updating {}", ticket);
-            }
-        } catch (final InterruptedException e) {
-            log.warn("Interrupted while waiting for response to async replace operation for ticket {}. " +
-                    "Cannot determine whether update was successful.", ticket);
-        } catch (final Exception e) {
-            log.error("Failed updating {}", ticket, e);
+        final long start = System.nanoTime();
+        if (this.writePolicy.isSynchronous(ticket)) {
+            replace(ticket);
+        } else if (this.pendingUpdates.put(ticket.getId(), ticket) == null) {
+            scheduleUpdate(ticket.getId());
         }
+        this.updateLatency.record(System.nanoTime() - start);
     }
 
     public void addTicket(final Ticket ticket) {
         log.debug("Adding ticket {}", ticket);
+        final long start = System.nanoTime();
         try {
-            if (!this.client.add(ticket.getId(), getTimeout(ticket), ticket).get()) {
+            final Future<Boolean> f = this.client.add(ticket.getId(), getTimeout(ticket), ticket);
+            if (this.writePolicy.isSynchronous(ticket) && !waitFor(f)) {
                 log.error("Failed adding {}", ticket);
             }
         } catch (final InterruptedException e) {
             log.warn("Interrupted while waiting for response to async add operation for ticket {}. " +
                     "Cannot determine whether add was successful.", ticket);
+        } catch (final TimeoutException e) {
+            log.warn("Timed out waiting for response to async add operation for ticket {}. " +
+                    "Cannot determine whether add was successful.", ticket);
         } catch (final Exception e) {
             log.error("Failed adding {}", ticket, e);
         }
+        this.addLatency.record(System.nanoTime() - start);
     }
 
     public boolean deleteTicket(final String ticketId) {
         log.debug("Deleting ticket {}", ticketId);
+        final long start = System.nanoTime();
+        this.pendingUpdates.remove(ticketId);
+        removeFromRequestScope(ticketId);
+        boolean result = false;
         try {
-            return this.client.delete(ticketId).get();
+            final Future<Boolean> f = this.client.delete(ticketId);
+            result = !this.writePolicy.isSynchronousDelete() || waitFor(f);
         } catch (final Exception e) {
             log.error("Failed deleting {}", ticketId, e);
         }
-        return false;
+        this.deleteLatency.record(System.nanoTime() - start);
+        return result;
     }
 
     public Ticket getTicket(final String ticketId) {
+        final long start = System.nanoTime();
         try {
-            final Ticket t = (Ticket) this.client.get(ticketId);
+            Ticket t = this.pendingUpdates.get(ticketId);
+            if (t == null) {
+                t = (Ticket) this.client.get(ticketId);
+            }
             if (t != null) {
                 return getProxiedTicketInstance(t);
             }
         } catch (final Exception e) {
             log.error("Failed fetching {} ", ticketId, e);
+        } finally {
+            this.getLatency.record(System.nanoTime() - start);
         }
         return null;
     }
@@ -163,7 +276,20 @@ public final class MemCacheTicketRegistry extends AbstractDistributedTicketRegis
     }
 
     public void destroy() throws Exception {
-        this.client.shutdown();
+        final ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = this.updateExecutor;
+        }
+        if (executor != null) {
+            // Delayed updates still run after shutdown
+            executor.shutdown();
+            if (!executor.awaitTermination(this.updateDelay + SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                log.warn("Timed out sending {} pending ticket updates", this.pendingUpdates.size());
+            }
+            this.client.shutdown(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+        } else {
+            this.client.shutdown();
+        }
     }
 
     /**
@@ -177,6 +303,64 @@ public final class MemCacheTicketRegistry extends AbstractDistributedTicketRegis
         return true;
     }
 
+    private void replace(final Ticket ticket) {
+        try {
+            if (!waitFor(this.client.replace(ticket.getId(), getTimeout(ticket), ticket))) {
+                log.error("Failed updating {}", ticket);
+            }
+        } catch (final InterruptedException e) {
+            log.warn("Interrupted while waiting for response to async replace operation for ticket {}. " +
+                    "Cannot determine whether update was successful.", ticket);
+        } catch (final TimeoutException e) {
+            log.warn("Timed out waiting for response to async replace operation for ticket {}. " +
+                    "Cannot determine whether update was successful.", ticket);
+        } catch (final Exception e) {
+            log.error("Failed updating {}", ticket, e);
+        }
+    }
+
+    /**
+     * Sends the pending update of the given ticket after the update delay. Updates made in the meantime replace the
+     * pending ticket and are sent along.
+     *
+     * @param ticketId ID of ticket with a pending update.
+     */
+    private void scheduleUpdate(final String ticketId) {
+        getUpdateExecutor().schedule(new Runnable() {
+            public void run() {
+                final Ticket ticket = pendingUpdates.remove(ticketId);
+                if (ticket == null) {
+                    return;
+                }
+                try {
+                    client.replace(ticketId, getTimeout(ticket), ticket);
+                } catch (final Exception e) {
+                    log.error("Failed updating {}", ticket, e);
+                }
+            }
+        }, this.updateDelay, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized ScheduledExecutorService getUpdateExecutor() {
+        if (this.updateExecutor == null) {
+            this.updateExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                public Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r, "MemCacheTicketRegistry-updater");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return this.updateExecutor;
+    }
+
+    private boolean waitFor(final Future<Boolean> future) throws Exception {
+        if (this.writeTimeout > 0) {
+            return future.get(this.writeTimeout, TimeUnit.MILLISECONDS);
+        }
+        return future.get();
+    }
+
     private int getTimeout(final Ticket t) {
         if (t instanceof TicketGrantingTicket) {
             return this.tgtTimeout;
@@ -0,0 +1,76 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.ticket.registry;
+
+import org.jasig.cas.ticket.ServiceTicket;
+import org.jasig.cas.ticket.Ticket;
+
+/**
+ * Durability policy of ticket writes in {@link MemCacheTicketRegistry}, i.e. which writes wait for the
+ * acknowledgement of the memcached server before returning.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public enum TicketWritePolicy {
+
+    /** Every write waits for acknowledgement. */
+    SYNCHRONOUS,
+
+    /**
+     * Writes of service tickets and deletions wait for acknowledgement; ticket-granting ticket writes return
+     * immediately and repeated updates of the same ticket-granting ticket are coalesced.
+     */
+    SERVICE_TICKETS_SYNCHRONOUS,
+
+    /**
+     * No write waits for acknowledgement and repeated updates of the same ticket are coalesced. Failed writes are
+     * only reported by the memcached client.
+     */
+    ASYNCHRONOUS;
+
+
+    /**
+     * Determines whether writes of the given ticket wait for acknowledgement under this policy.
+     *
+     * @param ticket Ticket being written.
+     *
+     * @return True if the write must wait for acknowledgement, false otherwise.
+     */
+    public boolean isSynchronous(final Ticket ticket) {
+        switch (this) {
+            case SYNCHRONOUS:
+                return true;
+            case SERVICE_TICKETS_SYNCHRONOUS:
+                return ticket instanceof ServiceTicket;
+            default:
+                return false;
+        }
+    }
+
+
+    /**
+     * Determines whether deletions wait for acknowledgement under this policy.
+     *
+     * @return True if deletions must wait for acknowledgement, false otherwise.
+     */
+    public boolean isSynchronousDelete() {
+        return this != ASYNCHRONOUS;
+    }
+}
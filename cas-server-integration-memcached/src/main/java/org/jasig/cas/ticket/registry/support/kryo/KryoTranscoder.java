@@ -24,6 +24,8 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.SerializationException;
@@ -60,6 +62,12 @@ import org.slf4j.LoggerFactory;
 /**
  * {@link net.spy.memcached.MemcachedClient} transcoder implementation based on Kryo fast serialization framework
  * suited for efficient serialization of tickets.
+ * <p>
+ * A single Kryo instance is shared by all threads: Kryo keeps its registrations in concurrent maps and all
+ * per-operation state in a thread-local context, so it is safe for concurrent use once {@link #initialize()} has
+ * completed. Encoding goes through a per-thread buffer that is reused for every call and grows when an object does
+ * not fit, so that large objects only cause a buffer overflow the first time a thread encodes them. Buffers of new
+ * threads start at the largest size any thread has needed so far.
  *
  * @author Marvin S. Addison
  * @version $Revision: $
@@ -75,6 +83,29 @@ public class KryoTranscoder implements Transcoder<Object> {
     /** Maximum size of single encoded object in bytes. */
     private final int bufferSize;
 
+    /** Largest encode buffer size needed so far. */
+    private final AtomicInteger bufferHighWaterMark;
+
+    /** Encode buffer reused by each thread. */
+    private final ThreadLocal<ByteBuffer> encodeBuffer = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate(bufferHighWaterMark.get());
+        }
+    };
+
+    private final AtomicLong encodeCount = new AtomicLong();
+
+    private final AtomicLong encodeTime = new AtomicLong();
+
+    private final AtomicLong encodedBytes = new AtomicLong();
+
+    private final AtomicLong decodeCount = new AtomicLong();
+
+    private final AtomicLong decodeTime = new AtomicLong();
+
+    private final AtomicLong bufferOverflowCount = new AtomicLong();
+
     /** Field reflection helper class. */
     private final FieldHelper fieldHelper = new FieldHelper();
 
@@ -89,6 +120,7 @@ public class KryoTranscoder implements Transcoder<Object> {
      */
     public KryoTranscoder(final int initialBufferSize) {
         bufferSize = initialBufferSize;
+        bufferHighWaterMark = new AtomicInteger(initialBufferSize);
     }
 
 
@@ -160,13 +192,21 @@ public class KryoTranscoder implements Transcoder<Object> {
 
 
     public CachedData encode(final Object o) {
+        final long start = System.nanoTime();
         final byte[] bytes = encodeToBytes(o);
+        encodeTime.addAndGet(System.nanoTime() - start);
+        encodeCount.incrementAndGet();
+        encodedBytes.addAndGet(bytes.length);
         return new CachedData(0, bytes, bytes.length);
     }
 
 
     public Object decode(final CachedData d) {
-        return kryo.readClassAndObject(ByteBuffer.wrap(d.getData()));
+        final long start = System.nanoTime();
+        final Object result = kryo.readClassAndObject(ByteBuffer.wrap(d.getData()));
+        decodeTime.addAndGet(System.nanoTime() - start);
+        decodeCount.incrementAndGet();
+        return result;
     }
 
 
@@ -191,35 +231,112 @@ public class KryoTranscoder implements Transcoder<Object> {
 
 
     /**
-     * Encodes the given object using registered Kryo serializers.  Provides explicit buffer overflow protection, but
-     * careful buffer sizing should be employed to reduce the need for this facility.
+     * @return Number of objects encoded since this instance was created.
+     */
+    public long getEncodeCount() {
+        return encodeCount.get();
+    }
+
+
+    /**
+     * @return Total time spent encoding objects in nanoseconds.
+     */
+    public long getEncodeTime() {
+        return encodeTime.get();
+    }
+
+
+    /**
+     * @return Total size of encoded data in bytes.
+     */
+    public long getEncodedBytes() {
+        return encodedBytes.get();
+    }
+
+
+    /**
+     * @return Number of objects decoded since this instance was created.
+     */
+    public long getDecodeCount() {
+        return decodeCount.get();
+    }
+
+
+    /**
+     * @return Total time spent decoding objects in nanoseconds.
+     */
+    public long getDecodeTime() {
+        return decodeTime.get();
+    }
+
+
+    /**
+     * @return Number of times an encode buffer was too small and had to be grown.
+     */
+    public long getBufferOverflowCount() {
+        return bufferOverflowCount.get();
+    }
+
+
+    /**
+     * @return Size in bytes of the largest encode buffer needed so far.
+     */
+    public int getBufferHighWaterMark() {
+        return bufferHighWaterMark.get();
+    }
+
+
+    /**
+     * Encodes the given object using registered Kryo serializers.  Provides explicit buffer overflow protection by
+     * growing the buffer of the current thread up to {@link #getMaxSize()}, but careful buffer sizing should be
+     * employed to reduce the need for this facility.
      *
      * @param o Object to encode.
      *
      * @return Encoded bytes.
      */
     private byte[] encodeToBytes(final Object o) {
-        int factor = 1;
-        byte[] result = null;
-        ByteBuffer buffer = Kryo.getContext().getBuffer(bufferSize * factor);
-        while (result == null) {
+        ByteBuffer buffer = encodeBuffer.get();
+        while (true) {
+            buffer.clear();
             try {
                 kryo.writeClassAndObject(buffer, o);
-                result = new byte[buffer.flip().limit()];
+                final byte[] result = new byte[buffer.flip().limit()];
                 buffer.get(result);
+                return result;
             } catch (final SerializationException e) {
                 Throwable rootCause = e;
                 while (rootCause.getCause() != null) {
                     rootCause = rootCause.getCause();
                 }
-                if (rootCause instanceof BufferOverflowException) {
-                    buffer = ByteBuffer.allocate(bufferSize * ++factor);
-                    logger.warn("Buffer overflow while encoding " + o);
-                } else {
+                if (!(rootCause instanceof BufferOverflowException) || buffer.capacity() >= getMaxSize()) {
                     throw e;
                 }
+                buffer = growBuffer(buffer.capacity());
+                logger.warn("Buffer overflow while encoding {}, buffer grown to {} bytes", o, buffer.capacity());
             }
         }
-        return result;
+    }
+
+
+    /**
+     * Replaces the encode buffer of the current thread with one twice as large, or as large as the biggest buffer
+     * used by any other thread if that is bigger.
+     *
+     * @param capacity Capacity of the buffer that overflowed.
+     *
+     * @return New encode buffer for the current thread.
+     */
+    private ByteBuffer growBuffer(final int capacity) {
+        bufferOverflowCount.incrementAndGet();
+        final int size = Math.min(Math.max(capacity * 2, bufferHighWaterMark.get()), getMaxSize());
+        int mark;
+        do {
+            mark = bufferHighWaterMark.get();
+        } while (size > mark && !bufferHighWaterMark.compareAndSet(mark, size));
+
+        final ByteBuffer buffer = ByteBuffer.allocate(size);
+        encodeBuffer.set(buffer);
+        return buffer;
     }
 }
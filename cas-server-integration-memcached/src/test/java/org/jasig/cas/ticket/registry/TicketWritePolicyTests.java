@@ -0,0 +1,113 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.ticket.registry;
+
+import java.util.concurrent.Future;
+
+import net.spy.memcached.MemcachedClient;
+import org.jasig.cas.ticket.ServiceTicket;
+import org.jasig.cas.ticket.TicketGrantingTicket;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit test for the {@link TicketWritePolicy} options of {@link MemCacheTicketRegistry}.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public class TicketWritePolicyTests {
+
+    private MemcachedClient client;
+
+    private Future<Boolean> future;
+
+    private MemCacheTicketRegistry registry;
+
+    private TicketGrantingTicket tgt;
+
+    private ServiceTicket st;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        client = mock(MemcachedClient.class);
+        future = mock(Future.class);
+        when(future.get()).thenReturn(true);
+        when(client.add(anyString(), anyInt(), any())).thenReturn(future);
+        when(client.replace(anyString(), anyInt(), any())).thenReturn(future);
+        when(client.delete(anyString())).thenReturn(future);
+        registry = new MemCacheTicketRegistry(client, 100, 10);
+
+        tgt = mock(TicketGrantingTicket.class);
+        when(tgt.getId()).thenReturn("TGT-1");
+        st = mock(ServiceTicket.class);
+        when(st.getId()).thenReturn("ST-1");
+    }
+
+    @Test
+    public void testSynchronous() throws Exception {
+        registry.addTicket(tgt);
+        registry.updateTicket(tgt);
+        assertTrue(registry.deleteTicket("TGT-1"));
+        verify(future, times(3)).get();
+        assertEquals(1, registry.getAddLatency().getCount());
+    }
+
+    @Test
+    public void testServiceTicketsSynchronous() throws Exception {
+        registry.setWritePolicy(TicketWritePolicy.SERVICE_TICKETS_SYNCHRONOUS);
+        registry.addTicket(tgt);
+        verify(future, never()).get();
+        registry.addTicket(st);
+        verify(future, times(1)).get();
+    }
+
+    @Test
+    public void testAsynchronousUpdatesAreCoalesced() throws Exception {
+        registry.setWritePolicy(TicketWritePolicy.ASYNCHRONOUS);
+        registry.setUpdateDelay(200);
+        registry.addTicket(tgt);
+        registry.updateTicket(tgt);
+        registry.updateTicket(tgt);
+        registry.updateTicket(tgt);
+
+        // Pending state is visible before it is written
+        assertEquals("TGT-1", registry.getTicket("TGT-1").getId());
+        verify(client, never()).get("TGT-1");
+
+        registry.destroy();
+        verify(client, times(1)).replace(eq("TGT-1"), eq(100), same(tgt));
+        verify(future, never()).get();
+        assertEquals(3, registry.getUpdateLatency().getCount());
+    }
+}
@@ -24,6 +24,7 @@ import java.util.List;
 
 import com.esotericsoftware.kryo.Serializer;
 import com.esotericsoftware.kryo.serialize.FieldSerializer;
+import net.spy.memcached.CachedData;
 import org.jasig.cas.authentication.Authentication;
 import org.jasig.cas.authentication.principal.Service;
 import org.jasig.cas.ticket.ExpirationPolicy;
@@ -34,6 +35,7 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Unit test for {@link KryoTranscoder} class.
@@ -72,6 +74,22 @@ public class KryoTranscoderTests {
                 new MockServiceTicket("ST-1234567890ABCDEFGHIJKLMNOPQRSTUVWXYZ01234567890ABCDEFGHIJK");
         assertEquals(expected, transcoder.decode(transcoder.encode(expected)));
     }
+
+    @Test
+    public void testEncodeBufferIsReused() throws Exception {
+        final ServiceTicket expected =
+                new MockServiceTicket("ST-1234567890ABCDEFGHIJKLMNOPQRSTUVWXYZ01234567890ABCDEFGHIJK");
+        final CachedData data = transcoder.encode(expected);
+        final long overflows = transcoder.getBufferOverflowCount();
+        assertTrue(transcoder.getBufferHighWaterMark() >= data.getData().length);
+
+        // Second encoding of the same object must fit in the grown buffer of this thread
+        assertEquals(expected, transcoder.decode(transcoder.encode(expected)));
+        assertEquals(overflows, transcoder.getBufferOverflowCount());
+        assertEquals(2, transcoder.getEncodeCount());
+        assertEquals(1, transcoder.getDecodeCount());
+        assertEquals(2L * data.getData().length, transcoder.getEncodedBytes());
+    }
     
     static class MockServiceTicket implements ServiceTicket {
         private String id;
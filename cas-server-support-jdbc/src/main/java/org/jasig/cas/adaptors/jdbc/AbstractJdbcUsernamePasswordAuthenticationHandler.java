@@ -19,6 +19,7 @@
 package org.jasig.cas.adaptors.jdbc;
 
 import org.jasig.cas.authentication.handler.support.AbstractUsernamePasswordAuthenticationHandler;
+import org.jasig.cas.util.ExpiringCache;
 import org.springframework.jdbc.core.JdbcTemplate;
 
 import javax.sql.DataSource;
@@ -26,6 +27,12 @@ import javax.validation.constraints.NotNull;
 
 /**
  * Abstract class for database authentication handlers.
+ * <p>
+ * An optional verifier cache remembers recently successful credentials as
+ * salted {@link PasswordVerifier}s, so that repeated logins within the time to
+ * live of the cache do not hit the database. Subclasses check the cache with
+ * {@link #isCachedCredential(String, String)} before querying the database and
+ * record a successful login with {@link #cacheCredential(String, String)}.
  * 
  * @author Scott Battaglia
  * @since 3.0.3
@@ -38,6 +45,11 @@ public abstract class AbstractJdbcUsernamePasswordAuthenticationHandler extends
     @NotNull
     private DataSource dataSource;
 
+    /** Optional cache of verifiers of recently successful credentials, keyed by username. */
+    private ExpiringCache<String, PasswordVerifier> verifierCache;
+
+    private int verifierIterations = PasswordVerifier.DEFAULT_ITERATIONS;
+
     /**
      * Method to set the datasource and generate a JdbcTemplate.
      * 
@@ -60,4 +72,52 @@ public abstract class AbstractJdbcUsernamePasswordAuthenticationHandler extends
     protected final DataSource getDataSource() {
         return this.dataSource;
     }
+
+    /**
+     * Sets the cache of verifiers of recently successful credentials. The time
+     * to live of the cache bounds how long a changed or revoked password is
+     * still accepted, so it should be kept short. Credentials are always
+     * checked against the database when no cache is set.
+     *
+     * @param verifierCache Verifier cache keyed by username.
+     */
+    public final void setVerifierCache(final ExpiringCache<String, PasswordVerifier> verifierCache) {
+        this.verifierCache = verifierCache;
+    }
+
+    /**
+     * @param verifierIterations Number of hash iterations of cached verifiers.
+     */
+    public final void setVerifierIterations(final int verifierIterations) {
+        this.verifierIterations = verifierIterations;
+    }
+
+    /**
+     * Determines whether the credentials match a cached verifier. A miss or a
+     * mismatch means the credentials must be checked against the database.
+     *
+     * @param username Username the verifier is cached under.
+     * @param password Password provided by the user.
+     *
+     * @return True if the credentials were recently verified, false otherwise.
+     */
+    protected final boolean isCachedCredential(final String username, final String password) {
+        if (this.verifierCache == null || password == null) {
+            return false;
+        }
+        final PasswordVerifier verifier = this.verifierCache.get(username);
+        return verifier != null && verifier.matches(password);
+    }
+
+    /**
+     * Caches a verifier of credentials that were verified by the database.
+     *
+     * @param username Username to cache the verifier under.
+     * @param password Password provided by the user.
+     */
+    protected final void cacheCredential(final String username, final String password) {
+        if (this.verifierCache != null && password != null) {
+            this.verifierCache.put(username, PasswordVerifier.create(password, this.verifierIterations));
+        }
+    }
 }
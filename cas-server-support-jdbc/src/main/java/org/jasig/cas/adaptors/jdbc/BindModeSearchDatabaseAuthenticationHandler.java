@@ -30,6 +30,9 @@ import org.springframework.jdbc.datasource.DataSourceUtils;
  * database with the provided username and password. Servers are provided as a
  * Properties class with the key being the URL and the property being the type
  * of database driver needed.
+ * <p>
+ * With a verifier cache, a user who logged in recently is authenticated
+ * without opening another connection on their behalf.
  * 
  * @author Scott Battaglia
  * @author Dmitriy Kopylenko
@@ -44,11 +47,15 @@ public class BindModeSearchDatabaseAuthenticationHandler extends
         throws AuthenticationException {
         final String username = credentials.getUsername();
         final String password = credentials.getPassword();
+        if (isCachedCredential(username, password)) {
+            return true;
+        }
 
         try {
             final Connection c = this.getDataSource()
                 .getConnection(username, password);
             DataSourceUtils.releaseConnection(c, this.getDataSource());
+            cacheCredential(username, password);
             return true;
         } catch (final SQLException e) {
             return false;
@@ -0,0 +1,98 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.adaptors.jdbc;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Salted, deliberately slow verifier of a password, used to remember recently
+ * successful credentials without holding the password itself.
+ * <p>
+ * The verifier is a PBKDF2 (HMAC-SHA1) hash of the password with a random salt
+ * that is unique to each verifier.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public final class PasswordVerifier {
+
+    /** Default number of PBKDF2 iterations. */
+    public static final int DEFAULT_ITERATIONS = 1000;
+
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA1";
+
+    private static final int SALT_LENGTH = 16;
+
+    private static final int KEY_LENGTH = 160;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final byte[] salt;
+
+    private final int iterations;
+
+    private final byte[] hash;
+
+    private PasswordVerifier(final byte[] salt, final int iterations, final byte[] hash) {
+        this.salt = salt;
+        this.iterations = iterations;
+        this.hash = hash;
+    }
+
+    /**
+     * Creates a verifier of the given password with a new random salt.
+     *
+     * @param password Password to verify later.
+     * @param iterations Number of PBKDF2 iterations.
+     *
+     * @return New verifier.
+     */
+    public static PasswordVerifier create(final String password, final int iterations) {
+        final byte[] salt = new byte[SALT_LENGTH];
+        RANDOM.nextBytes(salt);
+        return new PasswordVerifier(salt, iterations, hash(password, salt, iterations));
+    }
+
+    /**
+     * Determines whether the given password is the one this verifier was created from.
+     *
+     * @param password Password to check.
+     *
+     * @return True if the password matches, false otherwise.
+     */
+    public boolean matches(final String password) {
+        return MessageDigest.isEqual(this.hash, hash(password, this.salt, this.iterations));
+    }
+
+    private static byte[] hash(final String password, final byte[] salt, final int iterations) {
+        final PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, KEY_LENGTH);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (final GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot compute password verifier", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
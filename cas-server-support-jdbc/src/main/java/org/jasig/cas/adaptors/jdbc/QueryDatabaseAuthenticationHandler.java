@@ -43,12 +43,19 @@ public class QueryDatabaseAuthenticationHandler extends AbstractJdbcUsernamePass
     protected final boolean authenticateUsernamePasswordInternal(final UsernamePasswordCredentials credentials) throws AuthenticationException {
         final String username = getPrincipalNameTransformer().transform(credentials.getUsername());
         final String password = credentials.getPassword();
+        if (isCachedCredential(username, password)) {
+            return true;
+        }
         final String encryptedPassword = this.getPasswordEncoder().encode(
             password);
         
         try {
             final String dbPassword = getJdbcTemplate().queryForObject(this.sql, String.class, username);
-            return dbPassword.equals(encryptedPassword);
+            if (dbPassword.equals(encryptedPassword)) {
+                cacheCredential(username, password);
+                return true;
+            }
+            return false;
         } catch (final IncorrectResultSizeDataAccessException e) {
             // this means the username was not found.
             return false;
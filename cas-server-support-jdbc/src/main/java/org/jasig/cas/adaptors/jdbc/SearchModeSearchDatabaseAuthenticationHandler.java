@@ -54,12 +54,19 @@ public class SearchModeSearchDatabaseAuthenticationHandler extends
 
     protected final boolean authenticateUsernamePasswordInternal(final UsernamePasswordCredentials credentials) throws AuthenticationException {
         final String transformedUsername = getPrincipalNameTransformer().transform(credentials.getUsername());
+        if (isCachedCredential(transformedUsername, credentials.getPassword())) {
+            return true;
+        }
         final String encyptedPassword = getPasswordEncoder().encode(credentials.getPassword());
 
         final int count = getJdbcTemplate().queryForInt(this.sql,
            transformedUsername, encyptedPassword);
 
-        return count > 0;
+        if (count > 0) {
+            cacheCredential(transformedUsername, credentials.getPassword());
+            return true;
+        }
+        return false;
     }
 
     public void afterPropertiesSet() throws Exception {
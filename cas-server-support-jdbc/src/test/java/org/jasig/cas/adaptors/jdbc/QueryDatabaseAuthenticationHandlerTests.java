@@ -0,0 +1,128 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.adaptors.jdbc;
+
+import org.jasig.cas.authentication.principal.UsernamePasswordCredentials;
+import org.jasig.cas.util.ExpiringCache;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for {@link QueryDatabaseAuthenticationHandler} and its cache of verifiers of recently successful
+ * credentials, against an in-memory HSQLDB database.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public class QueryDatabaseAuthenticationHandlerTests {
+
+    private JdbcTemplate jdbcTemplate;
+
+    private ExpiringCache<String, PasswordVerifier> cache;
+
+    private QueryDatabaseAuthenticationHandler handler;
+
+    @Before
+    public void setUp() throws Exception {
+        final DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:hsqldb:mem:cas-jdbc-authentication", "sa", "");
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.execute("CREATE TABLE USERS (USERNAME VARCHAR(50), PASSWORD VARCHAR(50))");
+        this.jdbcTemplate.update("INSERT INTO USERS VALUES (?, ?)", "alice", "secret");
+
+        this.cache = new ExpiringCache<String, PasswordVerifier>("verifiers", 100, 60000);
+        this.handler = new QueryDatabaseAuthenticationHandler();
+        this.handler.setDataSource(dataSource);
+        this.handler.setSql("SELECT PASSWORD FROM USERS WHERE USERNAME = ?");
+        this.handler.setVerifierCache(this.cache);
+        this.handler.setVerifierIterations(10);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.jdbcTemplate.execute("DROP TABLE USERS");
+    }
+
+    @Test
+    public void testMissIsCheckedAgainstDatabase() throws Exception {
+        assertTrue(authenticate("alice", "secret"));
+        assertEquals(1, this.cache.getMisses());
+        assertEquals(1, this.cache.getSize());
+
+        assertFalse(authenticate("bob", "secret"));
+        assertEquals(2, this.cache.getMisses());
+        assertEquals(1, this.cache.getSize());
+    }
+
+    @Test
+    public void testHitDoesNotQueryDatabase() throws Exception {
+        assertTrue(authenticate("alice", "secret"));
+        this.jdbcTemplate.update("DELETE FROM USERS");
+
+        assertTrue(authenticate("alice", "secret"));
+        assertEquals(1, this.cache.getHits());
+    }
+
+    @Test
+    public void testPasswordMismatchIsCheckedAgainstDatabase() throws Exception {
+        assertTrue(authenticate("alice", "secret"));
+        assertFalse(authenticate("alice", "wrong"));
+
+        // A new password accepted by the database replaces the cached verifier
+        this.jdbcTemplate.update("UPDATE USERS SET PASSWORD = ? WHERE USERNAME = ?", "changed", "alice");
+        assertTrue(authenticate("alice", "changed"));
+        assertFalse(authenticate("alice", "secret"));
+        assertTrue(authenticate("alice", "changed"));
+        assertEquals(4, this.cache.getHits());
+        assertEquals(1, this.cache.getMisses());
+    }
+
+    @Test
+    public void testInvalidatedVerifierIsCheckedAgainstDatabase() throws Exception {
+        assertTrue(authenticate("alice", "secret"));
+        this.jdbcTemplate.update("UPDATE USERS SET PASSWORD = ? WHERE USERNAME = ?", "changed", "alice");
+        assertTrue(authenticate("alice", "secret"));
+
+        assertTrue(this.cache.remove("alice"));
+        assertFalse(authenticate("alice", "secret"));
+        assertTrue(authenticate("alice", "changed"));
+    }
+
+    @Test
+    public void testWithoutCacheEveryLoginQueriesDatabase() throws Exception {
+        this.handler.setVerifierCache(null);
+        assertTrue(authenticate("alice", "secret"));
+        this.jdbcTemplate.update("DELETE FROM USERS");
+        assertFalse(authenticate("alice", "secret"));
+    }
+
+    private boolean authenticate(final String username, final String password) throws Exception {
+        final UsernamePasswordCredentials credentials = new UsernamePasswordCredentials();
+        credentials.setUsername(username);
+        credentials.setPassword(password);
+        return this.handler.authenticate(credentials);
+    }
+}
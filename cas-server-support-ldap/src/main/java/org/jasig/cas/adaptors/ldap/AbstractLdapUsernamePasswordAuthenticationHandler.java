@@ -24,11 +24,13 @@ import org.jasig.cas.authentication.LdapAuthenticationException;
 import org.jasig.cas.authentication.handler.AuthenticationException;
 import org.jasig.cas.authentication.handler.BadCredentialsAuthenticationException;
 import org.jasig.cas.authentication.handler.support.AbstractUsernamePasswordAuthenticationHandler;
+import org.jasig.cas.util.LdapUtils;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.ldap.core.LdapTemplate;
 import org.springframework.ldap.core.ContextSource;
 import org.springframework.util.Assert;
 
+import javax.naming.directory.DirContext;
 import javax.validation.constraints.NotNull;
 
 /**
@@ -59,6 +61,9 @@ public abstract class AbstractLdapUsernamePasswordAuthenticationHandler extends
     /** Whether the LdapTemplate should ignore partial results. */
     private boolean ignorePartialResultException = false;
 
+    /** Pool of connections to bind on; if null, every bind opens a new connection from the context source. */
+    private AuthenticationContextPool authenticationContextPool;
+
     /**
      * Method to set the datasource and generate a JdbcTemplate.
      * 
@@ -76,6 +81,16 @@ public abstract class AbstractLdapUsernamePasswordAuthenticationHandler extends
         this.ldapErrorDefinitions = ldapErrorDefs;
     }
 
+    /**
+     * Sets the pool of connections on which users are authenticated, which avoids opening a new connection for
+     * every authentication.
+     *
+     * @param pool Pool of connections for user binds.
+     */
+    public final void setAuthenticationContextPool(final AuthenticationContextPool pool) {
+        this.authenticationContextPool = pool;
+    }
+
     /**
      * Method to return the LdapTemplate
      * 
@@ -93,6 +108,27 @@ public abstract class AbstractLdapUsernamePasswordAuthenticationHandler extends
         return this.filter;
     }
 
+    /**
+     * Authenticates as the given user, on a pooled connection if an {@link AuthenticationContextPool} is set.
+     *
+     * @param dn DN of the user.
+     * @param password Password of the user.
+     *
+     * @throws org.springframework.ldap.NamingSecurityException if the credentials are rejected.
+     */
+    protected final void bind(final String dn, final String password) {
+        if (this.authenticationContextPool != null) {
+            this.authenticationContextPool.bind(dn, password);
+            return;
+        }
+        DirContext context = null;
+        try {
+            context = this.contextSource.getContext(dn, password);
+        } finally {
+            LdapUtils.closeContext(context);
+        }
+    }
+
     public final void afterPropertiesSet() throws Exception {
         Assert.isTrue(this.filter.contains("%u") || this.filter.contains("%U"), "filter must contain %u or %U");
 
@@ -0,0 +1,357 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.adaptors.ldap;
+
+import java.util.Hashtable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.naming.Context;
+import javax.naming.NamingException;
+import javax.naming.directory.DirContext;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+import javax.validation.constraints.NotNull;
+
+import org.apache.commons.pool.BasePoolableObjectFactory;
+import org.apache.commons.pool.impl.GenericObjectPool;
+import org.jasig.cas.monitor.LatencyHistogram;
+import org.jasig.cas.util.LdapUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.ldap.core.ContextSource;
+
+/**
+ * Pool of LDAP connections used to authenticate users by binding as them.
+ * <p>
+ * Binding through {@link ContextSource#getContext(String, String)} opens a new connection for every
+ * authentication, since connections bound as a user cannot be shared with the connection pool used for searching.
+ * This pool instead keeps its own connections open and re-authenticates them as the user on every bind, which costs
+ * a single bind round trip on an established connection. Connections are created from the environment of the given
+ * context source, so they use the same URLs, timeouts and SSL settings; the JNDI connection pool is disabled for
+ * them. A failed bind leaves the connection in the pool, while a communication error discards it.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public class AuthenticationContextPool implements DisposableBean {
+
+    private static final String JNDI_POOL_PROPERTY = "com.sun.jndi.ldap.connect.pool";
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    /** Provides the environment of pooled connections. */
+    @NotNull
+    private final ContextSource contextSource;
+
+    private final GenericObjectPool<LdapContext> pool = new GenericObjectPool<LdapContext>(new ContextFactory());
+
+    private final AtomicLong bindCount = new AtomicLong();
+
+    private final AtomicLong failedBindCount = new AtomicLong();
+
+    private final AtomicLong createdCount = new AtomicLong();
+
+    private final LatencyHistogram bindLatency = new LatencyHistogram("bind");
+
+    private final LatencyHistogram borrowLatency = new LatencyHistogram("borrow");
+
+    @NotNull
+    private String authenticationMechanism = "simple";
+
+    private volatile Hashtable<?, ?> environment;
+
+
+    public AuthenticationContextPool(final ContextSource contextSource) {
+        this.contextSource = contextSource;
+        this.pool.setWhenExhaustedAction(GenericObjectPool.WHEN_EXHAUSTED_BLOCK);
+    }
+
+
+    /**
+     * Authenticates as the given user on a pooled connection.
+     *
+     * @param dn DN of the user.
+     * @param password Password of the user.
+     *
+     * @throws org.springframework.ldap.NamingSecurityException if the credentials are rejected.
+     * @throws org.springframework.ldap.NamingException on other errors.
+     */
+    public void bind(final String dn, final String password) {
+        if (password == null || password.length() == 0) {
+            // LDAP treats a simple bind with an empty password as an anonymous bind, which always succeeds
+            this.failedBindCount.incrementAndGet();
+            throw org.springframework.ldap.support.LdapUtils.convertLdapException(
+                    new javax.naming.AuthenticationException("Empty password for " + dn));
+        }
+
+        final LdapContext context = borrow();
+        boolean valid = true;
+        final long start = System.nanoTime();
+        try {
+            context.addToEnvironment(Context.SECURITY_AUTHENTICATION, this.authenticationMechanism);
+            context.addToEnvironment(Context.SECURITY_PRINCIPAL, dn);
+            context.addToEnvironment(Context.SECURITY_CREDENTIALS, password);
+            context.reconnect(null);
+            this.bindCount.incrementAndGet();
+        } catch (final javax.naming.AuthenticationException e) {
+            this.failedBindCount.incrementAndGet();
+            throw org.springframework.ldap.support.LdapUtils.convertLdapException(e);
+        } catch (final NamingException e) {
+            this.failedBindCount.incrementAndGet();
+            valid = false;
+            throw org.springframework.ldap.support.LdapUtils.convertLdapException(e);
+        } finally {
+            this.bindLatency.record(System.nanoTime() - start);
+            valid = valid && clearCredentials(context);
+            release(context, valid);
+        }
+    }
+
+
+    /**
+     * Borrows a connection, checks that it is usable and returns it to the pool.
+     *
+     * @return True if the connection is usable, false otherwise.
+     */
+    public boolean validate() {
+        final LdapContext context = borrow();
+        final boolean valid = isValid(context);
+        release(context, valid);
+        return valid;
+    }
+
+
+    /**
+     * @param mechanism SASL mechanism used to bind, e.g. <code>simple</code> (the default) or
+     * <code>DIGEST-MD5</code>.
+     */
+    public void setAuthenticationMechanism(final String mechanism) {
+        this.authenticationMechanism = mechanism;
+    }
+
+    /**
+     * @param maxActive maximum number of connections; negative for no limit. Default is 8.
+     */
+    public void setMaxActive(final int maxActive) {
+        this.pool.setMaxActive(maxActive);
+    }
+
+    /**
+     * @param maxIdle maximum number of idle connections; negative for no limit. Default is 8.
+     */
+    public void setMaxIdle(final int maxIdle) {
+        this.pool.setMaxIdle(maxIdle);
+    }
+
+    /**
+     * @param minIdle number of idle connections kept open by the evictor. Default is 0.
+     */
+    public void setMinIdle(final int minIdle) {
+        this.pool.setMinIdle(minIdle);
+    }
+
+    /**
+     * @param maxWait maximum time in milliseconds to wait for a connection when all are in use; negative to wait
+     * indefinitely. Default is to wait indefinitely.
+     */
+    public void setMaxWait(final long maxWait) {
+        this.pool.setMaxWait(maxWait);
+    }
+
+    /**
+     * @param testOnBorrow whether connections are validated before they are used. Default is false.
+     */
+    public void setTestOnBorrow(final boolean testOnBorrow) {
+        this.pool.setTestOnBorrow(testOnBorrow);
+    }
+
+    /**
+     * @param testWhileIdle whether idle connections are validated by the evictor. Default is false.
+     */
+    public void setTestWhileIdle(final boolean testWhileIdle) {
+        this.pool.setTestWhileIdle(testWhileIdle);
+    }
+
+    /**
+     * @param millis time between runs of the evictor; non-positive to disable it. Default is -1.
+     */
+    public void setTimeBetweenEvictionRunsMillis(final long millis) {
+        this.pool.setTimeBetweenEvictionRunsMillis(millis);
+    }
+
+    /**
+     * @param millis minimum idle time after which connections are closed by the evictor. Default is 30 minutes.
+     */
+    public void setMinEvictableIdleTimeMillis(final long millis) {
+        this.pool.setMinEvictableIdleTimeMillis(millis);
+    }
+
+    public int getNumActive() {
+        return this.pool.getNumActive();
+    }
+
+    public int getNumIdle() {
+        return this.pool.getNumIdle();
+    }
+
+    /**
+     * @return number of successful binds.
+     */
+    public long getBindCount() {
+        return this.bindCount.get();
+    }
+
+    /**
+     * @return number of binds that failed, due to invalid credentials or errors.
+     */
+    public long getFailedBindCount() {
+        return this.failedBindCount.get();
+    }
+
+    /**
+     * @return number of connections opened so far.
+     */
+    public long getCreatedCount() {
+        return this.createdCount.get();
+    }
+
+    /**
+     * @return time taken by binds on pooled connections.
+     */
+    public LatencyHistogram getBindLatency() {
+        return this.bindLatency;
+    }
+
+    /**
+     * @return time taken to obtain a connection from the pool, including opening new connections.
+     */
+    public LatencyHistogram getBorrowLatency() {
+        return this.borrowLatency;
+    }
+
+    /**
+     * Writes a summary of pool usage to the given string builder.
+     *
+     * @param builder String builder to which the summary is appended.
+     */
+    public void toString(final StringBuilder builder) {
+        builder.append("Authentication pool: [active=").append(getNumActive());
+        builder.append(", idle=").append(getNumIdle());
+        builder.append(", created=").append(getCreatedCount());
+        builder.append(", binds=").append(getBindCount());
+        builder.append(", failedBinds=").append(getFailedBindCount());
+        builder.append(", ");
+        this.bindLatency.toString(builder);
+        builder.append(", ");
+        this.borrowLatency.toString(builder);
+        builder.append(']');
+    }
+
+    public void destroy() throws Exception {
+        this.pool.close();
+    }
+
+    private LdapContext borrow() {
+        final long start = System.nanoTime();
+        try {
+            return this.pool.borrowObject();
+        } catch (final NamingException e) {
+            throw org.springframework.ldap.support.LdapUtils.convertLdapException(e);
+        } catch (final RuntimeException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new IllegalStateException("Failed to obtain LDAP connection from pool.", e);
+        } finally {
+            this.borrowLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    private void release(final LdapContext context, final boolean valid) {
+        try {
+            if (valid) {
+                this.pool.returnObject(context);
+            } else {
+                this.pool.invalidateObject(context);
+            }
+        } catch (final Exception e) {
+            log.warn("Failed to return LDAP connection to pool.", e);
+        }
+    }
+
+    /**
+     * Removes the user credentials from the connection environment so that they are not held in memory while the
+     * connection is idle.  The connection stays bound as the user; JNDI only binds anonymously if the connection
+     * is used before the next user bind, e.g. for validation.
+     */
+    private boolean clearCredentials(final LdapContext context) {
+        try {
+            context.addToEnvironment(Context.SECURITY_AUTHENTICATION, "none");
+            context.removeFromEnvironment(Context.SECURITY_PRINCIPAL);
+            context.removeFromEnvironment(Context.SECURITY_CREDENTIALS);
+            return true;
+        } catch (final NamingException e) {
+            return false;
+        }
+    }
+
+    private boolean isValid(final LdapContext context) {
+        try {
+            context.getAttributes("", new String[] {"objectClass"});
+            return true;
+        } catch (final NamingException e) {
+            log.debug("Pooled LDAP connection failed validation.", e);
+            return false;
+        }
+    }
+
+    private Hashtable<?, ?> getEnvironment() throws NamingException {
+        if (this.environment == null) {
+            final DirContext context = this.contextSource.getReadOnlyContext();
+            try {
+                final Hashtable<Object, Object> env = new Hashtable<Object, Object>(context.getEnvironment());
+                env.put(JNDI_POOL_PROPERTY, "false");
+                this.environment = env;
+            } finally {
+                LdapUtils.closeContext(context);
+            }
+        }
+        return this.environment;
+    }
+
+    private final class ContextFactory extends BasePoolableObjectFactory<LdapContext> {
+
+        @Override
+        public LdapContext makeObject() throws Exception {
+            final LdapContext context = new InitialLdapContext(getEnvironment(), null);
+            createdCount.incrementAndGet();
+            return context;
+        }
+
+        @Override
+        public void destroyObject(final LdapContext context) throws Exception {
+            context.close();
+        }
+
+        @Override
+        public boolean validateObject(final LdapContext context) {
+            return isValid(context);
+        }
+    }
+}
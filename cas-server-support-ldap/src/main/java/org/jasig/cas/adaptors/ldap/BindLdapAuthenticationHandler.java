@@ -20,7 +20,9 @@ package org.jasig.cas.adaptors.ldap;
 
 import org.jasig.cas.authentication.handler.AuthenticationException;
 import org.jasig.cas.authentication.principal.UsernamePasswordCredentials;
+import org.jasig.cas.util.ExpiringCache;
 import org.jasig.cas.util.LdapUtils;
+import org.springframework.ldap.NameNotFoundException;
 import org.springframework.ldap.NamingSecurityException;
 import org.springframework.ldap.core.ContextSource;
 import org.springframework.ldap.core.LdapTemplate;
@@ -30,12 +32,16 @@ import org.springframework.ldap.core.SearchExecutor;
 import javax.naming.NameClassPair;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
+import javax.naming.directory.Attributes;
 import javax.naming.directory.DirContext;
 import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
 import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Performs LDAP authentication via two distinct steps:
@@ -47,7 +53,9 @@ import java.util.List;
  *  The search step is typically performed anonymously or using a constant
  *  authenticated context such as an administrator username/password or client
  *  certificate.  This step is suitable for LDAP connection pooling to improve
- *  efficiency and performance.
+ *  efficiency and performance.  The bind step may use a separate pool of
+ *  connections that are re-authenticated as each user, see
+ *  {@link #setAuthenticationContextPool(AuthenticationContextPool)}.
  * 
  * @author Scott Battaglia
  * @version $Revision$ $Date$
@@ -61,6 +69,9 @@ public class BindLdapAuthenticationHandler extends AbstractLdapUsernamePasswordA
     /** The default timeout. */
     private static final int DEFAULT_TIMEOUT = 1000;
 
+    /** The default time to live of cached search results that found no DN. */
+    private static final long DEFAULT_NEGATIVE_DN_CACHE_TIME_TO_LIVE = 60000;
+
     /** The search base to find the user under. */
     private String searchBase;
 
@@ -78,29 +89,35 @@ public class BindLdapAuthenticationHandler extends AbstractLdapUsernamePasswordA
     /** Boolean of whether multiple accounts are allowed. */
     private boolean allowMultipleAccounts;
 
-    protected final boolean authenticateUsernamePasswordInternal(final UsernamePasswordCredentials credentials) throws AuthenticationException {
+    /** Cache of DNs found by searching for a transformed username. */
+    private ExpiringCache<String, List<String>> dnCache;
 
-        final List<String> cns = new ArrayList<String>();
-        
-        final SearchControls searchControls = getSearchControls();
-        
-        final String base = this.searchBase;
+    /** Time to live of cached search results that found no DN. */
+    private long negativeDnCacheTimeToLive = DEFAULT_NEGATIVE_DN_CACHE_TIME_TO_LIVE;
+
+    /** Password policy enforcer whose attributes are read by the DN search. */
+    private LdapPasswordPolicyEnforcer passwordPolicyEnforcer;
+
+    protected final boolean authenticateUsernamePasswordInternal(final UsernamePasswordCredentials credentials) throws AuthenticationException {
         final String transformedUsername = getPrincipalNameTransformer().transform(credentials.getUsername());
-        final String filter = LdapUtils.getFilterWithValues(getFilter(), transformedUsername);
-        this.getLdapTemplate().search(
-            new SearchExecutor() {
+        return authenticate(credentials, transformedUsername, this.dnCache != null);
+    }
 
-                public NamingEnumeration executeSearch(final DirContext context) throws NamingException {
-                    return context.search(base, filter, searchControls);
-                }
-            },
-            new NameClassPairCallbackHandler(){
+    private boolean authenticate(final UsernamePasswordCredentials credentials, final String transformedUsername,
+            final boolean useDnCache) throws AuthenticationException {
+
+        final String filter = LdapUtils.getFilterWithValues(getFilter(), transformedUsername);
+        List<String> cns = useDnCache ? this.dnCache.get(transformedUsername) : null;
+        final boolean cached = cns != null;
+        final Map<String, Attributes> attributes = new HashMap<String, Attributes>();
+        if (!cached) {
+            cns = search(filter, attributes);
+            if (this.dnCache != null) {
+                this.dnCache.put(transformedUsername, cns,
+                        cns.isEmpty() ? this.negativeDnCacheTimeToLive : this.dnCache.getTimeToLive());
+            }
+        }
 
-                public void handleNameClassPair(final NameClassPair nameClassPair) {
-                    cns.add(nameClassPair.getNameInNamespace());
-                }
-            });
-        
         if (cns.isEmpty()) {
             log.info("Search for " + filter + " returned 0 results.");
             return false;
@@ -111,25 +128,33 @@ public class BindLdapAuthenticationHandler extends AbstractLdapUsernamePasswordA
         }
 
         for (final String dn : cns) {
-            DirContext test = null;
             String finalDn = composeCompleteDnToCheck(dn, credentials);
             try {
                 this.log.debug("Performing LDAP bind with credential: " + dn);
-                test = this.getContextSource().getContext(
-                    finalDn,
-                    getPasswordEncoder().encode(credentials.getPassword()));
-
-                if (test != null) {
-                    return true;
+                bind(finalDn, getPasswordEncoder().encode(credentials.getPassword()));
+                if (this.passwordPolicyEnforcer != null && attributes.containsKey(dn)) {
+                    this.passwordPolicyEnforcer.cachePasswordPolicy(credentials.getUsername(), attributes.get(dn));
+                }
+                return true;
+            } catch (final NameNotFoundException e) {
+                if (cached) {
+                    // The entry has been moved or deleted since its DN was cached
+                    log.debug("Cached DN {} no longer exists; searching again.", dn);
+                    this.dnCache.remove(transformedUsername);
+                    return authenticate(credentials, transformedUsername, false);
                 }
+                this.log.error(e.getMessage(), e);
+                throw handleLdapError(e);
             } catch (final NamingSecurityException e) {
                 log.info("Failed to authenticate user {} with error {}", credentials.getUsername(), e.getMessage());
+                if (cached) {
+                    // Directories may reject a bind to a DN that no longer exists as invalid credentials
+                    this.dnCache.remove(transformedUsername);
+                }
                 throw handleLdapError(e);
             } catch (final Exception e) {
                 this.log.error(e.getMessage(), e);
                 throw handleLdapError(e);
-            } finally {
-                LdapUtils.closeContext(test);
             }
         }
 
@@ -141,6 +166,34 @@ public class BindLdapAuthenticationHandler extends AbstractLdapUsernamePasswordA
         return dn;
     }
 
+    private List<String> search(final String filter, final Map<String, Attributes> attributes) {
+        final List<String> cns = new ArrayList<String>();
+        
+        final SearchControls searchControls = getSearchControls();
+        if (this.passwordPolicyEnforcer != null) {
+            searchControls.setReturningAttributes(this.passwordPolicyEnforcer.getPasswordPolicyAttributes());
+        }
+        
+        final String base = this.searchBase;
+        this.getLdapTemplate().search(
+            new SearchExecutor() {
+
+                public NamingEnumeration executeSearch(final DirContext context) throws NamingException {
+                    return context.search(base, filter, searchControls);
+                }
+            },
+            new NameClassPairCallbackHandler(){
+
+                public void handleNameClassPair(final NameClassPair nameClassPair) {
+                    cns.add(nameClassPair.getNameInNamespace());
+                    if (nameClassPair instanceof SearchResult) {
+                        attributes.put(nameClassPair.getNameInNamespace(), ((SearchResult) nameClassPair).getAttributes());
+                    }
+                }
+            });
+        return cns;
+    }
+
     private SearchControls getSearchControls() {
         final SearchControls constraints = new SearchControls();
         constraints.setSearchScope(this.scope);
@@ -223,6 +276,36 @@ public class BindLdapAuthenticationHandler extends AbstractLdapUsernamePasswordA
         this.timeout = timeout;
     }
 
+    /**
+     * Sets the cache of DNs found for usernames, which saves the search for users who logged in recently.  A
+     * cached DN is discarded when a bind to it fails; if the entry no longer exists, the search is repeated.
+     * The cache can be observed with an {@link org.jasig.cas.monitor.ExpiringCacheMonitor}.
+     *
+     * @param cache Cache of DNs keyed by transformed username.
+     */
+    public final void setDnCache(final ExpiringCache<String, List<String>> cache) {
+        this.dnCache = cache;
+    }
+
+    /**
+     * @param timeToLive Time in milliseconds for which a search that found no DN is cached; 0 disables caching of
+     * unknown usernames.  Default is 60000.
+     */
+    public final void setNegativeDnCacheTimeToLive(final long timeToLive) {
+        this.negativeDnCacheTimeToLive = timeToLive;
+    }
+
+    /**
+     * Sets a password policy enforcer whose attributes are fetched by the search for the DN of the user, which
+     * saves the enforcer a search of its own when it has an expiration cache.  The enforcer must search the same
+     * entries for the same user ids as this handler.
+     *
+     * @param enforcer Password policy enforcer of the login flow.
+     */
+    public final void setPasswordPolicyEnforcer(final LdapPasswordPolicyEnforcer enforcer) {
+        this.passwordPolicyEnforcer = enforcer;
+    }
+
     /**
      * Sets the context source for LDAP searches.  This method may be used to
      * support use cases like the following:
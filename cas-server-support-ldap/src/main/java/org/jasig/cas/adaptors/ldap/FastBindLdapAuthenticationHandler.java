@@ -18,8 +18,6 @@
  */
 package org.jasig.cas.adaptors.ldap;
 
-import javax.naming.directory.DirContext;
-
 import org.jasig.cas.authentication.handler.AuthenticationException;
 import org.jasig.cas.authentication.principal.UsernamePasswordCredentials;
 import org.jasig.cas.util.LdapUtils;
@@ -37,20 +35,15 @@ import org.springframework.ldap.NamingException;
 public class FastBindLdapAuthenticationHandler extends AbstractLdapUsernamePasswordAuthenticationHandler {
 
     protected final boolean authenticateUsernamePasswordInternal(final UsernamePasswordCredentials credentials) throws AuthenticationException {
-        DirContext dirContext = null;
         try {
             final String transformedUsername = getPrincipalNameTransformer().transform(credentials.getUsername());
             final String bindDn = LdapUtils.getFilterWithValues(getFilter(), transformedUsername);
             this.log.debug("Performing LDAP bind with credential: " + bindDn);
-            dirContext = this.getContextSource().getContext(bindDn, getPasswordEncoder().encode(credentials.getPassword()));
+            bind(bindDn, getPasswordEncoder().encode(credentials.getPassword()));
             return true;
         } catch (final NamingException e) {
             log.info("Failed to authenticate user {} with error {}", credentials.getUsername(), e.getMessage());
             throw handleLdapError(e);
-        } finally {
-            if (dirContext != null) {
-                LdapUtils.closeContext(dirContext);
-            }
         }
     }
 }
@@ -29,6 +29,7 @@ import javax.naming.directory.SearchControls;
 import org.apache.commons.lang.StringUtils;
 import org.jasig.cas.authentication.AbstractPasswordPolicyEnforcer;
 import org.jasig.cas.authentication.LdapPasswordPolicyEnforcementException;
+import org.jasig.cas.util.ExpiringCache;
 import org.jasig.cas.util.LdapUtils;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
@@ -43,6 +44,11 @@ import org.springframework.util.Assert;
 /**
  * Class that fetches a password expiration date from an AD/LDAP database.
  * Based on AccountStatusGetter by Bart Ophelders & Johan Peeters
+ * <p>
+ * The expiration date of a user may be kept in an {@link #setExpirationCache(ExpiringCache) expiration cache} until
+ * the warning period of the user begins, so that later logins do not search the directory.  The cache can also be
+ * filled by {@link BindLdapAuthenticationHandler} from the search it performs anyway, see
+ * {@link #cachePasswordPolicy(String, Attributes)}.
  *
  * @author Eric Pierce
  * @version 1.3 12/14/2009 11:47:37
@@ -50,6 +56,32 @@ import org.springframework.util.Assert;
  */
 public class LdapPasswordPolicyEnforcer extends AbstractPasswordPolicyEnforcer {
 
+    /**
+     * Password expiration of a user as computed from the directory.
+     */
+    public static final class PasswordExpiration {
+
+        private final DateTime expireDate;
+
+        private final int warningDays;
+
+        private PasswordExpiration(final DateTime expireDate, final int warningDays) {
+            this.expireDate = expireDate;
+            this.warningDays = warningDays;
+        }
+
+        /**
+         * @return the date the password expires, or null if it never expires.
+         */
+        public DateTime getExpireDate() {
+            return this.expireDate;
+        }
+
+        public int getWarningDays() {
+            return this.warningDays;
+        }
+    }
+
     private static final class LdapPasswordPolicyResult {
 
         private String dateResult            = null;
@@ -173,6 +205,12 @@ public class LdapPasswordPolicyEnforcer extends AbstractPasswordPolicyEnforcer {
     /** The attribute that contains the user's warning days */
     protected String                  warningDaysAttribute;
 
+    /** Parses the date attribute unless it is in Active Directory format */
+    private DateTimeFormatter         dateFormatter;
+
+    /** Expiration dates of users, keyed by user id */
+    private ExpiringCache<String, PasswordExpiration> expirationCache;
+
     public void afterPropertiesSet() throws Exception {
         Assert.notNull(this.ldapTemplate, "ldapTemplate cannot be null");
         Assert.notNull(this.filter, "filter cannot be null");
@@ -194,14 +232,81 @@ public class LdapPasswordPolicyEnforcer extends AbstractPasswordPolicyEnforcer {
      * @return Number of days left to the expiration date, or {@value #PASSWORD_STATUS_PASS}
      */
     public long getNumberOfDaysToPasswordExpirationDate(final String userId) throws LdapPasswordPolicyEnforcementException {
-        String msgToLog = null;
+        PasswordExpiration expiration = this.expirationCache != null ? this.expirationCache.get(userId) : null;
 
-        final LdapPasswordPolicyResult ldapResult = getEnforcedPasswordPolicy(userId);
+        if (expiration == null) {
+            final LdapPasswordPolicyResult ldapResult = getEnforcedPasswordPolicy(userId);
 
-        if (ldapResult == null) {
-            logDebug("Skipping all password policy checks...");
+            if (ldapResult == null) {
+                logDebug("Skipping all password policy checks...");
+                return PASSWORD_STATUS_PASS;
+            }
+
+            expiration = getPasswordExpiration(ldapResult);
+            cachePasswordExpiration(userId, expiration);
+        } else {
+            logDebug("Using cached password expiration for " + userId);
+        }
+
+        if (expiration.getExpireDate() == null) {
             return PASSWORD_STATUS_PASS;
         }
+        return getDaysToExpirationDate(userId, expiration.getExpireDate(), expiration.getWarningDays());
+    }
+
+    /**
+     * Caches the password expiration of a user from attributes read by another search, e.g. the search for the DN
+     * of the user before binding.  Does nothing unless an expiration cache is set.
+     *
+     * @param userId the user id passed to {@link #getNumberOfDaysToPasswordExpirationDate(String)}.
+     * @param attributes attributes of the user entry, including {@link #getPasswordPolicyAttributes()}.
+     */
+    public void cachePasswordPolicy(final String userId, final Attributes attributes) {
+        if (this.expirationCache == null) {
+            return;
+        }
+        try {
+            cachePasswordExpiration(userId, getPasswordExpiration(mapPasswordPolicyResult(userId, attributes)));
+        } catch (final Exception e) {
+            // the error is reported when the expiration is looked up
+            logDebug("Failed to determine password expiration for " + userId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Discards the cached password expiration of a user, e.g. after the password has been changed.
+     *
+     * @param userId the user id.
+     */
+    public void evict(final String userId) {
+        if (this.expirationCache != null) {
+            this.expirationCache.remove(userId);
+        }
+    }
+
+    /**
+     * @return the LDAP attributes that determine the password expiration.
+     */
+    public String[] getPasswordPolicyAttributes() {
+        final List<String> attributeList = new ArrayList<String>();
+
+        attributeList.add(this.dateAttribute);
+
+        if (this.warningDaysAttribute != null)
+            attributeList.add(this.warningDaysAttribute);
+
+        if (this.validDaysAttribute != null)
+            attributeList.add(this.validDaysAttribute);
+
+        if (this.noWarnAttribute != null)
+            attributeList.add(this.noWarnAttribute);
+
+        return attributeList.toArray(new String[attributeList.size()]);
+    }
+
+    private PasswordExpiration getPasswordExpiration(final LdapPasswordPolicyResult ldapResult) throws LdapPasswordPolicyEnforcementException {
+        String msgToLog = null;
+        final String userId = ldapResult.getUserId();
 
         if (!StringUtils.isEmpty(this.noWarnAttribute))
             logDebug("No warning attribute value for " + this.noWarnAttribute + " is set to: " + ldapResult.getNoWarnAttributeResult());
@@ -209,20 +314,22 @@ public class LdapPasswordPolicyEnforcer extends AbstractPasswordPolicyEnforcer {
         if (isPasswordSetToNeverExpire(ldapResult.getNoWarnAttributeResult())) {
             logDebug("Account password will never expire. Skipping password warning check...");
 
-            return PASSWORD_STATUS_PASS;
+            return new PasswordExpiration(null, 0);
         }
 
+        int warningDaysToUse = this.warningDays;
         if (StringUtils.isEmpty(ldapResult.getWarnDaysResult()))
             logDebug("No warning days value is found for " + userId + ". Using system default of " + this.warningDays);
         else
-            this.warningDays = Integer.parseInt(ldapResult.getWarnDaysResult());
+            warningDaysToUse = Integer.parseInt(ldapResult.getWarnDaysResult());
 
+        int validDaysToUse = this.validDays;
         if (StringUtils.isEmpty(ldapResult.getValidDaysResult()))
             logDebug("No maximum password valid days found for " + ldapResult.getUserId() + ". Using system default of " + this.validDays + " days");
         else
-            this.validDays = Integer.parseInt(ldapResult.getValidDaysResult());
+            validDaysToUse = Integer.parseInt(ldapResult.getValidDaysResult());
 
-        final DateTime expireTime = getExpirationDateToUse(ldapResult.getDateResult());
+        final DateTime expireTime = ldapResult.getDateResult() == null ? null : getExpirationDateToUse(ldapResult.getDateResult(), validDaysToUse);
 
         if (expireTime == null) {
             msgToLog = "Expiration date cannot be determined for date " + ldapResult.getDateResult();
@@ -233,7 +340,25 @@ public class LdapPasswordPolicyEnforcer extends AbstractPasswordPolicyEnforcer {
             throw exc;
         }
 
-        return getDaysToExpirationDate(userId, expireTime);
+        return new PasswordExpiration(expireTime, warningDaysToUse);
+    }
+
+    /**
+     * Caches the expiration until the warning period begins, so that users who are warned see the effect of a
+     * password change at their next login.
+     */
+    private void cachePasswordExpiration(final String userId, final PasswordExpiration expiration) {
+        if (this.expirationCache == null) {
+            return;
+        }
+        long timeToLive = this.expirationCache.getTimeToLive();
+        if (expiration.getExpireDate() != null && !this.warnAll) {
+            final long warningStart = expiration.getExpireDate().minusDays(expiration.getWarningDays()).getMillis();
+            timeToLive = Math.min(timeToLive, warningStart - System.currentTimeMillis());
+        } else if (expiration.getExpireDate() != null) {
+            timeToLive = 0;
+        }
+        this.expirationCache.put(userId, expiration, timeToLive);
     }
 
     /**
@@ -259,9 +384,19 @@ public class LdapPasswordPolicyEnforcer extends AbstractPasswordPolicyEnforcer {
      */
     public void setDateFormat(final String dateFormat) {
         this.dateFormat = dateFormat;
+        this.dateFormatter = isUsingActiveDirectory() ? null : DateTimeFormat.forPattern(dateFormat);
         logDebug("Date format: " + dateFormat);
     }
 
+    /**
+     * @param expirationCache cache of password expiration dates keyed by user id.  Entries are kept no longer than
+     * its time to live and never past the beginning of the warning period; users who are warned, and all users
+     * if {@link #setWarnAll(Boolean) warnAll} is set, are not cached.
+     */
+    public void setExpirationCache(final ExpiringCache<String, PasswordExpiration> expirationCache) {
+        this.expirationCache = expirationCache;
+    }
+
     /**
      * @param filter The LDAP filter to set.
      */
@@ -385,14 +520,13 @@ public class LdapPasswordPolicyEnforcer extends AbstractPasswordPolicyEnforcer {
     }
 
     /**
-     * Parses and formats the retrieved date value from Ldap
+     * Parses and formats the retrieved date value from Ldap. Values without a time zone are read in the default
+     * time zone of the JVM and then converted to {@link #DEFAULT_TIME_ZONE}.
      * @param ldapResult
      * @return newly constructed date object whose value was passed
      */
     private DateTime formatDateByPattern(final String ldapResult) {
-        final DateTimeFormatter fmt = DateTimeFormat.forPattern(this.dateFormat);
-        final DateTime date = new DateTime(DateTime.parse(ldapResult, fmt), DEFAULT_TIME_ZONE);
-        return date;
+        return new DateTime(this.dateFormatter.parseDateTime(ldapResult), DEFAULT_TIME_ZONE);
     }
 
     /**
@@ -400,15 +534,15 @@ public class LdapPasswordPolicyEnforcer extends AbstractPasswordPolicyEnforcer {
      * @param ldapDateResult
      * @return Constructed the {@link #org.joda.time.DateTime DateTime}  object which indicates the expiration date
      */
-    private DateTime getExpirationDateToUse(final String ldapDateResult) {
+    private DateTime getExpirationDateToUse(final String ldapDateResult, final int validDays) {
         DateTime dateValue = null;
         if (isUsingActiveDirectory())
             dateValue = convertDateToActiveDirectoryFormat(ldapDateResult);
         else
             dateValue = formatDateByPattern(ldapDateResult);
               
-        DateTime expireDate = dateValue.plusDays(this.validDays);
-        logDebug("Retrieved date value " + dateValue.toString() + " for date attribute " + this.dateAttribute + " and added " + this.validDays
+        DateTime expireDate = dateValue.plusDays(validDays);
+        logDebug("Retrieved date value " + dateValue.toString() + " for date attribute " + this.dateAttribute + " and added " + validDays
                 + " days. The final expiration date is " + expireDate.toString());
 
         return expireDate;
@@ -420,7 +554,7 @@ public class LdapPasswordPolicyEnforcer extends AbstractPasswordPolicyEnforcer {
      * @param userId
      * @return number of days left to the expiration date, or {@value #PASSWORD_STATUS_PASS}
      */
-    private long getDaysToExpirationDate(final String userId, final DateTime expireDate) throws LdapPasswordPolicyEnforcementException {
+    private long getDaysToExpirationDate(final String userId, final DateTime expireDate, final int warningDays) throws LdapPasswordPolicyEnforcementException {
 
         logDebug("Calculating number of days left to the expiration date for user " + userId);
 
@@ -447,9 +581,7 @@ public class LdapPasswordPolicyEnforcer extends AbstractPasswordPolicyEnforcer {
         /*
          * Warning period begins from X number of ways before the expiration date
          */
-        DateTime warnPeriod = new DateTime(DateTime.parse(expireDate.toString()), DEFAULT_TIME_ZONE);
-
-        warnPeriod = warnPeriod.minusDays(this.warningDays);
+        final DateTime warnPeriod = expireDate.minusDays(warningDays);
         logInfo("Warning period begins on " + warnPeriod.toString());
 
         if (this.warnAll)
@@ -487,22 +619,7 @@ public class LdapPasswordPolicyEnforcer extends AbstractPasswordPolicyEnforcer {
      */
     private LdapPasswordPolicyResult getResultsFromLdap(final String userId) {
 
-        String[] attributeIds;
-        final List<String> attributeList = new ArrayList<String>();
-
-        attributeList.add(this.dateAttribute);
-
-        if (this.warningDaysAttribute != null)
-            attributeList.add(this.warningDaysAttribute);
-
-        if (this.validDaysAttribute != null)
-            attributeList.add(this.validDaysAttribute);
-
-        if (this.noWarnAttribute != null)
-            attributeList.add(this.noWarnAttribute);
-
-        attributeIds = new String[attributeList.size()];
-        attributeList.toArray(attributeIds);
+        final String[] attributeIds = getPasswordPolicyAttributes();
 
         final String searchFilter = LdapUtils.getFilterWithValues(this.filter, userId);
 
@@ -518,32 +635,7 @@ public class LdapPasswordPolicyEnforcer extends AbstractPasswordPolicyEnforcer {
         try {
             final AttributesMapper mapper = new AttributesMapper() {
                 public Object mapFromAttributes(final Attributes attrs) throws NamingException {
-                    final LdapPasswordPolicyResult result = new LdapPasswordPolicyResult(userId);
-
-                    if (LdapPasswordPolicyEnforcer.this.dateAttribute != null)
-                        if (attrs.get(LdapPasswordPolicyEnforcer.this.dateAttribute) != null) {
-                            final String date = (String) attrs.get(LdapPasswordPolicyEnforcer.this.dateAttribute).get();
-                            result.setDateResult(date);
-                        }
-
-                    if (LdapPasswordPolicyEnforcer.this.warningDaysAttribute != null)
-                        if (attrs.get(LdapPasswordPolicyEnforcer.this.warningDaysAttribute) != null) {
-                            final String warn = (String) attrs.get(LdapPasswordPolicyEnforcer.this.warningDaysAttribute).get();
-                            result.setWarnDaysResult(warn);
-                        }
-
-                    if (LdapPasswordPolicyEnforcer.this.noWarnAttribute != null)
-                        if (attrs.get(LdapPasswordPolicyEnforcer.this.noWarnAttribute) != null) {
-                            final String attrib = (String) attrs.get(LdapPasswordPolicyEnforcer.this.noWarnAttribute).get();
-                            result.setNoWarnAttributeResult(attrib);
-                        }
-
-                    if (attrs.get(LdapPasswordPolicyEnforcer.this.validDaysAttribute) != null) {
-                        final String valid = (String) attrs.get(LdapPasswordPolicyEnforcer.this.validDaysAttribute).get();
-                        result.setValidDaysResult(valid);
-                    }
-
-                    return result;
+                    return mapPasswordPolicyResult(userId, attrs);
                 }
             };
 
@@ -558,6 +650,36 @@ public class LdapPasswordPolicyEnforcer extends AbstractPasswordPolicyEnforcer {
 
     }
 
+    private LdapPasswordPolicyResult mapPasswordPolicyResult(final String userId, final Attributes attrs) throws NamingException {
+        final LdapPasswordPolicyResult result = new LdapPasswordPolicyResult(userId);
+
+        if (this.dateAttribute != null)
+            if (attrs.get(this.dateAttribute) != null) {
+                final String date = (String) attrs.get(this.dateAttribute).get();
+                result.setDateResult(date);
+            }
+
+        if (this.warningDaysAttribute != null)
+            if (attrs.get(this.warningDaysAttribute) != null) {
+                final String warn = (String) attrs.get(this.warningDaysAttribute).get();
+                result.setWarnDaysResult(warn);
+            }
+
+        if (this.noWarnAttribute != null)
+            if (attrs.get(this.noWarnAttribute) != null) {
+                final String attrib = (String) attrs.get(this.noWarnAttribute).get();
+                result.setNoWarnAttributeResult(attrib);
+            }
+
+        if (this.validDaysAttribute != null)
+            if (attrs.get(this.validDaysAttribute) != null) {
+                final String valid = (String) attrs.get(this.validDaysAttribute).get();
+                result.setValidDaysResult(valid);
+            }
+
+        return result;
+    }
+
     private SearchControls getSearchControls(final String[] attributeIds) {
         final SearchControls constraints = new SearchControls();
 
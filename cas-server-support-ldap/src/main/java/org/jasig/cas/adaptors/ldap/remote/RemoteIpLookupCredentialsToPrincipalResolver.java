@@ -20,19 +20,13 @@ package org.jasig.cas.adaptors.ldap.remote;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.util.List;
 
-import javax.naming.NamingException;
-import javax.naming.directory.Attribute;
-import javax.naming.directory.Attributes;
 import javax.validation.constraints.NotNull;
 
 import org.jasig.cas.authentication.principal.AbstractLdapPersonDirectoryCredentialsToPrincipalResolver;
 import org.jasig.cas.authentication.principal.Credentials;
-import org.jasig.cas.util.LdapUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.ldap.core.AttributesMapper;
 import org.springframework.util.StringUtils;
 
 /**
@@ -69,31 +63,8 @@ public final class RemoteIpLookupCredentialsToPrincipalResolver extends Abstract
             log.debug("Original IP address: " + c.getRemoteAddress());
             log.debug("Formatted IP address: " + formattedIpAddress);
         }
-        
-        final String attributeId = getAttributeIds()[0];
-        final List principalList = this.getLdapTemplate().search(
-            getSearchBase(), LdapUtils.getFilterWithValues(getFilter(), formattedIpAddress), getSearchControls(),
-            new AttributesMapper() {
-                public Object mapFromAttributes(final Attributes attrs)
-                    throws NamingException {
-                    final Attribute attribute = attrs.get(attributeId);
-                    return attribute == null ? null : attribute.get();
-                }
-
-            });
-
-        if (principalList.isEmpty()) {
-            log.debug("LDAP search returned zero results.");
-            return null;
-        }
-        if (principalList.size() > 1) {
-            log.error("LDAP search returned multiple results "
-                + "for filter \"" + getFilter() + "\", "
-                + "which is not allowed.");
 
-            return null;
-        }
-        return (String) principalList.get(0);
+        return resolvedPrincipalId(findPerson(formattedIpAddress));
     }
 
     public boolean supports(final Credentials credentials) {
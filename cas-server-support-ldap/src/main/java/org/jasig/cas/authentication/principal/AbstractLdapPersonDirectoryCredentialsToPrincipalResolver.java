@@ -18,18 +18,42 @@
  */
 package org.jasig.cas.authentication.principal;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
 import javax.naming.directory.SearchControls;
 import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
+import org.jasig.cas.util.ExpiringCache;
+import org.jasig.cas.util.LdapUtils;
+import org.jasig.services.persondir.IPersonAttributes;
+import org.jasig.services.persondir.support.NamedPersonImpl;
+import org.springframework.ldap.core.AttributesMapper;
 import org.springframework.ldap.core.ContextSource;
 import org.springframework.ldap.core.LdapTemplate;
 
 /**
- * 
+ * Base class for resolvers that search LDAP for the principal id.
+ * <p>
+ * If an {@link #setAttributeMapping(Map) attribute mapping} is set, the principal attributes are fetched by the
+ * same search as the principal id instead of being queried from the attribute repository.  The people found are
+ * then kept in a short-lived {@link #setPersonCache(ExpiringCache) cache}, which can be filled in advance with
+ * {@link #prefetch(Collection)}.
+ *
  * @author Scott Battaglia
  * @version $Revision: 1.1 $ $Date: 2005/08/19 18:27:17 $
  * @since 3.2.1
@@ -43,6 +67,18 @@ public abstract class AbstractLdapPersonDirectoryCredentialsToPrincipalResolver
 
     /** The default timeout. */
     private static final int DEFAULT_TIMEOUT = 1000;
+
+    /** The default maximum number of cached people. */
+    private static final int DEFAULT_PERSON_CACHE_SIZE = 10000;
+
+    /** The default time to live of cached people. */
+    private static final long DEFAULT_PERSON_CACHE_TIME_TO_LIVE = 30000;
+
+    /** The number of lookup values searched for at once when prefetching. */
+    private static final int PREFETCH_BATCH_SIZE = 100;
+
+    /** Filters of the form attribute=%u, whose results can be matched to lookup values. */
+    private static final Pattern SIMPLE_FILTER = Pattern.compile("\\(?([\\w.;-]+)=%u\\)?");
     
     /** LdapTemplate to execute ldap queries. */
     @NotNull
@@ -68,21 +104,260 @@ public abstract class AbstractLdapPersonDirectoryCredentialsToPrincipalResolver
     /** The amount of time to wait. */
     private int timeout = DEFAULT_TIMEOUT;
 
+    /** Maps the LDAP attributes fetched with the principal id to principal attribute names. */
+    private Map<String, String> attributeMapping;
+
+    /** People found, keyed by lookup value. */
+    private ExpiringCache<String, IPersonAttributes> personCache;
+
+    /** Person whose name the last call to {@link #extractPrincipalId(Credentials)} on this thread returned. */
+    private final ThreadLocal<IPersonAttributes> resolvedPerson = new ThreadLocal<IPersonAttributes>();
+
     protected final SearchControls getSearchControls() {
         final SearchControls constraints = new SearchControls();
+        final String[] returningAttributes = getReturningAttributes();
         if (log.isDebugEnabled()) {
             log.debug("returning searchcontrols: scope=" + this.scope
                 + "; search base=" + this.searchBase
-                + "; attributes=" + Arrays.toString(this.attributeIds)
+                + "; attributes=" + Arrays.toString(returningAttributes)
                 + "; timeout=" + this.timeout);
         }
         constraints.setSearchScope(this.scope);
-        constraints.setReturningAttributes(this.attributeIds);
+        constraints.setReturningAttributes(returningAttributes);
         constraints.setTimeLimit(this.timeout);
         constraints.setCountLimit(DEFAULT_MAX_NUMBER_OF_RESULTS);
         return constraints;
     }
     
+    /**
+     * Finds the entry matching the filter for the given lookup value, from the person cache if possible.
+     *
+     * @param lookupValue the value substituted into the filter.
+     * @return the person named after the principal id attribute and holding the mapped attributes, or null if
+     * there is not exactly one matching entry with a principal id.
+     */
+    protected final IPersonAttributes findPerson(final String lookupValue) {
+        if (this.personCache != null) {
+            final IPersonAttributes cached = this.personCache.get(lookupValue);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        final String searchFilter = LdapUtils.getFilterWithValues(this.filter, lookupValue);
+        if (log.isDebugEnabled()) {
+            log.debug("LDAP search with filter \"" + searchFilter + "\"");
+        }
+        @SuppressWarnings("unchecked")
+        final List<IPersonAttributes> people = this.ldapTemplate.search(
+            this.searchBase, searchFilter, getSearchControls(), new AttributesMapper() {
+                public Object mapFromAttributes(final Attributes attrs) throws NamingException {
+                    return mapPerson(attrs);
+                }
+            });
+        if (people.isEmpty()) {
+            log.debug("LDAP search returned zero results.");
+            return null;
+        }
+        if (people.size() > 1) {
+            log.error("LDAP search returned multiple results "
+                + "for filter \"" + searchFilter + "\", "
+                + "which is not allowed.");
+            return null;
+        }
+
+        final IPersonAttributes person = people.get(0);
+        if (person != null && this.personCache != null) {
+            this.personCache.put(lookupValue, person);
+        }
+        return person;
+    }
+
+    /**
+     * Returns the principal id of a person found by {@link #extractPrincipalId(Credentials)}, keeping the person
+     * for {@link #retrievePersonAttributes(String, Credentials)} if attributes are fetched with the principal id.
+     *
+     * @param person the person found, or null.
+     * @return the name of the person, or null.
+     */
+    protected final String resolvedPrincipalId(final IPersonAttributes person) {
+        if (person == null) {
+            return null;
+        }
+        if (isFetchingAttributes()) {
+            this.resolvedPerson.set(person);
+        }
+        return person.getName();
+    }
+
+    /**
+     * Returns the attributes fetched by the search for the principal id if an attribute mapping is set, and
+     * otherwise queries the attribute repository.
+     */
+    protected Map<String, List<Object>> retrievePersonAttributes(final String principalId, final Credentials credentials) {
+        if (!isFetchingAttributes()) {
+            return super.retrievePersonAttributes(principalId, credentials);
+        }
+        final IPersonAttributes person = this.resolvedPerson.get();
+        this.resolvedPerson.remove();
+        if (person == null || !principalId.equals(person.getName())) {
+            return null;
+        }
+        return person.getAttributes();
+    }
+
+    /**
+     * Searches for the people matching the given lookup values and puts them in the person cache, e.g. to warm up
+     * the cache after a deployment.  If the filter has the form <code>attribute=%u</code>, the lookup values are
+     * searched for in batches with a single search each, and matched to the entries found by comparing them to
+     * that attribute ignoring case, as the directory does.  People are cached under the lookup values exactly as
+     * given; otherwise every lookup value is searched for separately.
+     *
+     * @param lookupValues the values substituted into the filter, e.g. usernames.
+     * @return the number of people found.
+     */
+    public final int prefetch(final Collection<String> lookupValues) {
+        if (this.personCache == null) {
+            throw new IllegalStateException("Prefetching requires a person cache.");
+        }
+        int found = 0;
+        final Matcher matcher = SIMPLE_FILTER.matcher(this.filter);
+        if (!matcher.matches()) {
+            for (final String lookupValue : lookupValues) {
+                if (findPerson(lookupValue) != null) {
+                    found++;
+                }
+            }
+            return found;
+        }
+
+        final List<String> values = new ArrayList<String>(lookupValues);
+        for (int i = 0; i < values.size(); i += PREFETCH_BATCH_SIZE) {
+            found += prefetch(matcher.group(1), values.subList(i, Math.min(i + PREFETCH_BATCH_SIZE, values.size())));
+        }
+        log.info("Prefetched {} of {} people.", found, values.size());
+        return found;
+    }
+
+    private int prefetch(final String lookupAttribute, final List<String> values) {
+        // lookup values that differ only in case match the same entries, but are cached separately
+        final Map<String, List<String>> requested = new HashMap<String, List<String>>();
+        final StringBuilder searchFilter = new StringBuilder("(|");
+        for (final String value : values) {
+            searchFilter.append(LdapUtils.getFilterWithValues("(" + lookupAttribute + "=%u)", value));
+            final String key = value.toLowerCase();
+            if (!requested.containsKey(key)) {
+                requested.put(key, new ArrayList<String>(1));
+            }
+            requested.get(key).add(value);
+        }
+        searchFilter.append(')');
+
+        final SearchControls constraints = getSearchControls();
+        final String[] returningAttributes = Arrays.copyOf(
+            constraints.getReturningAttributes(), constraints.getReturningAttributes().length + 1);
+        returningAttributes[returningAttributes.length - 1] = lookupAttribute;
+        constraints.setReturningAttributes(returningAttributes);
+        // allow for duplicates, which are discarded below as a single search would
+        constraints.setCountLimit(values.size() * DEFAULT_MAX_NUMBER_OF_RESULTS);
+
+        final Map<String, IPersonAttributes> people = new HashMap<String, IPersonAttributes>();
+        final Set<String> ambiguous = new HashSet<String>();
+        this.ldapTemplate.search(this.searchBase, searchFilter.toString(), constraints, new AttributesMapper() {
+            public Object mapFromAttributes(final Attributes attrs) throws NamingException {
+                final IPersonAttributes person = mapPerson(attrs);
+                final Attribute lookup = attrs.get(lookupAttribute);
+                if (person == null || lookup == null) {
+                    return null;
+                }
+                final NamingEnumeration<?> lookupValues = lookup.getAll();
+                while (lookupValues.hasMore()) {
+                    final List<String> matched = requested.get(String.valueOf(lookupValues.next()).toLowerCase());
+                    if (matched == null) {
+                        continue;
+                    }
+                    for (final String value : matched) {
+                        if (people.put(value, person) != null) {
+                            ambiguous.add(value);
+                        }
+                    }
+                }
+                return null;
+            }
+        });
+
+        people.keySet().removeAll(ambiguous);
+        for (final Map.Entry<String, IPersonAttributes> entry : people.entrySet()) {
+            this.personCache.put(entry.getKey(), entry.getValue());
+        }
+        return people.size();
+    }
+
+    private IPersonAttributes mapPerson(final Attributes attrs) throws NamingException {
+        final String idAttribute = this.attributeIds[0];
+        final Attribute id = attrs.get(idAttribute);
+        if (id == null) {
+            log.debug("Principal attribute \"" + idAttribute + "\" "
+                + "not found in LDAP search results. Returning null.");
+            return null;
+        }
+
+        final Map<String, List<Object>> attributes = new HashMap<String, List<Object>>();
+        if (this.attributeMapping != null) {
+            for (final Map.Entry<String, String> entry : this.attributeMapping.entrySet()) {
+                final Attribute attribute = attrs.get(entry.getKey());
+                if (attribute != null) {
+                    final List<Object> values = new ArrayList<Object>(attribute.size());
+                    final NamingEnumeration<?> all = attribute.getAll();
+                    while (all.hasMore()) {
+                        values.add(all.next());
+                    }
+                    attributes.put(entry.getValue(), values);
+                }
+            }
+        }
+        return new NamedPersonImpl((String) id.get(), attributes);
+    }
+
+    private String[] getReturningAttributes() {
+        if (this.attributeMapping == null) {
+            return this.attributeIds;
+        }
+        final Set<String> names = new HashSet<String>(Arrays.asList(this.attributeIds));
+        names.addAll(this.attributeMapping.keySet());
+        return names.toArray(new String[names.size()]);
+    }
+
+    /**
+     * @return true if principal attributes are fetched together with the principal id.
+     */
+    protected final boolean isFetchingAttributes() {
+        return this.attributeMapping != null;
+    }
+
+    /**
+     * Sets the LDAP attributes to fetch together with the principal id, which then replace the attributes of the
+     * attribute repository.  Unless a person cache has been set, a cache of
+     * {@value #DEFAULT_PERSON_CACHE_SIZE} people for {@value #DEFAULT_PERSON_CACHE_TIME_TO_LIVE} ms is created.
+     *
+     * @param attributeMapping map of LDAP attribute names to principal attribute names.
+     */
+    public final void setAttributeMapping(final Map<String, String> attributeMapping) {
+        this.attributeMapping = attributeMapping;
+        if (this.personCache == null) {
+            this.personCache = new ExpiringCache<String, IPersonAttributes>(
+                "ldapPrincipals", DEFAULT_PERSON_CACHE_SIZE, DEFAULT_PERSON_CACHE_TIME_TO_LIVE);
+        }
+    }
+
+    /**
+     * @param personCache cache of people found, keyed by lookup value; its time to live bounds how long changes
+     * to principal attributes may take to be seen.
+     */
+    public final void setPersonCache(final ExpiringCache<String, IPersonAttributes> personCache) {
+        this.personCache = personCache;
+    }
+
     /**
      * Method to set the datasource and generate a LDAPTemplate.
      * 
@@ -18,14 +18,9 @@
  */
 package org.jasig.cas.authentication.principal;
 
-import org.jasig.cas.util.LdapUtils;
-import org.springframework.ldap.core.AttributesMapper;
+import org.jasig.services.persondir.IPersonAttributes;
 
-import javax.naming.NamingException;
-import javax.naming.directory.Attribute;
-import javax.naming.directory.Attributes;
 import javax.validation.constraints.NotNull;
-import java.util.List;
 
 /**
  * @author Jan Van der Velpen
@@ -57,7 +52,7 @@ public final class CredentialsToLDAPAttributePrincipalResolver extends AbstractL
             log.debug("Resolved " + principal + ". Trying LDAP resolve now...");
         }
 
-        final String ldapPrincipal = resolveFromLDAP(principal.getId());
+        final String ldapPrincipal = resolvedPrincipalId(resolvePersonFromLDAP(principal.getId()));
 
         if (ldapPrincipal == null) {
             log.info("Initial principal \"" + principal.getId()
@@ -69,51 +64,14 @@ public final class CredentialsToLDAPAttributePrincipalResolver extends AbstractL
         return ldapPrincipal;
     }
 
-    private String resolveFromLDAP(final String lookupAttributeValue) {
-        final String searchFilter = LdapUtils.getFilterWithValues(getFilter(),
-            lookupAttributeValue);
-
-        if (log.isDebugEnabled()) {
-            log.debug("LDAP search with filter \"" + searchFilter + "\"");
-        }
-        
+    private IPersonAttributes resolvePersonFromLDAP(final String lookupAttributeValue) {
         try {
-            // searching the directory
-            final String idAttribute = getAttributeIds()[0];
-            final List principalList = getLdapTemplate().search(
-                getSearchBase(), searchFilter, getSearchControls(),
-                
-                new AttributesMapper() {
-                    public Object mapFromAttributes(final Attributes attrs)
-                        throws NamingException {
-                        final Attribute attribute = attrs.get(idAttribute);
-                        if (attribute == null) {
-                            log.debug("Principal attribute \"" + idAttribute + "\" "
-                                + "not found in LDAP search results. Returning null.");
-                            return null;
-                        }
-                        return attribute.get();
-                    }
-                    
-                });
-            if (principalList.isEmpty()) {
-                log.debug("LDAP search returned zero results.");
-                return null;
-            }
-            if (principalList.size() > 1) {
-                log.error("LDAP search returned multiple results "
-                    + "for filter \"" + searchFilter + "\", "
-                    + "which is not allowed.");
-
-                return null;
-            }
-            return (String) principalList.get(0);
-
+            return findPerson(lookupAttributeValue);
         } catch (final Exception e) {
             log.error(e.getMessage(), e);
             return null;
         }
-    } 
+    }
 
     /*
      * Delegates checking to the configured CredentialsToPrincipalResolver.
@@ -21,13 +21,16 @@ package org.jasig.cas.monitor;
 import javax.naming.directory.DirContext;
 import javax.validation.constraints.NotNull;
 
+import org.jasig.cas.adaptors.ldap.AuthenticationContextPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ldap.pool.DirContextType;
 import org.springframework.ldap.pool.factory.PoolingContextSource;
 
 /**
- * LDAP pool monitor that observes a pool of LDAP connections provided by {@link PoolingContextSource}.
+ * LDAP pool monitor that observes a pool of LDAP connections provided by {@link PoolingContextSource}, and
+ * optionally the {@link AuthenticationContextPool} used for binds, whose counts and timings are added to the
+ * status description.
  *
  * @author Marvin S. Addison
  * @since 3.5.0
@@ -40,12 +43,23 @@ public class PoolingContextSourceMonitor extends AbstractPoolMonitor {
     @NotNull
     private final PoolingContextSource poolingContextSource;
 
+    /** Pool of connections for user binds. */
+    private AuthenticationContextPool authenticationContextPool;
+
 
     public PoolingContextSourceMonitor(final PoolingContextSource pool) {
         this.poolingContextSource = pool;
     }
 
 
+    /**
+     * @param pool Pool of connections for user binds, which is validated along with the search pool.
+     */
+    public void setAuthenticationContextPool(final AuthenticationContextPool pool) {
+        this.authenticationContextPool = pool;
+    }
+
+
     /** {@inheritDoc} */
     protected StatusCode checkPool() throws Exception {
         final boolean success;
@@ -58,10 +72,28 @@ public class PoolingContextSourceMonitor extends AbstractPoolMonitor {
                 ctxt.close();
             }
         }
+        if (success && authenticationContextPool != null && !authenticationContextPool.validate()) {
+            logger.warn("Authentication pool connection failed validation.");
+            return StatusCode.ERROR;
+        }
         return success ? StatusCode.OK : StatusCode.ERROR;
     }
 
 
+    /** {@inheritDoc} */
+    protected String describe(final String description) {
+        if (authenticationContextPool == null) {
+            return description;
+        }
+        final StringBuilder sb = new StringBuilder();
+        if (description != null) {
+            sb.append(description).append(". ");
+        }
+        authenticationContextPool.toString(sb);
+        return sb.toString();
+    }
+
+
     /** {@inheritDoc} */
     protected int getIdleCount() {
         return poolingContextSource.getNumIdle();
@@ -0,0 +1,147 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.adaptors.ldap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jasig.cas.authentication.handler.AuthenticationException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.ldap.NamingSecurityException;
+import org.springframework.ldap.core.support.LdapContextSource;
+
+import static org.jasig.cas.adaptors.ldap.InMemoryDirectory.credentials;
+import static org.jasig.cas.adaptors.ldap.InMemoryDirectory.userDn;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test for {@link AuthenticationContextPool} against an in-process LDAP server.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public class AuthenticationContextPoolTests {
+
+    private static final int USERS = 10;
+
+    private InMemoryDirectory directory;
+
+    private LdapContextSource contextSource;
+
+    private AuthenticationContextPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        this.directory = new InMemoryDirectory(USERS);
+        this.contextSource = this.directory.getContextSource();
+        this.pool = new AuthenticationContextPool(this.contextSource);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.pool.destroy();
+        this.directory.shutDown();
+    }
+
+    @Test
+    public void testFailedBindKeepsConnection() throws Exception {
+        this.pool.bind(userDn(1), "password1");
+        try {
+            this.pool.bind(userDn(1), "wrong");
+            fail("Bind with wrong password succeeded");
+        } catch (final NamingSecurityException e) {
+            // expected
+        }
+        try {
+            this.pool.bind(userDn(1), "");
+            fail("Bind with empty password succeeded");
+        } catch (final NamingSecurityException e) {
+            // expected
+        }
+        this.pool.bind(userDn(2), "password2");
+
+        assertEquals(1, this.pool.getCreatedCount());
+        assertEquals(2, this.pool.getBindCount());
+        assertEquals(2, this.pool.getFailedBindCount());
+        assertEquals(1, this.pool.getNumIdle());
+        assertTrue(this.pool.validate());
+    }
+
+    @Test
+    public void testHandlerBindsThroughPool() throws Exception {
+        final BindLdapAuthenticationHandler handler = new BindLdapAuthenticationHandler();
+        handler.setContextSource(this.contextSource);
+        handler.setSearchBase(InMemoryDirectory.PEOPLE);
+        handler.setFilter("uid=%u");
+        handler.setAuthenticationContextPool(this.pool);
+        handler.afterPropertiesSet();
+
+        assertTrue(handler.authenticate(credentials("user3", "password3")));
+        try {
+            handler.authenticate(credentials("user3", "password4"));
+            fail("Authentication with wrong password succeeded");
+        } catch (final AuthenticationException e) {
+            // expected
+        }
+        assertTrue(handler.authenticate(credentials("user4", "password4")));
+        assertEquals(1, this.pool.getCreatedCount());
+    }
+
+    @Test
+    public void testConcurrentBindsShareConnections() throws Exception {
+        final int threads = 4;
+        final int binds = 50;
+        this.pool.setMaxActive(threads);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for (int t = 0; t < threads; t++) {
+                results.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        for (int i = 0; i < binds; i++) {
+                            final int user = i % USERS;
+                            pool.bind(userDn(user), "password" + user);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (final Future<Void> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(this.pool.getCreatedCount() <= threads);
+        assertEquals(threads * binds, this.pool.getBindCount());
+        assertEquals(0, this.pool.getFailedBindCount());
+        assertEquals(threads * binds, this.pool.getBindLatency().getCount());
+        assertEquals(0, this.pool.getNumActive());
+    }
+}
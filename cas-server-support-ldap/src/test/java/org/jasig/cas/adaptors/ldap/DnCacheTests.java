@@ -0,0 +1,108 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.adaptors.ldap;
+
+import java.util.List;
+
+import org.jasig.cas.authentication.handler.AuthenticationException;
+import org.jasig.cas.util.ExpiringCache;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.jasig.cas.adaptors.ldap.InMemoryDirectory.credentials;
+import static org.jasig.cas.adaptors.ldap.InMemoryDirectory.userDn;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for the DN cache of {@link BindLdapAuthenticationHandler}.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public class DnCacheTests {
+
+    private InMemoryDirectory directory;
+
+    private ExpiringCache<String, List<String>> cache;
+
+    private BindLdapAuthenticationHandler handler;
+
+    @Before
+    public void setUp() throws Exception {
+        this.directory = new InMemoryDirectory(5);
+        this.cache = new ExpiringCache<String, List<String>>("dn", 100, 60000);
+
+        this.handler = new BindLdapAuthenticationHandler();
+        this.handler.setContextSource(this.directory.getContextSource());
+        this.handler.setSearchBase(InMemoryDirectory.BASE);
+        this.handler.setFilter("uid=%u");
+        this.handler.setDnCache(this.cache);
+        this.handler.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.directory.shutDown();
+    }
+
+    @Test
+    public void testRepeatedLoginUsesCachedDn() throws Exception {
+        assertTrue(this.handler.authenticate(credentials("user1", "password1")));
+        assertTrue(this.handler.authenticate(credentials("user1", "password1")));
+        assertEquals(1, this.cache.getMisses());
+        assertEquals(1, this.cache.getHits());
+    }
+
+    @Test
+    public void testUnknownUserIsCached() throws Exception {
+        assertFalse(this.handler.authenticate(credentials("nobody", "password")));
+        assertFalse(this.handler.authenticate(credentials("nobody", "password")));
+        assertEquals(1, this.cache.getHits());
+
+        this.handler.setNegativeDnCacheTimeToLive(0);
+        this.cache.clear();
+        assertFalse(this.handler.authenticate(credentials("nobody", "password")));
+        assertEquals(0, this.cache.getSize());
+    }
+
+    @Test
+    public void testFailedBindInvalidatesCachedDn() throws Exception {
+        assertTrue(this.handler.authenticate(credentials("user2", "password2")));
+
+        // Move the entry to another branch, which leaves a stale DN in the cache
+        this.directory.getServer().delete(userDn(2));
+        this.directory.getServer().add("dn: ou=staff," + InMemoryDirectory.BASE,
+                "objectClass: organizationalUnit", "ou: staff");
+        this.directory.getServer().add("dn: uid=user2,ou=staff," + InMemoryDirectory.BASE,
+                "objectClass: inetOrgPerson", "uid: user2", "cn: User 2", "sn: 2", "userPassword: password2");
+
+        try {
+            this.handler.authenticate(credentials("user2", "password2"));
+        } catch (final AuthenticationException e) {
+            // The directory rejects the bind to the old DN as invalid credentials rather than reporting it missing
+        }
+        assertTrue(this.handler.authenticate(credentials("user2", "password2")));
+        assertEquals(
+                "uid=user2,ou=staff," + InMemoryDirectory.BASE,
+                this.cache.get("user2").get(0));
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.adaptors.ldap;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.InMemoryListenerConfig;
+import org.jasig.cas.authentication.principal.UsernamePasswordCredentials;
+import org.springframework.ldap.core.support.LdapContextSource;
+
+/**
+ * In-process LDAP server for tests, holding the entries <code>uid=user<i>N</i>,ou=people,dc=example,dc=org</code>
+ * with password <code>password<i>N</i></code>.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public final class InMemoryDirectory {
+
+    public static final String BASE = "dc=example,dc=org";
+
+    public static final String PEOPLE = "ou=people," + BASE;
+
+    private final InMemoryDirectoryServer server;
+
+    private final LdapContextSource contextSource;
+
+    /**
+     * Starts a server holding the given number of users.
+     *
+     * @param users Number of users.
+     */
+    public InMemoryDirectory(final int users) throws Exception {
+        final InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(BASE);
+        config.addAdditionalBindCredentials("cn=admin," + BASE, "secret");
+        config.setListenerConfigs(InMemoryListenerConfig.createLDAPConfig("default", 0));
+        this.server = new InMemoryDirectoryServer(config);
+        this.server.add("dn: " + BASE, "objectClass: domain", "dc: example");
+        this.server.add("dn: " + PEOPLE, "objectClass: organizationalUnit", "ou: people");
+        for (int i = 0; i < users; i++) {
+            this.server.add("dn: " + userDn(i), "objectClass: inetOrgPerson", "uid: user" + i, "cn: User " + i,
+                    "sn: " + i, "mail: user" + i + "@example.org", "userPassword: password" + i);
+        }
+        this.server.startListening();
+
+        this.contextSource = new LdapContextSource();
+        this.contextSource.setUrl("ldap://localhost:" + this.server.getListenPort());
+        this.contextSource.setUserDn("cn=admin," + BASE);
+        this.contextSource.setPassword("secret");
+        this.contextSource.setPooled(false);
+        this.contextSource.afterPropertiesSet();
+    }
+
+    public InMemoryDirectoryServer getServer() {
+        return this.server;
+    }
+
+    /**
+     * @return Context source authenticated as the directory administrator.
+     */
+    public LdapContextSource getContextSource() {
+        return this.contextSource;
+    }
+
+    public void shutDown() {
+        this.server.shutDown(true);
+    }
+
+    public static String userDn(final int i) {
+        return "uid=user" + i + "," + PEOPLE;
+    }
+
+    public static UsernamePasswordCredentials credentials(final String username, final String password) {
+        final UsernamePasswordCredentials credentials = new UsernamePasswordCredentials();
+        credentials.setUsername(username);
+        credentials.setPassword(password);
+        return credentials;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.adaptors.ldap;
+
+import java.util.Arrays;
+
+import org.jasig.cas.util.ExpiringCache;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.jasig.cas.adaptors.ldap.InMemoryDirectory.credentials;
+import static org.jasig.cas.adaptors.ldap.InMemoryDirectory.userDn;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for the expiration cache of {@link LdapPasswordPolicyEnforcer}.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public class LdapPasswordPolicyEnforcerTests {
+
+    private InMemoryDirectory directory;
+
+    private ExpiringCache<String, LdapPasswordPolicyEnforcer.PasswordExpiration> cache;
+
+    private LdapPasswordPolicyEnforcer enforcer;
+
+    @Before
+    public void setUp() throws Exception {
+        this.directory = new InMemoryDirectory(3);
+        this.cache = new ExpiringCache<String, LdapPasswordPolicyEnforcer.PasswordExpiration>("expiration", 100, 60000);
+
+        this.enforcer = new LdapPasswordPolicyEnforcer();
+        this.enforcer.setContextSource(this.directory.getContextSource());
+        this.enforcer.setSearchBase(InMemoryDirectory.BASE);
+        this.enforcer.setFilter("uid=%u");
+        this.enforcer.setDateAttribute("description");
+        this.enforcer.setDateFormat("yyyyMMdd");
+        this.enforcer.setValidDays(180);
+        this.enforcer.setWarningDays(30);
+        this.enforcer.setNoWarnValues(Arrays.asList("never"));
+        this.enforcer.setExpirationCache(this.cache);
+        this.enforcer.afterPropertiesSet();
+
+        // user0 is inside the warning period, user1 and user2 are not
+        setPasswordChanged(0, 170);
+        setPasswordChanged(1, 10);
+        setPasswordChanged(2, 10);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.directory.shutDown();
+    }
+
+    @Test
+    public void testExpirationIsCachedUntilWarningPeriod() throws Exception {
+        assertEquals(-1, this.enforcer.getNumberOfDaysToPasswordExpirationDate("user1"));
+        setPasswordChanged(1, 170);
+        assertEquals(-1, this.enforcer.getNumberOfDaysToPasswordExpirationDate("user1"));
+        assertEquals(1, this.cache.getHits());
+
+        this.enforcer.evict("user1");
+        assertTrue(this.enforcer.getNumberOfDaysToPasswordExpirationDate("user1") >= 9);
+
+        // Users who are warned are not cached
+        assertTrue(this.enforcer.getNumberOfDaysToPasswordExpirationDate("user0") >= 9);
+        assertEquals(0, this.cache.getSize());
+    }
+
+    @Test
+    public void testExpirationIsReadByDnSearch() throws Exception {
+        final BindLdapAuthenticationHandler handler = new BindLdapAuthenticationHandler();
+        handler.setContextSource(this.directory.getContextSource());
+        handler.setSearchBase(InMemoryDirectory.BASE);
+        handler.setFilter("uid=%u");
+        handler.setPasswordPolicyEnforcer(this.enforcer);
+        handler.afterPropertiesSet();
+
+        assertTrue(handler.authenticate(credentials("user2", "password2")));
+        assertEquals(1, this.cache.getSize());
+        assertEquals(-1, this.enforcer.getNumberOfDaysToPasswordExpirationDate("user2"));
+        assertEquals(1, this.cache.getHits());
+        assertEquals(0, this.cache.getMisses());
+    }
+
+    @Test
+    public void testDateWithoutTimeZoneIsReadInDefaultTimeZone() throws Exception {
+        final DateTimeZone defaultZone = DateTimeZone.getDefault();
+        DateTimeZone.setDefault(DateTimeZone.forOffsetHours(5));
+        try {
+            this.enforcer.setDateFormat("yyyyMMddHHmm");
+            this.enforcer.afterPropertiesSet();
+            // 170 days and 3 hours ago in UTC is 170 days and 2 hours ago when read in UTC+5
+            final String date = new DateTime(DateTimeZone.UTC).minusDays(170).plusHours(3).toString("yyyyMMddHHmm");
+            this.directory.getServer().modify(
+                    "dn: " + userDn(0), "changetype: modify", "replace: description", "description: " + date);
+
+            assertEquals(9, this.enforcer.getNumberOfDaysToPasswordExpirationDate("user0"));
+        } finally {
+            DateTimeZone.setDefault(defaultZone);
+        }
+    }
+
+    private void setPasswordChanged(final int user, final int daysAgo) throws Exception {
+        final String date = new DateTime(DateTimeZone.UTC).minusDays(daysAgo).toString("yyyyMMdd");
+        this.directory.getServer().modify(
+                "dn: " + userDn(user), "changetype: modify", "replace: description", "description: " + date);
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.authentication.principal;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jasig.cas.adaptors.ldap.InMemoryDirectory;
+import org.jasig.cas.adaptors.ldap.remote.RemoteAddressCredentials;
+import org.jasig.cas.adaptors.ldap.remote.RemoteIpLookupCredentialsToPrincipalResolver;
+import org.jasig.cas.util.ExpiringCache;
+import org.jasig.services.persondir.IPersonAttributes;
+import org.jasig.services.persondir.support.StubPersonAttributeDao;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.jasig.cas.adaptors.ldap.InMemoryDirectory.credentials;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Unit test for fetching principal attributes with the principal id in
+ * {@link CredentialsToLDAPAttributePrincipalResolver}.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public class LdapPrincipalAttributeResolutionTests {
+
+    private InMemoryDirectory directory;
+
+    private ExpiringCache<String, IPersonAttributes> cache;
+
+    private CredentialsToLDAPAttributePrincipalResolver resolver;
+
+    private final AtomicInteger delegateResolutions = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        this.directory = new InMemoryDirectory(5);
+        this.cache = new ExpiringCache<String, IPersonAttributes>("people", 100, 60000);
+
+        final Map<String, String> mapping = new HashMap<String, String>();
+        mapping.put("mail", "email");
+        mapping.put("cn", "name");
+
+        this.resolver = new CredentialsToLDAPAttributePrincipalResolver();
+        this.resolver.setContextSource(this.directory.getContextSource());
+        this.resolver.setSearchBase(InMemoryDirectory.BASE);
+        this.resolver.setFilter("uid=%u");
+        this.resolver.setPrincipalAttributeName("uid");
+        final CredentialsToPrincipalResolver delegate = new UsernamePasswordCredentialsToPrincipalResolver();
+        this.resolver.setCredentialsToPrincipalResolver(new CredentialsToPrincipalResolver() {
+            public Principal resolvePrincipal(final Credentials credentials) {
+                delegateResolutions.incrementAndGet();
+                return delegate.resolvePrincipal(credentials);
+            }
+
+            public boolean supports(final Credentials credentials) {
+                return delegate.supports(credentials);
+            }
+        });
+        this.resolver.setPersonCache(this.cache);
+        this.resolver.setAttributeMapping(mapping);
+        this.resolver.setAttributeRepository(new StubPersonAttributeDao(
+                Collections.<String, List<Object>>singletonMap("email", Arrays.<Object>asList("stub@example.org"))));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.directory.shutDown();
+    }
+
+    @Test
+    public void testAttributesAreFetchedWithPrincipalId() {
+        final Principal principal = this.resolver.resolvePrincipal(credentials("user1", "password1"));
+        assertEquals("user1", principal.getId());
+        assertEquals("user1@example.org", principal.getAttributes().get("email"));
+        assertEquals("User 1", principal.getAttributes().get("name"));
+
+        // The attributes come from the entry found by the id search
+        assertEquals(1, this.cache.getMisses());
+        assertEquals(0, this.cache.getHits());
+        assertEquals(1, this.delegateResolutions.get());
+
+        assertNull(this.resolver.resolvePrincipal(credentials("nobody", "password")));
+    }
+
+    @Test
+    public void testPrefetch() {
+        assertEquals(2, this.resolver.prefetch(Arrays.asList("user2", "USER3", "nobody")));
+        assertEquals(2, this.cache.getSize());
+
+        final Principal principal = this.resolver.resolvePrincipal(credentials("USER3", "password3"));
+        assertEquals("user3", principal.getId());
+        assertEquals("user3@example.org", principal.getAttributes().get("email"));
+        assertEquals(0, this.cache.getMisses());
+    }
+
+    @Test
+    public void testPrefetchKeepsCaseOfLookupValues() {
+        assertEquals(2, this.resolver.prefetch(Arrays.asList("user2", "USER2")));
+        assertEquals(2, this.cache.getSize());
+        assertEquals("user2", this.cache.get("user2").getName());
+        assertEquals("user2", this.cache.get("USER2").getName());
+        assertNull(this.cache.get("User2"));
+    }
+
+    @Test
+    public void testRemoteAddressAttributesAreFetchedWithPrincipalId() throws Exception {
+        this.directory.getServer().modify("dn: " + InMemoryDirectory.userDn(4), "changetype: modify",
+                "add: description", "description: 127.0.0.1");
+        final Map<String, String> mapping = new HashMap<String, String>();
+        mapping.put("mail", "email");
+
+        final RemoteIpLookupCredentialsToPrincipalResolver remoteResolver =
+                new RemoteIpLookupCredentialsToPrincipalResolver();
+        remoteResolver.setContextSource(this.directory.getContextSource());
+        remoteResolver.setSearchBase(InMemoryDirectory.BASE);
+        remoteResolver.setFilter("description=%u");
+        remoteResolver.setPrincipalAttributeName("uid");
+        remoteResolver.setPersonCache(this.cache);
+        remoteResolver.setAttributeMapping(mapping);
+
+        final Principal principal = remoteResolver.resolvePrincipal(new RemoteAddressCredentials("127.0.0.1"));
+        assertEquals("user4", principal.getId());
+        assertEquals("user4@example.org", principal.getAttributes().get("email"));
+        assertNull(remoteResolver.resolvePrincipal(new RemoteAddressCredentials("127.0.0.2")));
+
+        assertEquals("user4", remoteResolver.resolvePrincipal(new RemoteAddressCredentials("127.0.0.1")).getId());
+        assertEquals(1, this.cache.getHits());
+    }
+}
@@ -18,9 +18,6 @@
  */
 package org.jasig.cas.support.saml.authentication.principal;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.UnsupportedEncodingException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.util.Calendar;
@@ -28,19 +25,15 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
-import java.util.zip.DataFormatException;
-import java.util.zip.Inflater;
-import java.util.zip.InflaterInputStream;
 
 import javax.servlet.http.HttpServletRequest;
 
-import org.apache.commons.codec.binary.Base64;
 import org.jasig.cas.authentication.principal.AbstractWebApplicationService;
 import org.jasig.cas.authentication.principal.Response;
-import org.jasig.cas.support.saml.util.SamlUtils;
+import org.jasig.cas.support.saml.util.AuthnRequestDecoder;
+import org.jasig.cas.support.saml.util.SamlResponseSigner;
+import org.jasig.cas.support.saml.util.XmlTemplate;
 import org.jasig.cas.util.SamlDateUtils;
-import org.jdom.Document;
-import org.springframework.util.StringUtils;
 
 /**
  * Implementation of a Service that supports Google Accounts (eventually a more
@@ -101,6 +94,28 @@ public class GoogleAccountsService extends AbstractWebApplicationService {
         + "</AuthnStatement>"
         + "</Assertion></samlp:Response>";
 
+    private static final String USERNAME_STRING = "<USERNAME_STRING>";
+
+    private static final String RESPONSE_ID = "<RESPONSE_ID>";
+
+    private static final String ISSUE_INSTANT = "<ISSUE_INSTANT>";
+
+    private static final String AUTHN_INSTANT = "<AUTHN_INSTANT>";
+
+    private static final String NOT_ON_OR_AFTER = "<NOT_ON_OR_AFTER>";
+
+    private static final String ASSERTION_ID = "<ASSERTION_ID>";
+
+    private static final String ACS_URL = "<ACS_URL>";
+
+    private static final String REQUEST_ID = "<REQUEST_ID>";
+
+    private static final XmlTemplate SAML_RESPONSE = new XmlTemplate(TEMPLATE_SAML_RESPONSE,
+        USERNAME_STRING, RESPONSE_ID, ISSUE_INSTANT, AUTHN_INSTANT, NOT_ON_OR_AFTER, ASSERTION_ID, ACS_URL,
+        REQUEST_ID);
+
+    private static final AuthnRequestDecoder AUTHN_REQUEST_DECODER = new AuthnRequestDecoder();
+
     private final String relayState;
 
     private final PublicKey publicKey;
@@ -132,32 +147,22 @@ public class GoogleAccountsService extends AbstractWebApplicationService {
         final PublicKey publicKey, final String alternateUserName) {
         final String relayState = request.getParameter(CONST_RELAY_STATE);
 
-        final String xmlRequest = decodeAuthnRequestXML(request
+        final AuthnRequestDecoder.AuthnRequest authnRequest = AUTHN_REQUEST_DECODER.decode(request
             .getParameter(CONST_PARAM_SERVICE));
 
-        if (!StringUtils.hasText(xmlRequest)) {
-            return null;
-        }
-
-        final Document document = SamlUtils
-            .constructDocumentFromXmlString(xmlRequest);
-
-        if (document == null) {
+        if (authnRequest == null) {
             return null;
         }
 
-        final String assertionConsumerServiceUrl = document.getRootElement().getAttributeValue("AssertionConsumerServiceURL");
-        final String requestId = document.getRootElement().getAttributeValue("ID");
-
-        return new GoogleAccountsService(assertionConsumerServiceUrl,
-            relayState, requestId, privateKey, publicKey, alternateUserName);
+        return new GoogleAccountsService(authnRequest.getAssertionConsumerServiceUrl(),
+            relayState, authnRequest.getId(), privateKey, publicKey, alternateUserName);
     }
 
     public Response getResponse(final String ticketId) {
         final Map<String, String> parameters = new HashMap<String, String>();
         final String samlResponse = constructSamlResponse();
-        final String signedResponse = SamlUtils.signSamlResponse(samlResponse,
-            this.privateKey, this.publicKey);
+        final String signedResponse = SamlResponseSigner.getInstance(this.privateKey, this.publicKey)
+            .sign(samlResponse);
         parameters.put("SAMLResponse", signedResponse);
         parameters.put("RelayState", this.relayState);
 
@@ -174,8 +179,6 @@ public class GoogleAccountsService extends AbstractWebApplicationService {
     }
 
     private String constructSamlResponse() {
-        String samlResponse = TEMPLATE_SAML_RESPONSE;
-
         final Calendar c = Calendar.getInstance();
         c.setTime(new Date());
         c.add(Calendar.YEAR, 1);
@@ -193,19 +196,18 @@ public class GoogleAccountsService extends AbstractWebApplicationService {
             }
         }
         
-        samlResponse = samlResponse.replace("<USERNAME_STRING>", userId);
-        samlResponse = samlResponse.replace("<RESPONSE_ID>", createID());
-        samlResponse = samlResponse.replace("<ISSUE_INSTANT>", SamlDateUtils
-            .getCurrentDateAndTime());
-        samlResponse = samlResponse.replace("<AUTHN_INSTANT>", SamlDateUtils
-            .getCurrentDateAndTime());
-        samlResponse = samlResponse.replaceAll("<NOT_ON_OR_AFTER>", SamlDateUtils
-            .getFormattedDateAndTime(c.getTime()));
-        samlResponse = samlResponse.replace("<ASSERTION_ID>", createID());
-        samlResponse = samlResponse.replaceAll("<ACS_URL>", getId());
-        samlResponse = samlResponse.replace("<REQUEST_ID>", this.requestId);
-
-        return samlResponse;
+        final String now = SamlDateUtils.getCurrentDateAndTime();
+        final Map<String, String> values = new HashMap<String, String>();
+        values.put(USERNAME_STRING, userId);
+        values.put(RESPONSE_ID, createID());
+        values.put(ISSUE_INSTANT, now);
+        values.put(AUTHN_INSTANT, now);
+        values.put(NOT_ON_OR_AFTER, SamlDateUtils.getFormattedDateAndTime(c.getTime()));
+        values.put(ASSERTION_ID, createID());
+        values.put(ACS_URL, getId());
+        values.put(REQUEST_ID, this.requestId);
+
+        return SAML_RESPONSE.render(values);
     }
     
     private static String createID() {
@@ -223,85 +225,4 @@ public class GoogleAccountsService extends AbstractWebApplicationService {
 
         return String.valueOf(chars);
       }
-
-    private static String decodeAuthnRequestXML(
-        final String encodedRequestXmlString) {
-        if (encodedRequestXmlString == null) {
-            return null;
-        }
-
-        final byte[] decodedBytes = base64Decode(encodedRequestXmlString);
-
-        if (decodedBytes == null) {
-            return null;
-        }
-
-        final String inflated = inflate(decodedBytes);
-
-        if (inflated != null) {
-            return inflated;
-        }
-
-        return zlibDeflate(decodedBytes);
-    }
-
-    private static String zlibDeflate(final byte[] bytes) {
-        final ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        final InflaterInputStream iis = new InflaterInputStream(bais);
-        final byte[] buf = new byte[1024];
-
-        try {
-            int count = iis.read(buf);
-            while (count != -1) {
-                baos.write(buf, 0, count);
-                count = iis.read(buf);
-            }
-            return new String(baos.toByteArray());
-        } catch (final Exception e) {
-            return null;
-        } finally {
-            try {
-                iis.close();
-            } catch (final Exception e) {
-                // nothing to do
-            }
-        }
-    }
-
-    private static byte[] base64Decode(final String xml) {
-        try {
-            final byte[] xmlBytes = xml.getBytes("UTF-8");
-            return Base64.decodeBase64(xmlBytes);
-        } catch (final Exception e) {
-            return null;
-        }
-    }
-
-    private static String inflate(final byte[] bytes) {
-        final Inflater inflater = new Inflater(true);
-        final byte[] xmlMessageBytes = new byte[10000];
-        
-        final byte[] extendedBytes = new byte[bytes.length + 1];
-        System.arraycopy(bytes, 0, extendedBytes, 0, bytes.length);
-        extendedBytes[bytes.length] = 0;
-        
-        inflater.setInput(extendedBytes);
-
-        try {
-            final int resultLength = inflater.inflate(xmlMessageBytes);
-            inflater.end();
-
-            if (!inflater.finished()) {
-                throw new RuntimeException("buffer not large enough.");
-            }
-
-            inflater.end();
-            return new String(xmlMessageBytes, 0, resultLength, "UTF-8");
-        } catch (final DataFormatException e) {
-            return null;
-        } catch (final UnsupportedEncodingException e) {
-            throw new RuntimeException("Cannot find encoding: UTF-8", e);
-        }
-    }
 }
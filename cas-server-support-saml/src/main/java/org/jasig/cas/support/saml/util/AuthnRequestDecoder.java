@@ -0,0 +1,229 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.support.saml.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ * Decodes the SAML 2 AuthnRequest of the HTTP redirect binding, a base64
+ * encoded and deflated XML document, into the few attributes CAS needs.
+ * <p>
+ * The request is inflated as it is parsed by a StAX reader, which stops at
+ * the root element, so the XML document is never held as a string or tree.
+ * Both raw deflate and zlib wrapped data are accepted. Inflaters are pooled,
+ * and no more than a maximum number of inflated bytes are read, so a
+ * compressed request cannot expand without bound.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public final class AuthnRequestDecoder {
+
+    /** Default number of pooled inflaters of each kind. */
+    public static final int DEFAULT_POOL_SIZE = 16;
+
+    /** Default maximum number of inflated bytes read from a request. */
+    public static final int DEFAULT_MAX_SIZE = 64 * 1024;
+
+    /** Compression method of a zlib header, deflate with a window of at most 32K. */
+    private static final int ZLIB_DEFLATE = 8;
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private final BlockingQueue<Inflater> rawInflaters;
+
+    private final BlockingQueue<Inflater> zlibInflaters;
+
+    private final int maxSize;
+
+    /** Creates a decoder with the default pool size and maximum size. */
+    public AuthnRequestDecoder() {
+        this(DEFAULT_POOL_SIZE, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Creates a decoder.
+     *
+     * @param poolSize Number of idle inflaters of each kind kept for reuse.
+     * @param maxSize Maximum number of inflated bytes read from a request, which must allow for the
+     * read-ahead buffer of the StAX parser.
+     */
+    public AuthnRequestDecoder(final int poolSize, final int maxSize) {
+        this.rawInflaters = new ArrayBlockingQueue<Inflater>(poolSize);
+        this.zlibInflaters = new ArrayBlockingQueue<Inflater>(poolSize);
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Decodes an AuthnRequest.
+     *
+     * @param encodedRequest Value of the SAMLRequest parameter.
+     *
+     * @return Decoded request, or null if the request cannot be decoded.
+     */
+    public AuthnRequest decode(final String encodedRequest) {
+        if (encodedRequest == null) {
+            return null;
+        }
+        final byte[] compressed;
+        try {
+            compressed = Base64.decodeBase64(encodedRequest.getBytes("UTF-8"));
+        } catch (final UnsupportedEncodingException e) {
+            throw new IllegalStateException("Cannot find encoding: UTF-8", e);
+        }
+        if (compressed.length < 2) {
+            return null;
+        }
+
+        // Raw data may rarely look like a zlib header, so the other format is tried as well
+        final boolean zlib = isZlibHeader(compressed);
+        final AuthnRequest request = decode(compressed, zlib);
+        return request != null ? request : decode(compressed, !zlib);
+    }
+
+    private AuthnRequest decode(final byte[] compressed, final boolean zlib) {
+        final BlockingQueue<Inflater> pool = zlib ? this.zlibInflaters : this.rawInflaters;
+        Inflater inflater = pool.poll();
+        if (inflater == null) {
+            inflater = new Inflater(!zlib);
+        }
+        try {
+            // Raw inflation may need a dummy byte beyond the end of the data
+            final byte[] input = new byte[compressed.length + 1];
+            System.arraycopy(compressed, 0, input, 0, compressed.length);
+            return parse(new LimitedInputStream(
+                new InflaterInputStream(new ByteArrayInputStream(input), inflater), this.maxSize));
+        } catch (final XMLStreamException e) {
+            return null;
+        } catch (final RuntimeException e) {
+            // Some StAX implementations wrap read failures in unchecked exceptions
+            return null;
+        } finally {
+            inflater.reset();
+            if (!pool.offer(inflater)) {
+                inflater.end();
+            }
+        }
+    }
+
+    private static AuthnRequest parse(final InputStream in) throws XMLStreamException {
+        final XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                    return new AuthnRequest(
+                        reader.getAttributeValue(null, "ID"),
+                        reader.getAttributeValue(null, "AssertionConsumerServiceURL"));
+                }
+            }
+            return null;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Determines whether data starts with a zlib header (RFC 1950) rather
+     * than raw deflate data.
+     */
+    private static boolean isZlibHeader(final byte[] data) {
+        final int cmf = data[0] & 0xff;
+        final int flg = data[1] & 0xff;
+        return (cmf & 0x0f) == ZLIB_DEFLATE && (cmf >> 4) <= 7 && ((cmf << 8) | flg) % 31 == 0;
+    }
+
+    /**
+     * Attributes of an AuthnRequest used by CAS.
+     */
+    public static final class AuthnRequest {
+        private final String id;
+
+        private final String assertionConsumerServiceUrl;
+
+        public AuthnRequest(final String id, final String assertionConsumerServiceUrl) {
+            this.id = id;
+            this.assertionConsumerServiceUrl = assertionConsumerServiceUrl;
+        }
+
+        public String getId() {
+            return this.id;
+        }
+
+        public String getAssertionConsumerServiceUrl() {
+            return this.assertionConsumerServiceUrl;
+        }
+    }
+
+    /**
+     * Input stream that fails once more than a given number of bytes are read.
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+        private int remaining;
+
+        LimitedInputStream(final InputStream in, final int limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b >= 0) {
+                consume(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int n = super.read(b, off, Math.min(len, this.remaining + 1));
+            if (n > 0) {
+                consume(n);
+            }
+            return n;
+        }
+
+        private void consume(final int n) throws IOException {
+            this.remaining -= n;
+            if (this.remaining < 0) {
+                throw new IOException("AuthnRequest exceeds maximum size");
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.support.saml.util;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.PublicKey;
+import java.security.interfaces.DSAPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.xml.crypto.dsig.CanonicalizationMethod;
+import javax.xml.crypto.dsig.DigestMethod;
+import javax.xml.crypto.dsig.Reference;
+import javax.xml.crypto.dsig.SignatureMethod;
+import javax.xml.crypto.dsig.SignedInfo;
+import javax.xml.crypto.dsig.Transform;
+import javax.xml.crypto.dsig.XMLSignature;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.dom.DOMSignContext;
+import javax.xml.crypto.dsig.keyinfo.KeyInfo;
+import javax.xml.crypto.dsig.keyinfo.KeyInfoFactory;
+import javax.xml.crypto.dsig.spec.C14NMethodParameterSpec;
+import javax.xml.crypto.dsig.spec.TransformParameterSpec;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.InputSource;
+
+/**
+ * Signs SAML responses with an enveloped XML signature for one key pair. It
+ * produces the same signature as {@link SamlUtils#signSamlResponse(String, PrivateKey, PublicKey)}
+ * but resolves the signature provider and creates the signature methods,
+ * transforms and key info once per key pair, and parses the response into a
+ * DOM once instead of going through JDOM.
+ * <p>
+ * Instances are thread-safe and shared per key pair through
+ * {@link #getInstance(PrivateKey, PublicKey)}.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public final class SamlResponseSigner {
+
+    private static final String JSR_105_PROVIDER = "org.jcp.xml.dsig.internal.dom.XMLDSigRI";
+
+    private static final ConcurrentMap<List<Object>, SamlResponseSigner> SIGNERS =
+        new ConcurrentHashMap<List<Object>, SamlResponseSigner>();
+
+    private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY = DocumentBuilderFactory.newInstance();
+
+    private static final TransformerFactory TRANSFORMER_FACTORY = TransformerFactory.newInstance();
+
+    static {
+        DOCUMENT_BUILDER_FACTORY.setNamespaceAware(true);
+    }
+
+    private final PrivateKey privateKey;
+
+    /** Signature factory; its non-static methods are not thread-safe. */
+    private final XMLSignatureFactory signatureFactory;
+
+    private final DigestMethod digestMethod;
+
+    private final List<Transform> transforms;
+
+    private final CanonicalizationMethod canonicalizationMethod;
+
+    private final SignatureMethod signatureMethod;
+
+    private final KeyInfo keyInfo;
+
+    /**
+     * Creates a signer for the given key pair.
+     *
+     * @param privateKey Key to sign with.
+     * @param publicKey Key included in the signature key info, either a DSA or RSA key.
+     */
+    public SamlResponseSigner(final PrivateKey privateKey, final PublicKey publicKey) {
+        this.privateKey = privateKey;
+        try {
+            final String providerName = System.getProperty("jsr105Provider", JSR_105_PROVIDER);
+            this.signatureFactory = XMLSignatureFactory.getInstance(
+                "DOM", (Provider) Class.forName(providerName).newInstance());
+
+            this.digestMethod = this.signatureFactory.newDigestMethod(DigestMethod.SHA1, null);
+            this.transforms = Collections.singletonList(
+                this.signatureFactory.newTransform(Transform.ENVELOPED, (TransformParameterSpec) null));
+            this.canonicalizationMethod = this.signatureFactory.newCanonicalizationMethod(
+                CanonicalizationMethod.INCLUSIVE_WITH_COMMENTS, (C14NMethodParameterSpec) null);
+
+            // Create the SignatureMethod based on the type of key
+            if (publicKey instanceof DSAPublicKey) {
+                this.signatureMethod = this.signatureFactory.newSignatureMethod(SignatureMethod.DSA_SHA1, null);
+            } else if (publicKey instanceof RSAPublicKey) {
+                this.signatureMethod = this.signatureFactory.newSignatureMethod(SignatureMethod.RSA_SHA1, null);
+            } else {
+                throw new IllegalArgumentException("Unsupported type of key");
+            }
+
+            final KeyInfoFactory keyInfoFactory = this.signatureFactory.getKeyInfoFactory();
+            this.keyInfo = keyInfoFactory.newKeyInfo(
+                Collections.singletonList(keyInfoFactory.newKeyValue(publicKey)));
+        } catch (final RuntimeException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new RuntimeException("Error creating SAML signer: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Gets the shared signer of the given key pair, creating it on first use.
+     *
+     * @param privateKey Key to sign with.
+     * @param publicKey Key included in the signature key info.
+     *
+     * @return Signer of the key pair.
+     */
+    public static SamlResponseSigner getInstance(final PrivateKey privateKey, final PublicKey publicKey) {
+        final List<Object> keyPair = Arrays.<Object>asList(privateKey, publicKey);
+        SamlResponseSigner signer = SIGNERS.get(keyPair);
+        if (signer == null) {
+            signer = new SamlResponseSigner(privateKey, publicKey);
+            final SamlResponseSigner existing = SIGNERS.putIfAbsent(keyPair, signer);
+            if (existing != null) {
+                signer = existing;
+            }
+        }
+        return signer;
+    }
+
+    /**
+     * Signs a SAML response.
+     *
+     * @param samlResponse SAML response document.
+     *
+     * @return Signed SAML response document.
+     */
+    public String sign(final String samlResponse) {
+        try {
+            final DocumentBuilder builder;
+            synchronized (DOCUMENT_BUILDER_FACTORY) {
+                builder = DOCUMENT_BUILDER_FACTORY.newDocumentBuilder();
+            }
+            final Document document = builder.parse(new InputSource(new StringReader(samlResponse)));
+            sign(document.getDocumentElement());
+
+            final Transformer transformer;
+            synchronized (TRANSFORMER_FACTORY) {
+                transformer = TRANSFORMER_FACTORY.newTransformer();
+            }
+            transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+            final StringWriter writer = new StringWriter(samlResponse.length() * 2);
+            transformer.transform(new DOMSource(document), new StreamResult(writer));
+            return writer.toString();
+        } catch (final RuntimeException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new RuntimeException("Error signing SAML Response: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Adds an enveloped signature to a SAML element.
+     *
+     * @param element Element to sign.
+     *
+     * @throws Exception On signing errors.
+     */
+    public void sign(final Element element) throws Exception {
+        // References hold the computed digest, so a new SignedInfo is needed per signature
+        final XMLSignature signature;
+        synchronized (this.signatureFactory) {
+            final Reference reference = this.signatureFactory.newReference(
+                "", this.digestMethod, this.transforms, null, null);
+            final SignedInfo signedInfo = this.signatureFactory.newSignedInfo(
+                this.canonicalizationMethod, this.signatureMethod, Collections.singletonList(reference));
+            signature = this.signatureFactory.newXMLSignature(signedInfo, this.keyInfo);
+        }
+
+        final DOMSignContext context = new DOMSignContext(this.privateKey, element);
+        context.setNextSibling(SamlUtils.getXmlSignatureInsertLocation(element));
+        signature.sign(context);
+    }
+}
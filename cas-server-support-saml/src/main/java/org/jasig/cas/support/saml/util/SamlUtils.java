@@ -168,7 +168,7 @@ public final class SamlUtils {
         }
     }
 
-    private static Node getXmlSignatureInsertLocation(org.w3c.dom.Element elem) {
+    static Node getXmlSignatureInsertLocation(org.w3c.dom.Element elem) {
         org.w3c.dom.Node insertLocation = null;
         org.w3c.dom.NodeList nodeList = elem.getElementsByTagNameNS(
             SAML_PROTOCOL_NS_URI_V20, "Extensions");
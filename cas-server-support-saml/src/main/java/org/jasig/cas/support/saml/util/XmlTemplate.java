@@ -0,0 +1,124 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.support.saml.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * XML document template with named placeholders, split into its literal
+ * fragments once so that rendering is a single pass that appends fragments
+ * and XML-escaped values.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public final class XmlTemplate {
+
+    /** Literal text between placeholders; one more than the number of placeholders. */
+    private final String[] fragments;
+
+    /** Placeholder at the end of each fragment except the last. */
+    private final String[] placeholders;
+
+    /** Rendered size without placeholder values. */
+    private final int length;
+
+    /**
+     * Creates a template.
+     *
+     * @param template Template text.
+     * @param names Placeholders that occur in the template, such as <code>&lt;RESPONSE_ID&gt;</code>.
+     */
+    public XmlTemplate(final String template, final String... names) {
+        final List<String> fragmentList = new ArrayList<String>();
+        final List<String> placeholderList = new ArrayList<String>();
+        int start = 0;
+        while (true) {
+            String next = null;
+            int index = -1;
+            for (final String name : names) {
+                final int i = template.indexOf(name, start);
+                if (i >= 0 && (index < 0 || i < index)) {
+                    index = i;
+                    next = name;
+                }
+            }
+            if (next == null) {
+                break;
+            }
+            fragmentList.add(template.substring(start, index));
+            placeholderList.add(next);
+            start = index + next.length();
+        }
+        fragmentList.add(template.substring(start));
+
+        this.fragments = fragmentList.toArray(new String[fragmentList.size()]);
+        this.placeholders = placeholderList.toArray(new String[placeholderList.size()]);
+        int total = 0;
+        for (final String fragment : this.fragments) {
+            total += fragment.length();
+        }
+        this.length = total;
+    }
+
+    /**
+     * Renders the template.
+     *
+     * @param values Value of each placeholder; values are escaped for use in XML text and attributes.
+     *
+     * @return Rendered document.
+     */
+    public String render(final Map<String, String> values) {
+        final StringBuilder builder = new StringBuilder(this.length + 64 * this.placeholders.length);
+        for (int i = 0; i < this.placeholders.length; i++) {
+            builder.append(this.fragments[i]);
+            final String value = values.get(this.placeholders[i]);
+            if (value == null) {
+                throw new IllegalArgumentException("No value for " + this.placeholders[i]);
+            }
+            escape(value, builder);
+        }
+        builder.append(this.fragments[this.fragments.length - 1]);
+        return builder.toString();
+    }
+
+    private static void escape(final String value, final StringBuilder builder) {
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '&':
+                    builder.append("&amp;");
+                    break;
+                case '<':
+                    builder.append("&lt;");
+                    break;
+                case '>':
+                    builder.append("&gt;");
+                    break;
+                case '"':
+                    builder.append("&quot;");
+                    break;
+                default:
+                    builder.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.support.saml.util;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Unit test for {@link AuthnRequestDecoder}.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public class AuthnRequestDecoderTests {
+
+    private static final String REQUEST = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+        + "<samlp:AuthnRequest xmlns:samlp=\"urn:oasis:names:tc:SAML:2.0:protocol\" ID=\"5545454455\""
+        + " Version=\"2.0\" IssueInstant=\"Value\""
+        + " AssertionConsumerServiceURL=\"https://localhost:8443/acs?a=1&amp;b=\u00e9\">"
+        + "<samlp:NameIDPolicy AllowCreate=\"true\"/></samlp:AuthnRequest>";
+
+    private final AuthnRequestDecoder decoder = new AuthnRequestDecoder(1, 16 * 1024);
+
+    @Test
+    public void testRawAndZlibRequests() throws Exception {
+        for (final boolean raw : new boolean[] {true, false, true, false}) {
+            final AuthnRequestDecoder.AuthnRequest request = this.decoder.decode(encode(REQUEST, raw));
+            assertEquals("5545454455", request.getId());
+            assertEquals("https://localhost:8443/acs?a=1&b=\u00e9", request.getAssertionConsumerServiceUrl());
+        }
+    }
+
+    @Test
+    public void testOnlyRootElementIsRead() throws Exception {
+        final StringBuilder padding = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            padding.append("<x/>");
+        }
+        final String request = REQUEST.replace("</samlp:AuthnRequest>", padding + "</samlp:AuthnRequest>");
+        assertEquals("5545454455", this.decoder.decode(encode(request, true)).getId());
+    }
+
+    @Test
+    public void testOversizedRequestIsRejected() throws Exception {
+        final StringBuilder padding = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            padding.append(' ');
+        }
+        assertNull(this.decoder.decode(encode(REQUEST.replace(" ID=", padding + " ID="), true)));
+    }
+
+    @Test
+    public void testInvalidRequests() throws Exception {
+        assertNull(this.decoder.decode(null));
+        assertNull(this.decoder.decode(""));
+        assertNull(this.decoder.decode("bm90IGRlZmxhdGVk"));
+        assertNull(this.decoder.decode(encode("not xml", true)));
+    }
+
+    private static String encode(final String xml, final boolean raw) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final DeflaterOutputStream deflater = new DeflaterOutputStream(
+            out, new Deflater(Deflater.DEFAULT_COMPRESSION, raw));
+        deflater.write(xml.getBytes("UTF-8"));
+        deflater.close();
+        return new String(Base64.encodeBase64(out.toByteArray()), "UTF-8");
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.support.saml.util;
+
+import java.io.StringReader;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.crypto.dsig.XMLSignature;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.dom.DOMValidateContext;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for {@link SamlResponseSigner}.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public class SamlResponseSignerTests {
+
+    private static final String ASSERTION_NS = "urn:oasis:names:tc:SAML:2.0:assertion";
+
+    private static final XmlTemplate RESPONSE = new XmlTemplate(
+        "<samlp:Response ID=\"<RESPONSE_ID>\" Version=\"2.0\""
+        + " xmlns=\"" + ASSERTION_NS + "\""
+        + " xmlns:samlp=\"urn:oasis:names:tc:SAML:2.0:protocol\">"
+        + "<samlp:Status>"
+        + "<samlp:StatusCode Value=\"urn:oasis:names:tc:SAML:2.0:status:Success\" />"
+        + "</samlp:Status>"
+        + "<Assertion Version=\"2.0\">"
+        + "<Subject>"
+        + "<NameID><USERNAME></NameID>"
+        + "<SubjectConfirmation Method=\"urn:oasis:names:tc:SAML:2.0:cm:bearer\">"
+        + "<SubjectConfirmationData Recipient=\"<ACS_URL>\" />"
+        + "</SubjectConfirmation>"
+        + "</Subject>"
+        + "</Assertion></samlp:Response>",
+        "<RESPONSE_ID>", "<USERNAME>", "<ACS_URL>");
+
+    private static final String USERNAME = "o'brien&<sons>";
+
+    private static final String ACS_URL = "https://example.com/acs?a=\"1\"&b=<2>";
+
+    @Test
+    public void testRSASignature() throws Exception {
+        assertSignedResponse(newKeyPair("RSA"));
+    }
+
+    @Test
+    public void testDSASignature() throws Exception {
+        assertSignedResponse(newKeyPair("DSA"));
+    }
+
+    @Test
+    public void testTamperedResponseIsInvalid() throws Exception {
+        final KeyPair keyPair = newKeyPair("RSA");
+        final Document document = parse(
+            SamlResponseSigner.getInstance(keyPair.getPrivate(), keyPair.getPublic()).sign(renderResponse()));
+        document.getElementsByTagNameNS(ASSERTION_NS, "NameID").item(0).setTextContent("admin");
+        assertFalse(isValid(document, keyPair.getPublic()));
+    }
+
+    @Test
+    public void testSignerIsSharedPerKeyPair() throws Exception {
+        final KeyPair keyPair = newKeyPair("RSA");
+        final SamlResponseSigner signer = SamlResponseSigner.getInstance(keyPair.getPrivate(), keyPair.getPublic());
+        assertSame(signer, SamlResponseSigner.getInstance(keyPair.getPrivate(), keyPair.getPublic()));
+    }
+
+    private static void assertSignedResponse(final KeyPair keyPair) throws Exception {
+        final SamlResponseSigner signer = SamlResponseSigner.getInstance(keyPair.getPrivate(), keyPair.getPublic());
+        final Document document = parse(signer.sign(renderResponse()));
+        assertTrue(isValid(document, keyPair.getPublic()));
+
+        // Signature precedes the status as the schema requires, and escaped values are read back unchanged
+        final Node status = document.getElementsByTagNameNS(
+            "urn:oasis:names:tc:SAML:2.0:protocol", "Status").item(0);
+        assertEquals("Signature", status.getPreviousSibling().getLocalName());
+        assertEquals(USERNAME, document.getElementsByTagNameNS(ASSERTION_NS, "NameID").item(0).getTextContent());
+        assertEquals(ACS_URL, ((Element) document.getElementsByTagNameNS(
+            ASSERTION_NS, "SubjectConfirmationData").item(0)).getAttribute("Recipient"));
+    }
+
+    private static String renderResponse() {
+        final Map<String, String> values = new HashMap<String, String>();
+        values.put("<RESPONSE_ID>", "_123");
+        values.put("<USERNAME>", USERNAME);
+        values.put("<ACS_URL>", ACS_URL);
+        return RESPONSE.render(values);
+    }
+
+    private static KeyPair newKeyPair(final String algorithm) throws Exception {
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance(algorithm);
+        generator.initialize(1024);
+        return generator.generateKeyPair();
+    }
+
+    private static Document parse(final String xml) throws Exception {
+        final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory.newDocumentBuilder().parse(new InputSource(new StringReader(xml)));
+    }
+
+    private static boolean isValid(final Document document, final PublicKey publicKey) throws Exception {
+        final NodeList signatures = document.getElementsByTagNameNS(XMLSignature.XMLNS, "Signature");
+        assertEquals(1, signatures.getLength());
+        final DOMValidateContext context = new DOMValidateContext(publicKey, signatures.item(0));
+        return XMLSignatureFactory.getInstance("DOM").unmarshalXMLSignature(context).validate(context);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.support.saml.util;
+
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Test;
+import org.w3c.dom.Element;
+import org.xml.sax.InputSource;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit test for {@link XmlTemplate}.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public class XmlTemplateTests {
+
+    private final XmlTemplate template = new XmlTemplate(
+        "<a id=\"<ID>\"><b><NAME></b><c ref=\"<ID>\"/></a>", "<ID>", "<NAME>");
+
+    @Test
+    public void testRender() throws Exception {
+        final Map<String, String> values = new HashMap<String, String>();
+        values.put("<ID>", "_1");
+        values.put("<NAME>", "scott");
+        assertEquals("<a id=\"_1\"><b>scott</b><c ref=\"_1\"/></a>", this.template.render(values));
+    }
+
+    @Test
+    public void testValuesAreEscaped() throws Exception {
+        final String id = "\"/><x a=\"&amp;";
+        final String name = "<script>a & b</script>";
+        final Map<String, String> values = new HashMap<String, String>();
+        values.put("<ID>", id);
+        values.put("<NAME>", name);
+        final String xml = this.template.render(values);
+        assertEquals("<a id=\"&quot;/&gt;&lt;x a=&quot;&amp;amp;\">"
+            + "<b>&lt;script&gt;a &amp; b&lt;/script&gt;</b>"
+            + "<c ref=\"&quot;/&gt;&lt;x a=&quot;&amp;amp;\"/></a>", xml);
+
+        // Values read back from the document are the ones rendered
+        final Element root = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+            .parse(new InputSource(new StringReader(xml))).getDocumentElement();
+        assertEquals(id, root.getAttribute("id"));
+        assertEquals(name, root.getElementsByTagName("b").item(0).getTextContent());
+        assertEquals(1, root.getElementsByTagName("c").getLength());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingValue() throws Exception {
+        this.template.render(new HashMap<String, String>());
+    }
+}
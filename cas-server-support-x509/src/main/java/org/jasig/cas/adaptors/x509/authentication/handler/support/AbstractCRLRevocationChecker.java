@@ -91,6 +91,13 @@ public abstract class AbstractCRLRevocationChecker implements RevocationChecker
     public void setExpiredCRLPolicy(final RevocationPolicy<X509CRL> policy) {
         this.expiredCRLPolicy = policy;
     }
+
+    /**
+     * @return Policy applied when CRL data is expired.
+     */
+    protected RevocationPolicy<X509CRL> getExpiredCRLPolicy() {
+        return this.expiredCRLPolicy;
+    }
    
     /**
      * Gets the CRL for the given certificate.
@@ -101,4 +108,21 @@ public abstract class AbstractCRLRevocationChecker implements RevocationChecker
      */
     protected abstract X509CRL getCRL(final X509Certificate cert);
 
+    /**
+     * Gets the time after which a check of the given certificate should be repeated, because a newer CRL
+     * may revoke it by then.
+     *
+     * @param cert Certificate that passed {@link #check(X509Certificate)}.
+     *
+     * @return Next update of the CRL the certificate was checked against in milliseconds since the epoch,
+     * or 0 when there is no such CRL or it has no next update.
+     */
+    protected long getCheckExpirationTime(final X509Certificate cert) {
+        final X509CRL crl = getCRL(cert);
+        if (crl == null || crl.getNextUpdate() == null) {
+            return 0;
+        }
+        return crl.getNextUpdate().getTime();
+    }
+
 }
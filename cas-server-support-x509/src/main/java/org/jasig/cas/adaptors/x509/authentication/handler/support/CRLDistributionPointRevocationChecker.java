@@ -18,18 +18,35 @@
  */
 package org.jasig.cas.adaptors.x509.authentication.handler.support;
 
+import java.lang.ref.SoftReference;
 import java.net.URI;
 import java.net.URL;
+import java.net.URLConnection;
+import java.security.GeneralSecurityException;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.jasig.cas.adaptors.x509.util.CertUtils;
-import org.springframework.core.io.UrlResource;
+import org.jasig.cas.adaptors.x509.util.CompactX509CRL;
+import org.jasig.cas.monitor.LatencyHistogram;
+import org.springframework.beans.factory.DisposableBean;
 
 import edu.vt.middleware.crypt.x509.ExtensionReader;
 import edu.vt.middleware.crypt.x509.types.DistributionPoint;
@@ -48,18 +65,73 @@ import net.sf.ehcache.Element;
  * expects the name to define an absolute URL, which is the most common
  * implementation.  This implementation caches CRL resources fetched from remote
  * URLs to improve performance by avoiding CRL fetching on every revocation
- * check.
+ * check. Fetched CRLs are cached as {@link CompactX509CRL}, which holds an
+ * index of revoked serial numbers rather than the parsed CRL.
+ * <p>
+ * Only one fetch per distribution point is in progress at any time; concurrent
+ * revocation checks that need the same CRL wait for that fetch instead of
+ * starting their own. When a CRL has left the cache but the copy fetched last
+ * is still acceptable, that is, not expired or accepted by the expired CRL
+ * policy, the copy is used while a fresh one is fetched in the background.
+ * Optionally CRLs are also refreshed in the background ahead of their next
+ * update time, see {@link #setRefreshAhead(int)}. At most one refresh per
+ * distribution point is scheduled at any time, and a refresh is skipped when a
+ * fetch of the distribution point is already in progress, so the background
+ * thread never waits for another fetch.
+ * <p>
+ * Fetch latency, failures and size can be observed with a
+ * {@link org.jasig.cas.monitor.CRLFetchMonitor}.
  *
  * @author Marvin S. Addison
  * @version $Revision$
  * @since 3.4.6
  *
  */
-public class CRLDistributionPointRevocationChecker extends AbstractCRLRevocationChecker {
+public class CRLDistributionPointRevocationChecker extends AbstractCRLRevocationChecker
+    implements DisposableBean {
+
+    /** Minimum delay of a scheduled refresh in seconds. */
+    private static final int MIN_REFRESH_DELAY = 60;
 
     /** CRL cache. */
     private Cache crlCache;
-    
+
+    /**
+     * CRL fetched last from each distribution point, kept while memory allows in case it has left the CRL cache.
+     */
+    private final ConcurrentMap<URI, SoftReference<X509CRL>> lastFetched =
+        new ConcurrentHashMap<URI, SoftReference<X509CRL>>();
+
+    /** Fetches in progress by distribution point. */
+    private final ConcurrentMap<URI, Fetch> fetches = new ConcurrentHashMap<URI, Fetch>();
+
+    /** Distribution points with a scheduled refresh. */
+    private final ConcurrentMap<URI, Boolean> scheduledRefreshes = new ConcurrentHashMap<URI, Boolean>();
+
+    /** Executor of background fetches. */
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactory() {
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "CRLDistributionPointRevocationChecker");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+    /** Seconds before the next update of a CRL to fetch a new one; negative to disable. */
+    private int refreshAhead = -1;
+
+    /** Time in ms to wait for a connection to a distribution point. */
+    private int connectionTimeout = 5000;
+
+    /** Time in ms to wait for data from a distribution point. */
+    private int readTimeout = 5000;
+
+    private final LatencyHistogram fetchLatency = new LatencyHistogram("crlFetch");
+
+    private final AtomicLong fetchFailures = new AtomicLong();
+
+    private final AtomicLong lastFetchSize = new AtomicLong();
 
     /**
      * Creates a new instance that uses the given cache instance for CRL caching.
@@ -73,18 +145,69 @@ public class CRLDistributionPointRevocationChecker extends AbstractCRLRevocation
        this.crlCache = crlCache; 
     }
 
+    /**
+     * Sets the time before the next update of a fetched CRL at which a new CRL
+     * is fetched in the background, so that revocation checks do not wait for
+     * the download. Disabled by default.
+     *
+     * @param seconds Seconds before next update; negative to disable background refresh.
+     */
+    public void setRefreshAhead(final int seconds) {
+        this.refreshAhead = seconds;
+    }
+
+    /**
+     * @param connectionTimeout Time in ms to wait for a connection to a distribution point; 0 waits forever.
+     */
+    public void setConnectionTimeout(final int connectionTimeout) {
+        this.connectionTimeout = connectionTimeout;
+    }
+
+    /**
+     * @param readTimeout Time in ms to wait for data from a distribution point; 0 waits forever.
+     */
+    public void setReadTimeout(final int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * @return time taken to download and parse CRLs.
+     */
+    public LatencyHistogram getFetchLatency() {
+        return this.fetchLatency;
+    }
+
+    /**
+     * @return number of failed CRL fetches.
+     */
+    public long getFetchFailures() {
+        return this.fetchFailures.get();
+    }
+
+    /**
+     * @return size in bytes of the CRL fetched last.
+     */
+    public long getLastFetchSize() {
+        return this.lastFetchSize.get();
+    }
+
+    /** Stops background fetches. */
+    public void destroy() {
+        this.scheduler.shutdownNow();
+    }
+
     /**
      * @see AbstractCRLRevocationChecker#getCRL(X509Certificate)
      */
     protected X509CRL getCRL(final X509Certificate cert) {
-        final URL[] urls = getDistributionPoints(cert);
+        final URI[] urls = getDistributionPoints(cert);
         if (log.isDebugEnabled()) {
             log.debug(String.format(
                 "Distribution points for %s: %s.", CertUtils.toString(cert), Arrays.asList(urls)));
         }
         
         Element item;
-        for (URL url : urls) {
+        for (URI url : urls) {
             item = this.crlCache.get(url);
             if (item != null) {
                 if (log.isDebugEnabled()) {
@@ -94,33 +217,179 @@ public class CRLDistributionPointRevocationChecker extends AbstractCRLRevocation
             }
         }
 
+        // Use an acceptable copy fetched earlier while a fresh one is fetched
+        X509CRL crl;
+        for (URI url : urls) {
+            crl = getLastFetched(url);
+            if (crl != null && isAcceptable(crl)) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Using last fetched CRL for " + CertUtils.toString(cert) + " while refreshing.");
+                }
+                fetch(url, true);
+                return crl;
+            }
+        }
+
         // Try all distribution points and stop at first fetch that succeeds
-        X509CRL crl = null;
+        crl = null;
         for (int i = 0; i < urls.length && crl == null; i++) {
-           this.log.info("Attempting to fetch CRL at " + urls[i]);
-           try {
-               crl = CertUtils.fetchCRL(new UrlResource(urls[i]));
-               this.log.info("Success. Caching fetched CRL.");
-               this.crlCache.put(new Element(urls[i], crl));
-           } catch (Exception e) {
-               this.log.error("Error fetching CRL at " + urls[i], e);
-           }
+            crl = fetch(urls[i], false);
         }
-        
+
+        // Fall back to an unacceptable copy, which the expired CRL policy rejects
+        for (int i = 0; i < urls.length && crl == null; i++) {
+            crl = getLastFetched(urls[i]);
+        }
+        return crl;
+    }
+
+    /**
+     * With background refresh, a newer CRL is fetched ahead of the next update, so a check expires when the
+     * refresh is due.
+     *
+     * @see AbstractCRLRevocationChecker#getCheckExpirationTime(X509Certificate)
+     */
+    protected long getCheckExpirationTime(final X509Certificate cert) {
+        final long nextUpdate = super.getCheckExpirationTime(cert);
+        if (this.refreshAhead < 0) {
+            return nextUpdate;
+        }
+        return nextUpdate - this.refreshAhead * 1000L;
+    }
+
+    private X509CRL getLastFetched(final URI url) {
+        final SoftReference<X509CRL> reference = this.lastFetched.get(url);
+        return reference == null ? null : reference.get();
+    }
+
+    /**
+     * Fetches the CRL at the given URL unless a fetch of that URL is already in
+     * progress, in which case the result of that fetch is used.
+     *
+     * @param url Distribution point URL.
+     * @param background True to fetch in the background and return immediately,
+     * false to wait for the fetched CRL.
+     *
+     * @return Fetched CRL, or null on errors or for a background fetch.
+     */
+    private X509CRL fetch(final URI url, final boolean background) {
+        Fetch fetch = new Fetch(url);
+        final Fetch current = this.fetches.putIfAbsent(url, fetch);
+        if (current != null) {
+            if (background) {
+                return null;
+            }
+            fetch = current;
+        } else if (background) {
+            this.scheduler.execute(fetch);
+            return null;
+        } else {
+            fetch.run();
+        }
+        try {
+            return fetch.get();
+        } catch (final ExecutionException e) {
+            return null;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private X509CRL download(final URI url) throws Exception {
+        this.log.info("Attempting to fetch CRL at " + url);
+        final long start = System.nanoTime();
+        final CountingInputStream in;
+        final X509CRL crl;
+        try {
+            final URLConnection connection = url.toURL().openConnection();
+            connection.setConnectTimeout(this.connectionTimeout);
+            connection.setReadTimeout(this.readTimeout);
+            in = new CountingInputStream(connection.getInputStream());
+            try {
+                crl = CompactX509CRL.of((X509CRL) CertUtils.getCertificateFactory().generateCRL(in));
+            } finally {
+                IOUtils.closeQuietly(in);
+            }
+        } catch (final Exception e) {
+            this.fetchFailures.incrementAndGet();
+            this.log.error("Error fetching CRL at " + url, e);
+            throw e;
+        }
+        final long elapsed = System.nanoTime() - start;
+        this.fetchLatency.record(elapsed);
+        this.lastFetchSize.set(in.getByteCount());
+        this.log.info(String.format("Success. Caching fetched CRL of %s bytes, fetched in %s ms.",
+            in.getByteCount(), TimeUnit.NANOSECONDS.toMillis(elapsed)));
+
+        this.crlCache.put(new Element(url, crl));
+        this.lastFetched.put(url, new SoftReference<X509CRL>(crl));
+        scheduleRefresh(url, crl);
         return crl;
     }
 
-    private URL[] getDistributionPoints(final X509Certificate cert) {
+    /**
+     * Schedules a refresh of the given distribution point ahead of the next update of the CRL unless one is
+     * scheduled already. The refresh schedules the next one once it has fetched a CRL; if it fails, the next
+     * fetch on demand does. The refresh runs on the single background thread, so it is skipped rather than
+     * waited for when a fetch of the distribution point is in progress; that fetch schedules the next refresh.
+     */
+    private void scheduleRefresh(final URI url, final X509CRL crl) {
+        if (this.refreshAhead < 0 || crl.getNextUpdate() == null
+                || this.scheduledRefreshes.putIfAbsent(url, Boolean.TRUE) != null) {
+            return;
+        }
+        final long delay = Math.max(
+            crl.getNextUpdate().getTime() - System.currentTimeMillis() - this.refreshAhead * 1000L,
+            MIN_REFRESH_DELAY * 1000L);
+        this.scheduler.schedule(new Runnable() {
+            public void run() {
+                scheduledRefreshes.remove(url);
+                final Fetch fetch = new Fetch(url);
+                if (fetches.putIfAbsent(url, fetch) == null) {
+                    fetch.run();
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return number of distribution points with a scheduled refresh.
+     */
+    int getScheduledRefreshCount() {
+        return this.scheduledRefreshes.size();
+    }
+
+    /**
+     * Determines whether the given CRL may be used without waiting for a fresh one.
+     *
+     * @param crl CRL fetched earlier.
+     *
+     * @return True if the CRL is not expired or the expired CRL policy accepts it.
+     */
+    private boolean isAcceptable(final X509CRL crl) {
+        if (!CertUtils.isExpired(crl)) {
+            return true;
+        }
+        try {
+            getExpiredCRLPolicy().apply(crl);
+            return true;
+        } catch (final GeneralSecurityException e) {
+            return false;
+        }
+    }
+
+    private URI[] getDistributionPoints(final X509Certificate cert) {
         final DistributionPointList points;
         try {
             points = new ExtensionReader(cert).readCRLDistributionPoints();
         } catch (final Exception e) {
             log.error(
                 "Error reading CRLDistributionPoints extension field on " + CertUtils.toString(cert), e);
-            return new URL[0];
+            return new URI[0];
         }
 
-        final List<URL> urls = new ArrayList<URL>();
+        final List<URI> urls = new ArrayList<URI>();
         for (DistributionPoint point : points.getItems()) {
             final Object location = point.getDistributionPoint();
             if (location instanceof String) {
@@ -134,18 +403,41 @@ public class CRLDistributionPointRevocationChecker extends AbstractCRLRevocation
             }
         }
         
-        return urls.toArray(new URL[urls.size()]);
+        return urls.toArray(new URI[urls.size()]);
     }
     
-    private void addURL(final List<URL> list, final String uriString) {
+    private void addURL(final List<URI> list, final String uriString) {
         try {
             // Build URI by components to facilitate proper encoding of querystring
             // e.g. http://example.com:8085/ca?action=crl&issuer=CN=CAS Test User CA
             final URL url = new URL(uriString);
             final URI uri = new URI(url.getProtocol(), url.getAuthority(), url.getPath(), url.getQuery(), null);
-            list.add(uri.toURL());
+            // URL equality resolves host names, so distribution points are keyed by URI
+            uri.toURL();
+            list.add(uri);
         } catch (final Exception e) {
             log.warn(uriString + " is not a valid distribution point URI.");
         }
     }
+
+    /**
+     * Fetch of a CRL that is no longer in progress once it is done.
+     */
+    private final class Fetch extends FutureTask<X509CRL> {
+        private final URI url;
+
+        Fetch(final URI url) {
+            super(new Callable<X509CRL>() {
+                public X509CRL call() throws Exception {
+                    return download(url);
+                }
+            });
+            this.url = url;
+        }
+
+        @Override
+        protected void done() {
+            fetches.remove(this.url, this);
+        }
+    }
 }
@@ -18,22 +18,39 @@
  */
 package org.jasig.cas.adaptors.x509.authentication.handler.support;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CRLException;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import javax.security.auth.x500.X500Principal;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.jasig.cas.adaptors.x509.util.CertUtils;
+import org.jasig.cas.adaptors.x509.util.CompactX509CRL;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.core.io.Resource;
 
@@ -42,6 +59,14 @@ import org.springframework.core.io.Resource;
  * local or remote CRL data periodically.  CRL resources should be supplied for
  * the issuers of all certificates (and intervening certificates for certificate
  * chains) that are expected to be presented to {@link X509CredentialsAuthenticationHandler}.
+ * <p>
+ * CRLs are held as {@link CompactX509CRL}, an index of revoked serial numbers
+ * by issuer. A resource holding a delta CRL is applied to the base CRL of the
+ * same issuer, so it must be listed after the resource of the base CRL. When
+ * an index directory is set, the index of each issuer is saved there and
+ * loaded again on startup, which then fetches CRL data in the background
+ * instead of waiting for it, provided that a current index was saved for the
+ * issuer of every resource.
  *
  * @author Marvin S. Addison
  * @version $Revision$
@@ -54,12 +79,21 @@ public class ResourceCRLRevocationChecker extends AbstractCRLRevocationChecker
     /** Default refresh interval is 1 hour. */
     public static final int DEFAULT_REFRESH_INTERVAL = 3600;
 
+    /** File in the index directory that maps each resource to the index of its issuer. */
+    private static final String RESOURCE_INDEX_FILE = "resources.properties";
+
     /** Executor responsible for refreshing CRL data. */
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
    
     /** CRL refresh interval in seconds. */
     private int refreshInterval = DEFAULT_REFRESH_INTERVAL;
 
+    /** Directory where CRL indexes are saved; null to keep them in memory only. */
+    private File indexDirectory;
+
+    /** Index file names by resource description. */
+    private final Properties resourceIndexes = new Properties();
+
     /** Handles fetching CRL data. */
     private CRLFetcher fetcher;
 
@@ -100,10 +134,26 @@ public class ResourceCRLRevocationChecker extends AbstractCRLRevocationChecker
         }
     }
 
+    /**
+     * Sets the directory in which CRL indexes are saved across restarts.
+     *
+     * @param directory Existing writable directory.
+     */
+    public void setIndexDirectory(final File directory) {
+        this.indexDirectory = directory;
+    }
+
     /** Initializes the process that periodically fetches CRL data. */
     public void afterPropertiesSet() throws Exception {
-        // Fetch CRL data synchronously and throw exception to abort if any fail
-        this.fetcher.fetch(true);
+        final long initialDelay;
+        if (loadIndexes()) {
+            // Current CRL data was saved by a previous run, so refresh it in the background
+            initialDelay = 0;
+        } else {
+            // Fetch CRL data synchronously and throw exception to abort if any fail
+            this.fetcher.fetch(true);
+            initialDelay = this.refreshInterval;
+        }
         
         // Set up the scheduler to fetch periodically to implement refresh
         final Runnable scheduledFetcher = new Runnable() {
@@ -112,7 +162,7 @@ public class ResourceCRLRevocationChecker extends AbstractCRLRevocationChecker
             }
         };
         this.scheduler.scheduleAtFixedRate(
-            scheduledFetcher, this.refreshInterval, this.refreshInterval, TimeUnit.SECONDS);
+            scheduledFetcher, initialDelay, this.refreshInterval, TimeUnit.SECONDS);
     }
     
     /**
@@ -126,11 +176,26 @@ public class ResourceCRLRevocationChecker extends AbstractCRLRevocationChecker
      * Adds the given CRL to the collection of CRLs held by this class.
      *
      * @param crl The crl to add
+     *
+     * @throws CRLException If the CRL is invalid, or is a delta CRL that does not apply to the base CRL.
      */
-    protected void addCrl(final X509CRL crl) {
+    protected void addCrl(final X509CRL crl) throws CRLException {
         final X500Principal issuer = crl.getIssuerX500Principal();
-        this.log.debug("Adding CRL for issuer " + issuer);
-        this.crlIssuerMap.put(issuer, crl);
+        final CompactX509CRL compact;
+        if (CertUtils.isDeltaCRL(crl)) {
+            final X509CRL base = this.crlIssuerMap.get(issuer);
+            if (base == null) {
+                this.log.warn("Ignoring delta CRL for issuer " + issuer + " without base CRL");
+                return;
+            }
+            this.log.debug("Applying delta CRL for issuer " + issuer);
+            compact = CompactX509CRL.of(base).merge(crl);
+        } else {
+            this.log.debug("Adding CRL for issuer " + issuer);
+            compact = CompactX509CRL.of(crl);
+        }
+        this.crlIssuerMap.put(issuer, compact);
+        saveIndex(compact);
     }
 
     /**
@@ -140,6 +205,135 @@ public class ResourceCRLRevocationChecker extends AbstractCRLRevocationChecker
         return this.crlIssuerMap.get(cert.getIssuerX500Principal());
     }
 
+    /**
+     * CRL data may be replaced at the next refresh, so a check expires no later than one refresh interval
+     * from now.
+     *
+     * @see AbstractCRLRevocationChecker#getCheckExpirationTime(X509Certificate)
+     */
+    protected long getCheckExpirationTime(final X509Certificate cert) {
+        return Math.min(
+            super.getCheckExpirationTime(cert), System.currentTimeMillis() + this.refreshInterval * 1000L);
+    }
+
+    /**
+     * Loads the CRL indexes saved in the index directory.
+     *
+     * @return True if the index of the issuer of every CRL resource was loaded and none has expired, false otherwise.
+     */
+    private boolean loadIndexes() {
+        if (this.indexDirectory == null) {
+            return false;
+        }
+        final File file = new File(this.indexDirectory, RESOURCE_INDEX_FILE);
+        if (!file.exists()) {
+            return false;
+        }
+        InputStream in = null;
+        try {
+            in = new BufferedInputStream(new FileInputStream(file));
+            this.resourceIndexes.load(in);
+        } catch (final IOException e) {
+            this.log.warn("Cannot read CRL resource index " + file, e);
+            return false;
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+        final Set<String> loaded = new HashSet<String>();
+        for (Resource resource : this.fetcher.resources) {
+            final String name = this.resourceIndexes.getProperty(resource.getDescription());
+            if (name == null || !(loaded.contains(name) || loadIndex(new File(this.indexDirectory, name)))) {
+                this.log.info("No current CRL index for " + resource);
+                return false;
+            }
+            loaded.add(name);
+        }
+        return true;
+    }
+
+    /**
+     * Loads a saved CRL index.
+     *
+     * @return True if the index was loaded and has not expired, false otherwise.
+     */
+    private boolean loadIndex(final File file) {
+        final InputStream in;
+        try {
+            in = new BufferedInputStream(new FileInputStream(file));
+        } catch (final IOException e) {
+            this.log.warn("Cannot open CRL index " + file, e);
+            return false;
+        }
+        try {
+            final CompactX509CRL crl = CompactX509CRL.read(in);
+            this.log.debug("Loaded CRL index for issuer " + crl.getIssuerX500Principal());
+            this.crlIssuerMap.put(crl.getIssuerX500Principal(), crl);
+            return !CertUtils.isExpired(crl);
+        } catch (final IOException e) {
+            this.log.warn("Ignoring unreadable CRL index " + file, e);
+            return false;
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Records the index that holds the CRL of the given resource, so that it is loaded on startup.
+     */
+    private void recordIndex(final Resource resource, final X500Principal issuer) {
+        if (this.indexDirectory == null) {
+            return;
+        }
+        final String name = indexName(issuer);
+        synchronized (this.resourceIndexes) {
+            if (name.equals(this.resourceIndexes.getProperty(resource.getDescription()))) {
+                return;
+            }
+            this.resourceIndexes.setProperty(resource.getDescription(), name);
+            OutputStream out = null;
+            try {
+                out = new BufferedOutputStream(
+                    new FileOutputStream(new File(this.indexDirectory, RESOURCE_INDEX_FILE)));
+                this.resourceIndexes.store(out, "CRL index by resource");
+                out.close();
+            } catch (final IOException e) {
+                this.log.warn("Cannot save CRL resource index", e);
+            } finally {
+                IOUtils.closeQuietly(out);
+            }
+        }
+    }
+
+    private void saveIndex(final CompactX509CRL crl) {
+        if (this.indexDirectory == null) {
+            return;
+        }
+        final File file = new File(this.indexDirectory, indexName(crl.getIssuerX500Principal()));
+        final File temp = new File(this.indexDirectory, file.getName() + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(temp));
+            crl.write(out);
+            out.close();
+            if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+                throw new IOException("Cannot rename " + temp + " to " + file);
+            }
+        } catch (final IOException e) {
+            this.log.warn("Cannot save CRL index for issuer " + crl.getIssuerX500Principal(), e);
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    private static String indexName(final X500Principal issuer) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(issuer.getEncoded());
+            return new BigInteger(1, digest).toString(16) + ".crl";
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     @Override
     protected void finalize() throws Throwable {
         super.finalize();
@@ -188,11 +382,14 @@ public class ResourceCRLRevocationChecker extends AbstractCRLRevocationChecker
             for (Resource r : this.resources) {
                 this.logger.debug("Fetching CRL data from " + r);
                 try {
-                    addCrl(CertUtils.fetchCRL(r));
+                    final X509CRL crl = CertUtils.fetchCRL(r);
+                    addCrl(crl);
+                    recordIndex(r, crl.getIssuerX500Principal());
                 } catch (Exception e) {
                     if (throwOnError) {
 	                    throw new RuntimeException("Error fetching CRL from " + r, e);
                     }
+                    this.logger.warn("Error fetching CRL from " + r, e);
                 }
             }
         }
@@ -18,7 +18,9 @@
  */
 package org.jasig.cas.adaptors.x509.authentication.handler.support;
 
+import java.math.BigInteger;
 import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
 import java.security.Principal;
 import java.security.cert.X509Certificate;
 import java.util.Set;
@@ -29,6 +31,8 @@ import org.jasig.cas.adaptors.x509.util.CertUtils;
 import org.jasig.cas.authentication.handler.AuthenticationException;
 import org.jasig.cas.authentication.handler.support.AbstractPreAndPostProcessingAuthenticationHandler;
 import org.jasig.cas.authentication.principal.Credentials;
+import org.jasig.cas.monitor.LatencyHistogram;
+import org.jasig.cas.util.ExpiringCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,6 +49,16 @@ import javax.validation.constraints.NotNull;
  * to specify a maximum pathLength for the SUPPLIED certificates. (note that
  * this does not include a pathLength check for the root certificate)
  * [PathLength is 0 for the CA certficate that issues the end-user certificate]
+ * <p>
+ * CA certificates in the supplied chain are the same for many users. With a
+ * validated certificate cache, a CA certificate that passed validation is not
+ * validated again until the cache entry expires, which happens no later than
+ * the certificate itself expires. With a CRL revocation checker the entry also
+ * expires no later than the CRL it was checked against is due to be replaced,
+ * which is its next update or the next refresh of the checker, so a revoked CA
+ * certificate is noticed once the newer CRL is available; a CA certificate
+ * the checker found no current CRL for is not cached. End-user certificates
+ * are always validated.
  *
  * @author Scott Battaglia
  * @author Jan Van der Velpen
@@ -71,6 +85,9 @@ public class X509CredentialsAuthenticationHandler extends AbstractPreAndPostProc
    /** OID for KeyUsage X.509v3 extension field. */
    private static final String KEY_USAGE_OID = "2.5.29.15";
 
+   /** Digest algorithm of certificate fingerprints. */
+   private static final String FINGERPRINT_ALGORITHM = "SHA-256";
+
    /** Instance of Logging. */
    private final Logger log = LoggerFactory.getLogger(getClass());
 
@@ -107,6 +124,15 @@ public class X509CredentialsAuthenticationHandler extends AbstractPreAndPostProc
    @NotNull
    private RevocationChecker revocationChecker = new NoOpRevocationChecker();
 
+   /**
+    * Optional cache of CA certificates that passed validation, mapping the
+    * certificate fingerprint to whether it is from a trusted issuer.
+    */
+   private ExpiringCache<String, Boolean> validatedCertificateCache;
+
+   /** Time taken to validate supplied certificate chains. */
+   private final LatencyHistogram validationLatency = new LatencyHistogram("validation");
+
 
    public boolean supports(final Credentials credentials) {
        return credentials != null
@@ -123,6 +149,7 @@ public class X509CredentialsAuthenticationHandler extends AbstractPreAndPostProc
        X509Certificate clientCert = null;
        boolean valid = true;
        boolean hasTrustedIssuer = false;
+       final long start = System.nanoTime();
        for (int i = certificates.length - 1; i >= 0; i--) {
            final X509Certificate certificate = certificates[i];
            try {
@@ -130,10 +157,26 @@ public class X509CredentialsAuthenticationHandler extends AbstractPreAndPostProc
                    this.log.debug("Evaluating " + CertUtils.toString(certificate));
                }
                
-               validate(certificate);
+               final String fingerprint = isCacheable(certificate) ? fingerprint(certificate) : null;
+               final Boolean cachedTrust = fingerprint != null ? this.validatedCertificateCache.get(fingerprint) : null;
+               final boolean trusted;
+               if (cachedTrust != null) {
+                   this.log.debug("Found previously validated CA certificate");
+                   trusted = cachedTrust;
+               } else {
+                   validate(certificate);
+                   trusted = isCertificateFromTrustedIssuer(certificate);
+                   if (fingerprint != null) {
+                       final long expirationTime = Math.min(
+                           certificate.getNotAfter().getTime(), getRevocationCheckExpirationTime(certificate));
+                       this.validatedCertificateCache.put(fingerprint, trusted, Math.min(
+                           this.validatedCertificateCache.getTimeToLive(),
+                           expirationTime - System.currentTimeMillis()));
+                   }
+               }
                
                if (!hasTrustedIssuer) {
-                   hasTrustedIssuer = isCertificateFromTrustedIssuer(certificate);
+                   hasTrustedIssuer = trusted;
                }
                
                // getBasicConstraints returns pathLenContraint which is
@@ -150,6 +193,7 @@ public class X509CredentialsAuthenticationHandler extends AbstractPreAndPostProc
                valid = false;
            }
        }
+       this.validationLatency.record(System.nanoTime() - start);
        if (valid && hasTrustedIssuer && clientCert != null) {
 	       x509Credentials.setCertificate(clientCert);
 	       this.log.info("Successfully authenticated " + credentials);
@@ -206,6 +250,40 @@ public class X509CredentialsAuthenticationHandler extends AbstractPreAndPostProc
    public void setRevocationChecker(final RevocationChecker checker) {
        this.revocationChecker = checker;
    }
+
+   /**
+    * Sets the cache of CA certificates that passed validation. CA certificates
+    * are validated on every authentication when no cache is set.
+    *
+    * @param cache Cache keyed by certificate fingerprint.
+    */
+   public void setValidatedCertificateCache(final ExpiringCache<String, Boolean> cache) {
+       this.validatedCertificateCache = cache;
+   }
+
+   /**
+    * @return time taken to validate supplied certificate chains, which can be reported by a
+    * {@link org.jasig.cas.monitor.LatencyMonitor}.
+    */
+   public LatencyHistogram getValidationLatency() {
+       return this.validationLatency;
+   }
+
+   private boolean isCacheable(final X509Certificate cert) {
+       return this.validatedCertificateCache != null && cert.getBasicConstraints() >= 0;
+   }
+
+   private long getRevocationCheckExpirationTime(final X509Certificate cert) {
+       if (this.revocationChecker instanceof AbstractCRLRevocationChecker) {
+           return ((AbstractCRLRevocationChecker) this.revocationChecker).getCheckExpirationTime(cert);
+       }
+       return Long.MAX_VALUE;
+   }
+
+   private static String fingerprint(final X509Certificate cert) throws GeneralSecurityException {
+       final byte[] digest = MessageDigest.getInstance(FINGERPRINT_ALGORITHM).digest(cert.getEncoded());
+       return new BigInteger(1, digest).toString(16);
+   }
    
    private void validate(final X509Certificate cert) throws GeneralSecurityException {
        cert.checkValidity();
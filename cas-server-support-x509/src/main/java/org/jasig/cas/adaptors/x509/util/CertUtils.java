@@ -20,6 +20,7 @@ package org.jasig.cas.adaptors.x509.util;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.math.BigInteger;
 import java.security.cert.CRLException;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
@@ -28,6 +29,8 @@ import java.security.cert.X509Certificate;
 import java.util.Date;
 
 import org.apache.commons.io.IOUtils;
+import org.bouncycastle.asn1.DERInteger;
+import org.bouncycastle.x509.extension.X509ExtensionUtil;
 import org.springframework.core.io.Resource;
 
 /**
@@ -41,6 +44,12 @@ import org.springframework.core.io.Resource;
 public final class CertUtils {
     /** X509 certificate type. */
     public static final String X509_CERTIFICATE_TYPE = "X509";
+
+    /** OID of the deltaCRLIndicator CRL extension. */
+    public static final String DELTA_CRL_INDICATOR_OID = "2.5.29.27";
+
+    /** OID of the cRLNumber CRL extension. */
+    public static final String CRL_NUMBER_OID = "2.5.29.20";
     
     /** Suppressed constructor of utility class. */
     private CertUtils() { /*No initialization required*/ }
@@ -70,6 +79,39 @@ public final class CertUtils {
         return reference.after(crl.getNextUpdate());
     }
 
+    /**
+     * Determines whether the given CRL is a delta CRL by the presence of the deltaCRLIndicator extension.
+     *
+     * @param crl CRL to examine.
+     *
+     * @return True if the CRL is a delta CRL, false otherwise.
+     */
+    public static boolean isDeltaCRL(final X509CRL crl) {
+        return crl.getExtensionValue(DELTA_CRL_INDICATOR_OID) != null;
+    }
+
+    /**
+     * Reads an integer valued CRL extension such as cRLNumber or deltaCRLIndicator.
+     *
+     * @param crl CRL to examine.
+     * @param oid OID of the extension.
+     *
+     * @return Extension value, or null if the CRL does not have the extension.
+     *
+     * @throws CRLException If the extension value is not an integer.
+     */
+    public static BigInteger readIntegerExtension(final X509CRL crl, final String oid) throws CRLException {
+        final byte[] value = crl.getExtensionValue(oid);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return DERInteger.getInstance(X509ExtensionUtil.fromExtensionValue(value)).getValue();
+        } catch (final Exception e) {
+            throw new CRLException("Invalid value of CRL extension " + oid, e);
+        }
+    }
+
     /**
      * Fetches an X.509 CRL from a resource such as a file or URL.
      *
@@ -0,0 +1,623 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.adaptors.x509.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.Principal;
+import java.security.PublicKey;
+import java.security.cert.CRLException;
+import java.security.cert.Certificate;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.bouncycastle.asn1.DERInteger;
+import org.bouncycastle.asn1.DEROctetString;
+
+/**
+ * Immutable X.509 CRL that keeps only what revocation checking needs: the
+ * issuer, the update times, the CRL number, the signature and an index of
+ * revoked serial numbers.
+ * <p>
+ * Serial numbers are held in a single sorted byte array of fixed-width two's
+ * complement values, next to arrays of revocation dates and reason codes, so a
+ * revoked certificate costs a few tens of bytes instead of the several hundred
+ * taken by a parsed JDK CRL entry. Lookups are binary searches. The encoding
+ * and the extensions other than cRLNumber of the original CRL are not
+ * retained, so {@link #getEncoded()}, {@link #getTBSCertList()} and the
+ * verify methods are not supported; whether the original CRL has unsupported
+ * critical extensions is recorded.
+ * <p>
+ * A delta CRL is applied to a compact CRL with {@link #merge(X509CRL)}, which
+ * checks the base CRL number of the delta CRL against the CRL number, and a
+ * compact CRL can be saved with {@link #write(OutputStream)} and loaded again
+ * with {@link #read(InputStream)}.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public final class CompactX509CRL extends X509CRL {
+
+    /** OID of the reasonCode CRL entry extension. */
+    public static final String REASON_CODE_OID = "2.5.29.21";
+
+    /** Reason code of delta CRL entries that remove a certificate from the base CRL. */
+    private static final int REMOVE_FROM_CRL = 8;
+
+    /** Marks the persistent form. */
+    private static final int MAGIC = 0x43524c49;
+
+    private static final int FORMAT_VERSION = 2;
+
+    private static final byte NO_REASON = -1;
+
+    private final X500Principal issuer;
+
+    private final int version;
+
+    private final Date thisUpdate;
+
+    private final Date nextUpdate;
+
+    private final String sigAlgName;
+
+    private final String sigAlgOID;
+
+    private final byte[] signature;
+
+    /** Value of the cRLNumber extension; null if absent. */
+    private final BigInteger crlNumber;
+
+    private final boolean unsupportedCriticalExtension;
+
+    /** Width in bytes of each serial number. */
+    private final int width;
+
+    /** Sorted serial numbers, each sign-extended to {@link #width} bytes. */
+    private final byte[] serials;
+
+    private final long[] revocationDates;
+
+    private final byte[] reasons;
+
+    private CompactX509CRL(
+        final X500Principal issuer, final int version, final Date thisUpdate, final Date nextUpdate,
+        final String sigAlgName, final String sigAlgOID, final byte[] signature, final BigInteger crlNumber,
+        final boolean unsupportedCriticalExtension,
+        final int width, final byte[] serials, final long[] revocationDates, final byte[] reasons) {
+        this.issuer = issuer;
+        this.version = version;
+        this.thisUpdate = thisUpdate;
+        this.nextUpdate = nextUpdate;
+        this.sigAlgName = sigAlgName;
+        this.sigAlgOID = sigAlgOID;
+        this.signature = signature;
+        this.crlNumber = crlNumber;
+        this.unsupportedCriticalExtension = unsupportedCriticalExtension;
+        this.width = width;
+        this.serials = serials;
+        this.revocationDates = revocationDates;
+        this.reasons = reasons;
+    }
+
+    /**
+     * Creates a compact copy of the given CRL.
+     *
+     * @param crl CRL to copy.
+     *
+     * @return Compact CRL, or the given CRL if it is already compact.
+     *
+     * @throws CRLException If the cRLNumber extension of the CRL is invalid.
+     */
+    public static CompactX509CRL of(final X509CRL crl) throws CRLException {
+        if (crl instanceof CompactX509CRL) {
+            return (CompactX509CRL) crl;
+        }
+        final Set<? extends X509CRLEntry> entries = crl.getRevokedCertificates();
+        final List<Revocation> revocations = new ArrayList<Revocation>(entries != null ? entries.size() : 0);
+        int width = 1;
+        if (entries != null) {
+            for (X509CRLEntry entry : entries) {
+                final Revocation r = new Revocation(
+                    entry.getSerialNumber().toByteArray(),
+                    entry.getRevocationDate().getTime(),
+                    readReason(entry));
+                width = Math.max(width, r.serial.length);
+                revocations.add(r);
+            }
+        }
+        return build(
+            crl.getIssuerX500Principal(), crl.getVersion(), crl.getThisUpdate(), crl.getNextUpdate(),
+            crl.getSigAlgName(), crl.getSigAlgOID(), crl.getSignature(),
+            CertUtils.readIntegerExtension(crl, CertUtils.CRL_NUMBER_OID), crl.hasUnsupportedCriticalExtension(),
+            width, revocations);
+    }
+
+    /**
+     * Applies a delta CRL to this CRL. Certificates listed in the delta CRL
+     * with reason removeFromCRL are removed, other listed certificates are
+     * added, and the update times, CRL number and signature are taken from
+     * the delta CRL.
+     *
+     * @param delta Delta CRL of the same issuer.
+     *
+     * @return New compact CRL.
+     *
+     * @throws CRLException If the delta CRL is of another issuer, or does not
+     * apply to this CRL because its base CRL number is greater than the CRL
+     * number of this CRL or its CRL number is not greater.
+     */
+    public CompactX509CRL merge(final X509CRL delta) throws CRLException {
+        if (!this.issuer.equals(delta.getIssuerX500Principal())) {
+            throw new CRLException("Delta CRL issuer does not match " + this.issuer);
+        }
+        final BigInteger baseNumber = CertUtils.readIntegerExtension(delta, CertUtils.DELTA_CRL_INDICATOR_OID);
+        if (baseNumber == null) {
+            throw new CRLException("Not a delta CRL");
+        }
+        final CompactX509CRL changes = of(delta);
+        if (this.crlNumber == null || this.crlNumber.compareTo(baseNumber) < 0) {
+            throw new CRLException(String.format(
+                "Delta CRL requires base CRL number %s but CRL number is %s", baseNumber, this.crlNumber));
+        }
+        if (changes.crlNumber == null || changes.crlNumber.compareTo(this.crlNumber) <= 0) {
+            throw new CRLException(String.format(
+                "Delta CRL number %s is not greater than CRL number %s", changes.crlNumber, this.crlNumber));
+        }
+        final int mergedWidth = Math.max(this.width, changes.width);
+        final List<Revocation> revocations = new ArrayList<Revocation>(size() + changes.size());
+        final Comparator<byte[]> order = new SerialComparator();
+        int i = 0;
+        int j = 0;
+        while (i < size() || j < changes.size()) {
+            final int diff;
+            if (i == size()) {
+                diff = 1;
+            } else if (j == changes.size()) {
+                diff = -1;
+            } else {
+                diff = order.compare(serial(i, mergedWidth), changes.serial(j, mergedWidth));
+            }
+            if (diff < 0) {
+                revocations.add(new Revocation(serial(i, mergedWidth), this.revocationDates[i], this.reasons[i]));
+                i++;
+            } else {
+                if (changes.reasons[j] != REMOVE_FROM_CRL) {
+                    revocations.add(new Revocation(
+                        changes.serial(j, mergedWidth), changes.revocationDates[j], changes.reasons[j]));
+                }
+                if (diff == 0) {
+                    i++;
+                }
+                j++;
+            }
+        }
+        return build(this.issuer, this.version, changes.thisUpdate, changes.nextUpdate,
+            changes.sigAlgName, changes.sigAlgOID, changes.signature, changes.crlNumber,
+            this.unsupportedCriticalExtension || changes.unsupportedCriticalExtension, mergedWidth, revocations);
+    }
+
+    /**
+     * Writes this CRL in a form that can be read by {@link #read(InputStream)}.
+     *
+     * @param out Output stream, which is not closed.
+     *
+     * @throws IOException On write errors.
+     */
+    public void write(final OutputStream out) throws IOException {
+        final DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(FORMAT_VERSION);
+        final byte[] name = this.issuer.getEncoded();
+        data.writeInt(name.length);
+        data.write(name);
+        data.writeInt(this.version);
+        data.writeLong(this.thisUpdate.getTime());
+        data.writeLong(this.nextUpdate != null ? this.nextUpdate.getTime() : -1);
+        data.writeUTF(this.sigAlgName != null ? this.sigAlgName : "");
+        data.writeUTF(this.sigAlgOID != null ? this.sigAlgOID : "");
+        writeBytes(data, this.signature);
+        writeBytes(data, this.crlNumber != null ? this.crlNumber.toByteArray() : null);
+        data.writeBoolean(this.unsupportedCriticalExtension);
+        data.writeInt(this.width);
+        data.writeInt(size());
+        data.write(this.serials);
+        for (long date : this.revocationDates) {
+            data.writeLong(date);
+        }
+        data.write(this.reasons);
+        data.flush();
+    }
+
+    /**
+     * Reads a CRL written by {@link #write(OutputStream)}.
+     *
+     * @param in Input stream, which is not closed.
+     *
+     * @return Compact CRL.
+     *
+     * @throws IOException On read errors or if the stream does not hold a compact CRL.
+     */
+    public static CompactX509CRL read(final InputStream in) throws IOException {
+        final DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC || data.readInt() != FORMAT_VERSION) {
+            throw new IOException("Not a compact CRL");
+        }
+        final byte[] name = new byte[data.readInt()];
+        data.readFully(name);
+        final int version = data.readInt();
+        final Date thisUpdate = new Date(data.readLong());
+        final long next = data.readLong();
+        final String sigAlgName = data.readUTF();
+        final String sigAlgOID = data.readUTF();
+        final byte[] signature = readBytes(data);
+        final byte[] number = readBytes(data);
+        final boolean unsupportedCriticalExtension = data.readBoolean();
+        final int width = data.readInt();
+        final int size = data.readInt();
+        final byte[] serials = new byte[width * size];
+        data.readFully(serials);
+        final long[] dates = new long[size];
+        for (int i = 0; i < size; i++) {
+            dates[i] = data.readLong();
+        }
+        final byte[] reasons = new byte[size];
+        data.readFully(reasons);
+        return new CompactX509CRL(
+            new X500Principal(name), version, thisUpdate, next >= 0 ? new Date(next) : null,
+            sigAlgName.length() > 0 ? sigAlgName : null, sigAlgOID.length() > 0 ? sigAlgOID : null,
+            signature, number != null ? new BigInteger(number) : null, unsupportedCriticalExtension,
+            width, serials, dates, reasons);
+    }
+
+    /**
+     * @return Value of the cRLNumber extension, or null if the CRL does not have one.
+     */
+    public BigInteger getCRLNumber() {
+        return this.crlNumber;
+    }
+
+    /**
+     * @return Number of revoked certificates.
+     */
+    public int size() {
+        return this.revocationDates.length;
+    }
+
+    public X509CRLEntry getRevokedCertificate(final BigInteger serialNumber) {
+        final byte[] key = serialNumber.toByteArray();
+        if (key.length > this.width) {
+            return null;
+        }
+        final int i = indexOf(signExtend(key, this.width));
+        return i < 0 ? null : new Entry(serialNumber, this.revocationDates[i], this.reasons[i]);
+    }
+
+    public Set<? extends X509CRLEntry> getRevokedCertificates() {
+        if (size() == 0) {
+            return null;
+        }
+        final Set<X509CRLEntry> entries = new HashSet<X509CRLEntry>(size());
+        for (int i = 0; i < size(); i++) {
+            entries.add(new Entry(new BigInteger(serial(i, this.width)), this.revocationDates[i], this.reasons[i]));
+        }
+        return entries;
+    }
+
+    public boolean isRevoked(final Certificate cert) {
+        return cert instanceof X509Certificate && getRevokedCertificate((X509Certificate) cert) != null;
+    }
+
+    public X500Principal getIssuerX500Principal() {
+        return this.issuer;
+    }
+
+    public Principal getIssuerDN() {
+        return this.issuer;
+    }
+
+    public int getVersion() {
+        return this.version;
+    }
+
+    public Date getThisUpdate() {
+        return new Date(this.thisUpdate.getTime());
+    }
+
+    public Date getNextUpdate() {
+        return this.nextUpdate != null ? new Date(this.nextUpdate.getTime()) : null;
+    }
+
+    public String getSigAlgName() {
+        return this.sigAlgName;
+    }
+
+    public String getSigAlgOID() {
+        return this.sigAlgOID;
+    }
+
+    public byte[] getSigAlgParams() {
+        return null;
+    }
+
+    public byte[] getSignature() {
+        return this.signature != null ? this.signature.clone() : null;
+    }
+
+    public byte[] getEncoded() throws CRLException {
+        throw new CRLException("Encoding is not retained by compact CRL");
+    }
+
+    public byte[] getTBSCertList() throws CRLException {
+        throw new CRLException("Encoding is not retained by compact CRL");
+    }
+
+    public void verify(final PublicKey key) throws CRLException {
+        throw new CRLException("Signature is not retained by compact CRL");
+    }
+
+    public void verify(final PublicKey key, final String sigProvider) throws CRLException {
+        throw new CRLException("Signature is not retained by compact CRL");
+    }
+
+    public boolean hasUnsupportedCriticalExtension() {
+        return this.unsupportedCriticalExtension;
+    }
+
+    public Set<String> getCriticalExtensionOIDs() {
+        return null;
+    }
+
+    public Set<String> getNonCriticalExtensionOIDs() {
+        return this.crlNumber != null ? Collections.singleton(CertUtils.CRL_NUMBER_OID) : null;
+    }
+
+    public byte[] getExtensionValue(final String oid) {
+        if (this.crlNumber == null || !CertUtils.CRL_NUMBER_OID.equals(oid)) {
+            return null;
+        }
+        try {
+            return new DEROctetString(new DERInteger(this.crlNumber)).getEncoded();
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        return this == o;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(this);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("X.509 CRL of %s with %s revoked certificates, updated %s, next update %s",
+            this.issuer, size(), this.thisUpdate, this.nextUpdate);
+    }
+
+    private int indexOf(final byte[] key) {
+        int low = 0;
+        int high = size() - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int diff = compare(this.serials, mid * this.width, key, 0, this.width);
+            if (diff < 0) {
+                low = mid + 1;
+            } else if (diff > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private byte[] serial(final int i, final int w) {
+        final byte[] serial = new byte[this.width];
+        System.arraycopy(this.serials, i * this.width, serial, 0, this.width);
+        return signExtend(serial, w);
+    }
+
+    private static CompactX509CRL build(
+        final X500Principal issuer, final int version, final Date thisUpdate, final Date nextUpdate,
+        final String sigAlgName, final String sigAlgOID, final byte[] signature, final BigInteger crlNumber,
+        final boolean unsupportedCriticalExtension, final int width, final List<Revocation> revocations) {
+        final Comparator<byte[]> order = new SerialComparator();
+        for (Revocation r : revocations) {
+            r.serial = signExtend(r.serial, width);
+        }
+        Collections.sort(revocations, new Comparator<Revocation>() {
+            public int compare(final Revocation a, final Revocation b) {
+                return order.compare(a.serial, b.serial);
+            }
+        });
+        final byte[] serials = new byte[width * revocations.size()];
+        final long[] dates = new long[revocations.size()];
+        final byte[] reasons = new byte[revocations.size()];
+        int i = 0;
+        for (Revocation r : revocations) {
+            System.arraycopy(r.serial, 0, serials, i * width, width);
+            dates[i] = r.date;
+            reasons[i] = r.reason;
+            i++;
+        }
+        return new CompactX509CRL(
+            issuer, version, thisUpdate, nextUpdate, sigAlgName, sigAlgOID, signature, crlNumber,
+            unsupportedCriticalExtension, width, serials, dates, reasons);
+    }
+
+    private static void writeBytes(final DataOutputStream data, final byte[] value) throws IOException {
+        data.writeInt(value != null ? value.length : -1);
+        if (value != null) {
+            data.write(value);
+        }
+    }
+
+    private static byte[] readBytes(final DataInputStream data) throws IOException {
+        final int length = data.readInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] value = new byte[length];
+        data.readFully(value);
+        return value;
+    }
+
+    private static byte[] signExtend(final byte[] value, final int width) {
+        if (value.length == width) {
+            return value;
+        }
+        final byte[] extended = new byte[width];
+        final int pad = width - value.length;
+        if (value[0] < 0) {
+            for (int i = 0; i < pad; i++) {
+                extended[i] = (byte) 0xff;
+            }
+        }
+        System.arraycopy(value, 0, extended, pad, value.length);
+        return extended;
+    }
+
+    private static int compare(final byte[] a, final int offsetA, final byte[] b, final int offsetB, final int n) {
+        for (int i = 0; i < n; i++) {
+            final int diff = (a[offsetA + i] & 0xff) - (b[offsetB + i] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Reads the reason code of a CRL entry, the last byte of the DER encoded
+     * extension value <code>OCTET STRING { ENUMERATED code }</code>.
+     */
+    private static byte readReason(final X509CRLEntry entry) {
+        final byte[] value = entry.getExtensionValue(REASON_CODE_OID);
+        if (value == null || value.length < 5 || value[2] != 0x0a) {
+            return NO_REASON;
+        }
+        return value[value.length - 1];
+    }
+
+    /** Orders serial numbers of equal width. */
+    private static final class SerialComparator implements Comparator<byte[]> {
+        public int compare(final byte[] a, final byte[] b) {
+            return CompactX509CRL.compare(a, 0, b, 0, a.length);
+        }
+    }
+
+    /** Revoked serial number while a compact CRL is built. */
+    private static final class Revocation {
+        private byte[] serial;
+
+        private final long date;
+
+        private final byte reason;
+
+        Revocation(final byte[] serial, final long date, final byte reason) {
+            this.serial = serial;
+            this.date = date;
+            this.reason = reason;
+        }
+    }
+
+    /** Entry of a compact CRL, created on lookup. */
+    private static final class Entry extends X509CRLEntry {
+        private final BigInteger serial;
+
+        private final long date;
+
+        private final byte reason;
+
+        Entry(final BigInteger serial, final long date, final byte reason) {
+            this.serial = serial;
+            this.date = date;
+            this.reason = reason;
+        }
+
+        public BigInteger getSerialNumber() {
+            return this.serial;
+        }
+
+        public Date getRevocationDate() {
+            return new Date(this.date);
+        }
+
+        public boolean hasExtensions() {
+            return this.reason != NO_REASON;
+        }
+
+        public byte[] getEncoded() throws CRLException {
+            throw new CRLException("Encoding is not retained by compact CRL");
+        }
+
+        public boolean hasUnsupportedCriticalExtension() {
+            return false;
+        }
+
+        public Set<String> getCriticalExtensionOIDs() {
+            return null;
+        }
+
+        public Set<String> getNonCriticalExtensionOIDs() {
+            return hasExtensions() ? Collections.singleton(REASON_CODE_OID) : null;
+        }
+
+        public byte[] getExtensionValue(final String oid) {
+            if (!hasExtensions() || !REASON_CODE_OID.equals(oid)) {
+                return null;
+            }
+            return new byte[] {0x04, 0x03, 0x0a, 0x01, this.reason};
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            return o instanceof Entry && this.serial.equals(((Entry) o).serial);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.serial.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("SerialNumber=%s, RevocationDate=%s", this.serial, getRevocationDate());
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.monitor;
+
+import javax.validation.constraints.NotNull;
+
+import org.jasig.cas.adaptors.x509.authentication.handler.support.CRLDistributionPointRevocationChecker;
+
+/**
+ * Monitors the CRL fetches of a {@link CRLDistributionPointRevocationChecker}. A warning is issued when fetches
+ * failed since the previous observation, or when the 99th percentile fetch latency is above its threshold.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public class CRLFetchMonitor extends AbstractNamedMonitor<Status> {
+
+    @NotNull
+    private final CRLDistributionPointRevocationChecker checker;
+
+    /** Threshold in microseconds above which warnings are issued for the 99th percentile fetch latency. */
+    private long percentileWarnThreshold = -1;
+
+    /** Number of failed fetches at the previous observation. */
+    private long lastFailureCount;
+
+    /**
+     * Creates a new monitor that observes the given revocation checker.
+     *
+     * @param checker Revocation checker that fetches CRLs from distribution points.
+     */
+    public CRLFetchMonitor(final CRLDistributionPointRevocationChecker checker) {
+        this.checker = checker;
+    }
+
+    /**
+     * Sets the threshold above which warnings are issued for the 99th percentile fetch latency.
+     *
+     * @param threshold Warn threshold in microseconds if non-negative value, otherwise warnings are disabled.
+     */
+    public void setPercentileWarnThreshold(final long threshold) {
+        this.percentileWarnThreshold = threshold;
+    }
+
+    /** {@inheritDoc} */
+    public Status observe() {
+        final long failures = this.checker.getFetchFailures();
+        final LatencyHistogram latency = this.checker.getFetchLatency();
+
+        StatusCode code = StatusCode.OK;
+        if (this.percentileWarnThreshold > -1 && latency.getPercentile(99) > this.percentileWarnThreshold) {
+            code = StatusCode.WARN;
+        }
+        synchronized (this) {
+            if (failures > this.lastFailureCount) {
+                code = StatusCode.WARN;
+            }
+            this.lastFailureCount = failures;
+        }
+        final StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%s failed fetches, last CRL %s bytes. ", failures, this.checker.getLastFetchSize()));
+        latency.toString(sb);
+        return new Status(code, sb.toString());
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.adaptors.x509.authentication.handler.support;
+
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.sf.ehcache.Cache;
+
+import org.jasig.cas.adaptors.x509.util.CertUtils;
+import org.jasig.cas.adaptors.x509.util.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test for fetching CRLs in {@link CRLDistributionPointRevocationChecker}.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public class CRLDistributionPointFetchTests {
+
+    private static final int THREADS = 8;
+
+    private MockWebServer webServer;
+
+    private Cache cache;
+
+    private CRLDistributionPointRevocationChecker checker;
+
+    private X509Certificate certificate;
+
+    @Before
+    public void setUp() throws Exception {
+        this.webServer = new MockWebServer(8085, new ClassPathResource("userCA-valid.crl"), "text/plain");
+        this.webServer.start();
+        this.cache = new Cache("crlCache-fetch", 100, false, false, 20, 10);
+        this.cache.initialise();
+        this.checker = new CRLDistributionPointRevocationChecker(this.cache);
+
+        final InputStream in = new ClassPathResource("user-valid-distcrl.crt").getInputStream();
+        try {
+            this.certificate = (X509Certificate) CertUtils.getCertificateFactory().generateCertificate(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.checker.destroy();
+        this.webServer.stop();
+    }
+
+    @Test
+    public void testConcurrentChecksFetchOnce() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final List<Future<Void>> results = new ArrayList<Future<Void>>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    checker.check(certificate);
+                    return null;
+                }
+            }));
+        }
+        for (final Future<Void> result : results) {
+            result.get();
+        }
+        executor.shutdown();
+
+        assertEquals(1, this.webServer.getRequestCount());
+        assertEquals(1, this.checker.getFetchLatency().getCount());
+        assertEquals(0, this.checker.getFetchFailures());
+        assertEquals(new ClassPathResource("userCA-valid.crl").contentLength(), this.checker.getLastFetchSize());
+    }
+
+    @Test
+    public void testLastFetchedCRLIsUsedWhileRefreshing() throws Exception {
+        this.checker.check(this.certificate);
+        this.cache.removeAll();
+
+        // The check does not wait for the refresh, which puts the CRL back in the cache
+        this.checker.check(this.certificate);
+        for (int i = 0; i < 100 && (this.cache.getSize() == 0 || this.webServer.getRequestCount() < 2); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, this.cache.getSize());
+        assertEquals(2, this.webServer.getRequestCount());
+    }
+
+    @Test
+    public void testRepeatedFetchesScheduleOneRefresh() throws Exception {
+        this.checker.setRefreshAhead(60);
+        for (int i = 0; i < 3; i++) {
+            this.cache.removeAll();
+            this.checker.check(this.certificate);
+            for (int j = 0; j < 100 && this.cache.getSize() == 0; j++) {
+                Thread.sleep(10);
+            }
+        }
+        assertEquals(3, this.webServer.getRequestCount());
+        assertEquals(1, this.checker.getScheduledRefreshCount());
+    }
+
+    @Test(timeout = 5000)
+    public void testUnresponsiveDistributionPointTimesOut() throws Exception {
+        this.webServer.stop();
+        // Accepts connections into the backlog but never answers
+        final ServerSocket silent = new ServerSocket(8085);
+        try {
+            this.checker.setReadTimeout(200);
+            try {
+                this.checker.check(this.certificate);
+                fail("Revocation check without a CRL should fail");
+            } catch (final GeneralSecurityException e) {
+                // expected from the default unavailable CRL policy
+            }
+            assertTrue(this.checker.getFetchFailures() > 0);
+        } finally {
+            silent.close();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.adaptors.x509.authentication.handler.support;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.cert.X509Certificate;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.jasig.cas.adaptors.x509.util.CertUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test for the CRL indexes saved by {@link ResourceCRLRevocationChecker}.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public class ResourceCRLRevocationCheckerIndexTests {
+
+    private File directory;
+
+    private File crlFile;
+
+    @Before
+    public void setUp() throws Exception {
+        this.directory = File.createTempFile("crl-index", "");
+        this.directory.delete();
+        this.directory.mkdir();
+        this.crlFile = new File(this.directory, "userCA.der");
+        final InputStream in = new ClassPathResource("userCA-valid.crl").getInputStream();
+        final OutputStream out = new FileOutputStream(this.crlFile);
+        try {
+            IOUtils.copy(in, out);
+        } finally {
+            IOUtils.closeQuietly(in);
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(this.directory);
+    }
+
+    @Test
+    public void testSavedIndexIsLoaded() throws Exception {
+        newChecker(new FileSystemResource(this.crlFile)).afterPropertiesSet();
+        this.crlFile.delete();
+
+        // The resource is no longer available, so the CRL comes from the saved index
+        final ResourceCRLRevocationChecker checker = newChecker(new FileSystemResource(this.crlFile));
+        checker.afterPropertiesSet();
+        assertNotNull(checker.getCRL(readCertificate("user-valid.crt")));
+    }
+
+    @Test
+    public void testResourceWithoutIndexIsFetched() throws Exception {
+        newChecker(new FileSystemResource(this.crlFile)).afterPropertiesSet();
+
+        // The saved index does not cover the new resource, so all resources are fetched before startup completes
+        final ResourceCRLRevocationChecker checker = newChecker(
+            new FileSystemResource(this.crlFile), new ClassPathResource("missing.crl"));
+        try {
+            checker.afterPropertiesSet();
+            fail("Startup completed without fetching resource that has no saved index");
+        } catch (final RuntimeException e) {
+            // Expected
+        }
+    }
+
+    private ResourceCRLRevocationChecker newChecker(final Resource... resources) {
+        final ResourceCRLRevocationChecker checker = new ResourceCRLRevocationChecker(resources);
+        checker.setIndexDirectory(this.directory);
+        return checker;
+    }
+
+    private static X509Certificate readCertificate(final String file) throws Exception {
+        final InputStream in = new ClassPathResource(file).getInputStream();
+        try {
+            return (X509Certificate) CertUtils.getCertificateFactory().generateCertificate(in);
+        } finally {
+            in.close();
+        }
+    }
+}
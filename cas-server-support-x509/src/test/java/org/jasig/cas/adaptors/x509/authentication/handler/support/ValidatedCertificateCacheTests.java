@@ -0,0 +1,107 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.adaptors.x509.authentication.handler.support;
+
+import org.jasig.cas.adaptors.x509.authentication.principal.X509CertificateCredentials;
+import org.jasig.cas.util.ExpiringCache;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+
+import static org.jasig.cas.adaptors.x509.authentication.handler.support.X509CredentialsAuthenticationHandlerTests.createCertificates;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for the validated certificate cache of {@link X509CredentialsAuthenticationHandler}.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public class ValidatedCertificateCacheTests {
+
+    private ExpiringCache<String, Boolean> cache;
+
+    private X509CredentialsAuthenticationHandler handler;
+
+    private ResourceCRLRevocationChecker checker;
+
+    @Before
+    public void setUp() throws Exception {
+        this.checker = new ResourceCRLRevocationChecker(new Resource[] {
+            new ClassPathResource("userCA-valid.crl"), new ClassPathResource("intermediateCA-valid.crl")});
+
+        this.cache = new ExpiringCache<String, Boolean>("validated", 100, 60000);
+        this.handler = new X509CredentialsAuthenticationHandler();
+        this.handler.setTrustedIssuerDnPattern(".*Intermediate CA.*");
+        this.handler.setMaxPathLengthAllowUnspecified(true);
+        this.handler.setRevocationChecker(this.checker);
+        this.handler.setValidatedCertificateCache(this.cache);
+    }
+
+    @Test
+    public void testOnlyCACertificatesAreCached() throws Exception {
+        this.checker.afterPropertiesSet();
+        assertTrue(this.handler.authenticate(
+            new X509CertificateCredentials(createCertificates("user-valid.crt", "userCA.crt"))));
+        assertTrue(this.handler.authenticate(
+            new X509CertificateCredentials(createCertificates("user-valid.crt", "userCA.crt"))));
+        assertEquals(1, this.cache.getSize());
+        assertEquals(1, this.cache.getHits());
+
+        // The end-user certificate is still checked for revocation
+        assertFalse(this.handler.authenticate(
+            new X509CertificateCredentials(createCertificates("user-revoked.crt", "userCA.crt"))));
+        assertEquals(2, this.cache.getHits());
+        assertEquals(3, this.handler.getValidationLatency().getCount());
+    }
+
+    @Test
+    public void testCachedCertificateExpiresAtCRLRefresh() throws Exception {
+        this.checker.setRefreshInterval(1);
+        this.checker.afterPropertiesSet();
+
+        assertTrue(this.handler.authenticate(
+            new X509CertificateCredentials(createCertificates("user-valid.crt", "userCA.crt"))));
+        assertEquals(1, this.cache.getSize());
+
+        // The cache would keep the entry for a minute, but the CRL is replaced after a second
+        Thread.sleep(1500);
+        assertTrue(this.handler.authenticate(
+            new X509CertificateCredentials(createCertificates("user-valid.crt", "userCA.crt"))));
+        assertEquals(0, this.cache.getHits());
+    }
+
+    @Test
+    public void testCertificateCheckedAgainstExpiredCRLIsNotCached() throws Exception {
+        final ResourceCRLRevocationChecker expired = new ResourceCRLRevocationChecker(new Resource[] {
+            new ClassPathResource("userCA-valid.crl"), new ClassPathResource("intermediateCA-expired.crl")});
+        final ThresholdExpiredCRLRevocationPolicy policy = new ThresholdExpiredCRLRevocationPolicy();
+        policy.setThreshold(Integer.MAX_VALUE);
+        expired.setExpiredCRLPolicy(policy);
+        expired.afterPropertiesSet();
+        this.handler.setRevocationChecker(expired);
+
+        assertTrue(this.handler.authenticate(
+            new X509CertificateCredentials(createCertificates("user-valid.crt", "userCA.crt"))));
+        assertEquals(0, this.cache.getSize());
+    }
+}
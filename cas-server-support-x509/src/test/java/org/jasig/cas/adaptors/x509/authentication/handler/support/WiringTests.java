@@ -20,6 +20,8 @@ package org.jasig.cas.adaptors.x509.authentication.handler.support;
 
 import junit.framework.Assert;
 
+import org.jasig.cas.monitor.LatencyMonitor;
+import org.jasig.cas.monitor.StatusCode;
 import org.junit.Test;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
@@ -39,5 +41,8 @@ public class WiringTests {
     public void testWiring() {
         final ApplicationContext context = new ClassPathXmlApplicationContext("deployerConfigContext.xml");
         Assert.assertTrue(context.getBeanDefinitionCount() > 0);
+        Assert.assertNotNull(context.getBean("crlFetchMonitor"));
+        Assert.assertEquals(StatusCode.OK,
+            context.getBean("x509ValidationLatencyMonitor", LatencyMonitor.class).observe().getCode());
     }
 }
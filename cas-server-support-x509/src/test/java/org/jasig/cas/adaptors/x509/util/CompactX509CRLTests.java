@@ -0,0 +1,194 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.adaptors.x509.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.CRLException;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.bouncycastle.asn1.DERInteger;
+import org.bouncycastle.asn1.x509.CRLNumber;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.X509Extensions;
+import org.bouncycastle.x509.X509V2CRLGenerator;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test for {@link CompactX509CRL}.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public class CompactX509CRLTests {
+
+    private static final X500Principal ISSUER = new X500Principal("CN=Test CA, O=Example");
+
+    private static final long DAY = 24 * 3600 * 1000L;
+
+    @Test
+    public void testLookup() throws Exception {
+        final X509CRL crl = CertUtils.fetchCRL(new ClassPathResource("userCA-valid.crl"));
+        final CompactX509CRL compact = CompactX509CRL.of(crl);
+
+        assertEquals(crl.getIssuerX500Principal(), compact.getIssuerX500Principal());
+        assertEquals(crl.getNextUpdate(), compact.getNextUpdate());
+        assertEquals(crl.getRevokedCertificates().size(), compact.size());
+        assertArrayEquals(crl.getSignature(), compact.getSignature());
+        assertFalse(compact.hasUnsupportedCriticalExtension());
+        for (X509CRLEntry entry : crl.getRevokedCertificates()) {
+            assertEquals(entry.getRevocationDate(),
+                compact.getRevokedCertificate(entry.getSerialNumber()).getRevocationDate());
+        }
+        assertTrue(compact.isRevoked(readCertificate("user-revoked.crt")));
+        assertFalse(compact.isRevoked(readCertificate("user-valid.crt")));
+    }
+
+    @Test
+    public void testMergeDelta() throws Exception {
+        final KeyPair keys = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        final long now = System.currentTimeMillis();
+
+        final X509V2CRLGenerator base = generator(now, now + DAY);
+        base.addCRLEntry(BigInteger.ONE, new Date(now - DAY), CRLReason.keyCompromise);
+        base.addCRLEntry(BigInteger.valueOf(2), new Date(now - DAY), CRLReason.certificateHold);
+        base.addCRLEntry(new BigInteger("123456789012345678901234567890"), new Date(now - DAY), 0);
+        base.addExtension(X509Extensions.CRLNumber, false, new CRLNumber(BigInteger.ONE));
+
+        final X509V2CRLGenerator delta = generator(now, now + 2 * DAY);
+        delta.addCRLEntry(BigInteger.valueOf(2), new Date(now), CRLReason.removeFromCRL);
+        delta.addCRLEntry(BigInteger.valueOf(-5), new Date(now), CRLReason.superseded);
+        delta.addExtension(X509Extensions.CRLNumber, false, new CRLNumber(BigInteger.valueOf(2)));
+        delta.addExtension(X509Extensions.DeltaCRLIndicator, true, new CRLNumber(BigInteger.ONE));
+
+        final X509CRL deltaCRL = delta.generate(keys.getPrivate());
+        assertTrue(CertUtils.isDeltaCRL(deltaCRL));
+        final CompactX509CRL merged = CompactX509CRL.of(base.generate(keys.getPrivate())).merge(deltaCRL);
+
+        assertEquals(3, merged.size());
+        assertNotNull(merged.getRevokedCertificate(BigInteger.ONE));
+        assertNull(merged.getRevokedCertificate(BigInteger.valueOf(2)));
+        assertNotNull(merged.getRevokedCertificate(BigInteger.valueOf(-5)));
+        assertNotNull(merged.getRevokedCertificate(new BigInteger("123456789012345678901234567890")));
+        assertEquals(new Date(now + 2 * DAY).getTime() / 1000, merged.getNextUpdate().getTime() / 1000);
+        assertEquals(BigInteger.valueOf(2), merged.getCRLNumber());
+        assertArrayEquals(deltaCRL.getSignature(), merged.getSignature());
+        assertEquals(
+            deltaCRL.getRevokedCertificate(BigInteger.valueOf(-5)).getExtensionValue(CompactX509CRL.REASON_CODE_OID)[4],
+            merged.getRevokedCertificate(BigInteger.valueOf(-5)).getExtensionValue(CompactX509CRL.REASON_CODE_OID)[4]);
+
+        // Persistent form holds the same index
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        merged.write(out);
+        final CompactX509CRL read = CompactX509CRL.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(ISSUER, read.getIssuerX500Principal());
+        assertEquals(merged.getNextUpdate(), read.getNextUpdate());
+        assertEquals(3, read.size());
+        assertEquals(BigInteger.valueOf(2), read.getCRLNumber());
+        assertEquals(BigInteger.valueOf(2), CertUtils.readIntegerExtension(read, CertUtils.CRL_NUMBER_OID));
+        assertArrayEquals(merged.getSignature(), read.getSignature());
+        assertNotNull(read.getRevokedCertificate(BigInteger.ONE));
+        assertNull(read.getRevokedCertificate(BigInteger.valueOf(2)));
+        assertNull(read.getRevokedCertificate(BigInteger.valueOf(3)));
+    }
+
+    @Test
+    public void testMergeRejectsDeltaOfNewerBase() throws Exception {
+        final KeyPair keys = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        final long now = System.currentTimeMillis();
+
+        final X509V2CRLGenerator base = generator(now, now + DAY);
+        base.addExtension(X509Extensions.CRLNumber, false, new CRLNumber(BigInteger.ONE));
+        final CompactX509CRL compact = CompactX509CRL.of(base.generate(keys.getPrivate()));
+
+        final X509V2CRLGenerator delta = generator(now, now + DAY);
+        delta.addCRLEntry(BigInteger.TEN, new Date(now), CRLReason.keyCompromise);
+        delta.addExtension(X509Extensions.CRLNumber, false, new CRLNumber(BigInteger.valueOf(5)));
+        delta.addExtension(X509Extensions.DeltaCRLIndicator, true, new CRLNumber(BigInteger.valueOf(4)));
+        try {
+            compact.merge(delta.generate(keys.getPrivate()));
+            fail("Delta CRL of base CRL number 4 applied to CRL number 1");
+        } catch (final CRLException e) {
+            // Expected
+        }
+
+        final X509V2CRLGenerator stale = generator(now, now + DAY);
+        stale.addExtension(X509Extensions.CRLNumber, false, new CRLNumber(BigInteger.ONE));
+        stale.addExtension(X509Extensions.DeltaCRLIndicator, true, new CRLNumber(BigInteger.ONE));
+        try {
+            compact.merge(stale.generate(keys.getPrivate()));
+            fail("Delta CRL number 1 applied to CRL number 1");
+        } catch (final CRLException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testUnsupportedCriticalExtension() throws Exception {
+        final KeyPair keys = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        final long now = System.currentTimeMillis();
+
+        final X509V2CRLGenerator generator = generator(now, now + DAY);
+        generator.addExtension("1.2.3.4", true, new DERInteger(1));
+        final X509CRL crl = generator.generate(keys.getPrivate());
+        assertTrue(crl.hasUnsupportedCriticalExtension());
+
+        final CompactX509CRL compact = CompactX509CRL.of(crl);
+        assertTrue(compact.hasUnsupportedCriticalExtension());
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        compact.write(out);
+        assertTrue(CompactX509CRL.read(new ByteArrayInputStream(out.toByteArray())).hasUnsupportedCriticalExtension());
+    }
+
+    private static X509V2CRLGenerator generator(final long thisUpdate, final long nextUpdate) {
+        final X509V2CRLGenerator generator = new X509V2CRLGenerator();
+        generator.setIssuerDN(ISSUER);
+        generator.setThisUpdate(new Date(thisUpdate));
+        generator.setNextUpdate(new Date(nextUpdate));
+        generator.setSignatureAlgorithm("SHA1withRSA");
+        return generator;
+    }
+
+    private static X509Certificate readCertificate(final String file) throws Exception {
+        final InputStream in = new ClassPathResource(file).getInputStream();
+        try {
+            return (X509Certificate) CertUtils.getCertificateFactory().generateCertificate(in);
+        } finally {
+            in.close();
+        }
+    }
+}
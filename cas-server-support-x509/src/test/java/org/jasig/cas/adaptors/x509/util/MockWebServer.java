@@ -80,6 +80,13 @@ public class MockWebServer {
         }
     }
 
+    /**
+     * @return Number of requests answered so far.
+     */
+    public int getRequestCount() {
+        return this.worker.requestCount;
+    }
+
     /**
      * Determines whether the server is running or not.
      *
@@ -105,6 +112,9 @@ public class MockWebServer {
         /** Run flag. */
         private boolean running;
 
+        /** Number of requests answered. */
+        private volatile int requestCount;
+
         /** Server socket. */
         private final ServerSocket serverSocket;
 
@@ -166,6 +176,7 @@ public class MockWebServer {
             }
             in.close();
             socket.shutdownOutput();
+            this.requestCount++;
         }
         
         private byte[] header(final String name, final Object value) {
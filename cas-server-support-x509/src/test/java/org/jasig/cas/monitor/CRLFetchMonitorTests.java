@@ -0,0 +1,104 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.monitor;
+
+import java.io.InputStream;
+import java.security.cert.X509Certificate;
+
+import net.sf.ehcache.Cache;
+
+import org.jasig.cas.adaptors.x509.authentication.handler.support.CRLDistributionPointRevocationChecker;
+import org.jasig.cas.adaptors.x509.util.CertUtils;
+import org.jasig.cas.adaptors.x509.util.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for {@link CRLFetchMonitor}.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public class CRLFetchMonitorTests {
+
+    private MockWebServer webServer;
+
+    private Cache cache;
+
+    private CRLDistributionPointRevocationChecker checker;
+
+    private X509Certificate certificate;
+
+    private CRLFetchMonitor monitor;
+
+    @Before
+    public void setUp() throws Exception {
+        this.webServer = new MockWebServer(8085, new ClassPathResource("userCA-valid.crl"), "text/plain");
+        this.webServer.start();
+        this.cache = new Cache("crlCache-monitor", 100, false, false, 20, 10);
+        this.cache.initialise();
+        this.checker = new CRLDistributionPointRevocationChecker(this.cache);
+        this.monitor = new CRLFetchMonitor(this.checker);
+
+        final InputStream in = new ClassPathResource("user-valid-distcrl.crt").getInputStream();
+        try {
+            this.certificate = (X509Certificate) CertUtils.getCertificateFactory().generateCertificate(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.checker.destroy();
+        this.webServer.stop();
+    }
+
+    @Test
+    public void testObserveOk() throws Exception {
+        this.checker.check(this.certificate);
+        final Status status = this.monitor.observe();
+        assertEquals(StatusCode.OK, status.getCode());
+        assertTrue(status.getDescription().startsWith("0 failed fetches"));
+    }
+
+    @Test
+    public void testObserveWarnOnFailedFetch() throws Exception {
+        this.webServer.stop();
+        try {
+            this.checker.check(this.certificate);
+        } catch (final Exception e) {
+            // Unavailable CRL is denied by default
+        }
+        assertEquals(StatusCode.WARN, this.monitor.observe().getCode());
+        assertEquals(StatusCode.OK, this.monitor.observe().getCode());
+    }
+
+    @Test
+    public void testObserveWarnOnSlowFetch() throws Exception {
+        this.checker.check(this.certificate);
+        this.monitor.setPercentileWarnThreshold(0);
+        assertEquals(StatusCode.WARN, this.monitor.observe().getCode());
+    }
+}
@@ -31,6 +31,8 @@ import org.springframework.web.servlet.mvc.AbstractController;
 
 /**
  * Reports overall CAS health based on the observations of the configured {@link HealthCheckMonitor} instance.
+ * When the monitor refreshes its status in the background, requests are answered from the most recent
+ * observation without waiting on the monitored backends.
  *
  * @author Marvin S. Addison
  * @version $Revision: $
@@ -59,7 +61,7 @@ public class HealthCheckController extends AbstractController {
             final HttpServletRequest request, final HttpServletResponse response)
             throws Exception {
 
-        final HealthStatus healthStatus = this.healthCheckMonitor.observe();
+        final HealthStatus healthStatus = this.healthCheckMonitor.getStatus();
         final StringBuilder sb = new StringBuilder();
         sb.append("Health: ").append(healthStatus.getCode());
         String name;
@@ -20,7 +20,9 @@ package org.jasig.cas.web;
 
 import org.jasig.cas.ticket.ServiceTicket;
 import org.jasig.cas.ticket.Ticket;
+import org.jasig.cas.ticket.registry.StreamingTicketRegistry;
 import org.jasig.cas.ticket.registry.TicketRegistry;
+import org.jasig.cas.ticket.registry.TicketVisitor;
 import org.perf4j.log4j.GraphingStatisticsAppender;
 import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.mvc.AbstractController;
@@ -44,6 +46,8 @@ public final class StatisticsController extends AbstractController {
 
     private static final int NUMBER_OF_MILLISECONDS_IN_A_SECOND = 1000;
 
+    private static final int TICKET_BATCH_SIZE = 1000;
+
     private final TicketRegistry ticketRegistry;
 
     private final Date upTimeStartDate = new Date();
@@ -73,27 +77,14 @@ public final class StatisticsController extends AbstractController {
         modelAndView.addObject("serverIpAddress", httpServletRequest.getLocalAddr());
         modelAndView.addObject("casTicketSuffix", this.casTicketSuffix);
 
-        int unexpiredTgts = 0;
-        int unexpiredSts = 0;
-        int expiredTgts = 0;
-        int expiredSts = 0;
+        final TicketCounter counter = new TicketCounter();
 
         try {
-            final Collection<Ticket> tickets = this.ticketRegistry.getTickets();
-
-            for (final Ticket ticket : tickets) {
-                if (ticket instanceof ServiceTicket) {
-                    if (ticket.isExpired()) {
-                        expiredSts++;
-                    } else {
-                        unexpiredSts++;
-                    }
-                } else {
-                    if (ticket.isExpired()) {
-                        expiredTgts++;
-                    } else {
-                        unexpiredTgts++;
-                    }
+            if (this.ticketRegistry instanceof StreamingTicketRegistry) {
+                ((StreamingTicketRegistry) this.ticketRegistry).forEachTicket(Ticket.class, TICKET_BATCH_SIZE, counter);
+            } else {
+                for (final Ticket ticket : this.ticketRegistry.getTickets()) {
+                    counter.visit(ticket);
                 }
             }
         } catch (final UnsupportedOperationException e) {
@@ -102,10 +93,10 @@ public final class StatisticsController extends AbstractController {
 
         final Collection<GraphingStatisticsAppender> appenders = GraphingStatisticsAppender.getAllGraphingStatisticsAppenders();
 
-        modelAndView.addObject("unexpiredTgts", unexpiredTgts);
-        modelAndView.addObject("unexpiredSts", unexpiredSts);
-        modelAndView.addObject("expiredTgts", expiredTgts);
-        modelAndView.addObject("expiredSts", expiredSts);
+        modelAndView.addObject("unexpiredTgts", counter.unexpiredTgts);
+        modelAndView.addObject("unexpiredSts", counter.unexpiredSts);
+        modelAndView.addObject("expiredTgts", counter.expiredTgts);
+        modelAndView.addObject("expiredSts", counter.expiredSts);
         modelAndView.addObject("pageTitle", modelAndView.getViewName());
         modelAndView.addObject("graphingStatisticAppenders", appenders);
 
@@ -126,4 +117,32 @@ public final class StatisticsController extends AbstractController {
         return Integer.toString(new Double(time).intValue()) + " "+ label + " " + calculateUptime(newDifference, calculations, labels);
         
     }
+
+    private static final class TicketCounter implements TicketVisitor {
+
+        private int unexpiredTgts;
+
+        private int unexpiredSts;
+
+        private int expiredTgts;
+
+        private int expiredSts;
+
+        public boolean visit(final Ticket ticket) {
+            if (ticket instanceof ServiceTicket) {
+                if (ticket.isExpired()) {
+                    expiredSts++;
+                } else {
+                    unexpiredSts++;
+                }
+            } else {
+                if (ticket.isExpired()) {
+                    expiredTgts++;
+                } else {
+                    unexpiredTgts++;
+                }
+            }
+            return true;
+        }
+    }
 }
@@ -0,0 +1,170 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.web.view;
+
+import java.io.Writer;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.jasig.cas.authentication.Authentication;
+import org.jasig.cas.validation.Assertion;
+
+/**
+ * Custom View to Return the CAS 2.0 Protocol Response of /serviceValidate and
+ * /proxyValidate. Writes the same XML as the CAS 2.0 validation JSPs directly to
+ * the response, without expression evaluation or a servlet forward. The JSPs remain
+ * the default views; this view is enabled in <code>protocol_views.properties</code>.
+ * <p>
+ * The success response may optionally include the attributes of the principal
+ * in a <code>cas:attributes</code> element, one element per value, named after
+ * the attribute. Attributes whose names are not valid XML names are skipped.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public final class Cas20ResponseView extends AbstractCasView {
+
+    /** Default content type of the response. */
+    public static final String DEFAULT_CONTENT_TYPE = "text/xml;charset=UTF-8";
+
+    /**
+     * Indicate whether this view will be generating the success response or
+     * not.
+     */
+    private boolean successResponse;
+
+    /** Whether the success response includes the principal attributes. */
+    private boolean includeAttributes;
+
+    public Cas20ResponseView() {
+        setContentType(DEFAULT_CONTENT_TYPE);
+    }
+
+    protected void renderMergedOutputModel(final Map model,
+        final HttpServletRequest request, final HttpServletResponse response)
+        throws Exception {
+        response.setContentType(getContentType());
+        final Writer out = response.getWriter();
+
+        out.write("<cas:serviceResponse xmlns:cas='http://www.yale.edu/tp/cas'>\n");
+        if (this.successResponse) {
+            writeSuccess(getAssertionFrom(model), (String) model.get("pgtIou"), out);
+        } else {
+            out.write("\t<cas:authenticationFailure code='");
+            XmlEscaper.escape((String) model.get("code"), out);
+            out.write("'>\n\t\t");
+            XmlEscaper.escape((String) model.get("description"), out);
+            out.write("\n\t</cas:authenticationFailure>\n");
+        }
+        out.write("</cas:serviceResponse>\n");
+        out.flush();
+    }
+
+    private void writeSuccess(final Assertion assertion, final String pgtIou, final Writer out) throws Exception {
+        final List<Authentication> authentications = assertion.getChainedAuthentications();
+        final Authentication primary = authentications.get(authentications.size() - 1);
+
+        out.write("\t<cas:authenticationSuccess>\n\t\t<cas:user>");
+        XmlEscaper.escape(primary.getPrincipal().getId(), out);
+        out.write("</cas:user>\n");
+
+        if (this.includeAttributes && !primary.getPrincipal().getAttributes().isEmpty()) {
+            out.write("\t\t<cas:attributes>\n");
+            for (final Map.Entry<String, Object> entry : primary.getPrincipal().getAttributes().entrySet()) {
+                if (isXmlName(entry.getKey())) {
+                    if (entry.getValue() instanceof Collection) {
+                        for (final Object value : (Collection<?>) entry.getValue()) {
+                            writeAttribute(entry.getKey(), value, out);
+                        }
+                    } else {
+                        writeAttribute(entry.getKey(), entry.getValue(), out);
+                    }
+                } else {
+                    log.debug("Skipping attribute {} whose name is not a valid XML name.", entry.getKey());
+                }
+            }
+            out.write("\t\t</cas:attributes>\n");
+        }
+
+        if (pgtIou != null && pgtIou.length() > 0) {
+            out.write("\t\t<cas:proxyGrantingTicket>");
+            XmlEscaper.escape(pgtIou, out);
+            out.write("</cas:proxyGrantingTicket>\n");
+        }
+
+        if (authentications.size() > 1) {
+            out.write("\t\t<cas:proxies>\n");
+            for (int i = 0; i < authentications.size() - 1; i++) {
+                out.write("\t\t\t<cas:proxy>");
+                XmlEscaper.escape(authentications.get(i).getPrincipal().getId(), out);
+                out.write("</cas:proxy>\n");
+            }
+            out.write("\t\t</cas:proxies>\n");
+        }
+        out.write("\t</cas:authenticationSuccess>\n");
+    }
+
+    private static void writeAttribute(final String name, final Object value, final Writer out) throws Exception {
+        if (value == null) {
+            return;
+        }
+        out.write("\t\t\t<cas:");
+        out.write(name);
+        out.write('>');
+        XmlEscaper.escape(value.toString(), out);
+        out.write("</cas:");
+        out.write(name);
+        out.write(">\n");
+    }
+
+    /**
+     * Determines whether a name can be used as the local part of an element name. Only ASCII
+     * names are accepted.
+     */
+    private static boolean isXmlName(final String name) {
+        if (name == null || name.length() == 0) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            final boolean letter = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+            final boolean other = (c >= '0' && c <= '9') || c == '-' || c == '.';
+            if (!letter && (i == 0 || !other)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void setSuccessResponse(final boolean successResponse) {
+        this.successResponse = successResponse;
+    }
+
+    /**
+     * @param includeAttributes Whether the success response includes the principal attributes. Off by default,
+     * as in the CAS 2.0 protocol.
+     */
+    public void setIncludeAttributes(final boolean includeAttributes) {
+        this.includeAttributes = includeAttributes;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.web.view;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes text to a writer with the XML markup characters replaced by the same entity references
+ * as the JSTL <code>fn:escapeXml</code> function. Runs of text that need no escaping are written
+ * as is, without creating intermediate strings.
+ *
+ * @author agent
+ * @since 4.0
+ */
+final class XmlEscaper {
+
+    private XmlEscaper() {
+        // static methods only
+    }
+
+    /**
+     * Writes escaped text.
+     *
+     * @param text Text to write. Nothing is written if null.
+     * @param out Writer to write to.
+     * @throws IOException on errors writing to the writer.
+     */
+    public static void escape(final String text, final Writer out) throws IOException {
+        if (text == null) {
+            return;
+        }
+        final int length = text.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            final String entity;
+            switch (text.charAt(i)) {
+                case '<':
+                    entity = "&lt;";
+                    break;
+                case '>':
+                    entity = "&gt;";
+                    break;
+                case '&':
+                    entity = "&amp;";
+                    break;
+                case '\'':
+                    entity = "&#039;";
+                    break;
+                case '"':
+                    entity = "&#034;";
+                    break;
+                default:
+                    continue;
+            }
+            out.write(text, start, i - start);
+            out.write(entity);
+            start = i + 1;
+        }
+        out.write(text, start, length - start);
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.web.view;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.jasig.cas.TestUtils;
+import org.jasig.cas.authentication.Authentication;
+import org.jasig.cas.authentication.ImmutableAuthentication;
+import org.jasig.cas.authentication.principal.SimplePrincipal;
+import org.jasig.cas.validation.ImmutableAssertionImpl;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.w3c.dom.Document;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for {@link Cas20ResponseView} class.
+ *
+ * @author agent
+ * @since 4.0
+ */
+public class Cas20ResponseViewTests {
+
+    private final Cas20ResponseView view = new Cas20ResponseView();
+
+    @Test
+    public void testSuccessView() throws Exception {
+        this.view.setSuccessResponse(true);
+        final MockHttpServletResponse response = render(newModel("<test>&"));
+        assertEquals(Cas20ResponseView.DEFAULT_CONTENT_TYPE, response.getContentType());
+        assertEquals("<cas:serviceResponse xmlns:cas='http://www.yale.edu/tp/cas'>\n"
+            + "\t<cas:authenticationSuccess>\n"
+            + "\t\t<cas:user>&lt;test&gt;&amp;</cas:user>\n"
+            + "\t</cas:authenticationSuccess>\n"
+            + "</cas:serviceResponse>\n", response.getContentAsString());
+    }
+
+    @Test
+    public void testProxySuccessView() throws Exception {
+        this.view.setSuccessResponse(true);
+        final Map<String, Object> model = newModel("proxy2", "proxy1", "test");
+        model.put("pgtIou", "PGTIOU-1-abc");
+        final Document document = parse(render(model));
+        assertEquals("test", document.getElementsByTagName("cas:user").item(0).getTextContent());
+        assertEquals("PGTIOU-1-abc",
+            document.getElementsByTagName("cas:proxyGrantingTicket").item(0).getTextContent());
+        assertEquals(2, document.getElementsByTagName("cas:proxy").getLength());
+        assertEquals("proxy2", document.getElementsByTagName("cas:proxy").item(0).getTextContent());
+        assertEquals(0, document.getElementsByTagName("cas:attributes").getLength());
+    }
+
+    @Test
+    public void testAttributes() throws Exception {
+        this.view.setSuccessResponse(true);
+        this.view.setIncludeAttributes(true);
+        final Map<String, Object> attributes = new LinkedHashMap<String, Object>();
+        attributes.put("mail", "test@example.org");
+        attributes.put("memberOf", Arrays.asList("staff", "R&D"));
+        attributes.put("not a name", "skipped");
+        final List<Authentication> authentications = new ArrayList<Authentication>();
+        authentications.add(new ImmutableAuthentication(new SimplePrincipal("test", attributes)));
+        final Map<String, Object> model = new HashMap<String, Object>();
+        model.put("assertion", new ImmutableAssertionImpl(authentications, TestUtils.getService("TestService"), true));
+
+        final MockHttpServletResponse response = render(model);
+        final Document document = parse(response);
+        assertEquals("test@example.org", document.getElementsByTagName("cas:mail").item(0).getTextContent());
+        assertEquals(2, document.getElementsByTagName("cas:memberOf").getLength());
+        assertEquals("R&D", document.getElementsByTagName("cas:memberOf").item(1).getTextContent());
+        assertFalse(response.getContentAsString().contains("skipped"));
+    }
+
+    @Test
+    public void testFailureView() throws Exception {
+        this.view.setSuccessResponse(false);
+        final Map<String, Object> model = new HashMap<String, Object>();
+        model.put("code", "INVALID_TICKET");
+        model.put("description", "Ticket 'ST-1' not recognized");
+        final MockHttpServletResponse response = render(model);
+        assertEquals("<cas:serviceResponse xmlns:cas='http://www.yale.edu/tp/cas'>\n"
+            + "\t<cas:authenticationFailure code='INVALID_TICKET'>\n"
+            + "\t\tTicket &#039;ST-1&#039; not recognized\n"
+            + "\t</cas:authenticationFailure>\n"
+            + "</cas:serviceResponse>\n", response.getContentAsString());
+        assertTrue(parse(response).getDocumentElement().getTextContent().contains("Ticket 'ST-1'"));
+    }
+
+    private MockHttpServletResponse render(final Map<String, Object> model) throws Exception {
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        this.view.render(model, new MockHttpServletRequest(), response);
+        return response;
+    }
+
+    /**
+     * @param principals Principal ids, the first proxied by the second and so on.
+     */
+    private static Map<String, Object> newModel(final String... principals) {
+        final List<Authentication> authentications = new ArrayList<Authentication>();
+        for (final String principal : principals) {
+            authentications.add(new ImmutableAuthentication(new SimplePrincipal(principal)));
+        }
+        final Map<String, Object> model = new HashMap<String, Object>();
+        model.put("assertion", new ImmutableAssertionImpl(authentications, TestUtils.getService("TestService"), true));
+        return model;
+    }
+
+    private static Document parse(final MockHttpServletResponse response) throws Exception {
+        final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        return factory.newDocumentBuilder().parse(new ByteArrayInputStream(response.getContentAsByteArray()));
+    }
+}
@@ -0,0 +1,24 @@
+--
+-- Upgrades the tables of a JPA ticket registry created by CAS 3.x for CAS 4.0. Review the column types for your
+-- database before running the script; deployments that let Hibernate update the schema (hbm2ddl.auto=update) still
+-- need to run it, since Hibernate only adds the new columns.
+--
+
+-- EXPIRATION_TIME holds the earliest expiration time of a ticket so that the registry cleaner can find expired
+-- tickets with an indexed query. Existing rows start at 0, which makes them expiration candidates of the next cleanup
+-- run; that run stores the actual expiration time of the tickets that have not expired. If Hibernate has already
+-- added the column, fill it in and make it NOT NULL with your database's syntax instead, e.g.
+--   UPDATE TICKETGRANTINGTICKET SET EXPIRATION_TIME = 0 WHERE EXPIRATION_TIME IS NULL;
+--   ALTER TABLE TICKETGRANTINGTICKET MODIFY EXPIRATION_TIME NOT NULL;            (Oracle)
+--   ALTER TABLE TICKETGRANTINGTICKET ALTER COLUMN EXPIRATION_TIME SET NOT NULL;  (PostgreSQL, HSQLDB, H2)
+ALTER TABLE TICKETGRANTINGTICKET ADD EXPIRATION_TIME BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE SERVICETICKET ADD EXPIRATION_TIME BIGINT DEFAULT 0 NOT NULL;
+CREATE INDEX TGT_EXPIRATION_TIME_IDX ON TICKETGRANTINGTICKET (EXPIRATION_TIME);
+CREATE INDEX ST_EXPIRATION_TIME_IDX ON SERVICETICKET (EXPIRATION_TIME);
+
+-- VERSION detects concurrent modifications of a ticket. Hibernate regards versioned rows without a version as
+-- new, so existing rows must start at version 0.
+ALTER TABLE TICKETGRANTINGTICKET ADD VERSION INTEGER;
+ALTER TABLE SERVICETICKET ADD VERSION INTEGER;
+UPDATE TICKETGRANTINGTICKET SET VERSION = 0 WHERE VERSION IS NULL;
+UPDATE SERVICETICKET SET VERSION = 0 WHERE VERSION IS NULL;